@@ -0,0 +1,253 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs ledger commands from a script, one per line, without the menu or any
+ * prompts: {@code java Main --batch commands.txt} ({@code -} reads stdin).
+ *
+ * Fields are separated by whitespace; quote a field that contains spaces
+ * ({@code "Weekly shop"}, with {@code ""} for a literal quote). Blank lines
+ * and lines starting with {@code #} are skipped. Dates are yyyy-MM-dd, or
+ * yyyy-MM for the first of the month as in the interactive menu.
+ * <pre>
+ *   add-income  2025-03 2500 Salary "March pay" card
+ *   add-expense 2025-03-14 42.50 Groceries "Weekly shop" cash
+ *   edit 3f2c...e1 45.00 Groceries "Weekly shop" card
+ *   delete 3f2c...e1
+ *   summary [2025-03]        (no month: the overall summary)
+ *   largest 2025
+ *   search-category groceries
+ *   search-payment card
+ *   duplicates | list | metrics
+ *   import transactions.csv | export transactions.csv
+ * </pre>
+ * Expenses get the same income check as in the menu. A command that fails
+ * is reported with its line number and the run carries on. All output goes
+ * through one large buffer that is flushed when the run ends.
+ */
+class BatchRunner {
+
+    private static final int OUTPUT_BUFFER_BYTES = 1 << 20;
+
+    private final FinanceService service;
+    private long commands = 0;
+    private long failed = 0;
+
+    BatchRunner(FinanceService service) {
+        this.service = service;
+    }
+
+    /**
+     * Runs every command from {@code in}, then prints how many ran and failed.
+     */
+    void run(BufferedReader in) throws IOException {
+        PrintStream console = System.out;
+        console.flush();
+        PrintStream buffered = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out),
+                OUTPUT_BUFFER_BYTES), false);
+        System.setOut(buffered);
+        long started = System.nanoTime();
+        try {
+            long lineNumber = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                commands++;
+                try {
+                    if (!execute(split(trimmed))) {
+                        failed++;
+                        System.out.println("Line " + lineNumber + ": command failed: " + trimmed);
+                    }
+                } catch (RuntimeException e) {
+                    failed++;
+                    System.out.println("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+            System.out.printf("Batch finished: %d commands, %d failed, in %.2f s.%n", commands, failed,
+                    (System.nanoTime() - started) / 1e9);
+        } finally {
+            buffered.flush();
+            System.setOut(console);
+        }
+    }
+
+    long failedCommands() {
+        return failed;
+    }
+
+    /**
+     * Runs one command; returns false if the service refused it (it prints why).
+     */
+    private boolean execute(List<String> fields) {
+        String command = fields.get(0).toLowerCase();
+        switch (command) {
+            case "add-income" -> {
+                expectFields(fields, 6, "add-income DATE AMOUNT CATEGORY DESCRIPTION PAYMENT_METHOD");
+                return service.addTransaction(new Income(amount(fields.get(2)), fields.get(3), fields.get(4),
+                        paymentMethod(fields.get(5)), date(fields.get(1))));
+            }
+            case "add-expense" -> {
+                expectFields(fields, 6, "add-expense DATE AMOUNT CATEGORY DESCRIPTION PAYMENT_METHOD");
+                return service.tryAddExpense(new Expense(amount(fields.get(2)), fields.get(3), fields.get(4),
+                        paymentMethod(fields.get(5)), date(fields.get(1))));
+            }
+            case "edit" -> {
+                expectFields(fields, 6, "edit ID AMOUNT CATEGORY DESCRIPTION PAYMENT_METHOD");
+                return service.editTransaction(fields.get(1), amount(fields.get(2)), fields.get(3), fields.get(4),
+                        paymentMethod(fields.get(5)));
+            }
+            case "delete" -> {
+                expectFields(fields, 2, "delete ID");
+                return service.deleteTransaction(fields.get(1));
+            }
+            case "summary" -> {
+                if (fields.size() == 1) {
+                    Main.viewOverallSummary(service);
+                } else {
+                    expectFields(fields, 2, "summary [YYYY-MM]");
+                    service.printMonthlySummary(yearMonth(fields.get(1)));
+                }
+            }
+            case "largest" -> {
+                expectFields(fields, 2, "largest YEAR");
+                service.findLargestExpensePerMonth(year(fields.get(1)));
+            }
+            case "search-category" -> {
+                expectFields(fields, 2, "search-category CATEGORY");
+                service.searchExpenseByCategory(fields.get(1));
+            }
+            case "search-payment" -> {
+                expectFields(fields, 2, "search-payment PAYMENT_METHOD");
+                service.searchTransactionByPaymentMethod(fields.get(1));
+            }
+            case "duplicates" -> service.detectDuplicateTransactions();
+            case "list" -> service.printAllTransactions();
+            case "metrics" -> service.printMetrics();
+            case "import" -> {
+                expectFields(fields, 2, "import FILE");
+                Main.importTransactions(service, Paths.get(fields.get(1)));
+            }
+            case "export" -> {
+                expectFields(fields, 2, "export FILE");
+                try {
+                    service.exportTransactions(Paths.get(fields.get(1)));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Error exporting transactions: " + e.getMessage(), e);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown command: " + fields.get(0));
+        }
+        return true;
+    }
+
+    private static void expectFields(List<String> fields, int count, String usage) {
+        if (fields.size() != count) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+
+    private static double amount(String field) {
+        double amount;
+        try {
+            amount = Double.parseDouble(field);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount: " + field);
+        }
+        if (!Money.isValidAmount(amount)) {
+            throw new IllegalArgumentException("Amount must be a positive number up to " + Money.MAX_CENTS / 100 + ": " + field);
+        }
+        return amount;
+    }
+
+    private static String paymentMethod(String field) {
+        String method = field.toLowerCase();
+        for (String valid : Main.VALID_PAYMENT_METHODS) {
+            if (valid.equals(method)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("Invalid payment method: " + field + " (use Cash, Card, or Online)");
+    }
+
+    private static LocalDate date(String field) {
+        try {
+            return field.length() == 7 ? YearMonth.parse(field).atDay(1) : LocalDate.parse(field);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date (use YYYY-MM-DD or YYYY-MM): " + field);
+        }
+    }
+
+    private static YearMonth yearMonth(String field) {
+        try {
+            return YearMonth.parse(field);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid month (use YYYY-MM): " + field);
+        }
+    }
+
+    private static int year(String field) {
+        try {
+            int year = Integer.parseInt(field);
+            if (year >= 1 && year <= 9999) {
+                return year;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid year: " + field);
+    }
+
+    // Whitespace-separated fields; "..." quotes a field, "" inside quotes is a literal quote
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>(6);
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c != '"') {
+                int start = i;
+                while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                fields.add(line.substring(start, i));
+                continue;
+            }
+            StringBuilder field = new StringBuilder();
+            i++;
+            while (true) {
+                if (i >= length) {
+                    throw new IllegalArgumentException("Unterminated quote");
+                }
+                char q = line.charAt(i++);
+                if (q != '"') {
+                    field.append(q);
+                } else if (i < length && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            fields.add(field.toString());
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for a write that broke a {@link BudgetRule}, whether it was
+ * rejected or only flagged. Like {@link SlowOperationEvent}, only committed
+ * while a recording has it enabled.
+ */
+@Name("personalfinance.BudgetAlert")
+@Label("Budget Alert")
+@Category("Personal Finance")
+@Description("A write that broke a budget rule")
+class BudgetAlertEvent extends Event {
+
+    @Label("Rule")
+    String rule;
+
+    @Label("Action")
+    String action;
+
+    @Label("Month")
+    String month;
+
+    @Label("Reason")
+    String reason;
+}
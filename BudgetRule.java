@@ -0,0 +1,80 @@
+/**
+ * A monthly budget rule for {@link FinanceService#addBudgetRule}. Every add,
+ * edit and delete is checked against the registered rules before it is
+ * applied:
+ * <pre>
+ *   BudgetRule.categoryCap("Groceries", 400)        // Groceries expenses of any month stay within 400.00
+ *   BudgetRule.paymentMethodCap("card", 1500)       // so do card expenses
+ *   BudgetRule.savingsFloor(0.2).flagOnly()         // warn when a month saves less than 20% of its income
+ * </pre>
+ * Categories and payment methods are compared ignoring case.
+ */
+public record BudgetRule(Kind kind, String target, double limit, Action action) {
+
+    public enum Kind {
+        CATEGORY_CAP,       // the target category's expenses in a month are at most limit
+        PAYMENT_METHOD_CAP, // the target payment method's expenses in a month are at most limit
+        SAVINGS_FLOOR       // a month's expenses are at most (1 - limit) times its income; no target
+    }
+
+    /**
+     * What happens to a write that would break the rule, or take a month
+     * already breaking it further past the limit.
+     */
+    public enum Action {
+        REJECT, // refuse the write and print which rule it breaks
+        FLAG    // apply the write and print a warning naming the rule
+    }
+
+    public BudgetRule {
+        if (kind == null || action == null) {
+            throw new IllegalArgumentException("kind and action are required");
+        }
+        if (kind == Kind.SAVINGS_FLOOR) {
+            if (!(limit <= 1.0) || Double.isInfinite(limit)) {
+                throw new IllegalArgumentException("Savings floor must be a ratio of at most 1: " + limit);
+            }
+            target = null;
+        } else {
+            if (target == null || target.isBlank()) {
+                throw new IllegalArgumentException("A cap needs a category or payment method");
+            }
+            if (!(limit >= 0.0) || Double.isInfinite(limit)) {
+                throw new IllegalArgumentException("Cap must be a non-negative amount: " + limit);
+            }
+            target = target.trim().toLowerCase();
+        }
+    }
+
+    public static BudgetRule categoryCap(String category, double monthlyLimit) {
+        return new BudgetRule(Kind.CATEGORY_CAP, category, monthlyLimit, Action.REJECT);
+    }
+
+    public static BudgetRule paymentMethodCap(String paymentMethod, double monthlyLimit) {
+        return new BudgetRule(Kind.PAYMENT_METHOD_CAP, paymentMethod, monthlyLimit, Action.REJECT);
+    }
+
+    /**
+     * A floor on each month's savings ratio, (income - expense) / income. A
+     * floor of 0 is the rule {@link FinanceService#tryAddExpense} applies.
+     */
+    public static BudgetRule savingsFloor(double ratio) {
+        return new BudgetRule(Kind.SAVINGS_FLOOR, null, ratio, Action.REJECT);
+    }
+
+    /**
+     * The same rule, but only warning about writes that break it.
+     */
+    public BudgetRule flagOnly() {
+        return new BudgetRule(kind, target, limit, Action.FLAG);
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case CATEGORY_CAP -> String.format("cap of %.2f a month on %s expenses", limit, target);
+            case PAYMENT_METHOD_CAP -> String.format("cap of %.2f a month on %s payments", limit, target);
+            case SAVINGS_FLOOR -> String.format("savings floor of %.0f%% a month", limit * 100);
+        };
+    }
+}
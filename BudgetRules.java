@@ -0,0 +1,215 @@
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The registered {@link BudgetRule}s and the running totals they are checked
+ * against.
+ *
+ * A cap needs its category's (or payment method's) expense total per month,
+ * so those are kept here, in step with every write, but only for the keys
+ * some rule names; savings floors read {@link MonthlyTotals}. A write is
+ * checked against the rules on its own category and payment method plus the
+ * savings floors, so its cost grows with those rules and never with the
+ * ledger. A write only breaks a rule if it leaves a month further past the
+ * limit than it was: shrinking an expense in a month over its cap is fine.
+ *
+ * Guarded by the service's lock: writes under the write lock, checks under
+ * either lock. A check reads only the months of its rows, which the service
+ * keeps still with their month locks.
+ */
+class BudgetRules {
+
+    /**
+     * One row's values, as far as rules care.
+     */
+    record Row(int yearMonth, boolean income, String category, String paymentMethod, long cents) {
+
+        static Row of(TransactionStore store, int slot) {
+            return new Row(store.yearMonth(slot), store.isIncome(slot), store.categories().decode(store.categoryCode(slot)),
+                    store.paymentMethods().decode(store.paymentMethodCode(slot)), store.cents(slot));
+        }
+    }
+
+    /**
+     * A rule a write would break, and how.
+     */
+    record Violation(BudgetRule rule, int yearMonth, String reason) {
+    }
+
+    // The rules on one category or payment method, and its expense cents per year-month index
+    private static final class Watched {
+
+        final Map<Long, BudgetRule> rules = new LinkedHashMap<>();
+        final Map<Integer, Long> expenseByMonth = new HashMap<>();
+    }
+
+    private final Map<Long, BudgetRule> rules = new LinkedHashMap<>(); // by ID, in the order added
+    private final Map<String, Watched> categories = new HashMap<>(); // keyed lower-cased
+    private final Map<String, Watched> paymentMethods = new HashMap<>();
+    private final Map<Long, BudgetRule> savingsFloors = new LinkedHashMap<>();
+    private long nextId = 1;
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Registers the rule and returns its ID. A cap on a key no other rule
+     * names starts its totals from {@code rollup}, called with a per-month
+     * query of the key's expenses.
+     */
+    long add(BudgetRule rule, Function<RollupQuery, List<RollupRow>> rollup) {
+        long id = nextId++;
+        rules.put(id, rule);
+        switch (rule.kind()) {
+            case CATEGORY_CAP -> watch(categories, rule.target(),
+                    () -> rollup.apply(new RollupQuery().groupBy(RollupQuery.Dimension.MONTH).expenses().category(rule.target())))
+                    .rules.put(id, rule);
+            case PAYMENT_METHOD_CAP -> watch(paymentMethods, rule.target(),
+                    () -> rollup.apply(new RollupQuery().groupBy(RollupQuery.Dimension.MONTH).expenses().paymentMethod(rule.target())))
+                    .rules.put(id, rule);
+            case SAVINGS_FLOOR -> savingsFloors.put(id, rule);
+        }
+        return id;
+    }
+
+    boolean remove(long id) {
+        BudgetRule rule = rules.remove(id);
+        if (rule == null) {
+            return false;
+        }
+        switch (rule.kind()) {
+            case CATEGORY_CAP -> unwatch(categories, rule.target(), id);
+            case PAYMENT_METHOD_CAP -> unwatch(paymentMethods, rule.target(), id);
+            case SAVINGS_FLOOR -> savingsFloors.remove(id);
+        }
+        return true;
+    }
+
+    Map<Long, BudgetRule> rules() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(rules));
+    }
+
+    /**
+     * Adds the row in {@code slot} to the totals ({@code sign} 1), or takes
+     * it out (-1).
+     */
+    void apply(TransactionStore store, int slot, int sign) {
+        if (store.isIncome(slot) || (categories.isEmpty() && paymentMethods.isEmpty())) {
+            return;
+        }
+        long cents = sign * store.cents(slot);
+        count(categories, store.categories().decode(store.categoryCode(slot)), store.yearMonth(slot), cents);
+        count(paymentMethods, store.paymentMethods().decode(store.paymentMethodCode(slot)), store.yearMonth(slot), cents);
+    }
+
+    /**
+     * The rules broken by replacing {@code before} with {@code after}: an add
+     * has no before, a delete no after.
+     */
+    List<Violation> check(Row before, Row after, MonthlyTotals totals) {
+        List<Violation> violations = new ArrayList<>();
+        if (after != null && !after.income()) {
+            checkCap(categories, Row::category, before, after, violations);
+            checkCap(paymentMethods, Row::paymentMethod, before, after, violations);
+        }
+        if (!savingsFloors.isEmpty()) {
+            if (before != null) {
+                checkSavings(before.yearMonth(), before, after, totals, violations);
+            }
+            if (after != null && (before == null || after.yearMonth() != before.yearMonth())) {
+                checkSavings(after.yearMonth(), before, after, totals, violations);
+            }
+        }
+        return violations;
+    }
+
+    private void checkCap(Map<String, Watched> watchedByKey, Function<Row, String> key, Row before, Row after,
+                          List<Violation> violations) {
+        String afterKey = normalize(key.apply(after));
+        Watched watched = watchedByKey.get(afterKey);
+        if (watched == null) {
+            return;
+        }
+        long current = watched.expenseByMonth.getOrDefault(after.yearMonth(), 0L);
+        long next = current + after.cents();
+        if (before != null && !before.income() && before.yearMonth() == after.yearMonth()
+                && normalize(key.apply(before)).equals(afterKey)) {
+            next -= before.cents();
+        }
+        if (next <= current) {
+            return;
+        }
+        for (BudgetRule rule : watched.rules.values()) {
+            if (next > Money.toCents(rule.limit())) {
+                violations.add(new Violation(rule, after.yearMonth(), String.format("%s expenses for %s would reach %.2f, over the %s",
+                        key.apply(after).trim(), month(after.yearMonth()), Money.toAmount(next), rule)));
+            }
+        }
+    }
+
+    private void checkSavings(int yearMonth, Row before, Row after, MonthlyTotals totals, List<Violation> violations) {
+        long income = totals.yearMonth(yearMonth, true);
+        long expense = totals.yearMonth(yearMonth, false);
+        long nextIncome = income + centsIn(after, yearMonth, true) - centsIn(before, yearMonth, true);
+        long nextExpense = expense + centsIn(after, yearMonth, false) - centsIn(before, yearMonth, false);
+        for (BudgetRule rule : savingsFloors.values()) {
+            double shortfall = expense - income * (1.0 - rule.limit());
+            double nextShortfall = nextExpense - nextIncome * (1.0 - rule.limit());
+            if (nextShortfall > 0 && nextShortfall > shortfall) {
+                violations.add(new Violation(rule, yearMonth, String.format("Expense (%.2f) against income (%.2f) for %s would break the %s",
+                        Money.toAmount(nextExpense), Money.toAmount(nextIncome), month(yearMonth), rule)));
+            }
+        }
+    }
+
+    private static long centsIn(Row row, int yearMonth, boolean income) {
+        return row != null && row.yearMonth() == yearMonth && row.income() == income ? row.cents() : 0L;
+    }
+
+    private static Watched watch(Map<String, Watched> watchedByKey, String key, Supplier<List<RollupRow>> seed) {
+        Watched watched = watchedByKey.get(key);
+        if (watched == null) {
+            watched = new Watched();
+            for (RollupRow row : seed.get()) {
+                watched.expenseByMonth.put(TransactionStore.yearMonthIndex(row.month().getYear(), row.month().getMonthValue()),
+                        Money.toCents(row.total()));
+            }
+            watchedByKey.put(key, watched);
+        }
+        return watched;
+    }
+
+    private static void unwatch(Map<String, Watched> watchedByKey, String key, long id) {
+        Watched watched = watchedByKey.get(key);
+        watched.rules.remove(id);
+        if (watched.rules.isEmpty()) {
+            watchedByKey.remove(key);
+        }
+    }
+
+    private static void count(Map<String, Watched> watchedByKey, String key, int yearMonth, long cents) {
+        if (watchedByKey.isEmpty()) {
+            return;
+        }
+        Watched watched = watchedByKey.get(normalize(key));
+        if (watched != null) {
+            watched.expenseByMonth.merge(yearMonth, cents, Long::sum);
+        }
+    }
+
+    private static String normalize(String key) {
+        return key.trim().toLowerCase();
+    }
+
+    private static YearMonth month(int yearMonth) {
+        return YearMonth.of(TransactionStore.yearOf(yearMonth), TransactionStore.monthOf(yearMonth));
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Substring index over expense categories.
+ *
+ * Categories are normalized (trimmed, lower-cased) and each distinct
+ * normalized value gets an ID. Every trigram of a normalized value has a
+ * posting set of the IDs containing it, so a search for "groc" only checks
+ * the categories that contain both "gro" and "roc". Each normalized category
+ * also keeps the slots of its expenses and their running total, so a search
+ * touches only matching rows and never re-adds amounts.
+ */
+class CategoryIndex implements RowIndex {
+
+    private final StringDictionary normalized = new StringDictionary();
+    private final Map<Long, BitSet> trigramPostings = new HashMap<>();
+    private final List<RowBitmap> expenseRows = new ArrayList<>();
+    private long[] expenseCents = new long[16];
+    private long[] sealedExpenseCents = new long[16]; // of rows in sealed months, kept through clear()
+    private int[] normalizedByCode = new int[0]; // store category code -> normalized ID, -1 if not yet seen
+
+    @Override
+    public void add(TransactionStore store, int slot) {
+        if (store.isIncome(slot)) {
+            return;
+        }
+        int id = normalizedId(store, store.categoryCode(slot));
+        expenseRows.get(id).add(slot);
+        expenseCents[id] += store.cents(slot);
+    }
+
+    @Override
+    public void remove(TransactionStore store, int slot) {
+        if (store.isIncome(slot)) {
+            return;
+        }
+        int id = normalizedId(store, store.categoryCode(slot));
+        expenseRows.get(id).remove(slot);
+        expenseCents[id] -= store.cents(slot);
+    }
+
+    @Override
+    public void clear() {
+        expenseRows.forEach(RowBitmap::clear);
+        Arrays.fill(expenseCents, 0L);
+    }
+
+    @Override
+    public void seal(TransactionStore store, int slot) {
+        remove(store, slot);
+        if (!store.isIncome(slot)) {
+            sealedExpenseCents[normalizedId(store, store.categoryCode(slot))] += store.cents(slot);
+        }
+    }
+
+    @Override
+    public void unseal(TransactionStore store, int slot) {
+        if (!store.isIncome(slot)) {
+            sealedExpenseCents[normalizedId(store, store.categoryCode(slot))] -= store.cents(slot);
+        }
+        add(store, slot);
+    }
+
+    /**
+     * Returns the normalized IDs of every category containing
+     * {@code search} (already trimmed and lower-cased).
+     */
+    int[] matching(String search) {
+        BitSet candidates;
+        if (search.length() < 3) {
+            // Too short for a trigram: check every distinct category
+            candidates = new BitSet();
+            candidates.set(0, normalized.size());
+        } else {
+            candidates = null;
+            for (int i = 0; i + 3 <= search.length(); i++) {
+                BitSet postings = trigramPostings.get(trigram(search, i));
+                if (postings == null) {
+                    return new int[0];
+                }
+                if (candidates == null) {
+                    candidates = (BitSet) postings.clone();
+                } else {
+                    candidates.and(postings);
+                }
+            }
+        }
+        return candidates.stream()
+                .filter(id -> normalized.decode(id).contains(search))
+                .toArray();
+    }
+
+    RowBitmap expenseRows(int id) {
+        return expenseRows.get(id);
+    }
+
+    /**
+     * The normalized ID of a store category code, which must be that of an
+     * expense added or sealed earlier. Does not change the index, so it is
+     * safe under the read lock.
+     */
+    int idOfCode(int code) {
+        return normalizedByCode[code];
+    }
+
+    /**
+     * Total of the category's expenses, including those in sealed months.
+     */
+    long expenseCents(int id) {
+        return expenseCents[id] + sealedExpenseCents[id];
+    }
+
+    private int normalizedId(TransactionStore store, int code) {
+        if (code >= normalizedByCode.length) {
+            int oldLength = normalizedByCode.length;
+            normalizedByCode = Arrays.copyOf(normalizedByCode, Math.max(code + 1, store.categories().size()));
+            Arrays.fill(normalizedByCode, oldLength, normalizedByCode.length, -1);
+        }
+        int id = normalizedByCode[code];
+        if (id < 0) {
+            String value = store.categories().decode(code).trim().toLowerCase();
+            id = normalized.codeOf(value);
+            if (id < 0) {
+                id = register(value);
+            }
+            normalizedByCode[code] = id;
+        }
+        return id;
+    }
+
+    private int register(String value) {
+        int id = normalized.encode(value);
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            trigramPostings.computeIfAbsent(trigram(value, i), k -> new BitSet()).set(id);
+        }
+        expenseRows.add(new RowBitmap());
+        if (id >= expenseCents.length) {
+            expenseCents = Arrays.copyOf(expenseCents, expenseCents.length * 2);
+            sealedExpenseCents = Arrays.copyOf(sealedExpenseCents, expenseCents.length);
+        }
+        return id;
+    }
+
+    private static long trigram(String value, int start) {
+        return ((long) value.charAt(start) << 32) | ((long) value.charAt(start + 1) << 16) | value.charAt(start + 2);
+    }
+}
@@ -0,0 +1,28 @@
+import java.time.LocalDate;
+
+/**
+ * One add, edit or delete applied to the ledger, as published by
+ * {@link ChangeFeed}. {@code before} is null for an add and {@code after}
+ * for a delete; an edit carries both.
+ */
+public record ChangeEvent(long sequence, Type type, Row before, Row after) {
+
+    public enum Type {
+        ADDED, EDITED, DELETED
+    }
+
+    /**
+     * A transaction's values at the time of the change. Unlike
+     * {@link Transaction}, immutable, so one event can go to every subscriber.
+     */
+    public record Row(String id, LocalDate date, boolean income, double amount, String category, String description,
+                      String paymentMethod) {
+    }
+
+    /**
+     * ID of the transaction changed.
+     */
+    public String id() {
+        return after != null ? after.id() : before.id();
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Every add, edit and delete applied to a {@link FinanceService}, published
+ * as batches of {@link ChangeEvent}s (see {@link FinanceService#changeFeed()}).
+ *
+ * Writers append events to a bounded ring buffer and never wait for a
+ * subscriber. Each subscriber is fed from the ring by its own delivery task,
+ * at its own pace: one requested item is one batch of up to
+ * {@value #MAX_BATCH} events, all that have arrived since its last batch.
+ * A subscriber more than the ring's capacity behind has lost events; it gets
+ * {@code onError} with a {@link MissedEventsException} and has to catch up
+ * some other way, such as {@link FinanceService#getTransactions()}.
+ *
+ * Sequence numbers go up by one per event, so a subscriber that keeps the
+ * last number it processed can come back with
+ * {@link #subscribe(Flow.Subscriber, long)} while that event is still in
+ * the ring. For a ledger opened from a directory they carry on from the
+ * journal's sequence numbers: each journaled write is one event, so the
+ * feed of a reopened ledger starts after every number an earlier feed
+ * handed out, and a subscriber that had seen all of them resumes with the
+ * next one. Any number before that fails with a
+ * {@link MissedEventsException}; none is reused for a different event. An
+ * event is published once its write is applied, before the group commit
+ * makes it durable: after a crash, numbers from the last commit window may
+ * come round again unless the subscriber only kept positions covered by
+ * {@link FinanceService#sync()}. An in-memory ledger's feed starts at 1.
+ */
+public final class ChangeFeed implements Flow.Publisher<List<ChangeEvent>> {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final int MAX_BATCH = 256;
+
+    /**
+     * A subscriber asked for, or fell behind to, events no longer in the ring.
+     */
+    public static final class MissedEventsException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long firstMissed;
+        private final long oldestAvailable;
+
+        MissedEventsException(long firstMissed, long oldestAvailable) {
+            super("Events from sequence " + firstMissed + " are no longer in the feed; the oldest left is " + oldestAvailable);
+            this.firstMissed = firstMissed;
+            this.oldestAvailable = oldestAvailable;
+        }
+
+        public long getFirstMissed() {
+            return firstMissed;
+        }
+
+        public long getOldestAvailable() {
+            return oldestAvailable;
+        }
+    }
+
+    private final AtomicReferenceArray<ChangeEvent> ring;
+    private final int mask;
+    private final Set<Delivery> deliveries = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "change-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long first; // sequence of the feed's first event
+    private volatile long next; // sequence of the next event, raised once its slot is written
+    private volatile boolean closed = false;
+
+    ChangeFeed(int capacity) {
+        this(capacity, 1L);
+    }
+
+    /**
+     * @param capacity      events kept for subscribers that are behind; rounded up to a power of two
+     * @param firstSequence sequence number of the first event
+     */
+    ChangeFeed(int capacity, long firstSequence) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.first = firstSequence;
+        this.next = firstSequence;
+    }
+
+    /**
+     * Subscribes from the next event published.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<ChangeEvent>> subscriber) {
+        subscribe(subscriber, next);
+    }
+
+    /**
+     * Subscribes from the event numbered {@code fromSequence}, which must be
+     * at most the next sequence number. Fails the subscription with a
+     * {@link MissedEventsException} if that event has left the ring.
+     */
+    public void subscribe(Flow.Subscriber<? super List<ChangeEvent>> subscriber, long fromSequence) {
+        Delivery delivery = new Delivery(subscriber, fromSequence);
+        if (fromSequence < oldestAvailable()) {
+            delivery.failure = new MissedEventsException(fromSequence, oldestAvailable());
+        } else if (fromSequence > next) {
+            delivery.failure = new IllegalArgumentException("No event " + fromSequence + " yet; the next is " + next);
+        }
+        subscriber.onSubscribe(delivery);
+        deliveries.add(delivery);
+        delivery.signal();
+    }
+
+    /**
+     * Sequence number the next event will get.
+     */
+    public long nextSequence() {
+        return next;
+    }
+
+    // Oldest sequence still in the ring
+    private long oldestAvailable() {
+        return Math.max(first, next - ring.length());
+    }
+
+    /**
+     * Appends an event and wakes the subscribers waiting for one. Writers to
+     * different months may publish concurrently; the service publishes each
+     * write under its month's lock, so events about one row keep their order.
+     */
+    synchronized void publish(ChangeEvent.Type type, ChangeEvent.Row before, ChangeEvent.Row after) {
+        if (closed) {
+            return;
+        }
+        long sequence = next;
+        ring.set((int) sequence & mask, new ChangeEvent(sequence, type, before, after));
+        next = sequence + 1;
+        for (Delivery delivery : deliveries) {
+            if (delivery.demand.get() > 0) {
+                delivery.signal();
+            }
+        }
+    }
+
+    /**
+     * Ends the feed: subscribers complete once they have had every event.
+     * The delivery threads finish the work already handed to them and then
+     * exit; a subscriber that requests more after that is served on its own
+     * thread.
+     */
+    void close() {
+        closed = true;
+        deliveries.forEach(Delivery::signal);
+        executor.shutdown();
+    }
+
+    private final class Delivery implements Flow.Subscription, Runnable {
+
+        final Flow.Subscriber<? super List<ChangeEvent>> subscriber;
+        final AtomicLong demand = new AtomicLong();
+        final AtomicInteger signals = new AtomicInteger(); // the delivery task runs while nonzero
+        long position; // next sequence to deliver; only the delivery task touches it
+        volatile Throwable failure;
+        volatile boolean done = false;
+
+        Delivery(Flow.Subscriber<? super List<ChangeEvent>> subscriber, long position) {
+            this.subscriber = subscriber;
+            this.position = position;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Requested " + n + " batches; must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            deliveries.remove(this);
+        }
+
+        // Runs the delivery task unless it is already running, in which case it goes round once more
+        void signal() {
+            if (signals.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) { // closed
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                deliver();
+                missed = signals.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            while (!done) {
+                if (failure != null) {
+                    cancel();
+                    subscriber.onError(failure);
+                    return;
+                }
+                boolean ending = closed; // read first, so no event published before the close is skipped
+                long end = next;
+                if (position == end) {
+                    if (ending) {
+                        cancel();
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                int size = (int) Math.min(MAX_BATCH, end - position);
+                List<ChangeEvent> batch = new ArrayList<>(size);
+                for (long sequence = position; sequence < position + size; sequence++) {
+                    ChangeEvent event = ring.get((int) sequence & mask);
+                    if (event == null || event.sequence() != sequence) { // overwritten: this subscriber is too far behind
+                        failure = new MissedEventsException(sequence, oldestAvailable());
+                        break;
+                    }
+                    batch.add(event);
+                }
+                if (failure != null) {
+                    continue;
+                }
+                position += size;
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(Collections.unmodifiableList(batch));
+                } catch (RuntimeException e) {
+                    cancel(); // a subscriber that throws is treated as gone
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Proleptic Gregorian date arithmetic on epoch days, giving the same results
+ * as {@link java.time.LocalDate} without creating one per row.
+ *
+ * {@link #fromEpochDay} packs a date into one long; {@link #year},
+ * {@link #month} and {@link #day} take it apart again.
+ */
+final class CivilDate {
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private CivilDate() {
+    }
+
+    /**
+     * Same result as LocalDate.of(year, month, day).toEpochDay().
+     */
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * The date of an epoch day, packed as year, month and day.
+     */
+    static long fromEpochDay(long epochDay) {
+        long zeroDay = epochDay + 719468; // days since 0000-03-01
+        long era = Math.floorDiv(zeroDay, 146097);
+        long dayOfEra = zeroDay - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long marchBasedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * marchBasedMonth + 2) / 5 + 1;
+        long month = marchBasedMonth < 10 ? marchBasedMonth + 3 : marchBasedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+
+    static long year(long date) {
+        return date >> 9;
+    }
+
+    static int month(long date) {
+        return (int) (date >> 5) & 15;
+    }
+
+    static int day(long date) {
+        return (int) date & 31;
+    }
+
+    static int lengthOfMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+}
@@ -0,0 +1,499 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Parses a CSV file in the {@code ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD}
+ * layout written by {@link Transaction#toReportLine()}.
+ *
+ * The file is cut into fixed-size byte ranges that are memory-mapped and
+ * parsed on a thread pool. A chunk owns every line that starts inside its
+ * range. Fields are parsed straight from the mapped bytes: numbers, dates and
+ * IDs without creating Strings, categories and payment methods through a
+ * per-chunk cache so each distinct value becomes one String. Parsed chunks are
+ * handed to the caller's publisher one at a time, in file order, while later
+ * chunks are still being parsed.
+ *
+ * The description is everything between the fifth comma and the last one, so
+ * descriptions containing commas (which toReportLine does not quote) still
+ * import correctly.
+ */
+class CsvImporter {
+
+    static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int LINE_OVERHANG_BYTES = 64 * 1024;
+
+    /**
+     * Rows parsed from one chunk. Line numbers are 1-based within the file.
+     */
+    static final class ParsedChunk {
+        int size;
+        long[] lineNumbers;
+        long[] idHighs;
+        long[] idLows;
+        long[] cents;
+        int[] epochDays;
+        int[] yearMonths;
+        boolean[] income;
+        String[] categories;
+        String[] descriptions;
+        String[] paymentMethods;
+        final List<ImportResult.Error> errors = new ArrayList<>();
+        int lineCount;
+
+        ParsedChunk(int capacity) {
+            lineNumbers = new long[capacity];
+            idHighs = new long[capacity];
+            idLows = new long[capacity];
+            cents = new long[capacity];
+            epochDays = new int[capacity];
+            yearMonths = new int[capacity];
+            income = new boolean[capacity];
+            categories = new String[capacity];
+            descriptions = new String[capacity];
+            paymentMethods = new String[capacity];
+        }
+
+        private void grow() {
+            int capacity = Math.max(16, lineNumbers.length * 2);
+            lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+            idHighs = Arrays.copyOf(idHighs, capacity);
+            idLows = Arrays.copyOf(idLows, capacity);
+            cents = Arrays.copyOf(cents, capacity);
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            yearMonths = Arrays.copyOf(yearMonths, capacity);
+            income = Arrays.copyOf(income, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            paymentMethods = Arrays.copyOf(paymentMethods, capacity);
+        }
+
+        // Turns chunk-relative line numbers into file line numbers
+        private void rebase(long firstLine) {
+            for (int i = 0; i < size; i++) {
+                lineNumbers[i] += firstLine;
+            }
+            errors.replaceAll(e -> new ImportResult.Error(e.lineNumber() + firstLine, e.reason()));
+        }
+    }
+
+    private final Path file;
+    private final int chunkBytes;
+    private final int parallelism;
+
+    CsvImporter(Path file) {
+        this(file, DEFAULT_CHUNK_BYTES, Runtime.getRuntime().availableProcessors());
+    }
+
+    CsvImporter(Path file, int chunkBytes, int parallelism) {
+        this.file = file;
+        this.chunkBytes = chunkBytes;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Parses the whole file, calling {@code publisher} on the current thread
+     * for each chunk in file order.
+     */
+    void parse(Consumer<ParsedChunk> publisher) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "csv-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunks = (size + chunkBytes - 1) / chunkBytes;
+            Deque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+            long next = 0;
+            long firstLine = 0;
+            while (next < chunks || !inFlight.isEmpty()) {
+                // Keep a bounded number of chunks parsed ahead of the publisher
+                while (next < chunks && inFlight.size() < parallelism * 2) {
+                    long start = next * chunkBytes;
+                    long end = Math.min(size, start + chunkBytes);
+                    inFlight.add(pool.submit(() -> parseChunk(channel, start, end, size)));
+                    next++;
+                }
+                ParsedChunk chunk = await(inFlight.poll());
+                chunk.rebase(firstLine);
+                firstLine += chunk.lineCount;
+                publisher.accept(chunk);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ParsedChunk await(Future<ParsedChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException("Import failed", e.getCause());
+        }
+    }
+
+    private ParsedChunk parseChunk(FileChannel channel, long start, long end, long fileSize) throws IOException {
+        // Map one byte before the range (to see whether a line starts at `start`)
+        // and some bytes after it to finish the last line that starts inside it
+        long mapStart = Math.max(0, start - 1);
+        long mapEnd = Math.min(fileSize, end + LINE_OVERHANG_BYTES);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = (int) (end - mapStart);
+
+        int pos = (int) (start - mapStart);
+        if (start > 0 && buffer.get(pos - 1) != '\n') {
+            while (pos < limit && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+
+        ParsedChunk chunk = new ParsedChunk(Math.max(16, (limit - pos) / 64));
+        ChunkParser parser = new ChunkParser(buffer, chunk);
+        int line = 0;
+        while (pos < limit) {
+            int lineEnd = pos;
+            while (true) {
+                int mapped = buffer.limit();
+                while (lineEnd < mapped && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd < mapped || mapStart + mapped == fileSize) {
+                    break;
+                }
+                // The last line runs past the mapped overhang; map further
+                long newEnd = Math.min(fileSize, mapStart + 2L * mapped);
+                if (newEnd - mapStart > Integer.MAX_VALUE) {
+                    throw new IOException("Line " + (line + 1) + " of chunk at byte " + start + " is too long");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, newEnd - mapStart);
+                parser.buffer = buffer;
+            }
+            line++;
+            boolean header = start == 0 && line == 1 && startsWith(buffer, pos, lineEnd, "ID,");
+            if (!header) {
+                parser.parseLine(pos, lineEnd, line);
+            }
+            pos = lineEnd + 1;
+        }
+        chunk.lineCount = line;
+        return chunk;
+    }
+
+    private static boolean startsWith(MappedByteBuffer buffer, int from, int to, String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(from + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Field-level parsing for one chunk. Not thread-safe; one per chunk.
+     */
+    private static final class ChunkParser {
+
+        private static final String AMOUNT_RANGE = "Amount must be a positive number up to " + Money.MAX_CENTS / 100 + ".";
+
+        private MappedByteBuffer buffer;
+        private final ParsedChunk chunk;
+        private final StringCache strings = new StringCache();
+        private final int[] commas = new int[5];
+        private byte[] scratch = new byte[256];
+        private String error;
+
+        ChunkParser(MappedByteBuffer buffer, ParsedChunk chunk) {
+            this.buffer = buffer;
+            this.chunk = chunk;
+        }
+
+        void parseLine(int from, int to, int line) {
+            if (to > from && buffer.get(to - 1) == '\r') {
+                to--;
+            }
+            if (to == from) {
+                return; // blank line
+            }
+            int found = 0;
+            for (int i = from; i < to && found < 5; i++) {
+                if (buffer.get(i) == ',') {
+                    commas[found++] = i;
+                }
+            }
+            int lastComma = to - 1;
+            while (lastComma >= from && buffer.get(lastComma) != ',') {
+                lastComma--;
+            }
+            if (found < 5 || lastComma <= commas[4]) {
+                chunk.errors.add(new ImportResult.Error(line, "Expected 7 fields: ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD"));
+                return;
+            }
+
+            if (chunk.size == chunk.lineNumbers.length) {
+                chunk.grow();
+            }
+            int row = chunk.size;
+            error = null;
+            parseId(from, commas[0], row);
+            parseDate(commas[0] + 1, commas[1], row);
+            parseType(commas[1] + 1, commas[2], row);
+            parseAmount(commas[3] + 1, commas[4], row);
+            if (error != null) {
+                chunk.errors.add(new ImportResult.Error(line, error));
+                return;
+            }
+            chunk.categories[row] = strings.get(buffer, commas[2] + 1, commas[3]);
+            chunk.descriptions[row] = decode(commas[4] + 1, lastComma);
+            chunk.paymentMethods[row] = strings.get(buffer, lastComma + 1, to);
+            chunk.lineNumbers[row] = line;
+            chunk.size++;
+        }
+
+        private void parseId(int from, int to, int row) {
+            if (from == to) {
+                // Blank ID: treat as a new transaction
+                UUID id = UUID.randomUUID();
+                chunk.idHighs[row] = id.getMostSignificantBits();
+                chunk.idLows[row] = id.getLeastSignificantBits();
+                return;
+            }
+            if (to - from != 36) {
+                fail("Invalid ID");
+                return;
+            }
+            long high = 0L;
+            long low = 0L;
+            int digits = 0;
+            for (int i = from; i < to; i++) {
+                int c = buffer.get(i);
+                int offset = i - from;
+                if (offset == 8 || offset == 13 || offset == 18 || offset == 23) {
+                    if (c != '-') {
+                        fail("Invalid ID");
+                        return;
+                    }
+                    continue;
+                }
+                int value = Character.digit(c, 16);
+                if (value < 0) {
+                    fail("Invalid ID");
+                    return;
+                }
+                if (digits < 16) {
+                    high = (high << 4) | value;
+                } else {
+                    low = (low << 4) | value;
+                }
+                digits++;
+            }
+            chunk.idHighs[row] = high;
+            chunk.idLows[row] = low;
+        }
+
+        private void parseDate(int from, int to, int row) {
+            if (to - from != 10 || buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-') {
+                fail("Invalid date (expected YYYY-MM-DD)");
+                return;
+            }
+            int year = digits(from, from + 4);
+            int month = digits(from + 5, from + 7);
+            int day = digits(from + 8, from + 10);
+            if (year < 0 || month < 1 || month > 12 || day < 1 || day > CivilDate.lengthOfMonth(year, month)) {
+                fail("Invalid date (expected YYYY-MM-DD)");
+                return;
+            }
+            chunk.epochDays[row] = (int) CivilDate.epochDay(year, month, day);
+            chunk.yearMonths[row] = TransactionStore.yearMonthIndex(year, month);
+        }
+
+        private void parseType(int from, int to, int row) {
+            if (matchesIgnoreCase(from, to, "INCOME")) {
+                chunk.income[row] = true;
+            } else if (matchesIgnoreCase(from, to, "EXPENSE")) {
+                chunk.income[row] = false;
+            } else {
+                fail("Invalid type (expected INCOME or EXPENSE)");
+            }
+        }
+
+        private void parseAmount(int from, int to, int row) {
+            long whole = 0L;
+            long fraction = 0L;
+            int fractionDigits = 0;
+            boolean point = false;
+            boolean simple = to > from && to - from <= 16; // whole * 100 cannot overflow
+            for (int i = from; i < to && simple; i++) {
+                int c = buffer.get(i);
+                if (c == '.' && !point) {
+                    point = true;
+                } else if (c >= '0' && c <= '9') {
+                    if (!point) {
+                        whole = whole * 10 + (c - '0');
+                    } else if (fractionDigits < 2) {
+                        fraction = fraction * 10 + (c - '0');
+                        fractionDigits++;
+                    } else {
+                        simple = false; // more than two decimals: round like Money.toCents
+                    }
+                } else {
+                    simple = false;
+                }
+            }
+            long cents;
+            if (simple) {
+                cents = whole * 100 + (fractionDigits == 1 ? fraction * 10 : fraction);
+            } else {
+                // Rare forms such as "1.0E7" (Double.toString) or negative numbers
+                double amount;
+                try {
+                    amount = Double.parseDouble(decode(from, to));
+                } catch (NumberFormatException e) {
+                    fail("Invalid amount");
+                    return;
+                }
+                if (!Money.isValidAmount(amount)) { // also NaN and Infinity
+                    fail(AMOUNT_RANGE);
+                    return;
+                }
+                cents = Money.toCents(amount);
+            }
+            if (cents <= 0 || cents > Money.MAX_CENTS) {
+                fail(AMOUNT_RANGE);
+                return;
+            }
+            chunk.cents[row] = cents;
+        }
+
+        private boolean matchesIgnoreCase(int from, int to, String expected) {
+            if (to - from != expected.length()) {
+                return false;
+            }
+            for (int i = 0; i < expected.length(); i++) {
+                if (Character.toUpperCase((char) buffer.get(from + i)) != expected.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int digits(int from, int to) {
+            int value = 0;
+            for (int i = from; i < to; i++) {
+                int c = buffer.get(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        private String decode(int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(from, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void fail(String reason) {
+            if (error == null) {
+                error = reason;
+            }
+        }
+    }
+
+    /**
+     * Returns one shared String per distinct byte sequence, so the few
+     * distinct categories and payment methods are decoded once per chunk.
+     */
+    private static final class StringCache {
+
+        private byte[][] keys = new byte[64][];
+        private String[] values = new String[64];
+        private int size;
+
+        String get(MappedByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if (sameBytes(keys[slot], buffer, from, length)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            byte[] key = new byte[length];
+            buffer.get(from, key);
+            String value = new String(key, StandardCharsets.UTF_8);
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length) {
+                rehash();
+            }
+            return value;
+        }
+
+        private static boolean sameBytes(byte[] key, MappedByteBuffer buffer, int from, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != buffer.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int hash = Arrays.hashCode(oldKeys[i]);
+                    int slot = (hash ^ (hash >>> 16)) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.Arrays;
+
+/**
+ * HyperLogLog estimate of the number of distinct strings in a stream.
+ *
+ * Up to {@value #SPARSE_LIMIT} distinct 64-bit hashes are kept as a sorted
+ * array, each with the number of times it was added, and counted exactly;
+ * while the sketch is in this form a value can also be removed again. Past
+ * that the sketch switches to 2^{@value #PRECISION} one-byte registers, each
+ * holding the longest run of leading zeros seen among the hashes routed to
+ * it, which cannot forget a value. Either form takes at most 3 KB.
+ *
+ * Error bound: exact up to {@value #SPARSE_LIMIT} distinct values (barring
+ * 64-bit hash collisions); beyond that the relative standard error is
+ * 1.04 / sqrt(2048), about 2.3%, so an estimate is within 7% of the true
+ * count 99.7% of the time. Merging sketches loses nothing further.
+ */
+final class DistinctSketch {
+
+    static final int PRECISION = 11;
+    static final int SPARSE_LIMIT = 256;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private long[] hashes = new long[8]; // sorted; null once dense
+    private int[] counts = new int[8]; // times each hash was added; null once dense
+    private int size = 0;
+    private byte[] registers;
+
+    void add(long hash) {
+        add(hash, 1);
+    }
+
+    private void add(long hash, int times) {
+        if (registers != null) {
+            update(hash);
+            return;
+        }
+        int i = Arrays.binarySearch(hashes, 0, size, hash);
+        if (i >= 0) {
+            counts[i] += times;
+            return;
+        }
+        if (size == SPARSE_LIMIT) {
+            toDense();
+            update(hash);
+            return;
+        }
+        i = -i - 1;
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        System.arraycopy(hashes, i, hashes, i + 1, size - i);
+        System.arraycopy(counts, i, counts, i + 1, size - i);
+        hashes[i] = hash;
+        counts[i] = times;
+        size++;
+    }
+
+    /**
+     * Takes back one earlier {@link #add} of the hash. Returns false if the
+     * sketch has gone dense and cannot; it is then unchanged.
+     */
+    boolean remove(long hash) {
+        if (registers != null) {
+            return false;
+        }
+        int i = Arrays.binarySearch(hashes, 0, size, hash);
+        if (i >= 0 && --counts[i] == 0) {
+            System.arraycopy(hashes, i + 1, hashes, i, size - i - 1);
+            System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+            size--;
+        }
+        return true;
+    }
+
+    /**
+     * Adds every value of {@code other}; {@code other} is not changed.
+     */
+    void merge(DistinctSketch other) {
+        if (other.registers == null) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.hashes[i], other.counts[i]);
+            }
+            return;
+        }
+        if (registers == null) {
+            toDense();
+        }
+        for (int i = 0; i < REGISTERS; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    DistinctSketch copy() {
+        DistinctSketch copy = new DistinctSketch();
+        copy.hashes = hashes == null ? null : hashes.clone();
+        copy.counts = counts == null ? null : counts.clone();
+        copy.size = size;
+        copy.registers = registers == null ? null : registers.clone();
+        return copy;
+    }
+
+    long estimate() {
+        if (registers == null) {
+            return size;
+        }
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1.0 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros); // linear counting for small counts
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * 64-bit hash of a string, folded the way {@link String#equalsIgnoreCase}
+     * folds characters, so strings equal ignoring case count once.
+     */
+    static long hash(String text) {
+        long h = 0xCBF29CE484222325L; // FNV-1a
+        for (int i = 0; i < text.length(); i++) {
+            h = (h ^ Character.toLowerCase(Character.toUpperCase(text.charAt(i)))) * 0x100000001B3L;
+        }
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL; // murmur3 finalizer, so every bit depends on every character
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private void toDense() {
+        registers = new byte[REGISTERS];
+        for (int i = 0; i < size; i++) {
+            update(hashes[i]);
+        }
+        hashes = null;
+        counts = null;
+        size = 0;
+    }
+
+    private void update(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), 64 - PRECISION) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Live multimap from duplicate fingerprint (see
+ * {@link Transaction#fingerprint}) to the slots that carry it.
+ *
+ * Each fingerprint's slots form a doubly linked chain threaded through
+ * per-slot arrays, with the chain heads in an open-addressing table, so
+ * adding and removing a row is O(1) and costs no per-row objects. The
+ * fingerprints shared by more than one row are tracked separately, which
+ * lets the duplicate report visit only those chains. Fingerprints come from
+ * the store's column, so indexing rows decodes no descriptions.
+ */
+class DuplicateIndex implements RowIndex {
+
+    private final TransactionIdIndex heads = new TransactionIdIndex(); // (fingerprint, 0) -> first slot of its chain
+    private final Set<Long> shared = new HashSet<>();
+    private int[] next = new int[64];
+    private int[] previous = new int[64];
+
+    @Override
+    public void add(TransactionStore store, int slot) {
+        if (slot >= next.length) {
+            int capacity = Math.max(slot + 1, next.length * 2);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        long fingerprint = store.fingerprint(slot);
+        int head = heads.get(fingerprint, 0L);
+        previous[slot] = -1;
+        next[slot] = head;
+        if (head >= 0) {
+            previous[head] = slot;
+            shared.add(fingerprint);
+        }
+        heads.put(fingerprint, 0L, slot);
+    }
+
+    @Override
+    public void remove(TransactionStore store, int slot) {
+        long fingerprint = store.fingerprint(slot);
+        int before = previous[slot];
+        int after = next[slot];
+        if (after >= 0) {
+            previous[after] = before;
+        }
+        if (before >= 0) {
+            next[before] = after;
+        } else if (after >= 0) {
+            heads.put(fingerprint, 0L, after);
+        } else {
+            heads.remove(fingerprint, 0L);
+        }
+        int head = heads.get(fingerprint, 0L);
+        if (head < 0 || next[head] < 0) {
+            shared.remove(fingerprint);
+        }
+    }
+
+    @Override
+    public void clear() {
+        heads.clear();
+        shared.clear();
+    }
+
+    /**
+     * Returns a live slot holding a duplicate of the given values, or -1.
+     */
+    int find(TransactionStore store, long fingerprint, long cents, String category, String description, boolean income) {
+        for (int slot = heads.get(fingerprint, 0L); slot >= 0; slot = next[slot]) {
+            if (store.cents(slot) == cents && store.isIncome(slot) == income
+                    && store.categories().decode(store.categoryCode(slot)).equalsIgnoreCase(category)
+                    && store.description(slot).equalsIgnoreCase(description)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * One set of two or more duplicate rows: its live slots in slot order,
+     * then its rows in sealed months, month by month in row order.
+     */
+    record DuplicateSet(int[] slots, SealedMonth[] sealedMonths, int[] sealedRows) {
+
+        int size() {
+            return slots.length + sealedRows.length;
+        }
+    }
+
+    /**
+     * Returns every set of two or more duplicate rows among the live rows and
+     * those of {@code sealed} (in month order), ordered by their first live
+     * slot, with sets of sealed rows only after the rest. A sealed row is
+     * only decoded when its fingerprint is shared: a k-way merge of the
+     * months' sorted fingerprints finds the ones that are.
+     */
+    List<DuplicateSet> duplicateSets(TransactionStore store, List<SealedMonth> sealed) {
+        Set<Long> candidates = new HashSet<>(shared);
+        PriorityQueue<int[]> cursors = new PriorityQueue<>(Math.max(1, sealed.size()), // {month, sorted position}
+                Comparator.comparingLong(cursor -> sealed.get(cursor[0]).fingerprint(cursor[1])));
+        for (int month = 0; month < sealed.size(); month++) {
+            if (sealed.get(month).rows() > 0) {
+                cursors.add(new int[] {month, 0});
+            }
+        }
+        long previous = 0L;
+        int count = 0;
+        while (!cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            long fingerprint = sealed.get(cursor[0]).fingerprint(cursor[1]);
+            if (count > 0 && fingerprint != previous) {
+                addIfShared(candidates, previous, count);
+                count = 0;
+            }
+            previous = fingerprint;
+            count++;
+            if (++cursor[1] < sealed.get(cursor[0]).rows()) {
+                cursors.add(cursor);
+            }
+        }
+        if (count > 0) {
+            addIfShared(candidates, previous, count);
+        }
+
+        List<DuplicateSet> sets = new ArrayList<>();
+        for (long fingerprint : candidates) {
+            List<Member> chain = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+            for (int slot = heads.get(fingerprint, 0L); slot >= 0; slot = next[slot]) {
+                slots.add(slot);
+            }
+            slots.sort(null);
+            for (int slot : slots) {
+                chain.add(new Member(slot, null, -1, store.cents(slot), store.isIncome(slot),
+                        store.categories().decode(store.categoryCode(slot)), store.description(slot)));
+            }
+            for (SealedMonth month : sealed) {
+                int first = month.firstFingerprint(fingerprint);
+                if (first < 0) {
+                    continue;
+                }
+                List<Integer> rows = new ArrayList<>();
+                for (int i = first; i < month.rows() && month.fingerprint(i) == fingerprint; i++) {
+                    rows.add(month.fingerprintRow(i));
+                }
+                rows.sort(null);
+                for (int row : rows) {
+                    SealedMonth.Reader reader = month.reader(row);
+                    reader.next();
+                    chain.add(new Member(-1, month, row, reader.cents(), reader.isIncome(),
+                            store.categories().decode(reader.categoryCode()), reader.description()));
+                }
+            }
+            // Split the chain by real equality in case two different rows share a fingerprint
+            boolean[] grouped = new boolean[chain.size()];
+            for (int i = 0; i < chain.size(); i++) {
+                if (grouped[i]) {
+                    continue;
+                }
+                List<Member> set = new ArrayList<>();
+                set.add(chain.get(i));
+                for (int j = i + 1; j < chain.size(); j++) {
+                    if (!grouped[j] && chain.get(i).sameValues(chain.get(j))) {
+                        grouped[j] = true;
+                        set.add(chain.get(j));
+                    }
+                }
+                if (set.size() > 1) {
+                    sets.add(toSet(set));
+                }
+            }
+        }
+        sets.sort(Comparator.comparingInt((DuplicateSet set) -> set.slots().length > 0 ? set.slots()[0] : Integer.MAX_VALUE)
+                .thenComparingInt(set -> set.slots().length > 0 ? 0 : set.sealedMonths()[0].yearMonth())
+                .thenComparingInt(set -> set.slots().length > 0 ? 0 : set.sealedRows()[0]));
+        return sets;
+    }
+
+    // A fingerprint seen count times in sealed months is shared if it repeats
+    // there or a live row has it too
+    private void addIfShared(Set<Long> candidates, long fingerprint, int count) {
+        if (count > 1 || heads.get(fingerprint, 0L) >= 0) {
+            candidates.add(fingerprint);
+        }
+    }
+
+    private static DuplicateSet toSet(List<Member> members) {
+        int live = 0;
+        for (Member member : members) {
+            if (member.slot >= 0) {
+                live++;
+            }
+        }
+        int[] slots = new int[live];
+        SealedMonth[] months = new SealedMonth[members.size() - live];
+        int[] rows = new int[months.length];
+        int s = 0;
+        int r = 0;
+        for (Member member : members) {
+            if (member.slot >= 0) {
+                slots[s++] = member.slot;
+            } else {
+                months[r] = member.month;
+                rows[r++] = member.row;
+            }
+        }
+        return new DuplicateSet(slots, months, rows);
+    }
+
+    // A live slot, or (slot -1) a row of a sealed month, with the values compared
+    private record Member(int slot, SealedMonth month, int row, long cents, boolean income, String category,
+                          String description) {
+
+        boolean sameValues(Member other) {
+            return cents == other.cents && income == other.income && category.equalsIgnoreCase(other.category)
+                    && description.equalsIgnoreCase(other.description);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Bitmaps of live slots per payment method (normalized), per type and per
+ * year-month. All three domains are small, so a query is a handful of
+ * bitmap ORs and ANDs instead of a pass over every row.
+ */
+class FilterIndex implements RowIndex {
+
+    private final Map<String, RowBitmap> byPaymentMethod = new HashMap<>();
+    private final NavigableMap<Integer, RowBitmap> byYearMonth = new TreeMap<>();
+    private final RowBitmap incomes = new RowBitmap();
+    private final RowBitmap expenses = new RowBitmap();
+    private final RowBitmap all = new RowBitmap();
+    private RowBitmap[] paymentMethodByCode = new RowBitmap[0]; // store payment method code -> its bitmap
+
+    @Override
+    public void add(TransactionStore store, int slot) {
+        paymentMethodRows(store, store.paymentMethodCode(slot)).add(slot);
+        byYearMonth.computeIfAbsent(store.yearMonth(slot), k -> new RowBitmap()).add(slot);
+        (store.isIncome(slot) ? incomes : expenses).add(slot);
+        all.add(slot);
+    }
+
+    @Override
+    public void remove(TransactionStore store, int slot) {
+        paymentMethodRows(store, store.paymentMethodCode(slot)).remove(slot);
+        RowBitmap month = byYearMonth.get(store.yearMonth(slot));
+        month.remove(slot);
+        if (month.isEmpty()) {
+            byYearMonth.remove(store.yearMonth(slot));
+        }
+        (store.isIncome(slot) ? incomes : expenses).remove(slot);
+        all.remove(slot);
+    }
+
+    @Override
+    public void clear() {
+        byPaymentMethod.values().forEach(RowBitmap::clear);
+        byYearMonth.clear();
+        incomes.clear();
+        expenses.clear();
+        all.clear();
+    }
+
+    /**
+     * Returns the slots matching every field set in {@code query}. The
+     * result may be one of the index's own bitmaps and must not be modified.
+     */
+    RowBitmap matching(TransactionQuery query) {
+        RowBitmap result = query.getIncome() == null ? all : query.getIncome() ? incomes : expenses;
+        if (!query.getPaymentMethods().isEmpty()) {
+            RowBitmap methods = new RowBitmap();
+            for (String method : query.getPaymentMethods()) {
+                RowBitmap rows = byPaymentMethod.get(method);
+                if (rows != null) {
+                    methods = RowBitmap.or(methods, rows);
+                }
+            }
+            result = RowBitmap.and(result, methods);
+        }
+        if (!query.getMonths().isEmpty()) {
+            RowBitmap months = new RowBitmap();
+            for (YearMonth month : query.getMonths()) {
+                RowBitmap rows = byYearMonth.get(TransactionStore.yearMonthIndex(month.getYear(), month.getMonthValue()));
+                if (rows != null) {
+                    months = RowBitmap.or(months, rows);
+                }
+            }
+            result = RowBitmap.and(result, months);
+        }
+        return result;
+    }
+
+    /**
+     * The first year-month index at or after {@code yearMonth} that has rows,
+     * or null if there is none.
+     */
+    Integer nextMonth(int yearMonth) {
+        return byYearMonth.ceilingKey(yearMonth);
+    }
+
+    /**
+     * The year-month indexes that have rows, in order.
+     */
+    List<Integer> months() {
+        return new ArrayList<>(byYearMonth.keySet());
+    }
+
+    /**
+     * The slots of one year-month index (empty if it has none); must not be modified.
+     */
+    RowBitmap monthRows(int yearMonth) {
+        return byYearMonth.getOrDefault(yearMonth, new RowBitmap());
+    }
+
+    private RowBitmap paymentMethodRows(TransactionStore store, int code) {
+        if (code >= paymentMethodByCode.length) {
+            paymentMethodByCode = Arrays.copyOf(paymentMethodByCode, Math.max(code + 1, store.paymentMethods().size()));
+        }
+        RowBitmap rows = paymentMethodByCode[code];
+        if (rows == null) {
+            String method = store.paymentMethods().decode(code).trim().toLowerCase();
+            rows = byPaymentMethod.computeIfAbsent(method, k -> new RowBitmap());
+            paymentMethodByCode[code] = rows;
+        }
+        return rows;
+    }
+}
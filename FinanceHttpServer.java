@@ -0,0 +1,548 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * JSON over HTTP for a {@link FinanceService}, on the JDK's built-in server
+ * ({@code java Main --serve 8080}):
+ * <pre>
+ *   GET    /transactions[?type=income|expense&amp;paymentMethod=card&amp;month=2025-03]
+ *   POST   /transactions        {"type": "expense", "date": "2025-03-14", "amount": 42.5,
+ *                                "category": "Food", "description": "Lunch", "paymentMethod": "card"}
+ *   GET    /transactions/{id}
+ *   PUT    /transactions/{id}   {"amount": 45, "category": "Food", "description": "Lunch", "paymentMethod": "cash"}
+ *   DELETE /transactions/{id}
+ *   GET    /summary             overall totals
+ *   GET    /summary/2025-03     one month
+ *   GET    /search/category?q=food
+ *   GET    /search/payment-method?method=card
+ *   GET    /duplicates
+ *   GET    /largest-expenses?year=2025
+ * </pre>
+ * Both listings, /transactions and /search/category, can be paged instead:
+ * with {@code limit=50} (at most {@value FinanceService#MAX_PAGE_SIZE}) they
+ * return {@code {"transactions": [...], "nextCursor": "..."}} in date order,
+ * and {@code cursor=} with that value fetches the next page.
+ *
+ * Dates may also be given as yyyy-MM (the first of the month). Expenses get
+ * the same income check as in the menu. Errors come back as
+ * {@code {"error": "..."}} with a 4xx status: 409 with the reason when the
+ * ledger refuses a write (a duplicate, the month's income, a budget rule),
+ * 413 for a body over {@value #MAX_BODY_BYTES} bytes. An unexpected failure
+ * is logged and answered with a bare 500.
+ *
+ * The server listens on the loopback interface unless started with a host
+ * ({@code java Main --serve 8080 --bind 0.0.0.0}); it has no authentication.
+ *
+ * Each request runs on its own virtual thread where the JDK has them (21+)
+ * and on a cached thread pool otherwise. Listings are sent with chunked
+ * encoding, one batch of rows at a time as the service hands them over, so
+ * memory per request stays flat however many rows match.
+ */
+class FinanceHttpServer {
+
+    private static final int BACKLOG = 4096;
+    private static final int RESPONSE_BUFFER_BYTES = 64 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final System.Logger LOG = System.getLogger(FinanceHttpServer.class.getName());
+
+    private final FinanceService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private FinanceHttpServer(FinanceService service, HttpServer server, ExecutorService executor) {
+        this.service = service;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts serving on {@code port} (0 picks a free one) on the loopback
+     * interface only.
+     */
+    static FinanceHttpServer start(FinanceService service, int port) throws IOException {
+        return start(service, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Starts serving on {@code port} at {@code host} ({@code 0.0.0.0} for
+     * every interface).
+     */
+    static FinanceHttpServer start(FinanceService service, String host, int port) throws IOException {
+        return start(service, new InetSocketAddress(InetAddress.getByName(host), port));
+    }
+
+    private static FinanceHttpServer start(FinanceService service, InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, BACKLOG);
+        FinanceHttpServer api = new FinanceHttpServer(service, server, newRequestExecutor());
+        server.createContext("/", api::handle);
+        server.setExecutor(api.executor);
+        server.start();
+        return api;
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, gives running ones a second to finish, and
+     * shuts the request threads down.
+     */
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // Virtual threads are looked up reflectively so the code still builds and runs on 17
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "http-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * A failed request: its status code and the message sent back.
+     */
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (HttpError e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                LOG.log(System.Logger.Level.ERROR, "Failed: " + exchange.getRequestMethod() + " "
+                        + exchange.getRequestURI().getPath(), e);
+                sendError(exchange, 500, "Internal server error");
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> params = queryParameters(exchange.getRequestURI().getRawQuery());
+
+        if (path.equals("/transactions")) {
+            switch (method) {
+                case "GET" -> listTransactions(exchange, params);
+                case "POST" -> addTransaction(exchange);
+                default -> throw new HttpError(405, "Use GET or POST on /transactions");
+            }
+        } else if (path.startsWith("/transactions/")) {
+            String id = path.substring("/transactions/".length());
+            switch (method) {
+                case "GET" -> getTransaction(exchange, id);
+                case "PUT" -> editTransaction(exchange, id);
+                case "DELETE" -> deleteTransaction(exchange, id);
+                default -> throw new HttpError(405, "Use GET, PUT or DELETE on /transactions/{id}");
+            }
+        } else {
+            if (!method.equals("GET")) {
+                throw new HttpError(405, "Use GET on " + path);
+            }
+            switch (path) {
+                case "/summary" -> overallSummary(exchange);
+                case "/search/category" -> searchCategory(exchange, required(params, "q"), params);
+                case "/search/payment-method" -> searchPaymentMethod(exchange, required(params, "method"));
+                case "/duplicates" -> duplicates(exchange);
+                case "/largest-expenses" -> largestExpenses(exchange, year(required(params, "year")));
+                default -> {
+                    if (!path.startsWith("/summary/")) {
+                        throw new HttpError(404, "No such endpoint: " + path);
+                    }
+                    monthlySummary(exchange, yearMonth(path.substring("/summary/".length())));
+                }
+            }
+        }
+    }
+
+    // --- transactions ---
+
+    private void listTransactions(HttpExchange exchange, Map<String, String> params) throws IOException {
+        TransactionQuery query = new TransactionQuery();
+        String type = params.get("type");
+        if (type != null) {
+            switch (type.toLowerCase()) {
+                case "income" -> query.incomes();
+                case "expense" -> query.expenses();
+                default -> throw new IllegalArgumentException("type must be income or expense");
+            }
+        }
+        if (params.containsKey("paymentMethod")) {
+            query.paymentMethod(params.get("paymentMethod"));
+        }
+        if (params.containsKey("month")) {
+            query.month(yearMonth(params.get("month")));
+        }
+        if (isPaged(params)) {
+            sendPage(exchange, service.findTransactions(query, params.get("cursor"), pageSize(params)));
+            return;
+        }
+        try (OutputStream out = startStream(exchange)) {
+            write(out, new StringBuilder("["));
+            streamRows(out, batches -> service.streamTransactions(query, batches));
+            write(out, new StringBuilder("]"));
+        }
+    }
+
+    private void addTransaction(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        String type = text(body, "type").toLowerCase();
+        double amount = positiveAmount(body);
+        String category = text(body, "category");
+        String description = optionalText(body, "description");
+        String paymentMethod = paymentMethod(body);
+        LocalDate date = date(text(body, "date"));
+        Transaction t;
+        WriteResult result;
+        switch (type) {
+            case "income" -> {
+                t = new Income(amount, category, description, paymentMethod, date);
+                result = service.add(t);
+            }
+            case "expense" -> {
+                Expense expense = new Expense(amount, category, description, paymentMethod, date);
+                t = expense;
+                result = service.addWithinIncome(expense);
+            }
+            default -> throw new IllegalArgumentException("type must be income or expense");
+        }
+        check(result);
+        send(exchange, 201, Json.transaction(new StringBuilder(), t));
+    }
+
+    private void getTransaction(HttpExchange exchange, String id) throws IOException {
+        Transaction t = service.findById(id);
+        if (t == null) {
+            throw new HttpError(404, "Transaction " + id + " not found");
+        }
+        send(exchange, 200, Json.transaction(new StringBuilder(), t));
+    }
+
+    private void editTransaction(HttpExchange exchange, String id) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        check(service.edit(id, positiveAmount(body), text(body, "category"), optionalText(body, "description"),
+                paymentMethod(body)));
+        getTransaction(exchange, id);
+    }
+
+    private void deleteTransaction(HttpExchange exchange, String id) throws IOException {
+        check(service.delete(id));
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    // A write the ledger did not apply becomes a 404 or a 409 carrying its reason
+    private static void check(WriteResult result) {
+        switch (result.getStatus()) {
+            case APPLIED -> {
+            }
+            case NOT_FOUND -> throw new HttpError(404, result.getReason());
+            case REJECTED -> throw new HttpError(409, "Rejected: " + result.getReason());
+        }
+    }
+
+    // --- summaries and reports ---
+
+    private void overallSummary(HttpExchange exchange) throws IOException {
+        double income = service.getTotalIncome();
+        double expense = service.getTotalExpense();
+        StringBuilder json = new StringBuilder("{\"totalIncome\":");
+        Json.amount(json, income).append(",\"totalExpense\":");
+        Json.amount(json, expense).append(",\"netBalance\":");
+        Json.amount(json, income - expense).append(",\"savingsRatio\":").append(service.getSavingsRatio())
+                .append(",\"totalYearlySavings\":");
+        Json.amount(json, service.getTotalYearlySavings()).append('}');
+        send(exchange, 200, json);
+    }
+
+    private void monthlySummary(HttpExchange exchange, YearMonth month) throws IOException {
+        double income = service.getMonthlyIncome(month);
+        double expense = service.getMonthlyExpense(month);
+        StringBuilder json = new StringBuilder("{\"month\":\"").append(month).append("\",\"income\":");
+        Json.amount(json, income).append(",\"expense\":");
+        Json.amount(json, expense).append(",\"netBalance\":");
+        Json.amount(json, income - expense).append('}');
+        send(exchange, 200, json);
+    }
+
+    private void searchCategory(HttpExchange exchange, String category, Map<String, String> params) throws IOException {
+        if (isPaged(params)) {
+            sendPage(exchange, service.searchExpensesByCategory(category, params.get("cursor"), pageSize(params)));
+            return;
+        }
+        StringBuilder head = new StringBuilder("{\"category\":");
+        Json.string(head, category).append(",\"total\":");
+        Json.amount(head, service.getExpenseTotalByCategory(category)).append(",\"transactions\":[");
+        try (OutputStream out = startStream(exchange)) {
+            write(out, head);
+            streamRows(out, batches -> service.streamExpensesByCategory(category, batches));
+            write(out, new StringBuilder("]}"));
+        }
+    }
+
+    private void searchPaymentMethod(HttpExchange exchange, String method) throws IOException {
+        TransactionQuery byMethod = new TransactionQuery().paymentMethod(method);
+        StringBuilder head = new StringBuilder("{\"paymentMethod\":");
+        Json.string(head, method).append(",\"totalIncome\":");
+        Json.amount(head, service.totalAmount(new TransactionQuery().paymentMethod(method).incomes()))
+                .append(",\"totalExpense\":");
+        Json.amount(head, service.totalAmount(new TransactionQuery().paymentMethod(method).expenses()))
+                .append(",\"transactions\":[");
+        try (OutputStream out = startStream(exchange)) {
+            write(out, head);
+            streamRows(out, batches -> service.streamTransactions(byMethod, batches));
+            write(out, new StringBuilder("]}"));
+        }
+    }
+
+    private void duplicates(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (List<Transaction> set : service.findDuplicateSets()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            appendTransactions(json.append('['), set, true).append(']');
+        }
+        send(exchange, 200, json.append(']'));
+    }
+
+    private void largestExpenses(HttpExchange exchange, int year) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int month = 1; month <= 12; month++) {
+            List<Transaction> largest = service.topExpenses(YearMonth.of(year, month), 1);
+            if (largest.isEmpty()) {
+                continue;
+            }
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"month\":\"").append(YearMonth.of(year, month)).append("\",\"transaction\":");
+            Json.transaction(json, largest.get(0)).append('}');
+        }
+        send(exchange, 200, json.append(']'));
+    }
+
+    // --- request parsing ---
+
+    private static Map<String, String> queryParameters(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing query parameter: " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && length.length() > 0 && length.chars().allMatch(Character::isDigit)
+                && (length.length() > 9 || Integer.parseInt(length) > MAX_BODY_BYTES)) {
+            throw tooLarge();
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1); // a chunked body has no length to check up front
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw tooLarge();
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static HttpError tooLarge() {
+        return new HttpError(413, "Request body is over " + MAX_BODY_BYTES + " bytes");
+    }
+
+    private static String text(Map<String, Object> body, String name) {
+        if (!(body.get(name) instanceof String value)) {
+            throw new IllegalArgumentException("Missing or non-string field: " + name);
+        }
+        return value;
+    }
+
+    private static String optionalText(Map<String, Object> body, String name) {
+        return body.get(name) == null ? "" : text(body, name);
+    }
+
+    private static double positiveAmount(Map<String, Object> body) {
+        if (!(body.get("amount") instanceof Double amount) || !Money.isValidAmount(amount)) {
+            throw new IllegalArgumentException("amount must be a positive number up to " + Money.MAX_CENTS / 100);
+        }
+        return amount;
+    }
+
+    private static String paymentMethod(Map<String, Object> body) {
+        String method = text(body, "paymentMethod").trim().toLowerCase();
+        for (String valid : Main.VALID_PAYMENT_METHODS) {
+            if (valid.equals(method)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("paymentMethod must be cash, card or online");
+    }
+
+    private static LocalDate date(String value) {
+        try {
+            return value.length() == 7 ? YearMonth.parse(value).atDay(1) : LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date (use YYYY-MM-DD or YYYY-MM): " + value);
+        }
+    }
+
+    private static YearMonth yearMonth(String value) {
+        try {
+            return YearMonth.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid month (use YYYY-MM): " + value);
+        }
+    }
+
+    private static boolean isPaged(Map<String, String> params) {
+        return params.containsKey("limit") || params.containsKey("cursor");
+    }
+
+    private static int pageSize(Map<String, String> params) {
+        String limit = params.getOrDefault("limit", String.valueOf(DEFAULT_PAGE_SIZE));
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+    }
+
+    private static int year(String value) {
+        try {
+            int year = Integer.parseInt(value);
+            if (year >= 1 && year <= 9999) {
+                return year;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid year: " + value);
+    }
+
+    // --- responses ---
+
+    private static void send(HttpExchange exchange, int status, StringBuilder json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            return; // a streamed response was already under way; closing it cuts it short
+        }
+        if (status == 413) {
+            exchange.getResponseHeaders().set("Connection", "close"); // the unread body leaves the connection unusable
+        }
+        send(exchange, status, Json.string(new StringBuilder("{\"error\":"), message).append('}'));
+    }
+
+    // Chunked 200 response
+    private static OutputStream startStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedOutputStream(exchange.getResponseBody(), RESPONSE_BUFFER_BYTES);
+    }
+
+    /**
+     * The service calls that hand batches of rows to a consumer.
+     */
+    private interface RowSource {
+        void stream(Consumer<List<Transaction>> batches);
+    }
+
+    private static void sendPage(HttpExchange exchange, TransactionPage page) throws IOException {
+        StringBuilder json = new StringBuilder("{\"transactions\":[");
+        appendTransactions(json, page.transactions(), true).append("],\"nextCursor\":");
+        send(exchange, 200, Json.string(json, page.nextCursor()).append('}'));
+    }
+
+    // Writes each batch as comma-separated JSON objects as soon as it arrives
+    private static void streamRows(OutputStream out, RowSource source) {
+        boolean[] first = {true};
+        source.stream(batch -> {
+            StringBuilder json = new StringBuilder(batch.size() * 160);
+            appendTransactions(json, batch, first[0]);
+            first[0] = false;
+            try {
+                write(out, json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static StringBuilder appendTransactions(StringBuilder json, List<Transaction> transactions, boolean first) {
+        for (Transaction t : transactions) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            Json.transaction(json, t);
+        }
+        return json;
+    }
+
+    private static void write(OutputStream out, StringBuilder json) throws IOException {
+        out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
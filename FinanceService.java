@@ -1,66 +1,2045 @@
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.Month;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.NavigableMap;
+import java.util.OptionalDouble;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 
-public class FinanceService {
+/**
+ * The ledger. Safe for concurrent use. The lock of the (year, month) a write
+ * touches is what orders writers: held for the whole write, it keeps the
+ * month's totals still, so the income/expense check and the budget rules
+ * cannot be raced. The checks, and the encoding of the journal record, run
+ * under the shared read lock, so writers to different months overlap; only
+ * the journal append and the update of the columns and indexes, which span
+ * months, take the write lock. Console messages and change events go out
+ * after the write lock is released. Queries take the read lock, and the
+ * running totals behind the summary getters need no lock at all. Reports
+ * are rendered a batch at a time under the read lock and printed without it.
+ *
+ * Public operations (apart from those constant-time getters) record their
+ * latency and row counts in {@link ServiceMetrics}; see {@link #printMetrics()}.
+ *
+ * Months left unwritten for a while can be sealed into compressed
+ * {@link SealedMonth}s (see {@link #setColdAfter}). Summaries read their
+ * precomputed aggregates; an operation that lists or edits a sealed month's
+ * rows first moves them back into the store.
+ */
+public class FinanceService implements AutoCloseable {
 
-    private final List<Transaction> transactions = new ArrayList<>();
-    private double totalYearlySavings = 0.0; 
+    // Compact once deleted slots outnumber live ones (and there are enough to matter)
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1024;
 
-    public void addTransaction(Transaction t) {
-        transactions.add(t);
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String LOCK_FILE = "ledger.lock";
+    public static final long DEFAULT_GROUP_COMMIT_MILLIS = 10;
+    public static final long DEFAULT_SNAPSHOT_EVERY = 100_000;
+    private static final int MONTH_LOCK_STRIPES = 64; // consecutive months never share a stripe
+    private static final int STREAM_BATCH_ROWS = 1024;
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int ITERATOR_PAGE_ROWS = 256;
+    private static final long SEAL_CHECK_MILLIS = 60_000;
+    private static final IntPredicate ALL_MONTHS = yearMonth -> true;
+    private static final Predicate<SealedMonth.Reader> ALL_ROWS = row -> true;
+
+    /**
+     * What {@link #addTransaction} does with a transaction equal (same amount,
+     * category, description and type, ignoring case) to one already stored.
+     */
+    public enum DuplicatePolicy {
+        ALLOW,  // add it silently
+        FLAG,   // add it and print a warning naming the existing transaction
+        REJECT  // print a message naming the existing transaction and skip it
+    }
+
+    // Transactions live in primitive columns; Transaction objects are only built on request
+    private final TransactionStore store = new TransactionStore();
+    private final TransactionIdIndex idIndex = new TransactionIdIndex();
+    private final MonthlyTotals totals = new MonthlyTotals();
+    private final CategoryIndex categoryIndex = new CategoryIndex();
+    private final FilterIndex filterIndex = new FilterIndex();
+    private final DuplicateIndex duplicateIndex = new DuplicateIndex();
+    private final ParallelScan parallelScan = new ParallelScan(Runtime.getRuntime().availableProcessors(),
+            ParallelScan.DEFAULT_THRESHOLD_ROWS);
+    private final TopExpenseIndex topExpenseIndex = new TopExpenseIndex(yearMonth -> built(filterIndex).matching(
+            new TransactionQuery().expenses().month(YearMonth.of(TransactionStore.yearOf(yearMonth), TransactionStore.monthOf(yearMonth)))),
+            parallelScan);
+    private final RollupCube rollupCube = new RollupCube(yearMonth -> built(filterIndex).matching(
+            new TransactionQuery().month(YearMonth.of(TransactionStore.yearOf(yearMonth), TransactionStore.monthOf(yearMonth)))));
+    private final SketchIndex sketchIndex = new SketchIndex();
+    private final List<RowIndex> rowIndexes = List.of(categoryIndex, filterIndex, duplicateIndex, topExpenseIndex, rollupCube,
+            sketchIndex);
+    // Indexes open() left for their first reader to build (idIndex among
+    // them), so opening costs only the snapshot load. Writes skip an index
+    // until it is built: it is then built from the store, which has them.
+    private final Set<Object> unbuilt = ConcurrentHashMap.newKeySet();
+    private volatile DuplicatePolicy duplicatePolicy = DuplicatePolicy.ALLOW;
+    private final BudgetRules budgetRules = new BudgetRules();
+    private volatile ChangeFeed changeFeed; // null until first asked for
+    private final ServiceMetrics metrics = new ServiceMetrics();
+
+    // Cold tier, guarded by lock: sealed months, the month of each of their IDs,
+    // and when each month was last written (nanoTime; service start if never)
+    private final NavigableMap<Integer, SealedMonth> coldMonths = new TreeMap<>();
+    private final TransactionIdIndex coldIds = new TransactionIdIndex(); // ID -> year-month index
+    private final Map<Integer, Long> lastWritten = new HashMap<>();
+    private final long createdNanos = System.nanoTime();
+    private volatile Duration coldAfter; // null: months are never sealed
+    private ScheduledExecutorService sealer;
+
+    // Lock order: one month stripe (several, in index order, for imports), then lock
+    private final ReentrantLock[] monthLocks = new ReentrantLock[MONTH_LOCK_STRIPES];
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Streams address rows by slot, so compaction waits until none is open
+    private final AtomicInteger openStreams = new AtomicInteger();
+
+    // Persistence; all null for an in-memory ledger
+    private Path directory;
+    private TransactionJournal journal;
+    private FileChannel lockChannel; // holds the directory's lock until close
+    private long snapshotEvery = DEFAULT_SNAPSHOT_EVERY;
+    private long writesSinceSnapshot = 0;
+    private long snapshotGeneration = 0; // of the newest snapshot file, 0 if none yet
+    private ExecutorService snapshotWriter;
+    private Future<?> pendingSnapshot; // the snapshot being written, if any
+
+    /**
+     * Creates an empty in-memory ledger. Use {@link #open(Path)} for one that
+     * survives restarts.
+     */
+    public FinanceService() {
+        for (int i = 0; i < monthLocks.length; i++) {
+            monthLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Opens (or creates) a durable ledger in the given directory with the
+     * default group-commit window and snapshot interval.
+     */
+    public static FinanceService open(Path directory) throws IOException {
+        return open(directory, DEFAULT_GROUP_COMMIT_MILLIS, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    /**
+     * Opens (or creates) a durable ledger. The latest snapshot is loaded and
+     * the journal records written after it are replayed; a torn final record
+     * from a crash is discarded. Every later add, edit and delete is journaled
+     * and reaches disk within {@code groupCommitMillis}. A new snapshot is
+     * written in the background every {@code snapshotEvery} writes, and on
+     * {@link #close()}.
+     *
+     * Opening only copies the snapshot's columns into the heap (about 0.6 s
+     * for 10 million rows); monthly totals and descriptions are read straight
+     * from the file. No index is built: each is built from the rows the first
+     * time a call needs it, so the first lookup by ID, the first category
+     * search and so on each pay for one index (a fraction of a second per
+     * million rows). Replaying journal records needs the ID index, so after
+     * a crash that one is built during open.
+     *
+     * The directory stays locked until {@link #close()}, so no other process
+     * (or other service in this one) can write the same journal and snapshot.
+     *
+     * @throws IOException if the ledger cannot be read, or is open elsewhere
+     */
+    public static FinanceService open(Path directory, long groupCommitMillis, long snapshotEvery) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock directoryLock;
+            try {
+                directoryLock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                directoryLock = null; // held by this JVM
+            }
+            if (directoryLock == null) {
+                throw new IOException("Ledger " + directory + " is already open in another process or service");
+            }
+            FinanceService service = new FinanceService();
+            service.lockChannel = lockChannel;
+            service.snapshotGeneration = LedgerSnapshot.latest(directory);
+            LedgerSnapshot.deleteOlder(directory, service.snapshotGeneration); // left over from a crash or Windows
+            long lastSeq = LedgerSnapshot.load(LedgerSnapshot.file(directory, service.snapshotGeneration), service.store,
+                    service.totals);
+            if (service.store.liveCount() > 0) {
+                service.unbuilt.add(service.idIndex);
+                service.unbuilt.addAll(service.rowIndexes);
+            }
+            Path journalFile = directory.resolve(JOURNAL_FILE);
+            lastSeq = TransactionJournal.replay(journalFile, lastSeq, service.new JournalReplayer());
+            service.directory = directory;
+            service.snapshotEvery = snapshotEvery;
+            service.journal = new TransactionJournal(journalFile, lastSeq, groupCommitMillis);
+            service.snapshotWriter = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "ledger-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            return service;
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close(); // also releases the lock
+            throw e;
+        }
+    }
+
+    public void setDuplicatePolicy(DuplicatePolicy duplicatePolicy) {
+        this.duplicatePolicy = duplicatePolicy;
+    }
+
+    /**
+     * Calls taking at least this long are counted as slow in the metrics and
+     * emitted as JFR {@link SlowOperationEvent}s (100 ms by default).
+     */
+    public void setSlowOperationThreshold(Duration threshold) {
+        metrics.setSlowThreshold(threshold);
+    }
+
+    /**
+     * Tunes the fork/join pool behind scans the indexes cannot answer alone:
+     * printing or exporting many rows, summing part of a month, refilling a
+     * month's largest expenses. {@code threads} is the pool size, and 1
+     * turns the pool off. A scan runs on the pool once it covers
+     * {@code thresholdRows} rows, and never below
+     * {@value ParallelScan#MIN_THRESHOLD_ROWS}: scans are cut into
+     * 65536-slot parts, so a smaller one would not fill two of them. Results
+     * are the same either way. The defaults are a thread per core and
+     * {@value ParallelScan#DEFAULT_THRESHOLD_ROWS} rows.
+     */
+    public void setParallelScan(int threads, long thresholdRows) {
+        lock.writeLock().lock();
+        try {
+            parallelScan.configure(threads, thresholdRows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Seals months not written for {@code idleAfter} (see
+     * {@link #sealIdleMonths()}), checked on a background thread every
+     * minute, or every {@code idleAfter} if that is shorter. Null, the
+     * default, stops sealing; months already sealed stay sealed.
+     */
+    public void setColdAfter(Duration idleAfter) {
+        lock.writeLock().lock();
+        try {
+            coldAfter = idleAfter;
+            if (sealer != null) {
+                sealer.shutdownNow();
+                sealer = null;
+            }
+            if (idleAfter != null) {
+                long period = Math.max(1L, Math.min(idleAfter.toMillis(), SEAL_CHECK_MILLIS));
+                sealer = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "month-sealer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                sealer.scheduleWithFixedDelay(this::sealIdleMonths, period, period, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Seals every month that has not been written (nor rehydrated) for the
+     * age set by {@link #setColdAfter}: its rows move out of the store into
+     * one compressed {@link SealedMonth}, and their slots are left to be
+     * reclaimed by compaction, as a deleted row's are.
+     * Totals, category totals, rollups and sums over part of a month keep
+     * working from aggregates, {@link #findById} decodes the one row, and
+     * listings, searches and the duplicate report decode the sealed rows
+     * after the hot ones, without rehydrating them. Editing or deleting one
+     * of the month's rows, adding to it, or asking for its top expenses
+     * rehydrates it; the rows then come after the hot ones in insertion
+     * order. Sealed
+     * months are written to snapshots as ordinary rows, so after a restart
+     * everything is hot again. Skipped while a stream is open. Returns the
+     * number of months sealed.
+     */
+    public int sealIdleMonths() {
+        Duration idleAfter = coldAfter;
+        if (idleAfter == null) {
+            return 0;
+        }
+        long started = metrics.start();
+        long cutoff = System.nanoTime() - idleAfter.toNanos();
+        List<Integer> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int yearMonth : built(filterIndex).months()) {
+                if (yearMonth >= 0 && isIdle(yearMonth, cutoff)) {
+                    candidates.add(yearMonth);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int sealedMonths = 0;
+        long sealedRows = 0L;
+        for (int yearMonth : candidates) {
+            ReentrantLock month = monthLock(yearMonth);
+            month.lock();
+            lock.writeLock().lock();
+            try {
+                if (openStreams.get() > 0) {
+                    break;
+                }
+                // Written, emptied or sealed meanwhile?
+                if (isIdle(yearMonth, cutoff) && !built(filterIndex).monthRows(yearMonth).isEmpty()) {
+                    sealedRows += seal(yearMonth);
+                    sealedMonths++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+                month.unlock();
+            }
+        }
+        if (sealedMonths > 0) {
+            // The indexes already let go of the sealed rows one by one, so their
+            // slots wait for compaction like deleted rows' do
+            lock.writeLock().lock();
+            try {
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        metrics.record(ServiceMetrics.Operation.SEAL_IDLE_MONTHS, started, sealedRows, sealedRows);
+        return sealedMonths;
+    }
+
+    // Caller holds a lock
+    private boolean isIdle(int yearMonth, long cutoffNanos) {
+        return lastWritten.getOrDefault(yearMonth, createdNanos) - cutoffNanos <= 0;
+    }
+
+    // Caller holds the month's stripe and the write lock. Returns the rows sealed.
+    private int seal(int yearMonth) {
+        // Sealed rows leave the store, where a later build would look for them
+        built(idIndex);
+        rowIndexes.forEach(this::built);
+        int[] slots = toSlots(filterIndex.monthRows(yearMonth));
+        for (RowIndex index : rowIndexes) {
+            index.beforeSeal(store, yearMonth);
+        }
+        coldMonths.put(yearMonth, SealedMonth.seal(store, yearMonth, slots));
+        for (int slot : slots) {
+            idIndex.remove(store.idHigh(slot), store.idLow(slot));
+            coldIds.put(store.idHigh(slot), store.idLow(slot), yearMonth);
+            for (RowIndex index : rowIndexes) {
+                index.seal(store, slot);
+            }
+            store.delete(slot);
+        }
+        return slots.length;
+    }
+
+    // Caller holds the write lock. Appends the sealed month's rows to the
+    // store; the totals already count them.
+    private void rehydrate(int yearMonth) {
+        long started = metrics.start();
+        SealedMonth sealed = coldMonths.remove(yearMonth);
+        for (SealedMonth.Reader row = sealed.reader(0); row.next(); ) {
+            coldIds.remove(row.idHigh(), row.idLow());
+            int slot = store.append(row.idHigh(), row.idLow(), row.cents(), row.epochDay(), row.isIncome(),
+                    store.categories().decode(row.categoryCode()), row.description(),
+                    store.paymentMethods().decode(row.paymentMethodCode()));
+            idIndex.put(row.idHigh(), row.idLow(), slot);
+            for (RowIndex index : rowIndexes) {
+                index.unseal(store, slot);
+            }
+        }
+        lastWritten.put(yearMonth, System.nanoTime());
+        metrics.record(ServiceMetrics.Operation.REHYDRATE_MONTH, started, sealed.rows(), sealed.rows());
+    }
+
+    /**
+     * Takes the read lock, first rehydrating the sealed months accepted by
+     * {@code months} (under the write lock, then downgraded) if there are any.
+     */
+    private void readLockRehydrated(IntPredicate months) {
+        lock.readLock().lock();
+        if (coldMonths.keySet().stream().noneMatch(months::test)) {
+            return;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            for (int yearMonth : new ArrayList<>(coldMonths.keySet())) {
+                if (months.test(yearMonth)) {
+                    rehydrate(yearMonth);
+                }
+            }
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static IntPredicate monthsOf(TransactionQuery query) {
+        if (query.getMonths().isEmpty()) {
+            return ALL_MONTHS;
+        }
+        return yearMonth -> query.getMonths().contains(
+                YearMonth.of(TransactionStore.yearOf(yearMonth), TransactionStore.monthOf(yearMonth)));
+    }
+
+    // Caller holds the read lock
+    private boolean anySealedRow(IntPredicate months, Predicate<SealedMonth.Reader> filter) {
+        for (SealedMonth sealed : coldMonths.values()) {
+            if (months.test(sealed.yearMonth())) {
+                for (SealedMonth.Reader row = sealed.reader(0); row.next(); ) {
+                    if (filter.test(row)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Caller holds a lock
+    private long sealedRowCount() {
+        long rows = 0L;
+        for (SealedMonth sealed : coldMonths.values()) {
+            rows += sealed.rows();
+        }
+        return rows;
+    }
+
+    // Caller holds the read lock. The sealed rows filterIndex.matching(query)
+    // would return if they were in the store.
+    private Predicate<SealedMonth.Reader> sealedMatching(TransactionQuery query) {
+        Boolean income = query.getIncome();
+        BitSet methods = null;
+        if (!query.getPaymentMethods().isEmpty()) {
+            // Every stored spelling that normalizes to a method asked for, as in FilterIndex
+            methods = new BitSet();
+            for (int code = 0; code < store.paymentMethods().size(); code++) {
+                if (query.getPaymentMethods().contains(store.paymentMethods().decode(code).trim().toLowerCase())) {
+                    methods.set(code);
+                }
+            }
+        }
+        BitSet paymentMethods = methods;
+        return row -> (income == null || row.isIncome() == income)
+                && (paymentMethods == null || paymentMethods.get(row.paymentMethodCode()));
+    }
+
+    // Caller holds the read lock; searchCat is trimmed and lower-cased. The
+    // sealed rows categoryExpenseRows(searchCat) would return.
+    private Predicate<SealedMonth.Reader> sealedCategoryExpenses(String searchCat) {
+        BitSet ids = new BitSet();
+        for (int id : built(categoryIndex).matching(searchCat)) {
+            ids.set(id);
+        }
+        return row -> !row.isIncome() && ids.get(categoryIndex.idOfCode(row.categoryCode()));
+    }
+
+    // The sealed months, in order, that months accepts
+    private List<SealedMonth> sealedMonths(IntPredicate months) {
+        List<SealedMonth> sealed = new ArrayList<>();
+        for (SealedMonth month : coldMonths.values()) {
+            if (months.test(month.yearMonth())) {
+                sealed.add(month);
+            }
+        }
+        return sealed;
+    }
+
+    /**
+     * Adds a transaction, first checking it against existing ones according to
+     * the {@link DuplicatePolicy}. Returns false if it was rejected as a duplicate.
+     *
+     * @throws IllegalArgumentException if the amount is not valid (see {@link Money#isValidAmount})
+     */
+    public boolean addTransaction(Transaction t) {
+        return add(t).print();
+    }
+
+    /**
+     * Like {@link #addTransaction}, but prints nothing: the result tells
+     * whether the transaction was added and, if not, why.
+     *
+     * @throws IllegalArgumentException if the amount is not valid (see {@link Money#isValidAmount})
+     */
+    public WriteResult add(Transaction t) {
+        checkAmount(t.getAmount());
+        long started = metrics.start();
+        List<String> messages = new ArrayList<>();
+        String rejection;
+        ReentrantLock month = monthLock(yearMonthOf(t));
+        month.lock();
+        try {
+            rejection = addLocked(t, messages);
+        } finally {
+            month.unlock();
+            metrics.record(ServiceMetrics.Operation.ADD_TRANSACTION, started);
+        }
+        return new WriteResult(rejection == null ? WriteResult.Status.APPLIED : WriteResult.Status.REJECTED, rejection,
+                messages);
+    }
+
+    /**
+     * Adds the expense only if its month's total expense, including it, stays
+     * within the month's total income. The check and the add happen under the
+     * month's lock, so concurrent writers cannot overdraw the month between
+     * them. Returns false (and prints why) if the expense was rejected.
+     *
+     * @throws IllegalArgumentException if the amount is not valid (see {@link Money#isValidAmount})
+     */
+    public boolean tryAddExpense(Expense expense) {
+        return addWithinIncome(expense).print();
+    }
+
+    /**
+     * Like {@link #tryAddExpense}, but prints nothing: the result tells
+     * whether the expense was added and, if not, why.
+     *
+     * @throws IllegalArgumentException if the amount is not valid (see {@link Money#isValidAmount})
+     */
+    public WriteResult addWithinIncome(Expense expense) {
+        checkAmount(expense.getAmount());
+        long started = metrics.start();
+        List<String> messages = new ArrayList<>();
+        String rejection;
+        int yearMonth = yearMonthOf(expense);
+        ReentrantLock month = monthLock(yearMonth);
+        month.lock();
+        try {
+            long income = totals.yearMonth(yearMonth, true);
+            long expenseAfterAddition = totals.yearMonth(yearMonth, false) + Money.toCents(expense.getAmount());
+            if (expenseAfterAddition > income) {
+                rejection = String.format("Expense (%.2f) exceeds total income (%.2f) for %s %d",
+                        Money.toAmount(expenseAfterAddition), Money.toAmount(income),
+                        getMonthName(TransactionStore.monthOf(yearMonth)), TransactionStore.yearOf(yearMonth));
+                messages.add("Invalid. " + rejection + ".");
+                messages.add("Transaction rejected.");
+            } else {
+                rejection = addLocked(expense, messages);
+            }
+        } finally {
+            month.unlock();
+            metrics.record(ServiceMetrics.Operation.TRY_ADD_EXPENSE, started);
+        }
+        return new WriteResult(rejection == null ? WriteResult.Status.APPLIED : WriteResult.Status.REJECTED, rejection,
+                messages);
+    }
+
+    // Caller holds the month lock of t, so no other writer changes the month's
+    // totals between the checks, made under the read lock, and the add, made
+    // under the write lock. Returns why t was rejected, or null once it is
+    // added; warnings and the rejection go to messages as the console prints them.
+    private String addLocked(Transaction t, List<String> messages) {
+        long cents = Money.toCents(t.getAmount());
+        int epochDay = (int) t.getDate().toEpochDay();
+        ByteBuffer record;
+        lock.readLock().lock();
+        try {
+            if (duplicatePolicy != DuplicatePolicy.ALLOW) {
+                String existingId = duplicateOf(t);
+                if (existingId != null) {
+                    if (duplicatePolicy == DuplicatePolicy.REJECT) {
+                        messages.add("Transaction rejected: duplicate of transaction " + existingId + ".");
+                        return "duplicate of transaction " + existingId;
+                    }
+                    messages.add("Warning: possible duplicate of transaction " + existingId + ".");
+                }
+            }
+            if (!budgetRules.isEmpty()) {
+                String rejection = budgetRejection(null, new BudgetRules.Row(yearMonthOf(t), t.isIncome(), t.getCategory(),
+                        t.getPaymentMethod(), cents), messages);
+                if (rejection != null) {
+                    messages.add("Transaction rejected: " + rejection + ".");
+                    return rejection;
+                }
+            }
+            record = journal == null ? null : TransactionJournal.addRecord(t.getIdHigh(), t.getIdLow(), cents, epochDay,
+                    t.isIncome(), t.getCategory(), t.getDescription(), t.getPaymentMethod());
+        } finally {
+            lock.readLock().unlock();
+        }
+        ChangeFeed feed;
+        lock.writeLock().lock();
+        try {
+            // Duplicates span months, so one could have arrived from another month meanwhile
+            if (duplicatePolicy == DuplicatePolicy.REJECT) {
+                String existingId = duplicateOf(t);
+                if (existingId != null) {
+                    messages.add("Transaction rejected: duplicate of transaction " + existingId + ".");
+                    return "duplicate of transaction " + existingId;
+                }
+            }
+            // Journaled first: if that fails, nothing is applied or published
+            if (record != null) {
+                journal.append(record);
+            }
+            insert(t.getIdHigh(), t.getIdLow(), cents, epochDay, t.isIncome(), t.getCategory(), t.getDescription(),
+                    t.getPaymentMethod());
+            if (record != null) {
+                afterJournaledWrites(1);
+            }
+            feed = changeFeed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (feed != null) {
+            feed.publish(ChangeEvent.Type.ADDED, null, new ChangeEvent.Row(t.getId(), t.getDate(), t.isIncome(),
+                    Money.toAmount(cents), t.getCategory(), t.getDescription(), t.getPaymentMethod()));
+        }
+        return null;
+    }
+
+    // Caller holds a lock. ID of a stored transaction equal to t, or null.
+    private String duplicateOf(Transaction t) {
+        int existing = built(duplicateIndex).find(store, t.getFingerprint(), Money.toCents(t.getAmount()), t.getCategory(),
+                t.getDescription(), t.isIncome());
+        return existing >= 0 ? new UUID(store.idHigh(existing), store.idLow(existing)).toString() : coldDuplicateOf(t);
+    }
+
+    // ID of a sealed row equal to t, or null; hot rows are found through duplicateIndex
+    private String coldDuplicateOf(Transaction t) {
+        for (SealedMonth sealed : coldMonths.values()) {
+            int row = sealed.findDuplicate(store, t.getFingerprint(), Money.toCents(t.getAmount()), t.getCategory(),
+                    t.getDescription(), t.isIncome());
+            if (row >= 0) {
+                return new UUID(sealed.idHigh(row), sealed.idLow(row)).toString();
+            }
+        }
+        return null;
+    }
+
+    // Caller holds a lock, and the month lock of every month the write
+    // touches. Adds a warning to messages for each flagged rule the write
+    // breaks and returns why it is rejected, or null if no rejecting rule is broken.
+    private String budgetRejection(BudgetRules.Row before, BudgetRules.Row after, List<String> messages) {
+        String rejection = null;
+        for (BudgetRules.Violation violation : budgetRules.check(before, after, totals)) {
+            BudgetAlertEvent event = new BudgetAlertEvent();
+            if (event.isEnabled()) {
+                event.rule = violation.rule().toString();
+                event.action = violation.rule().action().name();
+                event.month = YearMonth.of(TransactionStore.yearOf(violation.yearMonth()),
+                        TransactionStore.monthOf(violation.yearMonth())).toString();
+                event.reason = violation.reason();
+                event.commit();
+            }
+            if (violation.rule().action() == BudgetRule.Action.FLAG) {
+                messages.add("Warning: " + violation.reason() + ".");
+            } else if (rejection == null) {
+                rejection = violation.reason();
+            }
+        }
+        return rejection;
+    }
+
+    /**
+     * The feed of changes to this ledger (see {@link ChangeFeed}), created on
+     * the first call; changes made before it are not in it. Replaying the
+     * journal on {@link #open} publishes nothing, and sealing or rehydrating
+     * a month is not a change. The feed completes when the service is closed.
+     * For a ledger opened from a directory, its sequence numbers carry on
+     * from the journal's, so they are not reused when the ledger is reopened.
+     */
+    public ChangeFeed changeFeed() {
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            return feed;
+        }
+        lock.writeLock().lock(); // writes applied from here on publish to it
+        try {
+            if (changeFeed == null) {
+                // Every journal append happens under the write lock, so from here
+                // each journaled write and each event move the two numbers together
+                changeFeed = new ChangeFeed(ChangeFeed.DEFAULT_CAPACITY,
+                        journal == null ? 1L : journal.lastSequence() + 1);
+            }
+            return changeFeed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds a lock
+    private ChangeEvent.Row changeRow(int slot) {
+        return new ChangeEvent.Row(new UUID(store.idHigh(slot), store.idLow(slot)).toString(),
+                LocalDate.ofEpochDay(store.epochDay(slot)), store.isIncome(slot), Money.toAmount(store.cents(slot)),
+                store.categories().decode(store.categoryCode(slot)), store.readDescription(slot),
+                store.paymentMethods().decode(store.paymentMethodCode(slot)));
+    }
+
+    /**
+     * Registers a budget rule, checked from now on by every add (including
+     * {@link #tryAddExpense} and {@link #importCsv}), edit and delete, and
+     * returns its ID. Checking a write costs time in proportion to the rules
+     * on its category and payment method, plus the savings floors; a new cap
+     * on a category or payment method takes its monthly totals from the
+     * rollup cube once. Replaying the journal on {@link #open} applies no rules.
+     */
+    public long addBudgetRule(BudgetRule rule) {
+        lock.writeLock().lock();
+        try {
+            return budgetRules.add(rule, query -> built(rollupCube).query(store, query));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a budget rule by ID. Returns false if there is no such rule.
+     */
+    public boolean removeBudgetRule(long id) {
+        lock.writeLock().lock();
+        try {
+            return budgetRules.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The registered budget rules by ID, in the order they were added.
+     */
+    public Map<Long, BudgetRule> getBudgetRules() {
+        lock.readLock().lock();
+        try {
+            return budgetRules.rules();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bulk-imports a CSV file in the layout printed by {@link #printAllTransactions()}
+     * ({@code ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD}, header optional).
+     * The file is parsed in parallel chunks and each chunk is added as one
+     * batch. Within a batch, a month's expenses are accepted only if the month's
+     * total expense still does not exceed its total income once the whole batch
+     * is counted; otherwise all of that batch's expenses for the month are
+     * rejected. The surviving rows are then checked one by one, in file
+     * order, against the budget rules. Lines that fail to parse, reuse an
+     * existing ID or break the monthly rule or a rejecting budget rule are
+     * listed in the result; the rest are imported. Each batch is added with
+     * its own months locked, so writers to other months carry on meanwhile.
+     */
+    public ImportResult importCsv(Path file) throws IOException {
+        long started = metrics.start();
+        List<ImportResult.Error> errors = new ArrayList<>();
+        long[] imported = {0L};
+        try {
+            new CsvImporter(file).parse(chunk -> imported[0] += publishImportBatchLocked(chunk, errors));
+        } finally {
+            metrics.record(ServiceMetrics.Operation.IMPORT_CSV, started, imported[0] + errors.size(), imported[0]);
+        }
+        errors.sort(Comparator.comparingLong(ImportResult.Error::lineNumber));
+        return new ImportResult(imported[0], errors);
+    }
+
+    private int publishImportBatchLocked(CsvImporter.ParsedChunk chunk, List<ImportResult.Error> errors) {
+        // Only the batch's months, locked in stripe order so two imports cannot deadlock
+        BitSet stripes = new BitSet(monthLocks.length);
+        for (int i = 0; i < chunk.size; i++) {
+            stripes.set(Math.floorMod(chunk.yearMonths[i], monthLocks.length));
+        }
+        for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+            monthLocks[i].lock();
+        }
+        try {
+            return publishImportBatch(chunk, errors);
+        } finally {
+            for (int i = stripes.previousSetBit(monthLocks.length - 1); i >= 0; i = stripes.previousSetBit(i - 1)) {
+                monthLocks[i].unlock();
+            }
+        }
+    }
+
+    // Caller holds the month lock of every month in the chunk
+    private int publishImportBatch(CsvImporter.ParsedChunk chunk, List<ImportResult.Error> errors) {
+        errors.addAll(chunk.errors);
+        boolean[] accepted = new boolean[chunk.size];
+        lock.readLock().lock();
+        try {
+            // Pass 1: drop reused IDs and total the batch per month
+            TransactionIdIndex batchIds = new TransactionIdIndex();
+            Map<Integer, long[]> batchSums = new HashMap<>(); // year-month -> {income, expense}
+            for (int i = 0; i < chunk.size; i++) {
+                long idHigh = chunk.idHighs[i];
+                long idLow = chunk.idLows[i];
+                if (built(idIndex).get(idHigh, idLow) >= 0 || coldIds.get(idHigh, idLow) >= 0 || batchIds.get(idHigh, idLow) >= 0) {
+                    errors.add(new ImportResult.Error(chunk.lineNumbers[i], "Duplicate transaction ID"));
+                    continue;
+                }
+                batchIds.put(idHigh, idLow, i);
+                accepted[i] = true;
+                batchSums.computeIfAbsent(chunk.yearMonths[i], k -> new long[2])[chunk.income[i] ? 0 : 1] += chunk.cents[i];
+            }
+
+            // Pass 2: check the expense-vs-income rule once per month
+            Map<Integer, String> overdrawnMonths = new HashMap<>();
+            for (Map.Entry<Integer, long[]> entry : batchSums.entrySet()) {
+                YearMonth ym = YearMonth.of(TransactionStore.yearOf(entry.getKey()), TransactionStore.monthOf(entry.getKey()));
+                long income = totals.yearMonth(ym, true) + entry.getValue()[0];
+                long expense = totals.yearMonth(ym, false) + entry.getValue()[1];
+                if (entry.getValue()[1] > 0 && expense > income) {
+                    overdrawnMonths.put(entry.getKey(), String.format("Expense (%.2f) exceeds total income (%.2f) for %s %d",
+                            Money.toAmount(expense), Money.toAmount(income), getMonthName(ym.getMonthValue()), ym.getYear()));
+                }
+            }
+            if (!overdrawnMonths.isEmpty()) {
+                for (int i = 0; i < chunk.size; i++) {
+                    String reason = overdrawnMonths.get(chunk.yearMonths[i]);
+                    if (accepted[i] && !chunk.income[i] && reason != null) {
+                        accepted[i] = false;
+                        errors.add(new ImportResult.Error(chunk.lineNumbers[i], reason));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Pass 3: add the surviving rows in file order, each checked against
+        // the budget rules, a run of rows per turn at the write lock
+        List<String> messages = new ArrayList<>();
+        List<ChangeEvent.Row> published = new ArrayList<>();
+        int added = 0;
+        for (int from = 0; from < chunk.size; from += STREAM_BATCH_ROWS) {
+            int to = Math.min(chunk.size, from + STREAM_BATCH_ROWS);
+            ByteBuffer[] records = new ByteBuffer[to - from];
+            for (int i = from; i < to; i++) {
+                if (accepted[i] && journal != null) {
+                    records[i - from] = TransactionJournal.addRecord(chunk.idHighs[i], chunk.idLows[i], chunk.cents[i],
+                            chunk.epochDays[i], chunk.income[i], chunk.categories[i], chunk.descriptions[i],
+                            chunk.paymentMethods[i]);
+                }
+            }
+            ChangeFeed feed;
+            int addedHere = 0;
+            lock.writeLock().lock();
+            try {
+                feed = changeFeed;
+                for (int i = from; i < to; i++) {
+                    if (!accepted[i]) {
+                        continue;
+                    }
+                    // A writer to another month may have taken the ID meanwhile
+                    if (built(idIndex).get(chunk.idHighs[i], chunk.idLows[i]) >= 0
+                            || coldIds.get(chunk.idHighs[i], chunk.idLows[i]) >= 0) {
+                        errors.add(new ImportResult.Error(chunk.lineNumbers[i], "Duplicate transaction ID"));
+                        continue;
+                    }
+                    if (!budgetRules.isEmpty()) {
+                        String rejection = budgetRejection(null, new BudgetRules.Row(chunk.yearMonths[i], chunk.income[i],
+                                chunk.categories[i], chunk.paymentMethods[i], chunk.cents[i]), messages);
+                        if (rejection != null) {
+                            errors.add(new ImportResult.Error(chunk.lineNumbers[i], rejection));
+                            continue;
+                        }
+                    }
+                    if (records[i - from] != null) {
+                        journal.append(records[i - from]);
+                    }
+                    insert(chunk.idHighs[i], chunk.idLows[i], chunk.cents[i], chunk.epochDays[i], chunk.income[i],
+                            chunk.categories[i], chunk.descriptions[i], chunk.paymentMethods[i]);
+                    if (feed != null) {
+                        published.add(new ChangeEvent.Row(new UUID(chunk.idHighs[i], chunk.idLows[i]).toString(),
+                                LocalDate.ofEpochDay(chunk.epochDays[i]), chunk.income[i], Money.toAmount(chunk.cents[i]),
+                                chunk.categories[i], chunk.descriptions[i], chunk.paymentMethods[i]));
+                    }
+                    addedHere++;
+                }
+                if (journal != null) {
+                    afterJournaledWrites(addedHere);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            added += addedHere;
+            if (feed != null) {
+                for (ChangeEvent.Row row : published) {
+                    feed.publish(ChangeEvent.Type.ADDED, null, row);
+                }
+                published.clear();
+            }
+        }
+        messages.forEach(System.out::println);
+        return added;
+    }
+
+    /**
+     * Writes a snapshot of the current state and drops the journal records
+     * it covers. Does nothing for an in-memory ledger. Writers wait only
+     * while the rows are copied; the file is written from the copy on a
+     * background thread, which this call waits for.
+     */
+    public void snapshot() {
+        while (true) {
+            Future<?> running;
+            Future<?> started = null;
+            lock.writeLock().lock();
+            try {
+                if (journal == null) {
+                    return;
+                }
+                running = pendingSnapshot;
+                if (running == null || running.isDone()) {
+                    started = startSnapshot();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (started != null) {
+                awaitSnapshot(started);
+                return;
+            }
+            try {
+                awaitSnapshot(running); // an earlier one, covering less; its failure is not this call's
+            } catch (UncheckedIOException e) {
+                // start a new one regardless
+            }
+        }
+    }
+
+    /**
+     * Copies the rows, sealed months and totals as of the journal's current
+     * sequence number and hands the copy to the snapshot thread, which
+     * writes it and then drops the journal records up to that number.
+     * Called under the write lock, with no snapshot being written.
+     */
+    private Future<?> startSnapshot() {
+        long started = metrics.start();
+        TransactionJournal.Mark fence = journal.mark();
+        TransactionStore rows = store.copy();
+        List<SealedMonth> sealed = new ArrayList<>(coldMonths.values());
+        Map<Integer, long[]> aggregates = totals.byYearMonth();
+        long generation = ++snapshotGeneration;
+        Path file = LedgerSnapshot.file(directory, generation);
+        Path ledger = directory;
+        TransactionJournal trimmed = journal;
+        writesSinceSnapshot = 0;
+        pendingSnapshot = snapshotWriter.submit(() -> {
+            try {
+                LedgerSnapshot.write(file, rows, sealed, aggregates, fence.sequence());
+            } catch (IOException e) {
+                System.out.println("Could not write snapshot: " + e.getMessage());
+                throw new UncheckedIOException("Could not write snapshot", e);
+            }
+            trimmed.truncateThrough(fence);
+            try {
+                LedgerSnapshot.deleteOlder(ledger, generation);
+            } catch (IOException e) {
+                // the older files only take space; the next snapshot or open retries
+            }
+            long count = rows.liveCount() + sealed.stream().mapToLong(SealedMonth::rows).sum();
+            metrics.record(ServiceMetrics.Operation.SNAPSHOT, started, count, count);
+        });
+        return pendingSnapshot;
+    }
+
+    private static void awaitSnapshot(Future<?> snapshot) {
+        try {
+            snapshot.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException failure) {
+                throw failure;
+            }
+            throw new IllegalStateException("Snapshot failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the snapshot", e);
+        }
+    }
+
+    /**
+     * Blocks until every write made so far is on disk, rather than within
+     * the group-commit window. Does nothing for an in-memory ledger.
+     */
+    public void sync() {
+        TransactionJournal current;
+        lock.readLock().lock();
+        try {
+            current = journal;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (current != null) {
+            current.sync();
+        }
+    }
+
+    /**
+     * Writes a final snapshot, closes the journal and unlocks the directory.
+     * Does nothing for an in-memory ledger.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            parallelScan.close();
+            if (changeFeed != null) {
+                changeFeed.close();
+            }
+            if (sealer != null) {
+                sealer.shutdownNow();
+                sealer = null;
+            }
+            if (journal == null) {
+                return;
+            }
+            try {
+                if (pendingSnapshot != null) {
+                    try {
+                        awaitSnapshot(pendingSnapshot);
+                    } catch (UncheckedIOException e) {
+                        // the final snapshot below covers the same rows
+                    }
+                }
+                awaitSnapshot(startSnapshot()); // under the lock, so nothing is written after it
+            } finally {
+                snapshotWriter.shutdown();
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close journal", e);
+            } finally {
+                journal = null;
+                try {
+                    lockChannel.close(); // releases the directory's lock
+                } catch (IOException e) {
+                    // the lock goes with the process anyway
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all transactions. The returned objects are copies; changing
+     * them does not change the stored data. They are copied a batch at a
+     * time, as {@link #streamTransactions} hands them over, so writers are
+     * not held up for the whole copy; like a stream, this is not a snapshot.
+     */
+    public List<Transaction> getTransactions() {
+        return collectTransactions(new TransactionQuery(), ServiceMetrics.Operation.GET_TRANSACTIONS);
+    }
+
+    /**
+     * Looks up a transaction by ID in constant time. Returns null if no
+     * transaction has that ID (including IDs that are not valid UUIDs).
+     */
+    public Transaction findById(String id) {
+        long started = metrics.start();
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            if (slot >= 0) {
+                return store.materialize(slot);
+            }
+            UUID uuid = parseId(id);
+            int yearMonth = uuid == null ? -1 : coldIds.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (yearMonth < 0) {
+                return null;
+            }
+            SealedMonth sealed = coldMonths.get(yearMonth);
+            return sealed.materialize(store, sealed.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.FIND_BY_ID, started);
+        }
+    }
+
+    /**
+     * Returns copies of the transactions matching {@code query}, in insertion
+     * order, copied a batch at a time like {@link #getTransactions()}.
+     */
+    public List<Transaction> findTransactions(TransactionQuery query) {
+        return collectTransactions(query, ServiceMetrics.Operation.FIND_TRANSACTIONS);
+    }
+
+    // streamTransactions gathered into one list: the read lock is held per
+    // batch copied, with compaction and sealing deferred meanwhile
+    private List<Transaction> collectTransactions(TransactionQuery query, ServiceMetrics.Operation operation) {
+        long started = metrics.start();
+        openStreams.incrementAndGet();
+        try {
+            int[] slots;
+            List<SealedMonth> sealed;
+            Predicate<SealedMonth.Reader> filter;
+            long sealedRows = 0L;
+            lock.readLock().lock();
+            try {
+                slots = toSlots(built(filterIndex).matching(query));
+                sealed = sealedMonths(monthsOf(query));
+                filter = sealedMatching(query);
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (SealedMonth month : sealed) {
+                sealedRows += month.rows();
+            }
+            List<Transaction> result = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, slots.length + sealedRows));
+            streamSlots(slots, result::addAll);
+            streamSealed(sealed, filter, result::addAll);
+            metrics.record(operation, started, slots.length + sealedRows, result.size());
+            return Collections.unmodifiableList(result);
+        } finally {
+            openStreams.decrementAndGet();
+        }
+    }
+
+    /**
+     * Hands copies of the transactions matching {@code query} to
+     * {@code batches}, in insertion order, a batch at a time. The read lock is
+     * held only while a batch is copied, never while the consumer runs, so a
+     * slow consumer (a network client, say) does not hold up writers. This is
+     * not a snapshot: rows deleted meanwhile are skipped and edits made
+     * meanwhile may show. Returns the number of rows handed over.
+     */
+    public long streamTransactions(TransactionQuery query, Consumer<List<Transaction>> batches) {
+        long started = metrics.start();
+        openStreams.incrementAndGet();
+        try {
+            int[] slots;
+            List<SealedMonth> sealed;
+            Predicate<SealedMonth.Reader> filter;
+            lock.readLock().lock();
+            try {
+                slots = toSlots(built(filterIndex).matching(query));
+                sealed = sealedMonths(monthsOf(query));
+                filter = sealedMatching(query);
+            } finally {
+                lock.readLock().unlock();
+            }
+            long streamed = streamSlots(slots, batches) + streamSealed(sealed, filter, batches);
+            metrics.record(ServiceMetrics.Operation.FIND_TRANSACTIONS, started, slots.length, streamed);
+            return streamed;
+        } finally {
+            openStreams.decrementAndGet();
+        }
+    }
+
+    /**
+     * Like {@link #streamTransactions}, for the expenses that
+     * {@link #searchExpenseByCategory} would print.
+     */
+    public long streamExpensesByCategory(String category, Consumer<List<Transaction>> batches) {
+        long started = metrics.start();
+        openStreams.incrementAndGet();
+        try {
+            int[] slots;
+            List<SealedMonth> sealed;
+            Predicate<SealedMonth.Reader> filter;
+            lock.readLock().lock();
+            try {
+                slots = toSlots(categoryExpenseRows(category.trim().toLowerCase()));
+                sealed = sealedMonths(ALL_MONTHS);
+                filter = sealedCategoryExpenses(category.trim().toLowerCase());
+            } finally {
+                lock.readLock().unlock();
+            }
+            long streamed = streamSlots(slots, batches) + streamSealed(sealed, filter, batches);
+            metrics.record(ServiceMetrics.Operation.SEARCH_EXPENSE_BY_CATEGORY, started, slots.length, streamed);
+            return streamed;
+        } finally {
+            openStreams.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the transactions matching {@code query} in (date, ID) order, at
+     * most {@code pageSize} of them: pass a null cursor for the first page
+     * and the previous page's {@link TransactionPage#nextCursor()} for the
+     * next. A page only looks at the months it reaches, in order, so the
+     * first page of a large result costs about as much as the page itself;
+     * a sealed month it reaches is decoded in place, not rehydrated.
+     *
+     * @throws IllegalArgumentException if the cursor is not valid or
+     *         {@code pageSize} is not between 1 and {@link #MAX_PAGE_SIZE}
+     */
+    public TransactionPage findTransactions(TransactionQuery query, String cursor, int pageSize) {
+        long started = metrics.start();
+        long[] counts = {0L, 0L}; // rows scanned, rows returned
+        lock.readLock().lock();
+        try {
+            return page(built(filterIndex).matching(query), monthsOf(query), sealedMatching(query), cursor, pageSize, counts);
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.FIND_TRANSACTIONS, started, counts[0], counts[1]);
+        }
+    }
+
+    /**
+     * Like {@link #findTransactions(TransactionQuery, String, int)}, for the
+     * expenses that {@link #searchExpenseByCategory} would print.
+     */
+    public TransactionPage searchExpensesByCategory(String category, String cursor, int pageSize) {
+        long started = metrics.start();
+        long[] counts = {0L, 0L};
+        lock.readLock().lock();
+        try {
+            String searchCat = category.trim().toLowerCase();
+            return page(categoryExpenseRows(searchCat), ALL_MONTHS, sealedCategoryExpenses(searchCat), cursor, pageSize,
+                    counts);
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.SEARCH_EXPENSE_BY_CATEGORY, started, counts[0], counts[1]);
+        }
+    }
+
+    /**
+     * Iterates over the transactions matching {@code query} in (date, ID)
+     * order, fetching a page at a time as the iterator advances. Writes made
+     * while iterating are allowed; see {@link TransactionPage} for what the
+     * iterator then sees.
+     */
+    public Iterator<Transaction> iterateTransactions(TransactionQuery query) {
+        return new PageIterator(cursor -> findTransactions(query, cursor, ITERATOR_PAGE_ROWS));
+    }
+
+    /**
+     * Like {@link #iterateTransactions}, for the expenses that
+     * {@link #searchExpenseByCategory} would print.
+     */
+    public Iterator<Transaction> iterateExpensesByCategory(String category) {
+        return new PageIterator(cursor -> searchExpensesByCategory(category, cursor, ITERATOR_PAGE_ROWS));
+    }
+
+    /**
+     * Total of the expenses whose category contains {@code category}, ignoring case.
+     */
+    public double getExpenseTotalByCategory(String category) {
+        lock.readLock().lock();
+        try {
+            long totalCents = 0L;
+            for (int id : built(categoryIndex).matching(category.trim().toLowerCase())) {
+                totalCents += categoryIndex.expenseCents(id);
+            }
+            return Money.toAmount(totalCents);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns copies of the sets {@link #detectDuplicateTransactions} prints.
+     * The sets are found under the read lock and their rows copied a batch
+     * at a time, so writers are not held up for the whole copy. A row deleted
+     * meanwhile is left out, and so is a set with one row left.
+     */
+    public List<List<Transaction>> findDuplicateSets() {
+        long started = metrics.start();
+        long matched = 0L;
+        openStreams.incrementAndGet();
+        try {
+            List<DuplicateIndex.DuplicateSet> sets;
+            lock.readLock().lock();
+            try {
+                sets = built(duplicateIndex).duplicateSets(store, sealedMonths(ALL_MONTHS));
+            } finally {
+                lock.readLock().unlock();
+            }
+            List<List<Transaction>> result = new ArrayList<>(sets.size());
+            for (int from = 0; from < sets.size(); ) {
+                lock.readLock().lock();
+                try {
+                    for (int inBatch = 0; from < sets.size() && inBatch < STREAM_BATCH_ROWS; from++) {
+                        DuplicateIndex.DuplicateSet set = sets.get(from);
+                        inBatch += set.size();
+                        List<Transaction> copies = new ArrayList<>(set.size());
+                        for (int slot : set.slots()) {
+                            if (store.isLive(slot)) {
+                                copies.add(store.materialize(slot));
+                            }
+                        }
+                        for (int i = 0; i < set.sealedRows().length; i++) {
+                            copies.add(set.sealedMonths()[i].materialize(store, set.sealedRows()[i]));
+                        }
+                        if (copies.size() > 1) {
+                            result.add(Collections.unmodifiableList(copies));
+                            matched += copies.size();
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            return Collections.unmodifiableList(result);
+        } finally {
+            openStreams.decrementAndGet();
+            metrics.record(ServiceMetrics.Operation.DETECT_DUPLICATES, started, matched, matched);
+        }
+    }
+
+    // Caller holds the read lock. Walks the months from the cursor's onwards, in
+    // order, live and sealed alike (of the sealed ones, those months accepts,
+    // with their rows picked by sealedRows); in each it counts the rows after
+    // the cursor per day, then keeps the smallest rows of the days the page
+    // still needs in a bounded heap. One row past the page tells whether there
+    // is more, and no month past that row's is visited.
+    private TransactionPage page(RowBitmap rows, IntPredicate months, Predicate<SealedMonth.Reader> sealedRows,
+                                 String cursor, int pageSize, long[] counts) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE + ": " + pageSize);
+        }
+        long[] after = cursor == null ? null : TransactionPage.parseCursor(cursor);
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        boolean more = false;
+        Integer month = nextPageMonth(after == null ? Integer.MIN_VALUE : TransactionStore.yearMonthOfEpochDay(after[0]));
+        while (month != null && !more) {
+            int needed = pageSize + 1 - transactions.size();
+            SealedMonth sealed = coldMonths.get(month);
+            List<Transaction> chosen = sealed == null
+                    ? pageOfLiveMonth(rows, month, after, needed, counts)
+                    : months.test(month) ? pageOfSealedMonth(sealed, sealedRows, after, needed, counts) : List.of();
+            for (Transaction t : chosen) {
+                if (transactions.size() < pageSize) {
+                    transactions.add(t);
+                } else {
+                    more = true;
+                }
+            }
+            month = nextPageMonth(month + 1);
+        }
+        counts[1] = transactions.size();
+        String nextCursor = more ? TransactionPage.cursor(transactions.get(pageSize - 1)) : null;
+        return new TransactionPage(Collections.unmodifiableList(transactions), nextCursor);
+    }
+
+    // Caller holds the read lock. The first year-month index at or after
+    // yearMonth with live or sealed rows, or null.
+    private Integer nextPageMonth(int yearMonth) {
+        Integer live = built(filterIndex).nextMonth(yearMonth);
+        Integer sealed = coldMonths.ceilingKey(yearMonth);
+        return live == null ? sealed : sealed == null ? live : Integer.valueOf(Math.min(live, sealed));
+    }
+
+    // Up to needed of the month's rows after the cursor, in (date, ID) order
+    private List<Transaction> pageOfLiveMonth(RowBitmap rows, int month, long[] after, int needed, long[] counts) {
+        RowBitmap monthRows = RowBitmap.and(rows, built(filterIndex).monthRows(month));
+        counts[0] += monthRows.cardinality();
+        int firstDay = (int) LocalDate.of(TransactionStore.yearOf(month), TransactionStore.monthOf(month), 1).toEpochDay();
+        int[] perDay = new int[31];
+        monthRows.forEach(slot -> {
+            if (isAfter(slot, after)) {
+                perDay[store.epochDay(slot) - firstDay]++;
+            }
+        });
+        int lastEpochDay = firstDay + lastDayNeeded(perDay, needed);
+        PriorityQueue<Integer> smallest = new PriorityQueue<>(needed, this::compareByDateAndIdReversed);
+        monthRows.forEach(slot -> {
+            if (store.epochDay(slot) <= lastEpochDay && isAfter(slot, after)) {
+                smallest.add(slot);
+                if (smallest.size() > needed) {
+                    smallest.poll();
+                }
+            }
+        });
+        List<Integer> slots = new ArrayList<>(smallest);
+        slots.sort(this::compareByDateAndId);
+        List<Transaction> chosen = new ArrayList<>(slots.size());
+        for (int slot : slots) {
+            chosen.add(store.materialize(slot));
+        }
+        return chosen;
+    }
+
+    // Like pageOfLiveMonth, decoding the sealed month's block: once to count
+    // the rows per day, once more to keep the smallest
+    private List<Transaction> pageOfSealedMonth(SealedMonth sealed, Predicate<SealedMonth.Reader> sealedRows, long[] after,
+                                                int needed, long[] counts) {
+        int month = sealed.yearMonth();
+        int firstDay = (int) LocalDate.of(TransactionStore.yearOf(month), TransactionStore.monthOf(month), 1).toEpochDay();
+        int[] perDay = new int[31];
+        for (SealedMonth.Reader row = sealed.reader(0); row.next(); ) {
+            if (sealedRows.test(row) && isAfter(row.epochDay(), row.idHigh(), row.idLow(), after)) {
+                perDay[row.epochDay() - firstDay]++;
+            }
+        }
+        counts[0] += sealed.rows();
+        int lastEpochDay = firstDay + lastDayNeeded(perDay, needed);
+        // {epoch day, ID high, ID low, row}, largest first
+        PriorityQueue<long[]> smallest = new PriorityQueue<>(needed, (a, b) -> compareByDateAndId(b, a));
+        int index = 0;
+        for (SealedMonth.Reader row = sealed.reader(0); row.next(); index++) {
+            if (row.epochDay() <= lastEpochDay && sealedRows.test(row)
+                    && isAfter(row.epochDay(), row.idHigh(), row.idLow(), after)) {
+                smallest.add(new long[] {row.epochDay(), row.idHigh(), row.idLow(), index});
+                if (smallest.size() > needed) {
+                    smallest.poll();
+                }
+            }
+        }
+        List<long[]> keys = new ArrayList<>(smallest);
+        keys.sort(FinanceService::compareByDateAndId);
+        List<Transaction> chosen = new ArrayList<>(keys.size());
+        for (long[] key : keys) {
+            chosen.add(sealed.materialize(store, (int) key[3]));
+        }
+        return chosen;
+    }
+
+    // The day of month (0-based) by which perDay holds needed rows, or the last
+    private static int lastDayNeeded(int[] perDay, int needed) {
+        int lastDay = 0;
+        for (int rowsUpTo = perDay[0]; rowsUpTo < needed && lastDay < perDay.length - 1; ) {
+            rowsUpTo += perDay[++lastDay];
+        }
+        return lastDay;
+    }
+
+    // after is {epoch day, ID high, ID low} or null for the start
+    private boolean isAfter(int slot, long[] after) {
+        return isAfter(store.epochDay(slot), store.idHigh(slot), store.idLow(slot), after);
+    }
+
+    private static boolean isAfter(long epochDay, long idHigh, long idLow, long[] after) {
+        if (after == null) {
+            return true;
+        }
+        int byDay = Long.compare(epochDay, after[0]);
+        if (byDay != 0) {
+            return byDay > 0;
+        }
+        int byHigh = Long.compareUnsigned(idHigh, after[1]);
+        return byHigh != 0 ? byHigh > 0 : Long.compareUnsigned(idLow, after[2]) > 0;
+    }
+
+    private int compareByDateAndIdReversed(int a, int b) {
+        return compareByDateAndId(b, a);
+    }
+
+    // IDs compare as unsigned numbers, the same order as their text form
+    private int compareByDateAndId(int a, int b) {
+        int byDay = Integer.compare(store.epochDay(a), store.epochDay(b));
+        if (byDay != 0) {
+            return byDay;
+        }
+        int byHigh = Long.compareUnsigned(store.idHigh(a), store.idHigh(b));
+        return byHigh != 0 ? byHigh : Long.compareUnsigned(store.idLow(a), store.idLow(b));
     }
 
-    public List<Transaction> getTransactions() {
-        return transactions;
+    // The same order for keys {epoch day, ID high, ID low, ...}
+    private static int compareByDateAndId(long[] a, long[] b) {
+        int byDay = Long.compare(a[0], b[0]);
+        if (byDay != 0) {
+            return byDay;
+        }
+        int byHigh = Long.compareUnsigned(a[1], b[1]);
+        return byHigh != 0 ? byHigh : Long.compareUnsigned(a[2], b[2]);
+    }
+
+    // Caller holds the read lock
+    private static int[] toSlots(RowBitmap rows) {
+        int[] slots = new int[(int) rows.cardinality()];
+        int[] n = {0};
+        rows.forEach(slot -> slots[n[0]++] = slot);
+        return slots;
+    }
+
+    // Slots stay valid while the caller has a stream open (no compaction)
+    private long streamSlots(int[] slots, Consumer<List<Transaction>> batches) {
+        long streamed = 0L;
+        for (int from = 0; from < slots.length; from += STREAM_BATCH_ROWS) {
+            int to = Math.min(slots.length, from + STREAM_BATCH_ROWS);
+            List<Transaction> batch = new ArrayList<>(to - from);
+            lock.readLock().lock();
+            try {
+                for (int i = from; i < to; i++) {
+                    if (store.isLive(slots[i])) {
+                        batch.add(store.materialize(slots[i]));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (!batch.isEmpty()) {
+                streamed += batch.size();
+                batches.accept(Collections.unmodifiableList(batch));
+            }
+        }
+        return streamed;
+    }
+
+    private long streamSealed(List<SealedMonth> sealed, Predicate<SealedMonth.Reader> filter,
+                              Consumer<List<Transaction>> batches) {
+        List<Transaction> batch = new ArrayList<>(STREAM_BATCH_ROWS);
+        return forEachSealedBatch(sealed, filter, row -> batch.add(row.materialize(store)),
+                slot -> batch.add(store.materialize(slot)), () -> {
+                    batches.accept(List.copyOf(batch));
+                    batch.clear();
+                });
+    }
+
+    // Like streamSlots, a batch at a time under the read lock: each row of the
+    // sealed months that filter accepts goes to sealedRow, and endOfBatch runs
+    // with the lock released after every non-empty batch. A sealed month
+    // never changes, so its reader carries on across batches; the rows of a
+    // month rehydrated meanwhile go to liveRow as slots instead, and are
+    // skipped if deleted since. Returns the number of rows handed over.
+    private long forEachSealedBatch(List<SealedMonth> sealed, Predicate<SealedMonth.Reader> filter,
+                                    Consumer<SealedMonth.Reader> sealedRow, IntConsumer liveRow, Runnable endOfBatch) {
+        long handed = 0L;
+        for (SealedMonth month : sealed) {
+            SealedMonth.Reader row = month.reader(0);
+            boolean more = true;
+            while (more) {
+                int inBatch = 0;
+                lock.readLock().lock();
+                try {
+                    boolean stillSealed = coldMonths.get(month.yearMonth()) == month;
+                    while (inBatch < STREAM_BATCH_ROWS && (more = row.next())) {
+                        if (!filter.test(row)) {
+                            continue;
+                        }
+                        if (stillSealed) {
+                            sealedRow.accept(row);
+                            inBatch++;
+                        } else {
+                            int slot = built(idIndex).get(row.idHigh(), row.idLow());
+                            if (slot >= 0) {
+                                liveRow.accept(slot);
+                                inBatch++;
+                            }
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (inBatch > 0) {
+                    handed += inBatch;
+                    endOfBatch.run();
+                }
+            }
+        }
+        return handed;
+    }
+
+    /**
+     * Sums the amounts of the transactions matching {@code query}. Incomes
+     * and expenses both count as positive, so set a type to get a meaningful total.
+     */
+    public double totalAmount(TransactionQuery query) {
+        long started = metrics.start();
+        lock.readLock().lock();
+        try {
+            return Money.toAmount(built(rollupCube).sumCents(store, query));
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.TOTAL_AMOUNT, started);
+        }
+    }
+
+    /**
+     * Totals, counts and extremes of the amounts grouped by the dimensions in
+     * {@code query}, read from the rollup cube without touching transactions.
+     */
+    public List<RollupRow> rollup(RollupQuery query) {
+        long started = metrics.start();
+        lock.readLock().lock();
+        try {
+            return built(rollupCube).query(store, query);
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.ROLLUP, started);
+        }
+    }
+
+    /**
+     * Estimated {@code quantile} (0 to 1, so 0.9 for the 90th percentile) of
+     * the amounts of one type in a category (compared ignoring case), within
+     * one month or, if {@code month} is null, across all months. Empty if
+     * there are no such amounts.
+     *
+     * Read from per-month {@link QuantileSketch}es: exact while the months
+     * asked for hold at most {@value QuantileSketch#K} such amounts, and
+     * otherwise an amount whose rank is within about 1.7% of the requested
+     * rank, with 99% probability. For 10,000 expenses, a p90 query returns
+     * an amount with between 8,830 and 9,170 of them at or below it.
+     *
+     * @throws IllegalArgumentException if {@code quantile} is not between 0 and 1
+     */
+    public OptionalDouble amountQuantile(String category, YearMonth month, boolean income, double quantile) {
+        if (!(quantile >= 0.0 && quantile <= 1.0)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        }
+        long started = metrics.start();
+        lock.readLock().lock();
+        try {
+            SketchIndex.Cell cell = built(sketchIndex).merged(store, yearMonthIndex(month), category.trim().toLowerCase(), income);
+            return cell == null ? OptionalDouble.empty() : OptionalDouble.of(Money.toAmount(cell.amounts.quantile(quantile)));
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.AMOUNT_QUANTILE, started);
+        }
+    }
+
+    /**
+     * Estimated number of distinct descriptions (ignoring case) among the
+     * transactions of one type in a category, within one month or, if
+     * {@code month} is null, across all months.
+     *
+     * Read from per-month {@link DistinctSketch}es: exact up to
+     * {@value DistinctSketch#SPARSE_LIMIT} distinct descriptions, and
+     * otherwise within 7% of the true count 99.7% of the time (2.3% standard
+     * error).
+     */
+    public long distinctDescriptions(String category, YearMonth month, boolean income) {
+        long started = metrics.start();
+        lock.readLock().lock();
+        try {
+            SketchIndex.Cell cell = built(sketchIndex).merged(store, yearMonthIndex(month), category.trim().toLowerCase(), income);
+            return cell == null ? 0L : cell.descriptions.estimate();
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.DISTINCT_DESCRIPTIONS, started);
+        }
+    }
+
+    private static Integer yearMonthIndex(YearMonth month) {
+        return month == null ? null : TransactionStore.yearMonthIndex(month.getYear(), month.getMonthValue());
+    }
+
+    /**
+     * Returns up to {@code k} largest expenses of the given month, largest
+     * first (earlier-added first on equal amounts).
+     */
+    public List<Transaction> topExpenses(YearMonth month, int k) {
+        long started = metrics.start();
+        int yearMonth = TransactionStore.yearMonthIndex(month.getYear(), month.getMonthValue());
+        readLockRehydrated(m -> m == yearMonth);
+        try {
+            return materialize(built(topExpenseIndex).top(store, yearMonth, k));
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.TOP_EXPENSES, started);
+        }
+    }
+
+    /**
+     * Returns up to {@code k} largest expenses for a month number (1-12)
+     * across all years, largest first.
+     */
+    public List<Transaction> topExpenses(int monthNumber, int k) {
+        long started = metrics.start();
+        readLockRehydrated(yearMonth -> TransactionStore.monthOf(yearMonth) == monthNumber);
+        try {
+            return materialize(built(topExpenseIndex).topOfMonthNumber(store, monthNumber, k));
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.TOP_EXPENSES, started);
+        }
+    }
+
+    private List<Transaction> materialize(int[] slots) {
+        List<Transaction> result = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            result.add(store.materialize(slot));
+        }
+        return Collections.unmodifiableList(result);
     }
 
     public void printAllTransactions() {
-        if (transactions.isEmpty()) {
-            System.out.println("No transactions yet.");
+        long started = metrics.start();
+        long[] counts = {0L, 0L}; // rows scanned, rows printed
+        openStreams.incrementAndGet();
+        try {
+            RowBitmap rows;
+            List<SealedMonth> sealed;
+            lock.readLock().lock();
+            try {
+                long sealedRows = sealedRowCount();
+                counts[0] = store.slotCount() + sealedRows;
+                counts[1] = store.liveCount() + sealedRows;
+                rows = built(filterIndex).matching(new TransactionQuery()).copy();
+                sealed = sealedMonths(ALL_MONTHS);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (rows.isEmpty() && sealed.isEmpty()) {
+                System.out.println("No transactions yet.");
+                return;
+            }
+            ReportSink out = ReportSink.toStdout();
+            out.writeLine(ReportSink.HEADER);
+            writeRows(out, rows, sealed, ALL_ROWS);
+            out.flush();
+        } finally {
+            openStreams.decrementAndGet();
+            metrics.record(ServiceMetrics.Operation.PRINT_ALL_TRANSACTIONS, started, counts[0], counts[1]);
+        }
+    }
+
+    /**
+     * Writes every transaction as CSV, with a header line, to the given file.
+     */
+    public void exportTransactions(Path file) throws IOException {
+        long started = metrics.start();
+        long[] counts = {0L, 0L};
+        openStreams.incrementAndGet();
+        try {
+            RowBitmap rows;
+            List<SealedMonth> sealed;
+            lock.readLock().lock();
+            try {
+                long sealedRows = sealedRowCount();
+                counts[0] = store.slotCount() + sealedRows;
+                counts[1] = store.liveCount() + sealedRows;
+                rows = built(filterIndex).matching(new TransactionQuery()).copy();
+                sealed = sealedMonths(ALL_MONTHS);
+            } finally {
+                lock.readLock().unlock();
+            }
+            try (ReportSink out = ReportSink.toFile(file)) {
+                out.writeLine(ReportSink.HEADER);
+                writeRows(out, rows, sealed, ALL_ROWS);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } finally {
+            openStreams.decrementAndGet();
+            metrics.record(ServiceMetrics.Operation.EXPORT_TRANSACTIONS, started, counts[0], counts[1]);
+        }
+    }
+
+    // Caller has a stream open and holds no lock; rows is the caller's own
+    // copy. Writes the rows, then those of the sealed months that filter
+    // accepts, like streamTransactions: each batch is rendered under the read
+    // lock (in parallel parts when there are many rows) and written to out
+    // with the lock released, so a slow terminal or disk holds up no writer.
+    // Rows deleted meanwhile are skipped. Returns the sealed rows written.
+    private long writeRows(ReportSink out, RowBitmap rows, List<SealedMonth> sealed, Predicate<SealedMonth.Reader> filter) {
+        for (RowBitmap batch : rows.split(parallelScan.batchRows(rows))) {
+            List<byte[]> rendered;
+            lock.readLock().lock();
+            try {
+                rendered = parallelScan.map(batch, part -> {
+                    ReportSink sink = ReportSink.toMemory(out);
+                    part.forEach(slot -> {
+                        if (store.isLive(slot)) {
+                            sink.writeRow(store, slot);
+                        }
+                    });
+                    return sink.toByteArray();
+                });
+            } finally {
+                lock.readLock().unlock();
+            }
+            rendered.forEach(out::writeRendered);
+        }
+        ReportSink sink = ReportSink.toMemory(out);
+        return forEachSealedBatch(sealed, filter, row -> sink.writeRow(store, row), slot -> sink.writeRow(store, slot),
+                () -> out.writeRendered(sink.takeBytes()));
+    }
+
+    // Amounts become cents here, so this is where NaN, the infinities, amounts
+    // under a cent and amounts over Money.MAX_AMOUNT are stopped. The cap keeps
+    // each row's cents exact; it does not bound the sum of many rows.
+    private static void checkAmount(double amount) {
+        if (!Money.isValidAmount(amount)) {
+            throw new IllegalArgumentException("Amount must be a positive number up to " + Money.MAX_CENTS / 100 + ": " + amount);
+        }
+    }
+
+    private ReentrantLock monthLock(int yearMonth) {
+        return monthLocks[Math.floorMod(yearMonth, MONTH_LOCK_STRIPES)];
+    }
+
+    private static int yearMonthOf(Transaction t) {
+        return TransactionStore.yearMonthIndex(t.getDate().getYear(), t.getDate().getMonthValue());
+    }
+
+    /**
+     * Locks the month of the transaction with this ID and returns that lock,
+     * or returns null if there is no such transaction. While the lock is held
+     * no other writer can delete the transaction.
+     */
+    private ReentrantLock lockMonthOf(String id) {
+        while (true) {
+            int yearMonth;
+            lock.readLock().lock();
+            try {
+                int slot = slotOf(id);
+                yearMonth = slot >= 0 ? store.yearMonth(slot) : coldMonthOf(id);
+                if (yearMonth < 0) {
+                    return null;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            ReentrantLock month = monthLock(yearMonth);
+            month.lock();
+            lock.readLock().lock();
+            try {
+                int slot = slotOf(id);
+                if (slot >= 0 && store.yearMonth(slot) == yearMonth) {
+                    return month;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            // The write lock only if the month is sealed; the stripe keeps it from being sealed again
+            if (coldMonthOfLocked(id) == yearMonth) {
+                lock.writeLock().lock();
+                try {
+                    if (coldMonthOf(id) == yearMonth) {
+                        rehydrate(yearMonth);
+                    }
+                    int slot = slotOf(id);
+                    if (slot >= 0 && store.yearMonth(slot) == yearMonth) {
+                        return month;
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            // Deleted (and maybe re-added in another month) meanwhile
+            month.unlock();
+        }
+    }
+
+    private int slotOf(String id) {
+        UUID uuid = parseId(id);
+        return uuid == null ? -1 : built(idIndex).get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    private int coldMonthOfLocked(String id) {
+        lock.readLock().lock();
+        try {
+            return coldMonthOf(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Year-month index of the sealed month holding the ID, or -1
+    private int coldMonthOf(String id) {
+        UUID uuid = parseId(id);
+        return uuid == null ? -1 : coldIds.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    private static UUID parseId(String id) {
+        try {
+            return UUID.fromString(id.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // The three mutations below keep every index in step with the store; the
+    // public methods add console output and journaling on top of them.
+
+    private int insert(long idHigh, long idLow, long cents, int epochDay, boolean income,
+                       String category, String description, String paymentMethod) {
+        int yearMonth = TransactionStore.yearMonthOfEpochDay(epochDay);
+        if (coldMonths.containsKey(yearMonth)) {
+            rehydrate(yearMonth);
+        }
+        int slot = store.append(idHigh, idLow, cents, epochDay, income, category, description, paymentMethod);
+        if (isBuilt(idIndex)) {
+            idIndex.put(idHigh, idLow, slot);
+        }
+        lastWritten.put(yearMonth, System.nanoTime());
+        totals.apply(yearMonth, income, cents);
+        budgetRules.apply(store, slot, 1);
+        for (RowIndex index : rowIndexes) {
+            if (isBuilt(index)) {
+                index.add(store, slot);
+            }
+        }
+        return slot;
+    }
+
+    private void update(int slot, long newCents, String newCategory, String newDescription, String newPaymentMethod) {
+        lastWritten.put(store.yearMonth(slot), System.nanoTime());
+        totals.apply(store.yearMonth(slot), store.isIncome(slot), newCents - store.cents(slot));
+        budgetRules.apply(store, slot, -1);
+        for (RowIndex index : rowIndexes) {
+            if (isBuilt(index)) {
+                index.remove(store, slot);
+            }
+        }
+        store.update(slot, newCents, newCategory, newDescription, newPaymentMethod);
+        budgetRules.apply(store, slot, 1);
+        for (RowIndex index : rowIndexes) {
+            if (isBuilt(index)) {
+                index.add(store, slot);
+            }
+        }
+    }
+
+    private void remove(int slot) {
+        if (isBuilt(idIndex)) {
+            idIndex.remove(store.idHigh(slot), store.idLow(slot));
+        }
+        lastWritten.put(store.yearMonth(slot), System.nanoTime());
+        totals.apply(store.yearMonth(slot), store.isIncome(slot), -store.cents(slot));
+        budgetRules.apply(store, slot, -1);
+        for (RowIndex index : rowIndexes) {
+            if (isBuilt(index)) {
+                index.remove(store, slot);
+            }
+        }
+        store.delete(slot);
+        compactIfNeeded();
+    }
+
+    /**
+     * Drops deleted slots once they outnumber live transactions, so the
+     * amortized cost per delete stays constant. Put off while a stream is open.
+     */
+    private void compactIfNeeded() {
+        int deleted = store.slotCount() - store.liveCount();
+        if (deleted < MIN_TOMBSTONES_TO_COMPACT || deleted < store.liveCount() || openStreams.get() > 0) {
             return;
         }
-        System.out.println("ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD");
-        for (Transaction t : transactions) {
-            System.out.println(t.toReportLine());
+        store.compact();
+        rebuildIndexes();
+    }
+
+    // Totals do not depend on slot numbers, so only the slot-keyed indexes need
+    // rebuilding; indexes keep what they hold for sealed months through clear().
+    // One not built yet stays that way.
+    private void rebuildIndexes() {
+        List<RowIndex> rebuilt = new ArrayList<>(rowIndexes);
+        rebuilt.removeIf(index -> !isBuilt(index));
+        boolean ids = isBuilt(idIndex);
+        if (ids) {
+            idIndex.clear();
+        }
+        rebuilt.forEach(RowIndex::clear);
+        for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+            if (ids) {
+                idIndex.put(store.idHigh(slot), store.idLow(slot), slot);
+            }
+            for (RowIndex index : rebuilt) {
+                index.rebuild(store, slot);
+            }
         }
     }
-    
+
+    private boolean isBuilt(Object index) {
+        return unbuilt.isEmpty() || !unbuilt.contains(index);
+    }
+
+    // Caller holds a lock. The index, first built from the store's rows if
+    // open() left it unbuilt; writers are held off meanwhile, and concurrent
+    // readers may race to build.
+    private <T> T built(T index) {
+        if (isBuilt(index)) {
+            return index;
+        }
+        synchronized (unbuilt) {
+            if (!isBuilt(index)) {
+                long started = metrics.start();
+                for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+                    if (index == idIndex) {
+                        idIndex.put(store.idHigh(slot), store.idLow(slot), slot);
+                    } else {
+                        ((RowIndex) index).rebuild(store, slot);
+                    }
+                }
+                unbuilt.remove(index);
+                metrics.record(ServiceMetrics.Operation.BUILD_INDEX, started, store.liveCount(), store.liveCount());
+            }
+        }
+        return index;
+    }
+
+    private void afterJournaledWrites(int count) {
+        writesSinceSnapshot += count;
+        if (writesSinceSnapshot >= snapshotEvery && (pendingSnapshot == null || pendingSnapshot.isDone())) {
+            startSnapshot(); // not waited for; a failed one is retried on a later write
+        }
+    }
+
+    /**
+     * Applies journal records during {@link #open}, bypassing output and journaling.
+     */
+    private class JournalReplayer implements TransactionJournal.Replayer {
+
+        @Override
+        public void add(long idHigh, long idLow, long cents, int epochDay, boolean income,
+                        String category, String description, String paymentMethod) {
+            if (built(idIndex).get(idHigh, idLow) < 0) {
+                insert(idHigh, idLow, cents, epochDay, income, category, description, paymentMethod);
+            }
+        }
+
+        @Override
+        public void edit(long idHigh, long idLow, long cents, String category, String description, String paymentMethod) {
+            int slot = built(idIndex).get(idHigh, idLow);
+            if (slot >= 0) {
+                update(slot, cents, category, description, paymentMethod);
+            }
+        }
+
+        @Override
+        public void delete(long idHigh, long idLow) {
+            int slot = built(idIndex).get(idHigh, idLow);
+            if (slot >= 0) {
+                remove(slot);
+            }
+        }
+    }
+
     // *** NEW HELPER METHOD: Get total income for a specific month ***
     public double getMonthlyIncome(int monthNumber) {
-        return transactions.stream()
-                .filter(t -> t.isIncome() && t.getDate().getMonthValue() == monthNumber)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toAmount(totals.monthly(monthNumber, true));
     }
     
     // *** NEW HELPER METHOD: Get total expense for a specific month ***
     public double getMonthlyExpense(int monthNumber) {
-        return transactions.stream()
-                .filter(t -> !t.isIncome() && t.getDate().getMonthValue() == monthNumber)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toAmount(totals.monthly(monthNumber, false));
     }
 
     public double getTotalIncome() {
-        return transactions.stream()
-                .filter(Transaction::isIncome)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toAmount(totals.total(true));
     }
 
     public double getTotalExpense() {
-        return transactions.stream()
-                .filter(t -> !t.isIncome())
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toAmount(totals.total(false));
     }
 
     public double getMonthlyNetBalance(int monthNumber) {
@@ -71,6 +2050,7 @@ public class FinanceService {
      * Calculates and prints the total expense and net balance for a specific month (Output 4).
      */
     public void printMonthlySummary(int monthNumber) {
+        long started = metrics.start();
         String monthName = getMonthName(monthNumber);
 
         double monthlyIncome = getMonthlyIncome(monthNumber);
@@ -83,6 +2063,131 @@ public class FinanceService {
         System.out.printf("Total Expense: %.2f%n", monthlyExpense);
         System.out.printf("Net Balance (Savings for month): %.2f%n", netBalance);
         System.out.println("----------------------------------------------");
+        metrics.record(ServiceMetrics.Operation.PRINT_MONTHLY_SUMMARY, started);
+    }
+
+    // The month-number methods above add up that month across every year. The
+    // variants below take the year into account; each reads only the
+    // year-month partitions (running sums, row bitmaps, top lists) that
+    // overlap the period asked for.
+
+    public double getMonthlyIncome(YearMonth month) {
+        return Money.toAmount(totals.yearMonth(month, true));
+    }
+
+    public double getMonthlyExpense(YearMonth month) {
+        return Money.toAmount(totals.yearMonth(month, false));
+    }
+
+    public double getMonthlyNetBalance(YearMonth month) {
+        return getMonthlyIncome(month) - getMonthlyExpense(month);
+    }
+
+    public double getYearlyIncome(int year) {
+        return Money.toAmount(totals.between(TransactionStore.yearMonthIndex(year, 1), TransactionStore.yearMonthIndex(year, 12), true));
+    }
+
+    public double getYearlyExpense(int year) {
+        return Money.toAmount(totals.between(TransactionStore.yearMonthIndex(year, 1), TransactionStore.yearMonthIndex(year, 12), false));
+    }
+
+    /**
+     * Total income dated from {@code from} to {@code to}, both inclusive.
+     */
+    public double getIncomeBetween(LocalDate from, LocalDate to) {
+        return Money.toAmount(centsBetween(from, to, true));
+    }
+
+    /**
+     * Total expense dated from {@code from} to {@code to}, both inclusive.
+     */
+    public double getExpenseBetween(LocalDate from, LocalDate to) {
+        return Money.toAmount(centsBetween(from, to, false));
+    }
+
+    /**
+     * Returns up to {@code k} largest expenses dated from {@code from} to
+     * {@code to} (both inclusive), largest first.
+     */
+    public List<Transaction> topExpenses(LocalDate from, LocalDate to, int k) {
+        long started = metrics.start();
+        int first = TransactionStore.yearMonthIndex(from.getYear(), from.getMonthValue());
+        int last = TransactionStore.yearMonthIndex(to.getYear(), to.getMonthValue());
+        readLockRehydrated(yearMonth -> yearMonth >= first && yearMonth <= last);
+        try {
+            return materialize(built(topExpenseIndex).topBetween(store, (int) from.toEpochDay(), (int) to.toEpochDay(), k));
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.TOP_EXPENSES, started);
+        }
+    }
+
+    // Whole months come from the running sums; only a partly covered first or
+    // last month has its rows scanned, or its per-day totals read if sealed
+    private long centsBetween(LocalDate from, LocalDate to, boolean income) {
+        if (from.isAfter(to)) {
+            return 0L;
+        }
+        long started = metrics.start();
+        int first = TransactionStore.yearMonthIndex(from.getYear(), from.getMonthValue());
+        int last = TransactionStore.yearMonthIndex(to.getYear(), to.getMonthValue());
+        int firstWhole = from.getDayOfMonth() == 1 ? first : first + 1;
+        int lastWhole = to.getDayOfMonth() == to.lengthOfMonth() ? last : last - 1;
+        long cents = totals.between(firstWhole, lastWhole, income);
+        long scanned = 0L;
+        long matched = 0L;
+        for (int yearMonth : first == last ? new int[] {first} : new int[] {first, last}) {
+            if (yearMonth >= firstWhole && yearMonth <= lastWhole) {
+                continue;
+            }
+            TransactionQuery query = new TransactionQuery()
+                    .month(YearMonth.of(TransactionStore.yearOf(yearMonth), TransactionStore.monthOf(yearMonth)));
+            long fromDay = from.toEpochDay();
+            long toDay = to.toEpochDay();
+            lock.readLock().lock();
+            try {
+                SealedMonth sealed = coldMonths.get(yearMonth);
+                if (sealed != null) {
+                    cents += sealed.centsBetween(fromDay, toDay, income);
+                    continue;
+                }
+                for (long[] partial : parallelScan.map(built(filterIndex).matching(income ? query.incomes() : query.expenses()), part -> {
+                    long[] sums = {0L, 0L, 0L}; // cents, rows scanned, rows matched
+                    part.forEach(slot -> {
+                        sums[1]++;
+                        if (store.epochDay(slot) >= fromDay && store.epochDay(slot) <= toDay) {
+                            sums[0] += store.cents(slot);
+                            sums[2]++;
+                        }
+                    });
+                    return sums;
+                })) {
+                    cents += partial[0];
+                    scanned += partial[1];
+                    matched += partial[2];
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        metrics.record(ServiceMetrics.Operation.AMOUNT_BETWEEN, started, scanned, matched);
+        return cents;
+    }
+
+    /**
+     * Prints income, expense and net balance for one month of one year.
+     */
+    public void printMonthlySummary(YearMonth month) {
+        long started = metrics.start();
+        double monthlyIncome = getMonthlyIncome(month);
+        double monthlyExpense = getMonthlyExpense(month);
+
+        System.out.println("--- Monthly Summary for " + getMonthName(month.getMonthValue()) + " " + month.getYear() + " ---");
+        System.out.printf("Total Income: %.2f%n", monthlyIncome);
+        System.out.printf("Total Expense: %.2f%n", monthlyExpense);
+        System.out.printf("Net Balance (Savings for month): %.2f%n", monthlyIncome - monthlyExpense);
+        System.out.println("----------------------------------------------");
+        metrics.record(ServiceMetrics.Operation.PRINT_MONTHLY_SUMMARY, started);
     }
 
     /**
@@ -97,23 +2202,23 @@ public class FinanceService {
 
     public double getTotalYearlySavings() {
         // Recalculate total yearly savings from all monthly balances (positive only)
-        totalYearlySavings = 0.0;
+        long savingsCents = 0L;
         for (int i = 1; i <= 12; i++) {
-            double net = getMonthlyNetBalance(i);
+            long net = totals.monthly(i, true) - totals.monthly(i, false);
             if (net > 0) {
-                totalYearlySavings += net;
+                savingsCents += net;
             }
         }
-        return totalYearlySavings;
+        return Money.toAmount(savingsCents);
     }
 
     public double getSavingsRatio() {
-        double income = getTotalIncome();
-        double expense = getTotalExpense();
+        long income = totals.total(true);
+        long expense = totals.total(false);
         if (income <= 0) {
             return 0.0;
         }
-        return (income - expense) / income;
+        return (double) (income - expense) / income;
     }
 
     // Very simple CSV writer for monthly_summary.csv
@@ -123,144 +2228,450 @@ public class FinanceService {
         double savingsRatio = getSavingsRatio();
         double yearlySavings = getTotalYearlySavings();
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
-            writer.write("totalIncome,totalExpense,netBalance,savingsRatio,totalYearlySavings");
-            writer.newLine();
-            writer.write(String.format(Locale.US, "%.2f,%.2f,%.2f,%.2f,%.2f", income, expense, (income - expense), savingsRatio, yearlySavings));
-            writer.newLine();
+        try (ReportSink writer = ReportSink.toFile(Paths.get(fileName))) {
+            writer.writeLine("totalIncome,totalExpense,netBalance,savingsRatio,totalYearlySavings");
+            writer.writeLine(String.format(Locale.US, "%.2f,%.2f,%.2f,%.2f,%.2f", income, expense, (income - expense), savingsRatio, yearlySavings));
+            writer.flush();
             System.out.println("Monthly summary written to " + fileName);
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             System.out.println("Error writing summary: " + e.getMessage());
         }
     }
 
+    // The number of months sealed now
+    int sealedMonthCount() {
+        lock.readLock().lock();
+        try {
+            return coldMonths.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Prints ledger size, heap use and the per-operation metrics recorded so far.
+     */
+    public void printMetrics() {
+        int live;
+        int slots;
+        long columnBytes;
+        long coldRows = 0L;
+        long coldBytes = 0L;
+        int coldCount;
+        lock.readLock().lock();
+        try {
+            live = store.liveCount();
+            slots = store.slotCount();
+            columnBytes = store.columnBytes();
+            coldCount = coldMonths.size();
+            for (SealedMonth sealed : coldMonths.values()) {
+                coldRows += sealed.rows();
+                coldBytes += sealed.bytes();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long committed = runtime.totalMemory();
+        long used = committed - runtime.freeMemory();
+        double mb = 1024.0 * 1024.0;
+
+        System.out.println("\n=== Service Metrics ===");
+        System.out.printf("Transactions: %d live, %d deleted or sealed awaiting compaction%n", live, slots - live);
+        System.out.printf("Column storage: %.2f MB%n", columnBytes / mb);
+        System.out.printf("Sealed months: %d, holding %d transactions in %.2f MB%n", coldCount, coldRows, coldBytes / mb);
+        System.out.printf("Heap: %.2f MB used, %.2f MB committed, %.2f MB max%n", used / mb, committed / mb,
+                runtime.maxMemory() / mb);
+        System.out.println("---------------------------------");
+        metrics.print(System.out);
+        System.out.printf("Slow threshold: %d ms (also recorded as JFR event personalfinance.SlowOperation)%n",
+                metrics.slowThreshold().toMillis());
+        System.out.printf("Parallel scans: %d threads, from %d rows%n", parallelScan.parallelism(),
+                parallelScan.thresholdRows());
+        System.out.println("-----------------------------------");
+    }
+
     /**
      * Edits an existing transaction by ID.
+     *
+     * @throws IllegalArgumentException if the new amount is not valid (see {@link Money#isValidAmount})
      */
     public boolean editTransaction(String id, double newAmount, String newCategory, String newDescription, String newPaymentMethod) {
-        for (Transaction t : transactions) {
-            if (t.getId().equals(id)) {
-                // NOTE: A more complex system would check the monthly balance after editing, 
-                // but for simplicity, we'll allow editing a transaction without the check.
-                t.setAmount(newAmount);
-                t.setCategory(newCategory);
-                t.setDescription(newDescription);
-                t.setPaymentMethod(newPaymentMethod);
-                System.out.println("Transaction " + id + " updated successfully.");
-                return true;
-            }
-        }
-        System.out.println("Transaction with ID " + id + " not found.");
-        return false;
+        return edit(id, newAmount, newCategory, newDescription, newPaymentMethod).print();
+    }
+
+    /**
+     * Like {@link #editTransaction}, but prints nothing: the result tells
+     * whether the transaction was found and edited and, if not, why.
+     *
+     * @throws IllegalArgumentException if the new amount is not valid (see {@link Money#isValidAmount})
+     */
+    public WriteResult edit(String id, double newAmount, String newCategory, String newDescription, String newPaymentMethod) {
+        checkAmount(newAmount);
+        long started = metrics.start();
+        ReentrantLock month = lockMonthOf(id);
+        if (month == null) {
+            metrics.record(ServiceMetrics.Operation.EDIT_TRANSACTION, started);
+            return notFound(id);
+        }
+        // NOTE: A more complex system would check the monthly balance after editing, 
+        // but for simplicity, we'll allow editing a transaction without the check.
+        long newCents = Money.toCents(newAmount);
+        List<String> messages = new ArrayList<>();
+        String rejection = null;
+        try {
+            // The month lock keeps the row, and its month's totals, as they are until it is released
+            ChangeEvent.Row before;
+            ByteBuffer record;
+            lock.readLock().lock();
+            try {
+                int slot = slotOf(id);
+                if (!budgetRules.isEmpty()) {
+                    BudgetRules.Row row = BudgetRules.Row.of(store, slot);
+                    rejection = budgetRejection(row, new BudgetRules.Row(row.yearMonth(), row.income(),
+                            newCategory, newPaymentMethod, newCents), messages);
+                }
+                if (rejection != null) {
+                    messages.add("Edit rejected: " + rejection + ".");
+                    before = null;
+                    record = null;
+                } else {
+                    before = changeRow(slot);
+                    record = journal == null ? null : TransactionJournal.editRecord(store.idHigh(slot), store.idLow(slot),
+                            newCents, newCategory, newDescription, newPaymentMethod);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (before != null) {
+                ChangeFeed feed;
+                lock.writeLock().lock();
+                try {
+                    if (record != null) {
+                        journal.append(record);
+                    }
+                    update(slotOf(id), newCents, newCategory, newDescription, newPaymentMethod); // compaction may have moved it
+                    if (record != null) {
+                        afterJournaledWrites(1);
+                    }
+                    feed = changeFeed;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                if (feed != null) {
+                    feed.publish(ChangeEvent.Type.EDITED, before, new ChangeEvent.Row(before.id(), before.date(),
+                            before.income(), Money.toAmount(newCents), newCategory, newDescription, newPaymentMethod));
+                }
+                messages.add("Transaction " + id + " updated successfully.");
+            }
+        } finally {
+            month.unlock();
+            metrics.record(ServiceMetrics.Operation.EDIT_TRANSACTION, started);
+        }
+        return new WriteResult(rejection == null ? WriteResult.Status.APPLIED : WriteResult.Status.REJECTED, rejection,
+                messages);
     }
 
     /**
      * Deletes a transaction by ID.
      */
     public boolean deleteTransaction(String id) {
-        boolean removed = transactions.removeIf(t -> t.getId().equals(id));
-        if (removed) {
-            System.out.println("Transaction " + id + " deleted successfully.");
-        } else {
-            System.out.println("Transaction with ID " + id + " not found.");
+        return delete(id).print();
+    }
+
+    /**
+     * Like {@link #deleteTransaction}, but prints nothing: the result tells
+     * whether the transaction was found and deleted and, if not, why.
+     */
+    public WriteResult delete(String id) {
+        long started = metrics.start();
+        ReentrantLock month = lockMonthOf(id);
+        if (month == null) {
+            metrics.record(ServiceMetrics.Operation.DELETE_TRANSACTION, started);
+            return notFound(id);
+        }
+        List<String> messages = new ArrayList<>();
+        String rejection;
+        try {
+            ChangeEvent.Row before;
+            ByteBuffer record;
+            lock.readLock().lock();
+            try {
+                int slot = slotOf(id);
+                rejection = budgetRules.isEmpty() ? null
+                        : budgetRejection(BudgetRules.Row.of(store, slot), null, messages);
+                if (rejection != null) {
+                    messages.add("Delete rejected: " + rejection + ".");
+                    before = null;
+                    record = null;
+                } else {
+                    before = changeRow(slot);
+                    record = journal == null ? null : TransactionJournal.deleteRecord(store.idHigh(slot), store.idLow(slot));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (before != null) {
+                ChangeFeed feed;
+                lock.writeLock().lock();
+                try {
+                    if (record != null) {
+                        journal.append(record);
+                    }
+                    remove(slotOf(id));
+                    if (record != null) {
+                        afterJournaledWrites(1);
+                    }
+                    feed = changeFeed;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                if (feed != null) {
+                    feed.publish(ChangeEvent.Type.DELETED, before, null);
+                }
+                messages.add("Transaction " + id + " deleted successfully.");
+            }
+        } finally {
+            month.unlock();
+            metrics.record(ServiceMetrics.Operation.DELETE_TRANSACTION, started);
         }
-        return removed;
+        return new WriteResult(rejection == null ? WriteResult.Status.APPLIED : WriteResult.Status.REJECTED, rejection,
+                messages);
+    }
+
+    private static WriteResult notFound(String id) {
+        String reason = "Transaction with ID " + id + " not found";
+        return new WriteResult(WriteResult.Status.NOT_FOUND, reason, List.of(reason + "."));
     }
 
     /**
      * Finds and prints the largest expense for each month (Output 7).
      */
     public void findLargestExpensePerMonth() {
+        long started = metrics.start();
+        List<String> lines = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int month = 1; month <= 12; month++) {
+                int monthNumber = month;
+                addLargestExpense(lines, month, built(topExpenseIndex).topOfMonthNumber(store, month, 1),
+                        sealedMonths(yearMonth -> TransactionStore.monthOf(yearMonth) == monthNumber));
+            }
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.LARGEST_EXPENSE_PER_MONTH, started);
+        }
         System.out.println("\n--- Largest Expense Per Month ---");
-        transactions.stream()
-                .filter(t -> !t.isIncome())
-                .collect(Collectors.groupingBy(t -> t.getDate().getMonthValue()))
-                .forEach((month, monthlyExpenses) -> { 
-                    Transaction largest = monthlyExpenses.stream()
-                            .max(Comparator.comparingDouble(Transaction::getAmount))
-                            .orElse(null);
-                    if (largest != null) {
-                        // Displaying month name instead of number
-                        System.out.printf("%s: %.2f (%s)%n", getMonthName(month), largest.getAmount(), largest.getDescription()); 
-                    }
-                });
+        lines.forEach(System.out::println);
+        System.out.println("-----------------------------------");
+    }
+
+    /**
+     * Prints the largest expense of each month of one year.
+     */
+    public void findLargestExpensePerMonth(int year) {
+        long started = metrics.start();
+        List<String> lines = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int month = 1; month <= 12; month++) {
+                int yearMonth = TransactionStore.yearMonthIndex(year, month);
+                addLargestExpense(lines, month, built(topExpenseIndex).top(store, yearMonth, 1), sealedMonths(m -> m == yearMonth));
+            }
+        } finally {
+            lock.readLock().unlock();
+            metrics.record(ServiceMetrics.Operation.LARGEST_EXPENSE_PER_MONTH, started);
+        }
+        System.out.println("\n--- Largest Expense Per Month (" + year + ") ---");
+        lines.forEach(System.out::println);
         System.out.println("-----------------------------------");
     }
 
+    // Caller holds the read lock. A live row wins a tie, then the earlier sealed
+    // month; a sealed month's largest expense was found when it was sealed.
+    private void addLargestExpense(List<String> lines, int month, int[] largest, List<SealedMonth> sealed) {
+        long cents = largest.length > 0 ? store.cents(largest[0]) : -1L;
+        String description = largest.length > 0 ? store.description(largest[0]) : null;
+        for (SealedMonth sealedMonth : sealed) {
+            int row = sealedMonth.largestExpenseRow();
+            if (row >= 0) {
+                SealedMonth.Reader reader = sealedMonth.reader(row);
+                reader.next();
+                if (reader.cents() > cents) {
+                    cents = reader.cents();
+                    description = reader.description();
+                }
+            }
+        }
+        if (description != null) {
+            // Displaying month name instead of number
+            lines.add(String.format("%s: %.2f (%s)", getMonthName(month), Money.toAmount(cents), description));
+        }
+    }
+
     /**
      * Searches for expenses by category (case-insensitive).
      */
     public void searchExpenseByCategory(String category) {
-        String searchCat = category.trim().toLowerCase();
+        long started = metrics.start();
+        long matched = 0L;
+        openStreams.incrementAndGet();
+        try {
+            String searchCat = category.trim().toLowerCase();
+            RowBitmap rows;
+            List<SealedMonth> sealed;
+            Predicate<SealedMonth.Reader> sealedRows;
+            boolean anySealed;
+            long totalCents = 0L;
+            lock.readLock().lock();
+            try {
+                // The index yields each matching category's expense rows and running total
+                rows = categoryExpenseRows(searchCat);
+                sealedRows = sealedCategoryExpenses(searchCat);
+                anySealed = anySealedRow(ALL_MONTHS, sealedRows);
+                sealed = sealedMonths(ALL_MONTHS);
+                for (int id : built(categoryIndex).matching(searchCat)) {
+                    totalCents += categoryIndex.expenseCents(id);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            matched = rows.cardinality();
 
-        List<Transaction> matchingExpenses = transactions.stream()
-                .filter(t -> !t.isIncome() && t.getCategory().trim().toLowerCase().contains(searchCat))
-                .collect(Collectors.toList());
+            ReportSink out = ReportSink.toStdout();
+            out.writeLine("\n--- Expenses by Category: \"" + category + "\" ---");
+            if (rows.isEmpty() && !anySealed) {
+                out.writeLine("No expenses found for category: " + category);
+                out.flush();
+                return;
+            }
+            out.writeLine(ReportSink.HEADER);
+            matched += writeRows(out, rows, sealed, sealedRows);
 
-        System.out.println("\n--- Expenses by Category: \"" + category + "\" ---");
-        if (matchingExpenses.isEmpty()) {
-            System.out.println("No expenses found for category: " + category);
-            return;
+            out.writeFormat("Total for Category: %.2f%n", Money.toAmount(totalCents));
+            out.writeLine("---------------------------------------------");
+            out.flush();
+        } finally {
+            openStreams.decrementAndGet();
+            // The category total is kept by the index, so only the printed rows are read
+            metrics.record(ServiceMetrics.Operation.SEARCH_EXPENSE_BY_CATEGORY, started, matched, matched);
         }
-
-        System.out.println("ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD");
-        matchingExpenses.forEach(t -> System.out.println(t.toReportLine()));
-        System.out.printf("Total for Category: %.2f%n", matchingExpenses.stream().mapToDouble(Transaction::getAmount).sum());
-        System.out.println("---------------------------------------------");
     }
 
     /**
      * Detects and prints duplicate transactions.
      */
     public void detectDuplicateTransactions() {
-        System.out.println("\n--- Duplicate Transactions Detected ---");
-
-        Map<Transaction, List<Transaction>> map = transactions.stream()
-                .collect(Collectors.groupingBy(
-                        t -> t, // Group by the transaction object (uses equals/hashCode)
-                        Collectors.toList()
-                ));
+        long started = metrics.start();
+        long matched = 0L;
+        openStreams.incrementAndGet();
+        try {
+            List<DuplicateIndex.DuplicateSet> sets;
+            lock.readLock().lock();
+            try {
+                sets = built(duplicateIndex).duplicateSets(store, sealedMonths(ALL_MONTHS));
+            } finally {
+                lock.readLock().unlock();
+            }
+            System.out.println("\n--- Duplicate Transactions Detected ---");
 
-        boolean found = false;
-        for (List<Transaction> list : map.values()) {
-            if (list.size() > 1) {
-                found = true;
-                System.out.println("\nDUPLICATE SET:");
-                System.out.println("ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD");
-                list.forEach(t -> System.out.println(t.toReportLine()));
+            // The sets are rendered a batch at a time under the read lock and written without it
+            ReportSink out = ReportSink.toStdout();
+            ReportSink rendered = ReportSink.toMemory(out);
+            for (int from = 0; from < sets.size(); ) {
+                lock.readLock().lock();
+                try {
+                    for (int inBatch = 0; from < sets.size() && inBatch < STREAM_BATCH_ROWS; from++) {
+                        DuplicateIndex.DuplicateSet set = sets.get(from);
+                        matched += set.size();
+                        inBatch += set.size();
+                        rendered.writeLine("\nDUPLICATE SET:");
+                        rendered.writeLine(ReportSink.HEADER);
+                        for (int slot : set.slots()) {
+                            if (store.isLive(slot)) {
+                                rendered.writeRow(store, slot);
+                            }
+                        }
+                        for (int i = 0; i < set.sealedRows().length; i++) {
+                            SealedMonth.Reader row = set.sealedMonths()[i].reader(set.sealedRows()[i]);
+                            row.next();
+                            rendered.writeRow(store, row);
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                out.writeRendered(rendered.takeBytes());
             }
-        }
 
-        if (!found) {
-            System.out.println("No duplicate transactions found (based on amount, category, description, and type).");
+            if (sets.isEmpty()) {
+                out.writeLine("No duplicate transactions found (based on amount, category, description, and type).");
+            }
+            out.writeLine("------------------------------------------");
+            out.flush();
+        } finally {
+            openStreams.decrementAndGet();
+            metrics.record(ServiceMetrics.Operation.DETECT_DUPLICATES, started, matched, matched);
         }
-        System.out.println("------------------------------------------");
     }
 
     /**
      * Searches for transactions by payment method.
      */
     public void searchTransactionByPaymentMethod(String method) {
-        String searchMethod = method.trim().toLowerCase();
+        long started = metrics.start();
+        long scanned = 0L;
+        long matched = 0L;
+        openStreams.incrementAndGet();
+        try {
+            TransactionQuery byMethod = new TransactionQuery().paymentMethod(method);
+            RowBitmap rows;
+            List<SealedMonth> sealed;
+            Predicate<SealedMonth.Reader> sealedRows;
+            boolean anySealed;
+            long incomeCents;
+            long expenseCents;
+            lock.readLock().lock();
+            try {
+                rows = built(filterIndex).matching(byMethod).copy();
+                sealedRows = sealedMatching(byMethod);
+                anySealed = anySealedRow(ALL_MONTHS, sealedRows);
+                sealed = sealedMonths(ALL_MONTHS);
+                scanned = rows.cardinality() + sealedRowCount();
+                incomeCents = built(rollupCube).sumCents(store, new TransactionQuery().paymentMethod(method).incomes());
+                expenseCents = rollupCube.sumCents(store, new TransactionQuery().paymentMethod(method).expenses());
+            } finally {
+                lock.readLock().unlock();
+            }
+            matched = rows.cardinality();
 
-        List<Transaction> matchingTransactions = transactions.stream()
-                .filter(t -> t.getPaymentMethod().trim().toLowerCase().equals(searchMethod))
-                .collect(Collectors.toList());
+            ReportSink out = ReportSink.toStdout();
+            out.writeLine("\n--- Transactions by Payment Method: \"" + method + "\" ---");
+            if (rows.isEmpty() && !anySealed) {
+                scanned = 0L;
+                out.writeLine("No transactions found for payment method: " + method);
+                out.flush();
+                return;
+            }
+            out.writeLine(ReportSink.HEADER);
+            matched += writeRows(out, rows, sealed, sealedRows);
 
-        System.out.println("\n--- Transactions by Payment Method: \"" + method + "\" ---");
-        if (matchingTransactions.isEmpty()) {
-            System.out.println("No transactions found for payment method: " + method);
-            return;
+            out.writeFormat("Total Income via %s: %.2f%n", method, Money.toAmount(incomeCents));
+            out.writeFormat("Total Expense via %s: %.2f%n", method, Money.toAmount(expenseCents));
+            out.writeLine("-------------------------------------------------");
+            out.flush();
+        } finally {
+            openStreams.decrementAndGet();
+            metrics.record(ServiceMetrics.Operation.SEARCH_BY_PAYMENT_METHOD, started, scanned, matched);
         }
+    }
 
-        System.out.println("ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD");
-        matchingTransactions.forEach(t -> System.out.println(t.toReportLine()));
-
-        double totalIncome = matchingTransactions.stream().filter(Transaction::isIncome).mapToDouble(Transaction::getAmount).sum();
-        double totalExpense = matchingTransactions.stream().filter(t -> !t.isIncome()).mapToDouble(Transaction::getAmount).sum();
-
-        System.out.printf("Total Income via %s: %.2f%n", method, totalIncome);
-        System.out.printf("Total Expense via %s: %.2f%n", method, totalExpense);
-        System.out.println("-------------------------------------------------");
+    // Caller holds the read lock; searchCat is trimmed and lower-cased
+    private RowBitmap categoryExpenseRows(String searchCat) {
+        RowBitmap rows = new RowBitmap();
+        for (int id : built(categoryIndex).matching(searchCat)) {
+            rows = RowBitmap.or(rows, categoryIndex.expenseRows(id));
+        }
+        return rows;
     }
 }
\ No newline at end of file
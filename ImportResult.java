@@ -0,0 +1,40 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk CSV import: how many rows were added and, for every
+ * rejected line, its line number and the reason.
+ */
+public class ImportResult {
+
+    /**
+     * A rejected input line. Line numbers start at 1 and count the header.
+     */
+    public record Error(long lineNumber, String reason) {
+
+        @Override
+        public String toString() {
+            return "Line " + lineNumber + ": " + reason;
+        }
+    }
+
+    private final long imported;
+    private final List<Error> errors;
+
+    ImportResult(long imported, List<Error> errors) {
+        this.imported = imported;
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return errors.size();
+    }
+
+    public List<Error> getErrors() {
+        return errors;
+    }
+}
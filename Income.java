@@ -11,6 +11,11 @@ public class Income extends Transaction {
         super(amount, category, description, paymentMethod, date);
     }
 
+    // Constructor used by the transaction store to rebuild a row with its stored ID
+    Income(long idHigh, long idLow, double amount, String category, String description, String paymentMethod, LocalDate date) {
+        super(idHigh, idLow, amount, category, description, paymentMethod, date);
+    }
+
     @Override
     public boolean isIncome() {
         return true;
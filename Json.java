@@ -0,0 +1,206 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The little JSON the HTTP API needs: writing strings, numbers and
+ * transactions into a StringBuilder, and reading a flat request object whose
+ * values are strings, numbers, booleans or null.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static StringBuilder string(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"');
+    }
+
+    // Amounts are whole cents, so two decimals are exact
+    static StringBuilder amount(StringBuilder out, double value) {
+        long cents = Money.toCents(value);
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        if (cents % 100 < 10) {
+            out.append('0');
+        }
+        return out.append(cents % 100);
+    }
+
+    static StringBuilder transaction(StringBuilder out, Transaction t) {
+        out.append("{\"id\":");
+        string(out, t.getId());
+        out.append(",\"date\":\"").append(t.getDate()).append("\",\"type\":\"")
+                .append(t.isIncome() ? "income" : "expense").append("\",\"category\":");
+        string(out, t.getCategory());
+        out.append(",\"amount\":");
+        amount(out, t.getAmount());
+        out.append(",\"description\":");
+        string(out, t.getDescription());
+        out.append(",\"paymentMethod\":");
+        string(out, t.getPaymentMethod());
+        return out.append('}');
+    }
+
+    /**
+     * Parses {@code {"name": value, ...}} into a map of names to String,
+     * Double, Boolean or null. Nested objects and arrays are rejected.
+     *
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    static Map<String, Object> parseObject(String text) {
+        return new Parser(text).object();
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    skipWhitespace();
+                    String name = string();
+                    expect(':');
+                    result.put(name, value());
+                } while (consume(','));
+                expect('}');
+            }
+            skipWhitespace();
+            if (position != text.length()) {
+                throw error("Unexpected text after the object");
+            }
+            return result;
+        }
+
+        private Object value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                int start = position;
+                while (position < text.length() && "+-.eE0123456789".indexOf(text.charAt(position)) >= 0) {
+                    position++;
+                }
+                try {
+                    return Double.parseDouble(text.substring(start, position));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number");
+                }
+            }
+            for (String literal : new String[] {"true", "false", "null"}) {
+                if (text.startsWith(literal, position)) {
+                    position += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+            throw error("Expected a string, number, boolean or null");
+        }
+
+        private String string() {
+            if (position >= text.length() || text.charAt(position) != '"') {
+                throw error("Expected a string");
+            }
+            position++;
+            StringBuilder out = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case '"', '\\', '/' -> out.append(escaped);
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'n' -> out.append('\n');
+                    case 'r' -> out.append('\r');
+                    case 't' -> out.append('\t');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw error("Invalid escape");
+                        }
+                        try {
+                            out.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid escape");
+                        }
+                        position += 4;
+                    }
+                    default -> throw error("Invalid escape");
+                }
+            }
+        }
+
+        private char peek() {
+            skipWhitespace();
+            return position < text.length() ? text.charAt(position) : '\0';
+        }
+
+        private boolean consume(char c) {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSON at offset " + position + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,525 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of every live transaction, sealed months included,
+ * tagged with the journal
+ * sequence number it covers. On startup the snapshot is loaded first and only
+ * journal records after that sequence number are replayed.
+ *
+ * The file has a fixed little-endian layout so it can be memory-mapped and
+ * copied into the store column by column, without parsing:
+ * <pre>
+ *   header (64 bytes)
+ *     int  magic "PFMS", int version
+ *     long journal sequence number covered
+ *     int  row count n, int aggregate count m
+ *     long offsets of the category dictionary, payment method dictionary,
+ *          description heap and aggregate block
+ *   column blocks, each 8-byte aligned
+ *     long[n] ID high bits, long[n] ID low bits, long[n] cents,
+ *     int[n] epoch day, int[n] year-month index,
+ *     long[(n + 63) / 64] income bits,
+ *     int[n] category code, int[n] payment method code,
+ *     long[n] duplicate fingerprint,
+ *     long[n + 1] description offsets into the heap
+ *   string dictionaries: int count, then (int length, UTF-8 bytes) per value
+ *   description heap: UTF-8 bytes
+ *   aggregates: m x (int year-month, int unused, long income cents, long expense cents)
+ * </pre>
+ *
+ * Descriptions stay in the mapped heap and are decoded only when a row is
+ * read; the fingerprints let the duplicate index be rebuilt without reading
+ * them. Monthly totals come from the aggregate block instead of a pass over
+ * the rows.
+ *
+ * The file is written to a temporary name, fsynced and then renamed. A
+ * ledger directory keeps its snapshots as numbered generations
+ * ({@code snapshot-<n>.bin}; see {@link #latest}) rather than renaming each
+ * one over the last: the previous file stays memory-mapped for descriptions
+ * not yet read, and Windows refuses to replace a mapped file. A crash
+ * mid-write leaves the older generations intact, and they are deleted once
+ * nothing maps them any more.
+ */
+final class LedgerSnapshot {
+
+    private static final int MAGIC = 0x50464D53; // "PFMS"
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 64;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final int HEAP_SEGMENT_BITS = 30; // the description heap is mapped in 1 GB pieces
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private LedgerSnapshot() {
+    }
+
+    /**
+     * The file for generation {@code generation} of a directory's snapshots.
+     */
+    static Path file(Path directory, long generation) {
+        return directory.resolve(FILE_PREFIX + generation + FILE_SUFFIX);
+    }
+
+    /**
+     * The newest snapshot generation in the directory, or 0 if it has none.
+     */
+    static long latest(Path directory) throws IOException {
+        long latest = 0L;
+        for (long generation : generations(directory)) {
+            latest = Math.max(latest, generation);
+        }
+        return latest;
+    }
+
+    /**
+     * Deletes the directory's snapshots older than {@code generation}. One
+     * that cannot be deleted yet (still mapped, on Windows) is left for a
+     * later call.
+     */
+    static void deleteOlder(Path directory, long generation) throws IOException {
+        for (long older : generations(directory)) {
+            if (older < generation) {
+                try {
+                    Files.deleteIfExists(file(directory, older));
+                } catch (IOException e) {
+                    // still in use; the next snapshot or open tries again
+                }
+            }
+        }
+    }
+
+    private static List<Long> generations(Path directory) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Writes the store's live rows followed by the rows of the sealed months,
+     * which are decoded a column at a time and load back as ordinary rows.
+     * {@code aggregates} are the {income, expense} cents per year-month index
+     * (see {@link MonthlyTotals#byYearMonth()}). Descriptions are encoded
+     * once: the pass writing their offsets spools the bytes to a side file,
+     * which is then copied in as the heap. {@code file} should be a new
+     * generation's (see {@link #file}), not one that may still be mapped.
+     */
+    static void write(Path file, TransactionStore store, Collection<SealedMonth> sealed, Map<Integer, long[]> aggregates,
+                      long lastSeq) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int[] slots = new int[store.liveCount()];
+        for (int slot = store.nextLive(0), i = 0; slot >= 0; slot = store.nextLive(slot + 1)) {
+            slots[i++] = slot;
+        }
+        long rowCount = slots.length;
+        for (SealedMonth month : sealed) {
+            rowCount += month.rows();
+        }
+        if (8 * (rowCount + 1) > Integer.MAX_VALUE) { // a long column would be too large to map back
+            throw new IOException("Too many rows for one snapshot: " + rowCount);
+        }
+        int n = (int) rowCount;
+
+        Path heapTmp = file.resolveSibling(file.getFileName() + ".heap.tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel heap = FileChannel.open(heapTmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            out.position(HEADER_BYTES);
+
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                putLong(out, buffer, rows.idHigh());
+            }
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                putLong(out, buffer, rows.idLow());
+            }
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                putLong(out, buffer, rows.cents());
+            }
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                putInt(out, buffer, rows.epochDay());
+            }
+            pad(out, buffer);
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                putInt(out, buffer, rows.yearMonth());
+            }
+            pad(out, buffer);
+            long bits = 0L;
+            int bit = 0;
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                if (rows.isIncome()) {
+                    bits |= 1L << bit;
+                }
+                if (++bit == 64) {
+                    putLong(out, buffer, bits);
+                    bits = 0L;
+                    bit = 0;
+                }
+            }
+            if (bit > 0) {
+                putLong(out, buffer, bits);
+            }
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                putInt(out, buffer, rows.categoryCode());
+            }
+            pad(out, buffer);
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                putInt(out, buffer, rows.paymentMethodCode());
+            }
+            pad(out, buffer);
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                putLong(out, buffer, rows.fingerprint());
+            }
+            ByteBuffer heapBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            long heapOffset = 0L;
+            putLong(out, buffer, heapOffset);
+            for (Rows rows = new Rows(store, slots, sealed); rows.next(); ) {
+                byte[] bytes = rows.description().getBytes(StandardCharsets.UTF_8);
+                putBytes(heap, heapBuffer, bytes);
+                heapOffset += bytes.length;
+                putLong(out, buffer, heapOffset);
+            }
+            drain(heap, heapBuffer);
+
+            long categoryOffset = position(out, buffer);
+            putDictionary(out, buffer, store.categories());
+            long paymentOffset = position(out, buffer);
+            putDictionary(out, buffer, store.paymentMethods());
+            long descriptionOffset = position(out, buffer);
+            drain(out, buffer);
+            for (long copied = 0L; copied < heapOffset; ) {
+                copied += heap.transferTo(copied, heapOffset - copied, out);
+            }
+            pad(out, buffer);
+            long aggregateOffset = position(out, buffer);
+            for (Map.Entry<Integer, long[]> entry : aggregates.entrySet()) {
+                putInt(out, buffer, entry.getKey());
+                putInt(out, buffer, 0);
+                putLong(out, buffer, entry.getValue()[0]);
+                putLong(out, buffer, entry.getValue()[1]);
+            }
+            drain(out, buffer);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(lastSeq).putInt(n).putInt(aggregates.size())
+                    .putLong(categoryOffset).putLong(paymentOffset).putLong(descriptionOffset).putLong(aggregateOffset);
+            header.clear();
+            while (header.hasRemaining()) {
+                out.write(header, header.position());
+            }
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the snapshot and loads it into an empty store and totals. Returns
+     * the journal sequence number it covers, or 0 if there is no snapshot.
+     */
+    static long load(Path file, TransactionStore store, MonthlyTotals totals) throws IOException {
+        if (!Files.exists(file)) {
+            return 0L;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = map(in, 0, HEADER_BYTES);
+            if (in.size() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not a ledger snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported ledger snapshot version " + version + ": " + file);
+            }
+            long lastSeq = header.getLong();
+            int n = header.getInt();
+            int aggregateCount = header.getInt();
+            long categoryOffset = header.getLong();
+            long paymentOffset = header.getLong();
+            long descriptionOffset = header.getLong();
+            long aggregateOffset = header.getLong();
+
+            long offset = HEADER_BYTES;
+            ByteBuffer idHighs = map(in, offset, 8L * n);
+            offset += 8L * n;
+            ByteBuffer idLows = map(in, offset, 8L * n);
+            offset += 8L * n;
+            ByteBuffer cents = map(in, offset, 8L * n);
+            offset += 8L * n;
+            ByteBuffer epochDays = map(in, offset, 4L * n);
+            offset += align(4L * n);
+            ByteBuffer yearMonths = map(in, offset, 4L * n);
+            offset += align(4L * n);
+            ByteBuffer incomeBits = map(in, offset, 8L * words(n));
+            offset += 8L * words(n);
+            ByteBuffer categoryCodes = map(in, offset, 4L * n);
+            offset += align(4L * n);
+            ByteBuffer paymentCodes = map(in, offset, 4L * n);
+            offset += align(4L * n);
+            ByteBuffer fingerprints = map(in, offset, 8L * n);
+            offset += 8L * n;
+            ByteBuffer descriptionOffsets = map(in, offset, 8L * (n + 1));
+
+            long[] bits = new long[words(n)];
+            incomeBits.asLongBuffer().get(bits);
+            store.load(n, idHighs.asLongBuffer(), idLows.asLongBuffer(), cents.asLongBuffer(),
+                    epochDays.asIntBuffer(), yearMonths.asIntBuffer(), bits,
+                    categoryCodes.asIntBuffer(), paymentCodes.asIntBuffer(),
+                    fingerprints.asLongBuffer(),
+                    readDictionary(in, categoryOffset, paymentOffset),
+                    readDictionary(in, paymentOffset, descriptionOffset),
+                    new MappedDescriptions(descriptionOffsets,
+                            mapSegments(in, descriptionOffset, aggregateOffset - descriptionOffset, HEAP_SEGMENT_BITS),
+                            HEAP_SEGMENT_BITS));
+
+            ByteBuffer aggregates = map(in, aggregateOffset, 24L * aggregateCount);
+            for (int i = 0; i < aggregateCount; i++) {
+                int yearMonth = aggregates.getInt();
+                aggregates.getInt();
+                totals.apply(yearMonth, true, aggregates.getLong());
+                totals.apply(yearMonth, false, aggregates.getLong());
+            }
+            return lastSeq;
+        }
+    }
+
+    /**
+     * The rows to write, in file order: the given store slots, then each
+     * sealed month's rows.
+     */
+    private static final class Rows {
+
+        private final TransactionStore store;
+        private final int[] slots;
+        private final Iterator<SealedMonth> months;
+        private int next = 0;
+        private int slot;
+        private SealedMonth.Reader row; // set once past the slots
+        private SealedMonth month;
+        private int monthRow;
+        private long[] monthFingerprints; // by row, worked out for the fingerprint column only
+
+        Rows(TransactionStore store, int[] slots, Collection<SealedMonth> sealed) {
+            this.store = store;
+            this.slots = slots;
+            this.months = sealed.iterator();
+        }
+
+        boolean next() {
+            if (next < slots.length) {
+                slot = slots[next++];
+                return true;
+            }
+            while (row == null || !row.next()) {
+                if (!months.hasNext()) {
+                    return false;
+                }
+                month = months.next();
+                row = month.reader(0);
+                monthRow = -1;
+                monthFingerprints = null;
+            }
+            monthRow++;
+            return true;
+        }
+
+        long idHigh() {
+            return row == null ? store.idHigh(slot) : row.idHigh();
+        }
+
+        long idLow() {
+            return row == null ? store.idLow(slot) : row.idLow();
+        }
+
+        long cents() {
+            return row == null ? store.cents(slot) : row.cents();
+        }
+
+        int epochDay() {
+            return row == null ? store.epochDay(slot) : row.epochDay();
+        }
+
+        int yearMonth() {
+            return row == null ? store.yearMonth(slot) : row.yearMonth();
+        }
+
+        boolean isIncome() {
+            return row == null ? store.isIncome(slot) : row.isIncome();
+        }
+
+        int categoryCode() {
+            return row == null ? store.categoryCode(slot) : row.categoryCode();
+        }
+
+        int paymentMethodCode() {
+            return row == null ? store.paymentMethodCode(slot) : row.paymentMethodCode();
+        }
+
+        long fingerprint() {
+            if (row == null) {
+                return store.fingerprint(slot);
+            }
+            if (monthFingerprints == null) {
+                monthFingerprints = month.fingerprintsByRow();
+            }
+            return monthFingerprints[monthRow];
+        }
+
+        String description() {
+            return row == null ? store.readDescription(slot) : row.description();
+        }
+    }
+
+    /**
+     * Decodes descriptions on demand from the mapped heap. The mapping stays
+     * valid after the channel is closed and after the file is replaced. The
+     * heap can be larger than one buffer, so it is mapped as equal segments
+     * of 2^segmentBits bytes (the last one shorter), and a description may
+     * straddle two of them.
+     */
+    static final class MappedDescriptions implements TransactionStore.DescriptionSource {
+
+        private final ByteBuffer offsets;
+        private final ByteBuffer[] segments;
+        private final int segmentBits;
+
+        MappedDescriptions(ByteBuffer offsets, ByteBuffer[] segments, int segmentBits) {
+            this.offsets = offsets;
+            this.segments = segments;
+            this.segmentBits = segmentBits;
+        }
+
+        @Override
+        public String description(int row) {
+            long start = offsets.getLong(row * 8);
+            byte[] bytes = new byte[Math.toIntExact(offsets.getLong((row + 1) * 8) - start)];
+            long mask = (1L << segmentBits) - 1;
+            for (int copied = 0; copied < bytes.length; ) {
+                long at = start + copied;
+                ByteBuffer segment = segments[(int) (at >>> segmentBits)];
+                int length = Math.min(bytes.length - copied, segment.limit() - (int) (at & mask));
+                segment.get((int) (at & mask), bytes, copied, length);
+                copied += length;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<String> readDictionary(FileChannel in, long from, long to) throws IOException {
+        ByteBuffer block = map(in, from, to - from);
+        int count = block.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[block.getInt()];
+            block.get(bytes);
+            values.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static MappedByteBuffer map(FileChannel in, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot block too large to map: " + length + " bytes");
+        }
+        MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static ByteBuffer[] mapSegments(FileChannel in, long offset, long length, int segmentBits) throws IOException {
+        long segmentBytes = 1L << segmentBits;
+        ByteBuffer[] segments = new ByteBuffer[(int) ((length + segmentBytes - 1) >>> segmentBits)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * segmentBytes;
+            segments[i] = map(in, offset + start, Math.min(segmentBytes, length - start));
+        }
+        return segments;
+    }
+
+    private static int words(int rows) {
+        return (rows + 63) / 64;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static void putDictionary(FileChannel out, ByteBuffer buffer, StringDictionary dictionary) throws IOException {
+        putInt(out, buffer, dictionary.size());
+        for (int code = 0; code < dictionary.size(); code++) {
+            byte[] bytes = dictionary.decode(code).getBytes(StandardCharsets.UTF_8);
+            putInt(out, buffer, bytes.length);
+            putBytes(out, buffer, bytes);
+        }
+    }
+
+    private static void putLong(FileChannel out, ByteBuffer buffer, long value) throws IOException {
+        if (buffer.remaining() < 8) {
+            drain(out, buffer);
+        }
+        buffer.putLong(value);
+    }
+
+    private static void putInt(FileChannel out, ByteBuffer buffer, int value) throws IOException {
+        if (buffer.remaining() < 4) {
+            drain(out, buffer);
+        }
+        buffer.putInt(value);
+    }
+
+    private static void putBytes(FileChannel out, ByteBuffer buffer, byte[] bytes) throws IOException {
+        int written = 0;
+        while (written < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                drain(out, buffer);
+            }
+            int chunk = Math.min(buffer.remaining(), bytes.length - written);
+            buffer.put(bytes, written, chunk);
+            written += chunk;
+        }
+    }
+
+    // Pads the file with zeros up to the next 8-byte boundary
+    private static void pad(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (position(out, buffer) % 8 != 0) {
+            if (!buffer.hasRemaining()) {
+                drain(out, buffer);
+            }
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static long position(FileChannel out, ByteBuffer buffer) throws IOException {
+        return out.position() + buffer.position();
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,14 +1,123 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.Scanner;
 
 public class Main {
 
-    private static final String[] VALID_PAYMENT_METHODS = {"cash", "card", "online"};
+    static final String[] VALID_PAYMENT_METHODS = {"cash", "card", "online"};
+    private static final Path DATA_DIRECTORY = Paths.get("data");
 
     public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
-        FinanceService service = new FinanceService();
+        FinanceService service = openService();
+        service.setDuplicatePolicy(FinanceService.DuplicatePolicy.FLAG);
+
+        // Options: --import transactions.csv (bulk load before the menu),
+        // --batch commands.txt (run a script instead of the menu, - for stdin),
+        // --serve 8080 (serve the JSON API instead of the menu, on localhost only),
+        // --bind 0.0.0.0 (with --serve: the address to listen on instead),
+        // --metrics (print the service metrics on exit),
+        // --cold-after 30 (seal months unwritten for 30 minutes)
+        boolean metricsOnExit = false;
+        String batchScript = null;
+        String serverPort = null;
+        String serverHost = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--import") && i + 1 < args.length) {
+                importTransactions(service, Paths.get(args[++i]));
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batchScript = args[++i];
+            } else if (args[i].equals("--serve") && i + 1 < args.length) {
+                serverPort = args[++i];
+            } else if (args[i].equals("--bind") && i + 1 < args.length) {
+                serverHost = args[++i];
+            } else if (args[i].equals("--metrics")) {
+                metricsOnExit = true;
+            } else if (args[i].equals("--cold-after") && i + 1 < args.length) {
+                setColdAfter(service, args[++i]);
+            } else {
+                System.out.println("Ignoring unknown option: " + args[i]);
+            }
+        }
+
+        if (serverPort != null && runServer(service, serverHost, serverPort, metricsOnExit)) {
+            return; // the server threads keep running; the shutdown hook closes the ledger
+        }
+
+        boolean batchFailed = false;
+        if (batchScript != null) {
+            batchFailed = !runBatch(service, batchScript);
+        } else {
+            runMenu(service);
+        }
+
+        if (metricsOnExit) {
+            service.printMetrics();
+        }
+        service.close();
+        if (batchFailed) {
+            System.exit(1);
+        }
+    }
+
+    private static void setColdAfter(FinanceService service, String minutes) {
+        try {
+            service.setColdAfter(Duration.ofMinutes(Long.parseLong(minutes)));
+        } catch (NumberFormatException e) {
+            System.out.println("Ignoring --cold-after: not a number of minutes: " + minutes);
+        }
+    }
+
+    /**
+     * Runs a batch script; returns false if it could not be read or any command failed.
+     */
+    private static boolean runBatch(FinanceService service, String script) {
+        BatchRunner runner = new BatchRunner(service);
+        try (BufferedReader in = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Paths.get(script))) {
+            runner.run(in);
+        } catch (IOException e) {
+            System.out.println("Error reading batch script: " + e.getMessage());
+            return false;
+        }
+        return runner.failedCommands() == 0;
+    }
+
+    /**
+     * Starts the HTTP API (on localhost unless a host is given) and returns
+     * true, or prints why it could not and returns false. On shutdown (Ctrl+C)
+     * the server stops and the ledger is closed, so its snapshot is written.
+     */
+    private static boolean runServer(FinanceService service, String host, String port, boolean metricsOnExit) {
+        FinanceHttpServer server;
+        try {
+            server = host == null ? FinanceHttpServer.start(service, Integer.parseInt(port))
+                    : FinanceHttpServer.start(service, host, Integer.parseInt(port));
+        } catch (NumberFormatException | IOException e) {
+            System.out.println("Could not start the server on port " + port + ": " + e.getMessage());
+            return false;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (metricsOnExit) {
+                service.printMetrics();
+            }
+            service.close();
+        }));
+        System.out.println("Serving the ledger on http://" + (host == null ? "localhost" : host) + ":" + server.port()
+                + "/ (Ctrl+C to stop)");
+        return true;
+    }
 
+    private static void runMenu(FinanceService service) {
+        Scanner scanner = new Scanner(System.in);
         int choice;
         do {
             System.out.println("\n=== Personal Finance Manager ===");
@@ -23,7 +132,8 @@ public class Main {
             System.out.println("9. Detect Duplicate Transactions");
             System.out.println("10. Search Transactions by Payment Method");
             System.out.println("11. View Overall Financial Summary");
-            System.out.println("12. Exit");
+            System.out.println("12. View Service Metrics");
+            System.out.println("13. Exit");
             System.out.print("Enter choice: ");
 
             // Use try-catch for robust parsing of the menu choice
@@ -45,31 +155,57 @@ public class Main {
                 case 4 -> viewMonthlySummary(scanner, service);
                 case 5 -> editTransaction(scanner, service);
                 case 6 -> deleteTransaction(scanner, service);
-                case 7 -> service.findLargestExpensePerMonth();
+                case 7 -> service.findLargestExpensePerMonth(getValidYear(scanner));
                 case 8 -> searchExpenseByCategory(scanner, service);
                 case 9 -> service.detectDuplicateTransactions();
                 case 10 -> searchTransactionByPaymentMethod(scanner, service);
                 case 11 -> viewOverallSummary(service);
-                case 12 -> System.out.println("Goodbye! Total Yearly Savings: " + service.getTotalYearlySavings());
-                default -> System.out.println("Invalid choice. Please enter a number between 1 and 12.");
+                case 12 -> service.printMetrics();
+                case 13 -> System.out.println("Goodbye! Total Yearly Savings: " + service.getTotalYearlySavings());
+                default -> System.out.println("Invalid choice. Please enter a number between 1 and 13.");
             }
-        } while (choice != 12);
+        } while (choice != 13);
 
         scanner.close();
     }
 
+    /**
+     * Opens the ledger saved in the data directory, falling back to an
+     * in-memory ledger if it cannot be opened.
+     */
+    private static FinanceService openService() {
+        try {
+            return FinanceService.open(DATA_DIRECTORY);
+        } catch (IOException e) {
+            System.out.println("Could not open saved data (" + e.getMessage() + "). Changes will not be saved.");
+            return new FinanceService();
+        }
+    }
+
+    static void importTransactions(FinanceService service, Path file) {
+        try {
+            ImportResult result = service.importCsv(file);
+            System.out.println("Imported " + result.getImported() + " transactions from " + file
+                    + ", rejected " + result.getRejected() + ".");
+            result.getErrors().forEach(System.out::println);
+        } catch (IOException e) {
+            System.out.println("Error importing transactions: " + e.getMessage());
+        }
+    }
+
     private static void addIncome(Scanner sc, FinanceService service) {
         System.out.println("\n--- Add Income ---");
         
         // Prompt for month first
         int month = getValidMonth(sc); 
-        String monthName = service.getMonthName(month);
+        int year = getValidYear(sc);
+        String monthName = service.getMonthName(month) + " " + year;
 
         double amount = getValidAmount(sc, "Income");
         if (amount <= 0) return;
 
-        // Create LocalDate for the 1st day of the specified month in the current year
-        LocalDate date = LocalDate.of(LocalDate.now().getYear(), month, 1);
+        // Create LocalDate for the 1st day of the specified month and year
+        LocalDate date = LocalDate.of(year, month, 1);
         
         System.out.print("Category: ");
         String category = sc.nextLine();
@@ -79,7 +215,9 @@ public class Main {
 
         // Use the new constructor with date
         Transaction t = new Income(amount, category, desc, paymentMethod, date);
-        service.addTransaction(t);
+        if (!service.addTransaction(t)) {
+            return;
+        }
         System.out.println("Income added successfully for " + monthName + "."); 
     }
 
@@ -88,15 +226,16 @@ public class Main {
         
         // 1. Get the month first to check the monthly balance
         int month = getValidMonth(sc);
-        String monthName = service.getMonthName(month);
+        int year = getValidYear(sc);
+        String monthName = service.getMonthName(month) + " " + year;
 
         // 2. Get the proposed expense amount
         double amount = getValidAmount(sc, "Expense");
         if (amount <= 0) return;
         
         // 3. Perform the monthly income check
-        double monthlyIncome = service.getMonthlyIncome(month);
-        double currentMonthlyExpense = service.getMonthlyExpense(month);
+        double monthlyIncome = service.getMonthlyIncome(YearMonth.of(year, month));
+        double currentMonthlyExpense = service.getMonthlyExpense(YearMonth.of(year, month));
         double totalExpenseAfterAddition = currentMonthlyExpense + amount;
 
         if (totalExpenseAfterAddition > monthlyIncome) {
@@ -108,8 +247,8 @@ public class Main {
         // End of validation check
 
         // 4. If valid, proceed to collect other details and create transaction
-        // Create LocalDate for the 1st day of the specified month in the current year
-        LocalDate date = LocalDate.of(LocalDate.now().getYear(), month, 1);
+        // Create LocalDate for the 1st day of the specified month and year
+        LocalDate date = LocalDate.of(year, month, 1);
         
         System.out.print("Category: ");
         String category = sc.nextLine();
@@ -118,8 +257,11 @@ public class Main {
         String paymentMethod = getValidPaymentMethod(sc);
 
         // Use the new constructor with date
-        Transaction t = new Expense(amount, category, desc, paymentMethod, date);
-        service.addTransaction(t);
+        Expense t = new Expense(amount, category, desc, paymentMethod, date);
+        // Checked again atomically, in case another writer changed the month meanwhile
+        if (!service.tryAddExpense(t)) {
+            return;
+        }
         System.out.println("Expense added successfully for " + monthName + ".");
     }
 
@@ -144,8 +286,8 @@ public class Main {
             System.out.printf("%s Amount: ", type);
             try {
                 double amount = Double.parseDouble(sc.nextLine());
-                if (amount <= 0) {
-                    System.out.println("Amount must be a positive number.");
+                if (!Money.isValidAmount(amount)) { // also NaN, Infinity and less than a cent
+                    System.out.println("Amount must be a positive number up to " + Money.MAX_CENTS / 100 + ".");
                 } else {
                     return amount;
                 }
@@ -175,7 +317,31 @@ public class Main {
     }
 
     /**
-     * Prompts the user for a month number (1-12) and displays the monthly summary.
+     * Helper method to prompt for a year; a blank answer means the current year.
+     */
+    private static int getValidYear(Scanner sc) {
+        int currentYear = LocalDate.now().getYear();
+        while (true) {
+            System.out.print("Enter Year (blank = " + currentYear + "): ");
+            String input = sc.nextLine().trim();
+            if (input.isEmpty()) {
+                return currentYear;
+            }
+            try {
+                int year = Integer.parseInt(input);
+                if (year >= 1 && year <= 9999) {
+                    return year;
+                } else {
+                    System.out.println("Invalid year. Please enter a year between 1 and 9999.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input. Please enter a whole number for the year.");
+            }
+        }
+    }
+
+    /**
+     * Prompts the user for a month number (1-12) and a year and displays the monthly summary.
      */
     private static void viewMonthlySummary(Scanner sc, FinanceService service) {
         while (true) {
@@ -183,7 +349,7 @@ public class Main {
             try {
                 int month = Integer.parseInt(sc.nextLine());
                 if (month >= 1 && month <= 12) {
-                    service.printMonthlySummary(month); 
+                    service.printMonthlySummary(YearMonth.of(getValidYear(sc), month));
                     return;
                 } else {
                     System.out.println("Invalid month number. Please enter a number between 1 and 12.");
@@ -201,9 +367,7 @@ public class Main {
         System.out.print("Enter ID of transaction to edit: ");
         String id = sc.nextLine();
 
-        Transaction t = service.getTransactions().stream()
-                .filter(transaction -> transaction.getId().equals(id))
-                .findFirst().orElse(null);
+        Transaction t = service.findById(id);
 
         if (t == null) {
             System.out.println("Transaction with ID " + id + " not found.");
@@ -256,7 +420,7 @@ public class Main {
     /**
      * Prints the overall financial summary.
      */
-    private static void viewOverallSummary(FinanceService service) {
+    static void viewOverallSummary(FinanceService service) {
         System.out.println("\n=== Overall Financial Summary ===");
         double income = service.getTotalIncome();
         double expense = service.getTotalExpense();
@@ -0,0 +1,32 @@
+/**
+ * Conversions between the double amounts used by the UI and the whole cents
+ * used for running totals, so repeated add/subtract never drifts.
+ */
+public final class Money {
+
+    /**
+     * Largest amount accepted as input, so its cents stay exact both as a
+     * long and as a double.
+     */
+    public static final double MAX_AMOUNT = 1e12;
+    static final long MAX_CENTS = 100_000_000_000_000L;
+
+    private Money() {
+    }
+
+    /**
+     * True for a positive amount up to {@link #MAX_AMOUNT} that is at least
+     * a cent once rounded; false for NaN and the infinities.
+     */
+    public static boolean isValidAmount(double amount) {
+        return amount > 0 && amount <= MAX_AMOUNT && toCents(amount) > 0;
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double toAmount(long cents) {
+        return cents / 100.0;
+    }
+}
@@ -0,0 +1,78 @@
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running income/expense sums in cents, kept in step with every add, edit and
+ * delete so monthly and overall queries never rescan the transaction store.
+ *
+ * Every sum is an atomic counter, so readers never lock. A reader may see a
+ * write reflected in one sum and not yet in another.
+ */
+class MonthlyTotals {
+
+    private static final int INCOME = 0;
+    private static final int EXPENSE = 1;
+
+    private final ConcurrentNavigableMap<Integer, AtomicLongArray> byYearMonth = new ConcurrentSkipListMap<>(); // keyed by TransactionStore year-month index
+    private final AtomicLongArray byMonth = new AtomicLongArray(13 * 2); // [month * 2 + type], month 0 unused
+    private final AtomicLongArray byType = new AtomicLongArray(2);
+
+    /**
+     * Adds {@code cents} (negative to subtract) to every sum the row contributes to.
+     */
+    void apply(int yearMonth, boolean income, long cents) {
+        int type = income ? INCOME : EXPENSE;
+        byYearMonth.computeIfAbsent(yearMonth, k -> new AtomicLongArray(2)).addAndGet(type, cents);
+        byMonth.addAndGet(TransactionStore.monthOf(yearMonth) * 2 + type, cents);
+        byType.addAndGet(type, cents);
+    }
+
+    /**
+     * Copy of the income and expense cents per year-month index, as
+     * {income, expense} pairs.
+     */
+    Map<Integer, long[]> byYearMonth() {
+        Map<Integer, long[]> copy = new HashMap<>();
+        byYearMonth.forEach((yearMonth, sums) -> copy.put(yearMonth, new long[] {sums.get(INCOME), sums.get(EXPENSE)}));
+        return copy;
+    }
+
+    long monthly(int monthNumber, boolean income) {
+        if (monthNumber < 1 || monthNumber > 12) {
+            return 0L;
+        }
+        return byMonth.get(monthNumber * 2 + (income ? INCOME : EXPENSE));
+    }
+
+    long yearMonth(YearMonth ym, boolean income) {
+        return yearMonth(TransactionStore.yearMonthIndex(ym.getYear(), ym.getMonthValue()), income);
+    }
+
+    long yearMonth(int yearMonth, boolean income) {
+        AtomicLongArray sums = byYearMonth.get(yearMonth);
+        return sums == null ? 0L : sums.get(income ? INCOME : EXPENSE);
+    }
+
+    /**
+     * Sum over the year-month indexes {@code from} to {@code to} inclusive,
+     * visiting only the months in that range.
+     */
+    long between(int from, int to, boolean income) {
+        if (from > to) {
+            return 0L;
+        }
+        long sum = 0L;
+        for (AtomicLongArray sums : byYearMonth.subMap(from, true, to, true).values()) {
+            sum += sums.get(income ? INCOME : EXPENSE);
+        }
+        return sum;
+    }
+
+    long total(boolean income) {
+        return byType.get(income ? INCOME : EXPENSE);
+    }
+}
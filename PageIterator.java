@@ -0,0 +1,41 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Iterates over a paged listing, asking for the next page (by cursor) only
+ * when the current one is used up.
+ */
+class PageIterator implements Iterator<Transaction> {
+
+    private final Function<String, TransactionPage> nextPage; // cursor (null for the first) -> page
+    private List<Transaction> page = List.of();
+    private int position = 0;
+    private String cursor = null;
+    private boolean lastPage = false;
+
+    PageIterator(Function<String, TransactionPage> nextPage) {
+        this.nextPage = nextPage;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position == page.size() && !lastPage) {
+            TransactionPage next = nextPage.apply(cursor);
+            page = next.transactions();
+            position = 0;
+            cursor = next.nextCursor();
+            lastPage = !next.hasMore();
+        }
+        return position < page.size();
+    }
+
+    @Override
+    public Transaction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.get(position++);
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs scans over a set of rows on a dedicated fork/join pool once the set
+ * is large enough to be worth it. The rows are split into parts of whole
+ * 65536-slot chunks, each part runs as its own task, and the per-part
+ * results come back in slot order, so callers can merge them into exactly
+ * what one sequential pass would have produced.
+ *
+ * Below the threshold, or with a parallelism of 1, a scan runs in the calling
+ * thread as a single part. Callers hold the service's read lock for the
+ * whole scan, which keeps the store still for the pool's threads as well.
+ * A caller that lets go of the lock between scans (to write out what it
+ * rendered, say) takes the rows in batches of {@link #batchRows}.
+ */
+class ParallelScan implements AutoCloseable {
+
+    static final long DEFAULT_THRESHOLD_ROWS = 256 * 1024;
+    private static final long PART_ROWS = 64 * 1024;
+    static final long MIN_THRESHOLD_ROWS = 2 * PART_ROWS; // fewer rows would not make two parts
+
+    private volatile ForkJoinPool pool; // null when scans run sequentially
+    private volatile long thresholdRows;
+
+    ParallelScan(int parallelism, long thresholdRows) {
+        configure(parallelism, thresholdRows);
+    }
+
+    /**
+     * Replaces the pool and threshold; a threshold under
+     * {@link #MIN_THRESHOLD_ROWS} acts as that. No scan may be running.
+     */
+    void configure(int parallelism, long thresholdRows) {
+        if (parallelism < 1 || thresholdRows < 0) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 and the threshold not negative");
+        }
+        close();
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+        this.thresholdRows = thresholdRows;
+    }
+
+    int parallelism() {
+        ForkJoinPool current = pool;
+        return current == null ? 1 : current.getParallelism();
+    }
+
+    long thresholdRows() {
+        return thresholdRows;
+    }
+
+    boolean isParallel(RowBitmap rows) {
+        return pool != null && rows.cardinality() >= Math.max(thresholdRows, MIN_THRESHOLD_ROWS);
+    }
+
+    /**
+     * How many rows of {@code rows} to scan per turn at the read lock: one
+     * part if the scan would run sequentially, otherwise enough for two
+     * parts per thread, and never fewer than a parallel scan needs.
+     */
+    long batchRows(RowBitmap rows) {
+        ForkJoinPool current = pool;
+        if (current == null || !isParallel(rows)) {
+            return PART_ROWS;
+        }
+        return Math.max(Math.max(thresholdRows, MIN_THRESHOLD_ROWS), 2L * current.getParallelism() * PART_ROWS);
+    }
+
+    /**
+     * Applies {@code task} to every part of {@code rows} and returns the
+     * results in slot order.
+     */
+    <R> List<R> map(RowBitmap rows, Function<RowBitmap, R> task) {
+        ForkJoinPool current = pool;
+        if (!isParallel(rows)) {
+            return Collections.singletonList(task.apply(rows));
+        }
+        List<ForkJoinTask<R>> tasks = new ArrayList<>();
+        try {
+            for (RowBitmap part : rows.split(PART_ROWS)) {
+                tasks.add(current.submit(() -> task.apply(part)));
+            }
+            List<R> results = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<R> running : tasks) {
+                results.add(running.join());
+            }
+            return results;
+        } finally {
+            tasks.forEach(ForkJoinTask::quietlyJoin); // nothing may outlive the caller's lock
+        }
+    }
+
+    /**
+     * Like {@link #map}, but hands each result to {@code consumer} in slot
+     * order as soon as it and all earlier ones are ready, with at most two
+     * parts per thread in flight. The results of a large scan (rendered rows,
+     * say) are therefore never all held at once.
+     */
+    <R> void forEachOrdered(RowBitmap rows, Function<RowBitmap, R> task, Consumer<R> consumer) {
+        ForkJoinPool current = pool;
+        if (!isParallel(rows)) {
+            consumer.accept(task.apply(rows));
+            return;
+        }
+        int window = 2 * current.getParallelism();
+        Deque<ForkJoinTask<R>> inFlight = new ArrayDeque<>(window);
+        try {
+            for (RowBitmap part : rows.split(PART_ROWS)) {
+                if (inFlight.size() == window) {
+                    consumer.accept(inFlight.removeFirst().join());
+                }
+                inFlight.addLast(current.submit(() -> task.apply(part)));
+            }
+            while (!inFlight.isEmpty()) {
+                consumer.accept(inFlight.removeFirst().join());
+            }
+        } finally {
+            inFlight.forEach(ForkJoinTask::quietlyJoin);
+        }
+    }
+
+    @Override
+    public void close() {
+        ForkJoinPool current = pool;
+        if (current != null) {
+            current.shutdown();
+            pool = null;
+        }
+    }
+}
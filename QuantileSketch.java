@@ -0,0 +1,168 @@
+import java.util.Arrays;
+
+/**
+ * KLL sketch of a stream of amounts (in cents), answering quantile queries
+ * in bounded memory.
+ *
+ * Values enter level 0. When the sketch is full, the lowest level over its
+ * capacity is sorted and every other value (starting at a random one of the
+ * first two) moves up a level, where it stands for twice as many values.
+ * Capacities shrink by 2/3 per level below the top one, so the sketch holds
+ * at most about 3 * {@value #K} values however long the stream.
+ *
+ * Error bound: a returned value's rank is within about 1.7% of the
+ * requested rank (normalized, i.e. as a fraction of the count) with 99%
+ * probability, and exact while at most {@value #K} values have been added.
+ * Merged sketches keep the same bound. The random choices come from a fixed
+ * seed, so the same stream always gives the same sketch.
+ */
+final class QuantileSketch {
+
+    static final int K = 200;
+    private static final double SHRINK = 2.0 / 3.0;
+
+    private long[][] levels = {new long[K + 1]};
+    private int[] sizes = new int[1];
+    private int held = 0; // values held across all levels
+    private int capacity = K + 1; // sum of the level capacities; compact when reached
+    private long count = 0L;
+    private long random = 0x2545F4914F6CDD1DL;
+
+    void add(long value) {
+        append(0, value);
+        count++;
+        compress();
+    }
+
+    /**
+     * Number of values added (and merged in).
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * Adds every value of {@code other} to this sketch; {@code other} is not changed.
+     */
+    void merge(QuantileSketch other) {
+        while (levels.length < other.levels.length) {
+            grow();
+        }
+        for (int level = 0; level < other.levels.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        count += other.count;
+        compress();
+    }
+
+    QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch();
+        copy.levels = new long[levels.length][];
+        for (int level = 0; level < levels.length; level++) {
+            copy.levels[level] = levels[level].clone();
+        }
+        copy.sizes = sizes.clone();
+        copy.held = held;
+        copy.capacity = capacity;
+        copy.count = count;
+        copy.random = random;
+        return copy;
+    }
+
+    /**
+     * The smallest value whose rank (share of values at or below it) reaches
+     * {@code quantile}, from 0 (the minimum) to 1 (the maximum). The sketch
+     * must not be empty.
+     */
+    long quantile(double quantile) {
+        long[] values = new long[held];
+        long[] weights = new long[held];
+        int n = 0;
+        for (int level = 0; level < levels.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                weights[n++] = 1L << level;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(values[a], values[b]));
+        long total = 0L;
+        for (long weight : weights) {
+            total += weight;
+        }
+        double target = quantile * total;
+        long rank = 0L;
+        for (int i : order) {
+            rank += weights[i];
+            if (rank >= target) {
+                return values[i];
+            }
+        }
+        return values[order[n - 1]];
+    }
+
+    private void append(int level, long value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+        held++;
+    }
+
+    // Compacts the lowest overfull level until the sketch is within its capacity
+    private void compress() {
+        while (held >= capacity) {
+            for (int level = 0; level < levels.length; level++) {
+                if (sizes[level] >= levelCapacity(level)) {
+                    if (level + 1 == levels.length) {
+                        grow();
+                    }
+                    compact(level);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Sorts the level and promotes every other value; an odd one out stays behind
+    private void compact(int level) {
+        long[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+        int kept = size % 2;
+        int offset = kept + (nextBit() ? 1 : 0);
+        for (int i = offset; i < size; i += 2) {
+            append(level + 1, values[i]);
+        }
+        held -= size - kept; // the promoted half was counted again by append
+        sizes[level] = kept;
+    }
+
+    private void grow() {
+        levels = Arrays.copyOf(levels, levels.length + 1);
+        levels[levels.length - 1] = new long[8];
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        capacity = 0;
+        for (int level = 0; level < levels.length; level++) {
+            capacity += levelCapacity(level);
+        }
+    }
+
+    private int levelCapacity(int level) {
+        int depth = levels.length - level - 1;
+        return Math.max(2, (int) Math.ceil(Math.pow(SHRINK, depth) * K)) + 1;
+    }
+
+    // xorshift64
+    private boolean nextBit() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (random & 1L) != 0;
+    }
+}
@@ -0,0 +1,341 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Writes report lines into a reusable byte buffer and hands them to stdout or
+ * a file in large chunks.
+ *
+ * Rows are encoded straight from the store's columns: the ID from its two
+ * longs, the date from its epoch day, the amount from its cents, and the
+ * category and payment method from bytes cached once per dictionary code.
+ * The output is byte-for-byte what {@link Transaction#toReportLine()} would
+ * produce, but no String is built per row. Non-ASCII text is encoded as the
+ * destination expects it: in the console's charset on stdout, as println
+ * would, and in UTF-8 in files.
+ *
+ * I/O errors are rethrown as {@link UncheckedIOException}.
+ */
+class ReportSink implements AutoCloseable {
+
+    static final String HEADER = "ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD";
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final byte[] INCOME = "INCOME".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXPENSE = "EXPENSE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream stream; // stdout, flushed but never closed
+    private final FileChannel channel;
+    private final Charset charset;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private final ByteBuffer channelView = ByteBuffer.wrap(buffer);
+    private int position = 0;
+
+    // Encoded bytes per dictionary code, filled on first use
+    private byte[][] categoryBytes = new byte[0][];
+    private byte[][] paymentMethodBytes = new byte[0][];
+
+    private ReportSink(OutputStream stream, FileChannel channel, Charset charset) {
+        this.stream = stream;
+        this.channel = channel;
+        this.charset = charset;
+    }
+
+    /**
+     * Sink over the current {@code System.out}.
+     */
+    static ReportSink toStdout() {
+        PrintStream out = System.out;
+        out.flush();
+        return new ReportSink(out, null, stdoutCharset());
+    }
+
+    /**
+     * Sink that creates or overwrites {@code file}.
+     */
+    static ReportSink toFile(Path file) throws IOException {
+        return new ReportSink(null, FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sink that keeps what is written in memory, encoded for {@code target},
+     * for rendering rows on another thread and handing them to
+     * {@link #writeRendered(byte[])}; see {@link #toByteArray()}.
+     */
+    static ReportSink toMemory(ReportSink target) {
+        return new ReportSink(new ByteArrayOutputStream(), null, target.charset);
+    }
+
+    // The charset System.out encodes text in: the console's when it has one,
+    // else the default (PrintStream.charset() only arrives in JDK 18)
+    private static Charset stdoutCharset() {
+        String name = System.getProperty("sun.stdout.encoding");
+        if (name != null && Charset.isSupported(name)) {
+            return Charset.forName(name);
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * The bytes written so far to a {@link #toMemory(ReportSink)} sink.
+     */
+    byte[] toByteArray() {
+        drain();
+        return ((ByteArrayOutputStream) stream).toByteArray();
+    }
+
+    /**
+     * Like {@link #toByteArray()}, and empties the sink for the next rows.
+     */
+    byte[] takeBytes() {
+        byte[] bytes = toByteArray();
+        ((ByteArrayOutputStream) stream).reset();
+        return bytes;
+    }
+
+    /**
+     * Writes bytes rendered by a {@link #toMemory(ReportSink)} sink.
+     */
+    void writeRendered(byte[] rendered) {
+        writeBytes(rendered);
+    }
+
+    /**
+     * Writes one transaction in the {@link #HEADER} layout, followed by a line break.
+     */
+    void writeRow(TransactionStore store, int slot) {
+        writeRow(store, store.idHigh(slot), store.idLow(slot), store.epochDay(slot), store.isIncome(slot),
+                store.categoryCode(slot), store.cents(slot), store.description(slot), store.paymentMethodCode(slot));
+    }
+
+    /**
+     * Like {@link #writeRow(TransactionStore, int)}, for the current row of a
+     * sealed month read back against the store it was sealed from.
+     */
+    void writeRow(TransactionStore store, SealedMonth.Reader row) {
+        writeRow(store, row.idHigh(), row.idLow(), row.epochDay(), row.isIncome(), row.categoryCode(), row.cents(),
+                row.description(), row.paymentMethodCode());
+    }
+
+    private void writeRow(TransactionStore store, long idHigh, long idLow, int epochDay, boolean income, int categoryCode,
+                          long cents, String description, int paymentMethodCode) {
+        writeId(idHigh, idLow);
+        writeByte(',');
+        writeDate(epochDay);
+        writeByte(',');
+        writeBytes(income ? INCOME : EXPENSE);
+        writeByte(',');
+        writeBytes(categoryBytes(store, categoryCode));
+        writeByte(',');
+        writeAmount(cents);
+        writeByte(',');
+        writeText(description);
+        writeByte(',');
+        writeBytes(paymentMethodBytes(store, paymentMethodCode));
+        writeBytes(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes a whole line of free text (headers, totals) followed by a line break.
+     */
+    void writeLine(String text) {
+        writeText(text);
+        writeBytes(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes formatted text, like printf (use %n for line breaks); meant for
+     * the handful of summary lines per report.
+     */
+    void writeFormat(String format, Object... args) {
+        writeText(String.format(format, args));
+    }
+
+    void flush() {
+        drain();
+        if (stream != null) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void writeId(long high, long low) {
+        ensure(36);
+        writeHex(high >>> 32, 8);
+        buffer[position++] = '-';
+        writeHex(high >>> 16, 4);
+        buffer[position++] = '-';
+        writeHex(high, 4);
+        buffer[position++] = '-';
+        writeHex(low >>> 48, 4);
+        buffer[position++] = '-';
+        writeHex(low, 12);
+    }
+
+    private void writeHex(long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[position + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        position += digits;
+    }
+
+    // yyyy-MM-dd, as LocalDate.toString for years 0000-9999
+    private void writeDate(int epochDay) {
+        long date = CivilDate.fromEpochDay(epochDay);
+        long year = CivilDate.year(date);
+        if (year < 0 || year > 9999) {
+            writeText(LocalDate.ofEpochDay(epochDay).toString());
+            return;
+        }
+        ensure(10);
+        writeDigits(year, 4);
+        buffer[position++] = '-';
+        writeDigits(CivilDate.month(date), 2);
+        buffer[position++] = '-';
+        writeDigits(CivilDate.day(date), 2);
+    }
+
+    // Same text as String.valueOf(cents / 100.0): "12.0", "12.5", "12.34"
+    private void writeAmount(long cents) {
+        if (cents < 0 || cents >= 1_000_000_000L) {
+            writeText(String.valueOf(Money.toAmount(cents))); // negative or >= 1.0E7: scientific notation
+            return;
+        }
+        long whole = cents / 100;
+        int fraction = (int) (cents % 100);
+        ensure(20);
+        int digits = 1;
+        for (long rest = whole / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        writeDigits(whole, digits);
+        buffer[position++] = '.';
+        if (fraction % 10 == 0) {
+            buffer[position++] = (byte) ('0' + fraction / 10);
+        } else {
+            writeDigits(fraction, 2);
+        }
+    }
+
+    private void writeDigits(long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[position + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    // ASCII goes straight into the buffer; anything else is encoded in the sink's charset
+    private void writeText(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                writeBytes(text.getBytes(charset));
+                return;
+            }
+        }
+        int written = 0;
+        while (written < length) {
+            if (position == buffer.length) {
+                drain();
+            }
+            int chunk = Math.min(length - written, buffer.length - position);
+            for (int i = 0; i < chunk; i++) {
+                buffer[position++] = (byte) text.charAt(written + i);
+            }
+            written += chunk;
+        }
+    }
+
+    private byte[] categoryBytes(TransactionStore store, int code) {
+        if (code >= categoryBytes.length) {
+            categoryBytes = Arrays.copyOf(categoryBytes, store.categories().size());
+        }
+        if (categoryBytes[code] == null) {
+            categoryBytes[code] = store.categories().decode(code).getBytes(charset);
+        }
+        return categoryBytes[code];
+    }
+
+    private byte[] paymentMethodBytes(TransactionStore store, int code) {
+        if (code >= paymentMethodBytes.length) {
+            paymentMethodBytes = Arrays.copyOf(paymentMethodBytes, store.paymentMethods().size());
+        }
+        if (paymentMethodBytes[code] == null) {
+            paymentMethodBytes[code] = store.paymentMethods().decode(code).getBytes(charset);
+        }
+        return paymentMethodBytes[code];
+    }
+
+    private void writeByte(char c) {
+        ensure(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        int written = 0;
+        while (written < bytes.length) {
+            if (position == buffer.length) {
+                drain();
+            }
+            int chunk = Math.min(bytes.length - written, buffer.length - position);
+            System.arraycopy(bytes, written, buffer, position, chunk);
+            position += chunk;
+            written += chunk;
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.length - position < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        if (position == 0) {
+            return;
+        }
+        try {
+            if (stream != null) {
+                stream.write(buffer, 0, position);
+            } else {
+                channelView.clear().limit(position);
+                while (channelView.hasRemaining()) {
+                    channel.write(channelView);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = 0;
+    }
+}
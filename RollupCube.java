@@ -0,0 +1,297 @@
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Sum, count, min and max of the amounts in every (year-month, category,
+ * payment method, type) cell, kept up to date as rows change, so that any
+ * rollup or drill-down along those dimensions reads cells instead of rows.
+ *
+ * Cells are keyed by the store's dictionary codes and grouped per month.
+ * Sums and counts are exact under removal. A min or max is not: removing the
+ * row that held a cell's minimum or maximum marks the cell stale, and the
+ * next query that needs extremes rescans that one month's rows to refill it.
+ * Because an edit is a remove followed by an add, a row moved to another
+ * category or payment method leaves one cell and enters the other.
+ *
+ * A sealed month's rows leave the store but its cells stay as they are, so
+ * rollups over cold months need nothing decoded. Extremes are refreshed
+ * just before a month is sealed, as there are no rows left to refill them from.
+ *
+ * Writes must be exclusive; queries may run concurrently with each other.
+ */
+class RollupCube implements RowIndex {
+
+    private final NavigableMap<Integer, MonthCells> months = new TreeMap<>();
+    private final IntFunction<RowBitmap> rowsOfMonth; // year-month index -> all its slots
+
+    RollupCube(IntFunction<RowBitmap> rowsOfMonth) {
+        this.rowsOfMonth = rowsOfMonth;
+    }
+
+    @Override
+    public void add(TransactionStore store, int slot) {
+        months.computeIfAbsent(store.yearMonth(slot), k -> new MonthCells()).add(cellKey(store, slot), store.cents(slot));
+    }
+
+    @Override
+    public void remove(TransactionStore store, int slot) {
+        MonthCells cells = months.get(store.yearMonth(slot));
+        cells.remove(cellKey(store, slot), store.cents(slot));
+        if (cells.rows == 0) {
+            months.remove(store.yearMonth(slot));
+        }
+    }
+
+    @Override
+    public void clear() {
+        months.values().removeIf(cells -> !cells.sealed);
+    }
+
+    @Override
+    public void seal(TransactionStore store, int slot) {
+        months.get(store.yearMonth(slot)).sealed = true;
+    }
+
+    @Override
+    public void unseal(TransactionStore store, int slot) {
+        months.get(store.yearMonth(slot)).sealed = false;
+    }
+
+    // Refills the month's stale extremes while its rows are still there
+    @Override
+    public void beforeSeal(TransactionStore store, int yearMonth) {
+        MonthCells cells = months.get(yearMonth);
+        if (cells != null) {
+            refreshExtremes(store, yearMonth, cells);
+        }
+    }
+
+    /**
+     * Total cents of the cells matching a {@link TransactionQuery}.
+     */
+    long sumCents(TransactionStore store, TransactionQuery query) {
+        boolean[] paymentMethods = allowedCodes(store.paymentMethods(), query.getPaymentMethods());
+        Boolean income = query.getIncome();
+        long sum = 0L;
+        for (Map.Entry<Integer, MonthCells> entry : months.entrySet()) {
+            if (!query.getMonths().isEmpty() && !query.getMonths().contains(toYearMonth(entry.getKey()))) {
+                continue;
+            }
+            MonthCells cells = entry.getValue();
+            for (int c = 0; c < cells.size; c++) {
+                long key = cells.keys[c];
+                if ((income == null || income == isIncome(key))
+                        && (paymentMethods == null || paymentMethods[paymentMethodCode(key)])) {
+                    sum += cells.sums[c];
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Answers a rollup, one row per non-empty group, ordered by month,
+     * category, payment method and then type (incomes first).
+     */
+    List<RollupRow> query(TransactionStore store, RollupQuery query) {
+        boolean[] categories = allowedCodes(store.categories(), query.getCategories());
+        boolean[] paymentMethods = allowedCodes(store.paymentMethods(), query.getPaymentMethods());
+        Set<RollupQuery.Dimension> groupBy = query.getGroupBy();
+        boolean byMonth = groupBy.contains(RollupQuery.Dimension.MONTH);
+        boolean byCategory = groupBy.contains(RollupQuery.Dimension.CATEGORY);
+        boolean byPaymentMethod = groupBy.contains(RollupQuery.Dimension.PAYMENT_METHOD);
+        boolean byType = groupBy.contains(RollupQuery.Dimension.TYPE);
+        Boolean income = query.getIncome();
+
+        NavigableMap<Integer, MonthCells> range = months;
+        if (query.getFrom() != null) {
+            range = range.tailMap(index(query.getFrom()), true);
+        }
+        if (query.getTo() != null) {
+            range = range.headMap(index(query.getTo()), true);
+        }
+        Map<Group, long[]> groups = new HashMap<>(); // {sum, count, min, max}
+        for (Map.Entry<Integer, MonthCells> entry : range.entrySet()) {
+            int yearMonth = entry.getKey();
+            if (!query.getMonths().isEmpty() && !query.getMonths().contains(toYearMonth(yearMonth))) {
+                continue;
+            }
+            MonthCells cells = entry.getValue();
+            refreshExtremes(store, yearMonth, cells);
+            for (int c = 0; c < cells.size; c++) {
+                long key = cells.keys[c];
+                if (cells.counts[c] == 0
+                        || (income != null && income != isIncome(key))
+                        || (categories != null && !categories[categoryCode(key)])
+                        || (paymentMethods != null && !paymentMethods[paymentMethodCode(key)])) {
+                    continue;
+                }
+                Group group = new Group(byMonth ? yearMonth : Integer.MIN_VALUE,
+                        byCategory ? normalize(store.categories().decode(categoryCode(key))) : null,
+                        byPaymentMethod ? normalize(store.paymentMethods().decode(paymentMethodCode(key))) : null,
+                        byType ? (isIncome(key) ? 0 : 1) : -1);
+                long[] totals = groups.computeIfAbsent(group, g -> new long[] {0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE});
+                totals[0] += cells.sums[c];
+                totals[1] += cells.counts[c];
+                totals[2] = Math.min(totals[2], cells.mins[c]);
+                totals[3] = Math.max(totals[3], cells.maxes[c]);
+            }
+        }
+
+        List<Map.Entry<Group, long[]>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.sort(Map.Entry.comparingByKey(Group.ORDER));
+        List<RollupRow> rows = new ArrayList<>(sorted.size());
+        for (Map.Entry<Group, long[]> entry : sorted) {
+            Group g = entry.getKey();
+            long[] totals = entry.getValue();
+            rows.add(new RollupRow(g.yearMonth == Integer.MIN_VALUE ? null : toYearMonth(g.yearMonth), g.category,
+                    g.paymentMethod, g.type < 0 ? null : g.type == 0, Money.toAmount(totals[0]), totals[1],
+                    Money.toAmount(totals[2]), Money.toAmount(totals[3])));
+        }
+        return rows;
+    }
+
+    private record Group(int yearMonth, String category, String paymentMethod, int type) {
+
+        static final Comparator<Group> ORDER = Comparator.comparingInt(Group::yearMonth)
+                .thenComparing(Group::category, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Group::paymentMethod, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparingInt(Group::type);
+    }
+
+    // Recomputes the min and max of the month's stale cells in one pass over its rows
+    private void refreshExtremes(TransactionStore store, int yearMonth, MonthCells cells) {
+        synchronized (cells) { // concurrent readers may race to refresh
+            if (cells.stale.isEmpty()) {
+                return;
+            }
+            for (int c = cells.stale.nextSetBit(0); c >= 0; c = cells.stale.nextSetBit(c + 1)) {
+                cells.mins[c] = Long.MAX_VALUE;
+                cells.maxes[c] = Long.MIN_VALUE;
+            }
+            rowsOfMonth.apply(yearMonth).forEach(slot -> {
+                int c = cells.cellOf.get(cellKey(store, slot), 0L);
+                if (cells.stale.get(c)) {
+                    long cents = store.cents(slot);
+                    cells.mins[c] = Math.min(cells.mins[c], cents);
+                    cells.maxes[c] = Math.max(cells.maxes[c], cents);
+                }
+            });
+            cells.stale.clear();
+        }
+    }
+
+    // null when no value is asked for, i.e. every code is allowed
+    private static boolean[] allowedCodes(StringDictionary dictionary, Set<String> normalizedValues) {
+        if (normalizedValues.isEmpty()) {
+            return null;
+        }
+        boolean[] allowed = new boolean[dictionary.size()];
+        for (int code = 0; code < allowed.length; code++) {
+            allowed[code] = normalizedValues.contains(normalize(dictionary.decode(code)));
+        }
+        return allowed;
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase();
+    }
+
+    // Category code in the high half, payment method code and the type bit in the low half
+    private static long cellKey(TransactionStore store, int slot) {
+        return ((long) store.categoryCode(slot) << 32) | ((long) store.paymentMethodCode(slot) << 1)
+                | (store.isIncome(slot) ? 1L : 0L);
+    }
+
+    private static int categoryCode(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int paymentMethodCode(long key) {
+        return (int) (key >>> 1) & Integer.MAX_VALUE;
+    }
+
+    private static boolean isIncome(long key) {
+        return (key & 1L) != 0;
+    }
+
+    private static int index(YearMonth month) {
+        return TransactionStore.yearMonthIndex(month.getYear(), month.getMonthValue());
+    }
+
+    private static YearMonth toYearMonth(int yearMonth) {
+        return YearMonth.of(TransactionStore.yearOf(yearMonth), TransactionStore.monthOf(yearMonth));
+    }
+
+    /**
+     * The cells of one month, as parallel arrays. A cell keeps its position
+     * once created, even when its count drops to zero.
+     */
+    private static final class MonthCells {
+
+        final TransactionIdIndex cellOf = new TransactionIdIndex(); // (cell key, 0) -> position
+        long[] keys = new long[8];
+        long[] sums = new long[8];
+        long[] counts = new long[8];
+        long[] mins = new long[8];
+        long[] maxes = new long[8];
+        final BitSet stale = new BitSet();
+        int size = 0;
+        long rows = 0;
+        boolean sealed = false; // rows are out of the store; kept through clear()
+
+        void add(long key, long cents) {
+            int c = cellOf.get(key, 0L);
+            if (c < 0) {
+                c = newCell(key);
+            }
+            rows++;
+            sums[c] += cents;
+            counts[c]++;
+            if (!stale.get(c)) {
+                mins[c] = Math.min(mins[c], cents);
+                maxes[c] = Math.max(maxes[c], cents);
+            }
+        }
+
+        void remove(long key, long cents) {
+            int c = cellOf.get(key, 0L);
+            rows--;
+            sums[c] -= cents;
+            if (--counts[c] == 0) {
+                mins[c] = Long.MAX_VALUE;
+                maxes[c] = Long.MIN_VALUE;
+                stale.clear(c);
+            } else if (cents == mins[c] || cents == maxes[c]) {
+                stale.set(c);
+            }
+        }
+
+        private int newCell(long key) {
+            if (size == keys.length) {
+                int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                sums = Arrays.copyOf(sums, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                mins = Arrays.copyOf(mins, capacity);
+                maxes = Arrays.copyOf(maxes, capacity);
+            }
+            int c = size++;
+            keys[c] = key;
+            mins[c] = Long.MAX_VALUE;
+            maxes[c] = Long.MIN_VALUE;
+            cellOf.put(key, 0L, c);
+            return c;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.time.YearMonth;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A rollup for {@link FinanceService#rollup}: which dimensions to group by
+ * and which cells to include. Grouping by nothing gives one grand-total row;
+ * grouping by more dimensions drills down. Filters work like
+ * {@link TransactionQuery}: values for the same dimension are ORed,
+ * different dimensions are ANDed, and an unset dimension matches everything.
+ * For example, card expenses of 2025 per category and month:
+ * <pre>
+ *   new RollupQuery().groupBy(Dimension.CATEGORY, Dimension.MONTH)
+ *           .expenses().paymentMethod("card").between(YearMonth.of(2025, 1), YearMonth.of(2025, 12))
+ * </pre>
+ * Categories and payment methods are compared and grouped case-insensitively.
+ */
+public class RollupQuery {
+
+    public enum Dimension {
+        MONTH, CATEGORY, PAYMENT_METHOD, TYPE
+    }
+
+    private final Set<Dimension> groupBy = EnumSet.noneOf(Dimension.class);
+    private final Set<String> categories = new LinkedHashSet<>();
+    private final Set<String> paymentMethods = new LinkedHashSet<>();
+    private final Set<YearMonth> months = new LinkedHashSet<>();
+    private YearMonth from; // null for unbounded
+    private YearMonth to;
+    private Boolean income; // null for both types
+
+    public RollupQuery groupBy(Dimension... dimensions) {
+        groupBy.addAll(Set.of(dimensions));
+        return this;
+    }
+
+    public RollupQuery category(String category) {
+        categories.add(category.trim().toLowerCase());
+        return this;
+    }
+
+    public RollupQuery paymentMethod(String paymentMethod) {
+        paymentMethods.add(paymentMethod.trim().toLowerCase());
+        return this;
+    }
+
+    public RollupQuery month(YearMonth month) {
+        months.add(month);
+        return this;
+    }
+
+    /**
+     * Restricts to the months from {@code first} to {@code last}, both inclusive.
+     */
+    public RollupQuery between(YearMonth first, YearMonth last) {
+        this.from = first;
+        this.to = last;
+        return this;
+    }
+
+    public RollupQuery incomes() {
+        income = true;
+        return this;
+    }
+
+    public RollupQuery expenses() {
+        income = false;
+        return this;
+    }
+
+    Set<Dimension> getGroupBy() {
+        return groupBy;
+    }
+
+    Set<String> getCategories() {
+        return categories;
+    }
+
+    Set<String> getPaymentMethods() {
+        return paymentMethods;
+    }
+
+    Set<YearMonth> getMonths() {
+        return months;
+    }
+
+    YearMonth getFrom() {
+        return from;
+    }
+
+    YearMonth getTo() {
+        return to;
+    }
+
+    Boolean getIncome() {
+        return income;
+    }
+}
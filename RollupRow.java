@@ -0,0 +1,11 @@
+import java.time.YearMonth;
+
+/**
+ * One group of a {@link RollupQuery}. Dimensions that were not grouped by
+ * are null; a grouped category or payment method holds its lower-cased
+ * form. Amounts are totals over the group's transactions, counted as
+ * positive for incomes and expenses alike.
+ */
+public record RollupRow(YearMonth month, String category, String paymentMethod, Boolean income,
+                        double total, long count, double min, double max) {
+}
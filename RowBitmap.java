@@ -0,0 +1,370 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of store slots, in the style of a Roaring bitmap.
+ *
+ * Slots are split by their high 16 bits into chunks of 65536. Each non-empty
+ * chunk is stored either as a sorted array of its low 16 bits (while it holds
+ * at most {@value #ARRAY_MAX} slots) or as a 1024-word bitset. Sparse sets
+ * therefore cost about 2 bytes per slot and dense ones about 1 bit per slot,
+ * and iteration always runs in ascending slot order.
+ */
+class RowBitmap {
+
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Object[] containers = new Object[4]; // char[] (array container) or long[] (bitmap container)
+    private int[] cardinalities = new int[4];
+    private int size = 0; // number of containers
+
+    void add(int slot) {
+        char key = (char) (slot >>> 16);
+        char low = (char) slot;
+        int i = indexOf(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key, new char[4]);
+        }
+        Object container = containers[i];
+        if (container instanceof long[] bits) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0) {
+                bits[low >>> 6] |= mask;
+                cardinalities[i]++;
+            }
+            return;
+        }
+        char[] values = (char[]) container;
+        int card = cardinalities[i];
+        int pos = Arrays.binarySearch(values, 0, card, low);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        if (card == ARRAY_MAX) {
+            long[] bits = toBitmap(values, card);
+            bits[low >>> 6] |= 1L << low;
+            containers[i] = bits;
+            cardinalities[i] = card + 1;
+            return;
+        }
+        if (card == values.length) {
+            values = Arrays.copyOf(values, Math.min(ARRAY_MAX, card * 2));
+            containers[i] = values;
+        }
+        System.arraycopy(values, pos, values, pos + 1, card - pos);
+        values[pos] = low;
+        cardinalities[i] = card + 1;
+    }
+
+    void remove(int slot) {
+        int i = indexOf((char) (slot >>> 16));
+        if (i < 0) {
+            return;
+        }
+        char low = (char) slot;
+        Object container = containers[i];
+        if (container instanceof long[] bits) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0) {
+                return;
+            }
+            bits[low >>> 6] &= ~mask;
+            if (--cardinalities[i] <= ARRAY_MAX) {
+                containers[i] = toArray(bits, cardinalities[i]);
+            }
+            return;
+        }
+        char[] values = (char[]) container;
+        int card = cardinalities[i];
+        int pos = Arrays.binarySearch(values, 0, card, low);
+        if (pos < 0) {
+            return;
+        }
+        System.arraycopy(values, pos + 1, values, pos, card - pos - 1);
+        if (--cardinalities[i] == 0) {
+            removeContainer(i);
+        }
+    }
+
+    boolean contains(int slot) {
+        int i = indexOf((char) (slot >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) slot;
+        Object container = containers[i];
+        if (container instanceof long[] bits) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, 0, cardinalities[i], low) >= 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long cardinality() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += cardinalities[i];
+        }
+        return total;
+    }
+
+    void clear() {
+        Arrays.fill(containers, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Calls {@code action} for every slot in ascending order.
+     */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            Object container = containers[i];
+            if (container instanceof long[] bits) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) container;
+                for (int j = 0, card = cardinalities[i]; j < card; j++) {
+                    action.accept(high | values[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a copy that later changes to this bitmap do not reach.
+     */
+    RowBitmap copy() {
+        RowBitmap result = new RowBitmap();
+        for (int i = 0; i < size; i++) {
+            result.appendContainer(keys[i], copy(containers[i]), cardinalities[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new bitmap holding the slots in either bitmap.
+     */
+    static RowBitmap or(RowBitmap a, RowBitmap b) {
+        RowBitmap result = new RowBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.appendContainer(a.keys[i], copy(a.containers[i]), a.cardinalities[i]);
+                i++;
+            } else if (i >= a.size || b.keys[j] < a.keys[i]) {
+                result.appendContainer(b.keys[j], copy(b.containers[j]), b.cardinalities[j]);
+                j++;
+            } else {
+                long[] bits = bitsOf(a.containers[i], a.cardinalities[i]);
+                orInto(bits, b.containers[j], b.cardinalities[j]);
+                result.appendNormalized(a.keys[i], bits);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new bitmap holding the slots in both bitmaps.
+     */
+    static RowBitmap and(RowBitmap a, RowBitmap b) {
+        RowBitmap result = new RowBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (b.keys[j] < a.keys[i]) {
+                j++;
+            } else {
+                Object x = a.containers[i];
+                Object y = b.containers[j];
+                if (x instanceof long[] xBits && y instanceof long[] yBits) {
+                    long[] bits = new long[BITMAP_WORDS];
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        bits[w] = xBits[w] & yBits[w];
+                    }
+                    result.appendNormalized(a.keys[i], bits);
+                } else if (x instanceof long[] xBits) {
+                    result.appendFiltered(a.keys[i], (char[]) y, b.cardinalities[j], xBits);
+                } else if (y instanceof long[] yBits) {
+                    result.appendFiltered(a.keys[i], (char[]) x, a.cardinalities[i], yBits);
+                } else {
+                    result.appendIntersection(a.keys[i], (char[]) x, a.cardinalities[i], (char[]) y, b.cardinalities[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits the bitmap into consecutive parts of whole 65536-slot chunks,
+     * each holding at least {@code minRows} slots (the last may hold fewer).
+     * The parts share this bitmap's containers, so neither may be modified
+     * while the parts are in use.
+     */
+    List<RowBitmap> split(long minRows) {
+        List<RowBitmap> parts = new ArrayList<>();
+        RowBitmap part = new RowBitmap();
+        long rows = 0L;
+        for (int i = 0; i < size; i++) {
+            part.appendContainer(keys[i], containers[i], cardinalities[i]);
+            rows += cardinalities[i];
+            if (rows >= minRows) {
+                parts.add(part);
+                part = new RowBitmap();
+                rows = 0L;
+            }
+        }
+        if (part.size > 0) {
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    // --- container helpers ---
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int i, char key, Object container) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        System.arraycopy(cardinalities, i, cardinalities, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        cardinalities[i] = 0;
+        size++;
+    }
+
+    private void removeContainer(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        System.arraycopy(cardinalities, i + 1, cardinalities, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    // Keys must arrive in ascending order
+    private void appendContainer(char key, Object container, int cardinality) {
+        insertContainer(size, key, container);
+        cardinalities[size - 1] = cardinality;
+    }
+
+    // Appends a bitset container, switching to an array container if it is sparse
+    private void appendNormalized(char key, long[] bits) {
+        int card = 0;
+        for (long word : bits) {
+            card += Long.bitCount(word);
+        }
+        if (card == 0) {
+            return;
+        }
+        appendContainer(key, card <= ARRAY_MAX ? toArray(bits, card) : bits, card);
+    }
+
+    // Appends the values of an array container that are set in {@code bits}
+    private void appendFiltered(char key, char[] values, int cardinality, long[] bits) {
+        char[] kept = new char[Math.max(4, cardinality)];
+        int n = 0;
+        for (int j = 0; j < cardinality; j++) {
+            if ((bits[values[j] >>> 6] & (1L << values[j])) != 0) {
+                kept[n++] = values[j];
+            }
+        }
+        if (n > 0) {
+            appendContainer(key, kept, n);
+        }
+    }
+
+    // Appends the merge-intersection of two array containers
+    private void appendIntersection(char key, char[] x, int xCard, char[] y, int yCard) {
+        char[] kept = new char[Math.max(4, Math.min(xCard, yCard))];
+        int n = 0;
+        for (int i = 0, j = 0; i < xCard && j < yCard; ) {
+            if (x[i] < y[j]) {
+                i++;
+            } else if (y[j] < x[i]) {
+                j++;
+            } else {
+                kept[n++] = x[i];
+                i++;
+                j++;
+            }
+        }
+        if (n > 0) {
+            appendContainer(key, kept, n);
+        }
+    }
+
+    private static long[] bitsOf(Object container, int cardinality) {
+        if (container instanceof long[] bits) {
+            return bits.clone();
+        }
+        return toBitmap((char[]) container, cardinality);
+    }
+
+    private static void orInto(long[] bits, Object container, int cardinality) {
+        if (container instanceof long[] other) {
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bits[w] |= other[w];
+            }
+        } else {
+            char[] values = (char[]) container;
+            for (int j = 0; j < cardinality; j++) {
+                bits[values[j] >>> 6] |= 1L << values[j];
+            }
+        }
+    }
+
+    private static Object copy(Object container) {
+        return container instanceof long[] bits ? bits.clone() : ((char[]) container).clone();
+    }
+
+    private static long[] toBitmap(char[] values, int cardinality) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int j = 0; j < cardinality; j++) {
+            bits[values[j] >>> 6] |= 1L << values[j];
+        }
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int cardinality) {
+        char[] values = new char[Math.max(4, cardinality)];
+        int n = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+}
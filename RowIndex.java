@@ -0,0 +1,52 @@
+/**
+ * A structure derived from the store's rows that FinanceService keeps in step
+ * with every write. An edit is delivered as {@link #remove} with the old
+ * values followed by {@link #add} with the new ones.
+ */
+interface RowIndex {
+
+    void add(TransactionStore store, int slot);
+
+    /**
+     * Called while the slot still holds the values being removed.
+     */
+    void remove(TransactionStore store, int slot);
+
+    /**
+     * Forgets every row; FinanceService re-adds the live rows after a
+     * compaction renumbers slots.
+     */
+    void clear();
+
+    /**
+     * Like {@link #add}, for a row re-added after {@link #clear()} when the
+     * service rebuilds its indexes (on startup, say). An index may put off
+     * work it can redo from its rows on demand.
+     */
+    default void rebuild(TransactionStore store, int slot) {
+        add(store, slot);
+    }
+
+    /**
+     * Called before the rows of {@code yearMonth} are sealed, while they are
+     * still in the store, for an index that needs to finish work from them.
+     */
+    default void beforeSeal(TransactionStore store, int yearMonth) {
+    }
+
+    /**
+     * The row is leaving the store for a sealed (cold) month. Indexes that
+     * only locate rows drop it; ones that aggregate amounts may keep its
+     * contribution, as long as {@link #clear()} keeps it too.
+     */
+    default void seal(TransactionStore store, int slot) {
+        remove(store, slot);
+    }
+
+    /**
+     * The row is back in the store from a sealed month; undoes {@link #seal}.
+     */
+    default void unseal(TransactionStore store, int slot) {
+        add(store, slot);
+    }
+}
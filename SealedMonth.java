@@ -0,0 +1,422 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows of one (year, month) once it has gone cold: an immutable,
+ * compressed copy taken out of the store, plus per-day totals so that a
+ * summary over part of the month never has to decode it.
+ *
+ * IDs are kept as two plain columns, since random UUIDs do not compress,
+ * plus the rows in ID order for binary-searching one.
+ * Every other field goes into one byte block, a row at a time, as varints:
+ * the epoch day as the zigzag difference from the previous row's, the cents
+ * zigzagged, the store's category code, the payment method code shifted left
+ * over the income bit, and an index into the month's own table of distinct
+ * descriptions. The codes are the store's, which never reuses one, so a
+ * month can only be read back into the store it was sealed from.
+ *
+ * Every {@value #CHECKPOINT_ROWS}th row's block offset is recorded, so one
+ * row can be read without decoding the month up to it. Rows keep the order
+ * they had in the store.
+ */
+final class SealedMonth {
+
+    private static final int CHECKPOINT_ROWS = 64;
+
+    private final int yearMonth;
+    private final int firstEpochDay;
+    private final long[] idHighs;
+    private final long[] idLows;
+    private final int[] rowsById; // rows sorted by (idHigh, idLow)
+    private final byte[] block;
+    private final int[] checkpointOffsets; // row i * CHECKPOINT_ROWS -> where it starts in the block
+    private final int[] checkpointDays; // row i * CHECKPOINT_ROWS -> epoch day its delta is from
+    private final byte[] descriptionHeap; // distinct descriptions, UTF-8
+    private final int[] descriptionOffsets;
+    private final long[] fingerprints; // duplicate keys, sorted
+    private final int[] fingerprintRows; // row of each sorted fingerprint
+    private final long[] incomeByDay; // day of month - 1 -> cents
+    private final long[] expenseByDay;
+    private final int largestExpenseRow; // first row with the largest expense, -1 if none
+
+    private SealedMonth(int yearMonth, int firstEpochDay, long[] idHighs, long[] idLows, int[] rowsById, byte[] block,
+                        int[] checkpointOffsets, int[] checkpointDays, byte[] descriptionHeap, int[] descriptionOffsets,
+                        long[] fingerprints, int[] fingerprintRows, long[] incomeByDay, long[] expenseByDay,
+                        int largestExpenseRow) {
+        this.yearMonth = yearMonth;
+        this.firstEpochDay = firstEpochDay;
+        this.idHighs = idHighs;
+        this.idLows = idLows;
+        this.rowsById = rowsById;
+        this.block = block;
+        this.checkpointOffsets = checkpointOffsets;
+        this.checkpointDays = checkpointDays;
+        this.descriptionHeap = descriptionHeap;
+        this.descriptionOffsets = descriptionOffsets;
+        this.fingerprints = fingerprints;
+        this.fingerprintRows = fingerprintRows;
+        this.incomeByDay = incomeByDay;
+        this.expenseByDay = expenseByDay;
+        this.largestExpenseRow = largestExpenseRow;
+    }
+
+    /**
+     * Copies the given slots, all live and in {@code yearMonth}, into a
+     * sealed month. The store is not changed.
+     */
+    static SealedMonth seal(TransactionStore store, int yearMonth, int[] slots) {
+        int n = slots.length;
+        int firstEpochDay = (int) LocalDate.of(TransactionStore.yearOf(yearMonth), TransactionStore.monthOf(yearMonth), 1)
+                .toEpochDay();
+        long[] idHighs = new long[n];
+        long[] idLows = new long[n];
+        int[] checkpointOffsets = new int[(n + CHECKPOINT_ROWS - 1) / CHECKPOINT_ROWS];
+        int[] checkpointDays = new int[checkpointOffsets.length];
+        long[] incomeByDay = new long[31];
+        long[] expenseByDay = new long[31];
+        long[][] keyed = new long[n][]; // {fingerprint, row}
+        ByteArrayOutputStream block = new ByteArrayOutputStream(n * 6);
+        Map<String, Integer> descriptionIndex = new HashMap<>();
+        List<String> descriptions = new ArrayList<>();
+        int previousDay = firstEpochDay;
+        int largestExpenseRow = -1;
+        for (int row = 0; row < n; row++) {
+            int slot = slots[row];
+            if (row % CHECKPOINT_ROWS == 0) {
+                checkpointOffsets[row / CHECKPOINT_ROWS] = block.size();
+                checkpointDays[row / CHECKPOINT_ROWS] = previousDay;
+            }
+            idHighs[row] = store.idHigh(slot);
+            idLows[row] = store.idLow(slot);
+            int day = store.epochDay(slot);
+            long cents = store.cents(slot);
+            boolean income = store.isIncome(slot);
+            String description = store.readDescription(slot);
+            Integer index = descriptionIndex.get(description);
+            if (index == null) {
+                index = descriptions.size();
+                descriptionIndex.put(description, index);
+                descriptions.add(description);
+            }
+            putVarint(block, zigzag(day - previousDay));
+            putVarint(block, zigzag(cents));
+            putVarint(block, store.categoryCode(slot));
+            putVarint(block, ((long) store.paymentMethodCode(slot) << 1) | (income ? 1L : 0L));
+            putVarint(block, index);
+            previousDay = day;
+            (income ? incomeByDay : expenseByDay)[day - firstEpochDay] += cents;
+            if (!income && (largestExpenseRow < 0 || cents > store.cents(slots[largestExpenseRow]))) {
+                largestExpenseRow = row;
+            }
+            keyed[row] = new long[] {store.fingerprint(slot), row};
+        }
+        Arrays.sort(keyed, (a, b) -> Long.compare(a[0], b[0]));
+        long[][] byId = new long[n][];
+        for (int row = 0; row < n; row++) {
+            byId[row] = new long[] {idHighs[row], idLows[row], row};
+        }
+        Arrays.sort(byId, (a, b) -> compareIds(a[0], a[1], b[0], b[1]));
+        int[] rowsById = new int[n];
+        for (int i = 0; i < n; i++) {
+            rowsById[i] = (int) byId[i][2];
+        }
+        long[] fingerprints = new long[n];
+        int[] fingerprintRows = new int[n];
+        for (int i = 0; i < n; i++) {
+            fingerprints[i] = keyed[i][0];
+            fingerprintRows[i] = (int) keyed[i][1];
+        }
+
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        int[] descriptionOffsets = new int[descriptions.size() + 1];
+        for (int i = 0; i < descriptions.size(); i++) {
+            heap.writeBytes(descriptions.get(i).getBytes(StandardCharsets.UTF_8));
+            descriptionOffsets[i + 1] = heap.size();
+        }
+        return new SealedMonth(yearMonth, firstEpochDay, idHighs, idLows, rowsById, block.toByteArray(),
+                checkpointOffsets, checkpointDays, heap.toByteArray(), descriptionOffsets, fingerprints, fingerprintRows,
+                incomeByDay, expenseByDay, largestExpenseRow);
+    }
+
+    int yearMonth() {
+        return yearMonth;
+    }
+
+    int rows() {
+        return idHighs.length;
+    }
+
+    long idHigh(int row) {
+        return idHighs[row];
+    }
+
+    long idLow(int row) {
+        return idLows[row];
+    }
+
+    /**
+     * Approximate heap held by the month.
+     */
+    long bytes() {
+        return 32L * rows() + block.length + descriptionHeap.length + 4L * descriptionOffsets.length
+                + 8L * checkpointOffsets.length + 8L * (incomeByDay.length + expenseByDay.length);
+    }
+
+    /**
+     * Total income or expense dated between the two epoch days (inclusive),
+     * from the per-day totals.
+     */
+    long centsBetween(long fromEpochDay, long toEpochDay, boolean income) {
+        long[] byDay = income ? incomeByDay : expenseByDay;
+        long sum = 0L;
+        for (int day = (int) Math.max(0, Math.min(byDay.length, fromEpochDay - firstEpochDay));
+             day < byDay.length && day <= toEpochDay - firstEpochDay; day++) {
+            sum += byDay[day];
+        }
+        return sum;
+    }
+
+    /**
+     * The row with this ID, or -1.
+     */
+    int find(long idHigh, long idLow) {
+        int low = 0;
+        int high = rowsById.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int row = rowsById[middle];
+            int order = compareIds(idHighs[row], idLows[row], idHigh, idLow);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private static int compareIds(long highA, long lowA, long highB, long lowB) {
+        int order = Long.compare(highA, highB);
+        return order != 0 ? order : Long.compare(lowA, lowB);
+    }
+
+    /**
+     * The first row holding the month's largest expense, or -1 if it has none.
+     */
+    int largestExpenseRow() {
+        return largestExpenseRow;
+    }
+
+    /**
+     * The {@code i}th smallest duplicate key; there are {@link #rows()} of them.
+     */
+    long fingerprint(int i) {
+        return fingerprints[i];
+    }
+
+    /**
+     * The row holding the {@code i}th smallest duplicate key.
+     */
+    int fingerprintRow(int i) {
+        return fingerprintRows[i];
+    }
+
+    /**
+     * The index of the first of the sorted duplicate keys equal to
+     * {@code fingerprint}, or -1 if no row has it.
+     */
+    int firstFingerprint(long fingerprint) {
+        int i = Arrays.binarySearch(fingerprints, fingerprint);
+        if (i < 0) {
+            return -1;
+        }
+        while (i > 0 && fingerprints[i - 1] == fingerprint) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Each row's duplicate key, in row order.
+     */
+    long[] fingerprintsByRow() {
+        long[] byRow = new long[fingerprints.length];
+        for (int i = 0; i < fingerprints.length; i++) {
+            byRow[fingerprintRows[i]] = fingerprints[i];
+        }
+        return byRow;
+    }
+
+    /**
+     * A row holding a duplicate of the given values (see
+     * {@link DuplicateIndex#find}), or -1.
+     */
+    int findDuplicate(TransactionStore store, long fingerprint, long cents, String category, String description,
+                      boolean income) {
+        int i = firstFingerprint(fingerprint);
+        if (i < 0) {
+            return -1;
+        }
+        for (; i < fingerprints.length && fingerprints[i] == fingerprint; i++) {
+            Reader row = reader(fingerprintRows[i]);
+            row.next();
+            if (row.cents() == cents && row.isIncome() == income
+                    && store.categories().decode(row.categoryCode()).equalsIgnoreCase(category)
+                    && row.description().equalsIgnoreCase(description)) {
+                return fingerprintRows[i];
+            }
+        }
+        return -1;
+    }
+
+    Transaction materialize(TransactionStore store, int row) {
+        Reader reader = reader(row);
+        reader.next();
+        return reader.materialize(store);
+    }
+
+    /**
+     * Reads the rows in order, starting at {@code row}.
+     */
+    Reader reader(int row) {
+        return new Reader(row);
+    }
+
+    /**
+     * Decodes one row at a time: call {@link #next()}, then read its fields.
+     * Descriptions repeated within the month come back as the same String.
+     */
+    final class Reader {
+
+        private int row;
+        private int offset;
+        private int epochDay;
+        private long cents;
+        private int categoryCode;
+        private int paymentMethodCode;
+        private boolean income;
+        private int description;
+        private String[] decoded; // description index -> String, filled as read
+
+        private Reader(int start) {
+            int checkpoint = start / CHECKPOINT_ROWS;
+            row = checkpoint * CHECKPOINT_ROWS - 1;
+            if (checkpoint < checkpointOffsets.length) {
+                offset = checkpointOffsets[checkpoint];
+                epochDay = checkpointDays[checkpoint];
+            }
+            while (row + 1 < start) {
+                next();
+            }
+        }
+
+        boolean next() {
+            if (row + 1 >= idHighs.length) {
+                return false;
+            }
+            row++;
+            epochDay += (int) unzigzag(readVarint());
+            cents = unzigzag(readVarint());
+            categoryCode = (int) readVarint();
+            long methodAndType = readVarint();
+            paymentMethodCode = (int) (methodAndType >>> 1);
+            income = (methodAndType & 1L) != 0;
+            description = (int) readVarint();
+            return true;
+        }
+
+        long idHigh() {
+            return idHighs[row];
+        }
+
+        long idLow() {
+            return idLows[row];
+        }
+
+        int epochDay() {
+            return epochDay;
+        }
+
+        int yearMonth() {
+            return yearMonth;
+        }
+
+        long cents() {
+            return cents;
+        }
+
+        int categoryCode() {
+            return categoryCode;
+        }
+
+        int paymentMethodCode() {
+            return paymentMethodCode;
+        }
+
+        boolean isIncome() {
+            return income;
+        }
+
+        /**
+         * A copy of the current row, its codes decoded by {@code store}.
+         */
+        Transaction materialize(TransactionStore store) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            double amount = Money.toAmount(cents);
+            String category = store.categories().decode(categoryCode);
+            String paymentMethod = store.paymentMethods().decode(paymentMethodCode);
+            if (income) {
+                return new Income(idHigh(), idLow(), amount, category, description(), paymentMethod, date);
+            }
+            return new Expense(idHigh(), idLow(), amount, category, description(), paymentMethod, date);
+        }
+
+        String description() {
+            if (decoded == null) {
+                decoded = new String[descriptionOffsets.length - 1];
+            }
+            String value = decoded[description];
+            if (value == null) {
+                int start = descriptionOffsets[description];
+                value = new String(descriptionHeap, start, descriptionOffsets[description + 1] - start, StandardCharsets.UTF_8);
+                decoded[description] = value;
+            }
+            return value;
+        }
+
+        private long readVarint() {
+            long value = 0L;
+            for (int shift = 0; ; shift += 7) {
+                byte b = block[offset++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static void putVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts, latency and row counts per {@link FinanceService} operation.
+ *
+ * Every counter is a LongAdder (a LongAccumulator for the maximum), so
+ * concurrent callers add into per-thread cells instead of contending on one
+ * word; recording costs a pair of nanoTime reads and a few adds. Calls that
+ * take longer than the slow threshold are also committed as a
+ * {@link SlowOperationEvent} when a JFR recording is running.
+ *
+ * "Rows scanned" counts rows read from the columns, "rows matched" the rows
+ * returned or reported; operations that do not work on rows leave both at 0.
+ */
+class ServiceMetrics {
+
+    static final Duration DEFAULT_SLOW_THRESHOLD = Duration.ofMillis(100);
+
+    enum Operation {
+        ADD_TRANSACTION("addTransaction"),
+        TRY_ADD_EXPENSE("tryAddExpense"),
+        IMPORT_CSV("importCsv"),
+        EDIT_TRANSACTION("editTransaction"),
+        DELETE_TRANSACTION("deleteTransaction"),
+        SNAPSHOT("snapshot"),
+        SEAL_IDLE_MONTHS("sealIdleMonths"),
+        REHYDRATE_MONTH("rehydrateMonth"),
+        BUILD_INDEX("buildIndex"),
+        FIND_BY_ID("findById"),
+        GET_TRANSACTIONS("getTransactions"),
+        FIND_TRANSACTIONS("findTransactions"),
+        TOTAL_AMOUNT("totalAmount"),
+        ROLLUP("rollup"),
+        AMOUNT_QUANTILE("amountQuantile"),
+        DISTINCT_DESCRIPTIONS("distinctDescriptions"),
+        AMOUNT_BETWEEN("amountBetween"),
+        TOP_EXPENSES("topExpenses"),
+        PRINT_ALL_TRANSACTIONS("printAllTransactions"),
+        EXPORT_TRANSACTIONS("exportTransactions"),
+        PRINT_MONTHLY_SUMMARY("printMonthlySummary"),
+        LARGEST_EXPENSE_PER_MONTH("findLargestExpensePerMonth"),
+        SEARCH_EXPENSE_BY_CATEGORY("searchExpenseByCategory"),
+        SEARCH_BY_PAYMENT_METHOD("searchTransactionByPaymentMethod"),
+        DETECT_DUPLICATES("detectDuplicateTransactions");
+
+        final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+        final LongAdder slowCalls = new LongAdder();
+        final LongAdder rowsScanned = new LongAdder();
+        final LongAdder rowsMatched = new LongAdder();
+    }
+
+    private final Counters[] counters = new Counters[Operation.values().length];
+    private volatile long slowThresholdNanos = DEFAULT_SLOW_THRESHOLD.toNanos();
+
+    ServiceMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new Counters();
+        }
+    }
+
+    void setSlowThreshold(Duration threshold) {
+        slowThresholdNanos = threshold.toNanos();
+    }
+
+    Duration slowThreshold() {
+        return Duration.ofNanos(slowThresholdNanos);
+    }
+
+    /** Start time to pass to {@link #record}. */
+    long start() {
+        return System.nanoTime();
+    }
+
+    void record(Operation operation, long started) {
+        record(operation, started, 0L, 0L);
+    }
+
+    void record(Operation operation, long started, long rowsScanned, long rowsMatched) {
+        long elapsed = System.nanoTime() - started;
+        Counters c = counters[operation.ordinal()];
+        c.calls.increment();
+        c.nanos.add(elapsed);
+        c.maxNanos.accumulate(elapsed);
+        if (rowsScanned != 0) {
+            c.rowsScanned.add(rowsScanned);
+        }
+        if (rowsMatched != 0) {
+            c.rowsMatched.add(rowsMatched);
+        }
+        if (elapsed >= slowThresholdNanos) {
+            c.slowCalls.increment();
+            SlowOperationEvent event = new SlowOperationEvent();
+            if (event.isEnabled()) {
+                event.operation = operation.label;
+                event.elapsed = elapsed;
+                event.rowsScanned = rowsScanned;
+                event.rowsMatched = rowsMatched;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Prints one line per operation called at least once. Counters keep
+     * moving while this runs, so the lines are not one atomic snapshot.
+     */
+    void print(PrintStream out) {
+        out.printf("%-34s %10s %10s %10s %6s %14s %14s%n",
+                "Operation", "Calls", "Mean ms", "Max ms", "Slow", "Rows scanned", "Rows matched");
+        boolean any = false;
+        for (Operation operation : Operation.values()) {
+            Counters c = counters[operation.ordinal()];
+            long calls = c.calls.sum();
+            if (calls == 0) {
+                continue;
+            }
+            any = true;
+            long scanned = c.rowsScanned.sum();
+            long matched = c.rowsMatched.sum();
+            out.printf("%-34s %10d %10.3f %10.3f %6d %14s %14s%n", operation.label, calls,
+                    c.nanos.sum() / 1e6 / calls, c.maxNanos.get() / 1e6, c.slowCalls.sum(),
+                    scanned == 0 && matched == 0 ? "-" : String.valueOf(scanned),
+                    scanned == 0 && matched == 0 ? "-" : String.valueOf(matched));
+        }
+        if (!any) {
+            out.println("No operations recorded yet.");
+        }
+    }
+}
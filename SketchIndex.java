@@ -0,0 +1,185 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Streaming sketches per (year-month, category, type) cell: a
+ * {@link QuantileSketch} of the amounts and a {@link DistinctSketch} of the
+ * descriptions, so percentile and distinct-count queries read a few KB per
+ * cell instead of the rows.
+ *
+ * Every added row goes into its cell as it arrives, and each cell keeps the
+ * slots of its rows. A removed row (an edit removes, then adds) is taken
+ * back out of the distinct sketch while that is still exact; the quantile
+ * sketch cannot forget a value, so it, and a distinct sketch that has gone
+ * dense, is marked stale and the next query refills just that cell from
+ * its own rows. Other cells, and other months, are not touched.
+ *
+ * A rebuild (see {@link #rebuild}) only sorts rows into their cells and
+ * leaves every cell stale, so decoding and hashing every description waits
+ * for the first query on each cell.
+ *
+ * Cells are keyed by the store's category code; a query merges the cells of
+ * every code that normalizes to the category asked for, over one month or
+ * over all of them. A sealed month keeps its sketches, refreshed just before
+ * it is sealed.
+ *
+ * Writes must be exclusive; queries may run concurrently with each other.
+ */
+class SketchIndex implements RowIndex {
+
+    /**
+     * The sketches of one cell, or of several merged.
+     */
+    static final class Cell {
+
+        QuantileSketch amounts = new QuantileSketch();
+        DistinctSketch descriptions = new DistinctSketch();
+
+        void merge(Cell other) {
+            amounts.merge(other.amounts);
+            descriptions.merge(other.descriptions);
+        }
+    }
+
+    private final NavigableMap<Integer, MonthSketches> months = new TreeMap<>();
+
+    @Override
+    public void add(TransactionStore store, int slot) {
+        MonthSketches month = months.computeIfAbsent(store.yearMonth(slot), k -> new MonthSketches());
+        RowCell cell = month.cells.computeIfAbsent(cellKey(store, slot), k -> new RowCell());
+        cell.rows.add(slot);
+        if (!cell.amountsStale) {
+            cell.sketches.amounts.add(store.cents(slot));
+        }
+        if (!cell.descriptionsStale) {
+            cell.sketches.descriptions.add(DistinctSketch.hash(store.readDescription(slot)));
+        }
+    }
+
+    @Override
+    public void rebuild(TransactionStore store, int slot) {
+        MonthSketches month = months.computeIfAbsent(store.yearMonth(slot), k -> new MonthSketches());
+        RowCell cell = month.cells.computeIfAbsent(cellKey(store, slot), k -> new RowCell());
+        cell.rows.add(slot);
+        cell.amountsStale = true;
+        cell.descriptionsStale = true;
+    }
+
+    @Override
+    public void remove(TransactionStore store, int slot) {
+        MonthSketches month = months.get(store.yearMonth(slot));
+        long key = cellKey(store, slot);
+        RowCell cell = month.cells.get(key);
+        cell.rows.remove(slot);
+        if (cell.rows.isEmpty()) {
+            month.cells.remove(key);
+            if (month.cells.isEmpty()) {
+                months.remove(store.yearMonth(slot));
+            }
+            return;
+        }
+        cell.amountsStale = true;
+        if (!cell.descriptionsStale
+                && !cell.sketches.descriptions.remove(DistinctSketch.hash(store.readDescription(slot)))) {
+            cell.descriptionsStale = true;
+        }
+    }
+
+    @Override
+    public void clear() {
+        months.values().removeIf(month -> !month.sealed);
+    }
+
+    @Override
+    public void beforeSeal(TransactionStore store, int yearMonth) {
+        for (RowCell cell : months.get(yearMonth).cells.values()) {
+            current(store, cell);
+        }
+    }
+
+    @Override
+    public void seal(TransactionStore store, int slot) {
+        MonthSketches month = months.get(store.yearMonth(slot));
+        month.sealed = true;
+        month.cells.get(cellKey(store, slot)).rows.remove(slot);
+    }
+
+    @Override
+    public void unseal(TransactionStore store, int slot) {
+        MonthSketches month = months.get(store.yearMonth(slot));
+        month.sealed = false;
+        month.cells.get(cellKey(store, slot)).rows.add(slot); // its values never left the sketches
+    }
+
+    /**
+     * The sketches of the given type in {@code category} (trimmed and
+     * lower-cased), merged over one year-month index or, if it is null, over
+     * every month. Null if there is no such row.
+     */
+    Cell merged(TransactionStore store, Integer yearMonth, String category, boolean income) {
+        Map<Integer, MonthSketches> range = yearMonth == null ? months
+                : months.subMap(yearMonth, true, yearMonth, true);
+        Cell merged = null;
+        for (MonthSketches month : range.values()) {
+            for (Map.Entry<Long, RowCell> cell : month.cells.entrySet()) {
+                long key = cell.getKey();
+                if (isIncome(key) == income
+                        && store.categories().decode(categoryCode(key)).trim().toLowerCase().equals(category)) {
+                    if (merged == null) {
+                        merged = new Cell();
+                    }
+                    merged.merge(current(store, cell.getValue()));
+                }
+            }
+        }
+        return merged;
+    }
+
+    // Returns the cell's sketches, first refilling a stale one from the cell's rows
+    private static Cell current(TransactionStore store, RowCell cell) {
+        synchronized (cell) { // concurrent readers may race to refill
+            if (cell.amountsStale) {
+                QuantileSketch amounts = new QuantileSketch();
+                cell.rows.forEach(slot -> amounts.add(store.cents(slot)));
+                cell.sketches.amounts = amounts;
+                cell.amountsStale = false;
+            }
+            if (cell.descriptionsStale) {
+                DistinctSketch descriptions = new DistinctSketch();
+                cell.rows.forEach(slot -> descriptions.add(DistinctSketch.hash(store.readDescription(slot))));
+                cell.sketches.descriptions = descriptions;
+                cell.descriptionsStale = false;
+            }
+            return cell.sketches;
+        }
+    }
+
+    // Category code above the type bit
+    private static long cellKey(TransactionStore store, int slot) {
+        return ((long) store.categoryCode(slot) << 1) | (store.isIncome(slot) ? 1L : 0L);
+    }
+
+    private static int categoryCode(long key) {
+        return (int) (key >>> 1);
+    }
+
+    private static boolean isIncome(long key) {
+        return (key & 1L) != 0;
+    }
+
+    private static final class RowCell {
+
+        final Cell sketches = new Cell();
+        final RowBitmap rows = new RowBitmap(); // the cell's live slots; empty once sealed
+        boolean amountsStale = false;
+        boolean descriptionsStale = false;
+    }
+
+    private static final class MonthSketches {
+
+        final Map<Long, RowCell> cells = new HashMap<>();
+        boolean sealed = false; // rows are out of the store; kept through clear()
+    }
+}
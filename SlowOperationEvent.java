@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for a FinanceService call slower than the configured threshold
+ * (see {@link FinanceService#setSlowOperationThreshold}). Only committed
+ * while a recording has it enabled, e.g.
+ * {@code java -XX:StartFlightRecording=filename=ledger.jfr Main}.
+ */
+@Name("personalfinance.SlowOperation")
+@Label("Slow Ledger Operation")
+@Category("Personal Finance")
+@Description("A FinanceService call that took longer than the slow-operation threshold")
+class SlowOperationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Rows Scanned")
+    long rowsScanned;
+
+    @Label("Rows Matched")
+    long rowsMatched;
+}
@@ -0,0 +1,209 @@
+import java.util.Arrays;
+import java.time.YearMonth;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * The largest expenses of each (year, month), kept in order as rows change.
+ *
+ * Each month holds at most {@value #CAPACITY} slots sorted by amount
+ * (largest first, earlier slot first on ties), so a top-k query for
+ * k <= CAPACITY just copies a prefix. Removing one of those slots while the
+ * month has more expenses than are held marks the month stale; the next
+ * query refills it from the month's expense rows, in parallel for a large
+ * month.
+ *
+ * Writes must be exclusive; queries may run concurrently with each other.
+ */
+class TopExpenseIndex implements RowIndex {
+
+    static final int CAPACITY = 64;
+
+    private final NavigableMap<Integer, MonthTop> months = new TreeMap<>(); // sorted so range queries skip other months
+    private final IntFunction<RowBitmap> expenseRowsOfMonth; // year-month index -> its expense slots
+    private final ParallelScan scan;
+
+    TopExpenseIndex(IntFunction<RowBitmap> expenseRowsOfMonth, ParallelScan scan) {
+        this.expenseRowsOfMonth = expenseRowsOfMonth;
+        this.scan = scan;
+    }
+
+    @Override
+    public void add(TransactionStore store, int slot) {
+        if (!store.isIncome(slot)) {
+            months.computeIfAbsent(store.yearMonth(slot), k -> new MonthTop()).add(slot, store.cents(slot));
+        }
+    }
+
+    @Override
+    public void remove(TransactionStore store, int slot) {
+        if (store.isIncome(slot)) {
+            return;
+        }
+        MonthTop top = months.get(store.yearMonth(slot));
+        top.remove(slot);
+        if (top.expenses == 0) {
+            months.remove(store.yearMonth(slot));
+        }
+    }
+
+    @Override
+    public void clear() {
+        months.clear();
+    }
+
+    /**
+     * Returns the slots of up to {@code k} largest expenses in the year-month,
+     * largest first.
+     */
+    int[] top(TransactionStore store, int yearMonth, int k) {
+        MonthTop top = months.get(yearMonth);
+        if (top == null || k <= 0) {
+            return new int[0];
+        }
+        if (k > CAPACITY) {
+            return best(store, expenseRowsOfMonth.apply(yearMonth), Math.min(k, top.expenses), Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+        synchronized (top) { // concurrent readers may race to refill
+            if (top.stale) {
+                top.size = 0;
+                for (int slot : best(store, expenseRowsOfMonth.apply(yearMonth), CAPACITY, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                    top.offer(slot, store.cents(slot));
+                }
+                top.stale = false;
+            }
+            return Arrays.copyOf(top.slots, Math.min(k, top.size));
+        }
+    }
+
+    /**
+     * Like {@link #top}, but across every year's occurrence of the month of
+     * year (1-12), the way the monthly reports group expenses.
+     */
+    int[] topOfMonthNumber(TransactionStore store, int monthNumber, int k) {
+        int[] merged = new int[0];
+        if (k <= 0) {
+            return merged;
+        }
+        for (int yearMonth : months.keySet()) {
+            if (TransactionStore.monthOf(yearMonth) == monthNumber) {
+                merged = merge(store, merged, top(store, yearMonth, k), k);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the slots of up to {@code k} largest expenses dated between the
+     * two epoch days (inclusive), largest first. Only the months overlapping
+     * the range are visited, and only the two boundary months can need a scan
+     * of their rows.
+     */
+    int[] topBetween(TransactionStore store, int fromEpochDay, int toEpochDay, int k) {
+        int[] merged = new int[0];
+        if (k <= 0 || fromEpochDay > toEpochDay) {
+            return merged;
+        }
+        int first = TransactionStore.yearMonthOfEpochDay(fromEpochDay);
+        int last = TransactionStore.yearMonthOfEpochDay(toEpochDay);
+        for (int yearMonth : months.subMap(first, true, last, true).keySet()) {
+            YearMonth month = YearMonth.of(TransactionStore.yearOf(yearMonth), TransactionStore.monthOf(yearMonth));
+            if (fromEpochDay <= month.atDay(1).toEpochDay() && month.atEndOfMonth().toEpochDay() <= toEpochDay) {
+                merged = merge(store, merged, top(store, yearMonth, k), k);
+                continue;
+            }
+            int[] partial = best(store, expenseRowsOfMonth.apply(yearMonth), Math.min(k, months.get(yearMonth).expenses),
+                    fromEpochDay, toEpochDay);
+            merged = merge(store, merged, partial, k);
+        }
+        return merged;
+    }
+
+    // The k best-ranked rows dated between the two epoch days; a large month is
+    // scanned in parallel parts whose rankings are then merged
+    private int[] best(TransactionStore store, RowBitmap rows, int k, int fromEpochDay, int toEpochDay) {
+        int[] merged = new int[0];
+        for (int[] ranked : scan.map(rows, part -> {
+            MonthTop top = new MonthTop(k);
+            part.forEach(slot -> {
+                int day = store.epochDay(slot);
+                if (day >= fromEpochDay && day <= toEpochDay) {
+                    top.offer(slot, store.cents(slot));
+                }
+            });
+            return Arrays.copyOf(top.slots, top.size);
+        })) {
+            merged = merge(store, merged, ranked, k);
+        }
+        return merged;
+    }
+
+    // Merges two ranked slot lists, keeping the first k
+    private static int[] merge(TransactionStore store, int[] a, int[] b, int k) {
+        int[] merged = new int[Math.min(k, a.length + b.length)];
+        for (int n = 0, i = 0, j = 0; n < merged.length; n++) {
+            boolean takeA = j >= b.length || (i < a.length && ranksBefore(store.cents(a[i]), a[i], store.cents(b[j]), b[j]));
+            merged[n] = takeA ? a[i++] : b[j++];
+        }
+        return merged;
+    }
+
+    private static boolean ranksBefore(long cents, int slot, long otherCents, int otherSlot) {
+        return cents > otherCents || (cents == otherCents && slot < otherSlot);
+    }
+
+    private static final class MonthTop {
+
+        final int[] slots;
+        final long[] cents;
+        int size = 0;
+        int expenses = 0; // all expenses in the month, held or not
+        boolean stale = false;
+
+        MonthTop() {
+            this(CAPACITY);
+        }
+
+        MonthTop(int capacity) {
+            slots = new int[capacity];
+            cents = new long[capacity];
+        }
+
+        void add(int slot, long amount) {
+            expenses++;
+            offer(slot, amount);
+        }
+
+        void remove(int slot) {
+            expenses--;
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    System.arraycopy(slots, i + 1, slots, i, size - i - 1);
+                    System.arraycopy(cents, i + 1, cents, i, size - i - 1);
+                    size--;
+                    stale |= expenses > size;
+                    return;
+                }
+            }
+        }
+
+        // Inserts in rank order if the slot belongs among the held ones
+        void offer(int slot, long amount) {
+            if (size == slots.length && !ranksBefore(amount, slot, cents[size - 1], slots[size - 1])) {
+                return;
+            }
+            int i = size == slots.length ? size - 1 : size;
+            while (i > 0 && ranksBefore(amount, slot, cents[i - 1], slots[i - 1])) {
+                slots[i] = slots[i - 1];
+                cents[i] = cents[i - 1];
+                i--;
+            }
+            slots[i] = slot;
+            cents[i] = amount;
+            if (size < slots.length) {
+                size++;
+            }
+        }
+    }
+}
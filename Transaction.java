@@ -1,38 +1,66 @@
 import java.time.LocalDate;
-import java.util.Objects;
 import java.util.UUID;
 
 public abstract class Transaction implements Reportable {
 
-    private final String id;
+    // ID kept as the two halves of a UUID rather than its 36-char String form
+    private final long idHigh;
+    private final long idLow;
     private final LocalDate date;
     private double amount; // Made non-final for editing
     private String category; // Made non-final for editing
     private String description; // Made non-final for editing
     private String paymentMethod; // New field
+    private long fingerprint; // duplicate key, recomputed whenever amount, category or description change
 
     // Original Constructor (Kept for completeness, though not used in Main)
     protected Transaction(double amount, String category, String description, String paymentMethod) {
-        this.id = UUID.randomUUID().toString();
+        UUID id = UUID.randomUUID();
+        this.idHigh = id.getMostSignificantBits();
+        this.idLow = id.getLeastSignificantBits();
         this.date = LocalDate.now();
         this.amount = amount;
         this.category = category;
         this.description = description;
         this.paymentMethod = paymentMethod;
+        this.fingerprint = fingerprint(Money.toCents(amount), category, description, isIncome());
     }
 
     // Constructor to allow setting a specific date based on month input
     protected Transaction(double amount, String category, String description, String paymentMethod, LocalDate date) {
-        this.id = UUID.randomUUID().toString();
+        UUID id = UUID.randomUUID();
+        this.idHigh = id.getMostSignificantBits();
+        this.idLow = id.getLeastSignificantBits();
         this.date = date; // Use the provided date
         this.amount = amount;
         this.category = category;
         this.description = description;
         this.paymentMethod = paymentMethod;
+        this.fingerprint = fingerprint(Money.toCents(amount), category, description, isIncome());
+    }
+
+    // Constructor used when rebuilding a stored transaction with its existing ID
+    protected Transaction(long idHigh, long idLow, double amount, String category, String description, String paymentMethod, LocalDate date) {
+        this.idHigh = idHigh;
+        this.idLow = idLow;
+        this.date = date;
+        this.amount = amount;
+        this.category = category;
+        this.description = description;
+        this.paymentMethod = paymentMethod;
+        this.fingerprint = fingerprint(Money.toCents(amount), category, description, isIncome());
     }
 
     public String getId() {
-        return id;
+        return new UUID(idHigh, idLow).toString();
+    }
+
+    long getIdHigh() {
+        return idHigh;
+    }
+
+    long getIdLow() {
+        return idLow;
     }
 
     public LocalDate getDate() {
@@ -55,16 +83,23 @@ public abstract class Transaction implements Reportable {
         return paymentMethod;
     }
 
+    long getFingerprint() {
+        return fingerprint;
+    }
+
     public void setAmount(double amount) {
         this.amount = amount;
+        this.fingerprint = fingerprint(Money.toCents(amount), category, description, isIncome());
     }
 
     public void setCategory(String category) {
         this.category = category;
+        this.fingerprint = fingerprint(Money.toCents(amount), category, description, isIncome());
     }
 
     public void setDescription(String description) {
         this.description = description;
+        this.fingerprint = fingerprint(Money.toCents(amount), category, description, isIncome());
     }
 
     public void setPaymentMethod(String paymentMethod) {
@@ -76,7 +111,7 @@ public abstract class Transaction implements Reportable {
     @Override
     public String toReportLine() {
         return String.join(",",
-                id,
+                getId(),
                 date.toString(),
                 isIncome() ? "INCOME" : "EXPENSE",
                 category,
@@ -102,6 +137,26 @@ public abstract class Transaction implements Reportable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(amount, category.toLowerCase(), description.toLowerCase(), isIncome());
+        return Long.hashCode(fingerprint);
+    }
+
+    /**
+     * 64-bit hash of the fields {@link #equals} compares. Characters are
+     * folded the way {@link String#equalsIgnoreCase} folds them, so
+     * transactions that are equal always share a fingerprint.
+     */
+    static long fingerprint(long cents, String category, String description, boolean income) {
+        long h = cents * 0x9E3779B97F4A7C15L;
+        h = (h ^ foldedHash(category)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ foldedHash(description)) * 0x94D049BB133111EBL;
+        return income ? ~h : h;
+    }
+
+    private static long foldedHash(String text) {
+        long h = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            h = h * 31 + Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+        }
+        return h ^ (h >>> 29);
     }
 }
\ No newline at end of file
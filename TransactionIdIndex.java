@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index from a transaction's 128-bit ID to its slot in
+ * the transaction list. Keys are stored as two primitive long arrays so the
+ * index costs a few dozen bytes per row instead of a String + HashMap entry.
+ */
+class TransactionIdIndex {
+
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] highs;
+    private long[] lows;
+    private int[] slots;
+    private int size;
+
+    TransactionIdIndex() {
+        allocate(MIN_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot stored for the ID, or -1 if the ID is not indexed.
+     */
+    int get(long high, long low) {
+        int mask = slots.length - 1;
+        for (int i = hash(high, low) & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+            if (highs[i] == high && lows[i] == low) {
+                return slots[i];
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Inserts or overwrites the slot for the ID.
+     */
+    void put(long high, long low, int slot) {
+        if ((size + 1) * 2 > slots.length) {
+            resize(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        int i = hash(high, low) & mask;
+        while (slots[i] != EMPTY) {
+            if (highs[i] == high && lows[i] == low) {
+                slots[i] = slot;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        highs[i] = high;
+        lows[i] = low;
+        slots[i] = slot;
+        size++;
+    }
+
+    /**
+     * Removes the ID, returning its slot or -1 if it was not indexed.
+     * Uses backward-shift deletion so lookups never have to skip tombstones.
+     */
+    int remove(long high, long low) {
+        int mask = slots.length - 1;
+        int i = hash(high, low) & mask;
+        while (slots[i] != EMPTY) {
+            if (highs[i] == high && lows[i] == low) {
+                int removed = slots[i];
+                shiftBack(i);
+                size--;
+                return removed;
+            }
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+    }
+
+    private void shiftBack(int hole) {
+        int mask = slots.length - 1;
+        int i = (hole + 1) & mask;
+        while (slots[i] != EMPTY) {
+            int home = hash(highs[i], lows[i]) & mask;
+            // Move the entry into the hole if its home position does not lie
+            // cyclically between the hole and its current position.
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                highs[hole] = highs[i];
+                lows[hole] = lows[i];
+                slots[hole] = slots[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[hole] = EMPTY;
+    }
+
+    private void resize(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        int[] oldSlots = slots;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != EMPTY) {
+                put(oldHighs[i], oldLows[i], oldSlots[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    private static int hash(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,439 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log of every add, edit and delete applied to a
+ * FinanceService.
+ *
+ * Record layout (big-endian):
+ * <pre>
+ *   int   length of everything after the CRC
+ *   int   CRC32 of everything after the CRC
+ *   long  sequence number
+ *   byte  operation (ADD, EDIT, DELETE)
+ *   ...   operation fields
+ * </pre>
+ *
+ * Appends only copy the record into an in-memory batch. A background thread
+ * writes and fsyncs batches (group commit): a record is on disk at most
+ * {@code groupCommitMillis} after it was appended, and one fsync covers every
+ * record appended in that window. Call {@link #sync()} to wait for durability.
+ *
+ * Once a snapshot covers the records up to a {@link #mark()}, they are
+ * dropped with {@link #truncateThrough}, while later records stay.
+ */
+class TransactionJournal implements Closeable {
+
+    static final byte ADD = 1;
+    static final byte EDIT = 2;
+    static final byte DELETE = 3;
+
+    private static final int HEADER_BYTES = 8; // length + CRC
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+
+    /**
+     * Receives the records found by {@link #replay}.
+     */
+    interface Replayer {
+        void add(long idHigh, long idLow, long cents, int epochDay, boolean income,
+                 String category, String description, String paymentMethod);
+
+        void edit(long idHigh, long idLow, long cents, String category, String description, String paymentMethod);
+
+        void delete(long idHigh, long idLow);
+    }
+
+    /**
+     * A point in the journal: the last sequence number appended and the file
+     * offset the next record starts at.
+     */
+    record Mark(long sequence, long offset) {
+    }
+
+    private final Path file;
+    private volatile FileChannel channel; // replaced by truncateThrough while the flusher is idle
+    private final long groupCommitNanos;
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    // Guarded by lock
+    private byte[] pending = new byte[4096];
+    private int pendingBytes = 0;
+    private long pendingSinceNanos;
+    private long lastSeq;
+    private long durableSeq;
+    private long endOffset; // file size once every pending record is written
+    private int syncWaiters = 0;
+    private boolean closed = false;
+    private IOException failure;
+
+    /**
+     * Opens the journal for appending after a replay; {@code lastSeq} is the
+     * sequence number of the last record already in the file or snapshot.
+     */
+    TransactionJournal(Path file, long lastSeq, long groupCommitMillis) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.endOffset = channel.size();
+        this.channel.position(endOffset);
+        this.groupCommitNanos = groupCommitMillis * 1_000_000L;
+        this.lastSeq = lastSeq;
+        this.durableSeq = lastSeq;
+        this.flusher = new Thread(this::flushLoop, "transaction-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    long appendAdd(long idHigh, long idLow, long cents, int epochDay, boolean income,
+                   String category, String description, String paymentMethod) {
+        return append(addRecord(idHigh, idLow, cents, epochDay, income, category, description, paymentMethod));
+    }
+
+    long appendEdit(long idHigh, long idLow, long cents, String category, String description, String paymentMethod) {
+        return append(editRecord(idHigh, idLow, cents, category, description, paymentMethod));
+    }
+
+    long appendDelete(long idHigh, long idLow) {
+        return append(deleteRecord(idHigh, idLow));
+    }
+
+    /**
+     * Encodes an add for {@link #append}, so a caller can do the encoding
+     * before it takes the locks it appends under.
+     */
+    static ByteBuffer addRecord(long idHigh, long idLow, long cents, int epochDay, boolean income,
+                                String category, String description, String paymentMethod) {
+        byte[] cat = utf8(category);
+        byte[] desc = utf8(description);
+        byte[] pm = utf8(paymentMethod);
+        ByteBuffer record = ByteBuffer.allocate(8 + 1 + 16 + 8 + 4 + 1 + 12 + cat.length + desc.length + pm.length);
+        record.position(8);
+        record.put(ADD).putLong(idHigh).putLong(idLow).putLong(cents).putInt(epochDay).put((byte) (income ? 1 : 0));
+        putString(record, cat);
+        putString(record, desc);
+        putString(record, pm);
+        return record;
+    }
+
+    static ByteBuffer editRecord(long idHigh, long idLow, long cents, String category, String description,
+                                 String paymentMethod) {
+        byte[] cat = utf8(category);
+        byte[] desc = utf8(description);
+        byte[] pm = utf8(paymentMethod);
+        ByteBuffer record = ByteBuffer.allocate(8 + 1 + 16 + 8 + 12 + cat.length + desc.length + pm.length);
+        record.position(8);
+        record.put(EDIT).putLong(idHigh).putLong(idLow).putLong(cents);
+        putString(record, cat);
+        putString(record, desc);
+        putString(record, pm);
+        return record;
+    }
+
+    static ByteBuffer deleteRecord(long idHigh, long idLow) {
+        ByteBuffer record = ByteBuffer.allocate(8 + 1 + 16);
+        record.position(8);
+        record.put(DELETE).putLong(idHigh).putLong(idLow);
+        return record;
+    }
+
+    /**
+     * Frames the record (whose first 8 bytes are reserved for the sequence
+     * number) and hands it to the flusher. Returns its sequence number.
+     */
+    long append(ByteBuffer body) {
+        byte[] bytes = body.array();
+        synchronized (lock) {
+            checkOpen();
+            long seq = ++lastSeq;
+            ByteBuffer.wrap(bytes).putLong(seq);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            ensurePending(pendingBytes + HEADER_BYTES + bytes.length);
+            if (pendingBytes == 0) {
+                pendingSinceNanos = System.nanoTime();
+            }
+            ByteBuffer.wrap(pending, pendingBytes, HEADER_BYTES).putInt(bytes.length).putInt((int) crc.getValue());
+            System.arraycopy(bytes, 0, pending, pendingBytes + HEADER_BYTES, bytes.length);
+            pendingBytes += HEADER_BYTES + bytes.length;
+            endOffset += HEADER_BYTES + bytes.length;
+            lock.notifyAll();
+            return seq;
+        }
+    }
+
+    long lastSequence() {
+        synchronized (lock) {
+            return lastSeq;
+        }
+    }
+
+    /**
+     * Blocks until every record appended so far is on disk.
+     */
+    void sync() {
+        synchronized (lock) {
+            long target = lastSeq;
+            syncWaiters++;
+            try {
+                lock.notifyAll();
+                while (durableSeq < target && failure == null) {
+                    awaitQuietly(0);
+                }
+            } finally {
+                syncWaiters--;
+            }
+            checkFailure();
+        }
+    }
+
+    Mark mark() {
+        synchronized (lock) {
+            return new Mark(lastSeq, endOffset);
+        }
+    }
+
+    /**
+     * Drops the records up to {@code mark} once a snapshot covering them is
+     * on disk; records appended since are kept and sequence numbers keep
+     * counting. The kept records are copied to a new file that is renamed
+     * over the journal, so a crash leaves one whole file or the other. The
+     * journal's channel is closed first, as Windows refuses to replace a file
+     * that is still open. Appends wait meanwhile. Only one truncation may be
+     * in flight.
+     */
+    void truncateThrough(Mark mark) {
+        synchronized (lock) {
+            checkOpen();
+            while (durableSeq < lastSeq) {
+                sync(); // afterwards, with the lock held, the flusher is idle and the file holds every record
+            }
+            try {
+                long size = channel.size();
+                if (mark.offset() == size) {
+                    channel.truncate(0);
+                    channel.force(true);
+                } else {
+                    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                        for (long copied = 0L; copied < size - mark.offset(); ) {
+                            copied += channel.transferTo(mark.offset() + copied, size - mark.offset() - copied, out);
+                        }
+                        out.force(true);
+                    }
+                    channel.close();
+                    try {
+                        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        // The new file, or the old one if the rename failed; either holds every record
+                        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                        channel.position(channel.size());
+                    }
+                }
+                endOffset = channel.size();
+            } catch (IOException e) {
+                failure = e;
+                throw new UncheckedIOException("Could not truncate journal", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            sync();
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            int batchBytes;
+            long batchSeq;
+            synchronized (lock) {
+                while (pendingBytes == 0 && !closed) {
+                    awaitQuietly(0);
+                }
+                if (pendingBytes == 0) {
+                    return;
+                }
+                // Give other writers until the latency bound to join this fsync,
+                // unless the batch is full or someone is blocked in sync()
+                long deadline = pendingSinceNanos + groupCommitNanos;
+                long remaining;
+                while (!closed && pendingBytes < MAX_BATCH_BYTES && syncWaiters == 0
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    awaitQuietly(Math.max(1, remaining / 1_000_000L));
+                }
+                batch = pending;
+                batchBytes = pendingBytes;
+                batchSeq = lastSeq;
+                pending = new byte[Math.max(4096, batchBytes)];
+                pendingBytes = 0;
+            }
+            IOException error = null;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch, 0, batchBytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (lock) {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSeq = batchSeq;
+                }
+                lock.notifyAll();
+                if (error != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void awaitQuietly(long millis) {
+        try {
+            lock.wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal", e);
+        }
+    }
+
+    private void ensurePending(int required) {
+        if (required > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(required, pending.length * 2));
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed", failure);
+        }
+    }
+
+    /**
+     * Feeds every intact record with a sequence number above {@code afterSeq}
+     * to the replayer and returns the last sequence number seen. Reading stops
+     * at the first truncated or corrupt record, and the file is cut back to the
+     * end of the last good one so new appends follow valid data.
+     */
+    static long replay(Path file, long afterSeq, Replayer replayer) throws IOException {
+        long lastSeq = afterSeq;
+        if (!Files.exists(file)) {
+            return lastSeq;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long offset = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            while (offset + HEADER_BYTES <= size) {
+                header.clear();
+                readFully(in, header, offset);
+                header.flip();
+                int length = header.getInt();
+                int expectedCrc = header.getInt();
+                if (length < 9 || length > MAX_RECORD_BYTES || offset + HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(in, body, offset + HEADER_BYTES);
+                crc.reset();
+                crc.update(body.array());
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                body.flip();
+                long seq = body.getLong();
+                if (seq > afterSeq) {
+                    apply(body, replayer);
+                }
+                lastSeq = Math.max(lastSeq, seq);
+                offset += HEADER_BYTES + length;
+            }
+            if (offset < size) {
+                in.truncate(offset);
+                in.force(true);
+            }
+        }
+        return lastSeq;
+    }
+
+    private static void apply(ByteBuffer body, Replayer replayer) throws IOException {
+        byte op = body.get();
+        long idHigh = body.getLong();
+        long idLow = body.getLong();
+        switch (op) {
+            case ADD -> {
+                long cents = body.getLong();
+                int epochDay = body.getInt();
+                boolean income = body.get() != 0;
+                replayer.add(idHigh, idLow, cents, epochDay, income, getString(body), getString(body), getString(body));
+            }
+            case EDIT -> {
+                long cents = body.getLong();
+                replayer.edit(idHigh, idLow, cents, getString(body), getString(body), getString(body));
+            }
+            case DELETE -> replayer.delete(idHigh, idLow);
+            default -> throw new IOException("Unknown journal operation " + op);
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
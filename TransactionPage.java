@@ -0,0 +1,43 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One page of a listing, ordered by date and then ID. {@code nextCursor}
+ * is passed back to get the following page, and is null on the last one.
+ *
+ * A cursor names the last row handed out ({@code 2025-03-14_<id>}), not a
+ * position, so paging stays consistent while the ledger changes: rows added
+ * or deleted meanwhile are seen or not depending on which side of the
+ * cursor they fall, but no row is repeated or skipped.
+ */
+public record TransactionPage(List<Transaction> transactions, String nextCursor) {
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    static String cursor(Transaction last) {
+        return last.getDate() + "_" + last.getId();
+    }
+
+    /**
+     * Parses a cursor into {epoch day, ID high bits, ID low bits}.
+     *
+     * @throws IllegalArgumentException if it is not a cursor from this class
+     */
+    static long[] parseCursor(String cursor) {
+        int separator = cursor.indexOf('_');
+        try {
+            if (separator > 0) {
+                UUID id = UUID.fromString(cursor.substring(separator + 1));
+                return new long[] {LocalDate.parse(cursor.substring(0, separator)).toEpochDay(),
+                        id.getMostSignificantBits(), id.getLeastSignificantBits()};
+            }
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+}
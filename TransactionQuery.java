@@ -0,0 +1,53 @@
+import java.time.YearMonth;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Filter for {@link FinanceService#findTransactions} and
+ * {@link FinanceService#totalAmount}. Values given for the same field are
+ * ORed, different fields are ANDed, and a field left unset matches
+ * everything. For example, card or cash expenses in March 2025:
+ * <pre>
+ *   new TransactionQuery().paymentMethod("card").paymentMethod("cash")
+ *           .expenses().month(YearMonth.of(2025, 3))
+ * </pre>
+ * Payment methods are compared case-insensitively.
+ */
+public class TransactionQuery {
+
+    private final Set<String> paymentMethods = new LinkedHashSet<>();
+    private final Set<YearMonth> months = new LinkedHashSet<>();
+    private Boolean income; // null for both types
+
+    public TransactionQuery paymentMethod(String paymentMethod) {
+        paymentMethods.add(paymentMethod.trim().toLowerCase());
+        return this;
+    }
+
+    public TransactionQuery month(YearMonth month) {
+        months.add(month);
+        return this;
+    }
+
+    public TransactionQuery incomes() {
+        income = true;
+        return this;
+    }
+
+    public TransactionQuery expenses() {
+        income = false;
+        return this;
+    }
+
+    Set<String> getPaymentMethods() {
+        return paymentMethods;
+    }
+
+    Set<YearMonth> getMonths() {
+        return months;
+    }
+
+    Boolean getIncome() {
+        return income;
+    }
+}
@@ -0,0 +1,343 @@
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Column-oriented storage for transactions: one primitive array per field
+ * instead of one heap object per row. Amounts are whole cents, dates are
+ * epoch days, the income/expense type and liveness are bitsets, and
+ * category/payment method are dictionary codes.
+ *
+ * Rows are addressed by slot. Deleting a row only clears its live bit; the
+ * slot is reclaimed by {@link #compact()}. Transaction objects are created
+ * only when a caller asks for one via {@link #materialize(int)}.
+ */
+class TransactionStore {
+
+    /**
+     * Supplies descriptions for rows loaded from a snapshot, decoded on first access.
+     */
+    interface DescriptionSource {
+        String description(int row);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final StringDictionary categories = new StringDictionary();
+    private final StringDictionary paymentMethods = new StringDictionary();
+
+    private long[] idHighs = new long[INITIAL_CAPACITY];
+    private long[] idLows = new long[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private int[] yearMonths = new int[INITIAL_CAPACITY]; // year * 12 + (month - 1)
+    private int[] categoryCodes = new int[INITIAL_CAPACITY];
+    private int[] paymentMethodCodes = new int[INITIAL_CAPACITY];
+    private String[] descriptions = new String[INITIAL_CAPACITY];
+    private long[] fingerprints = new long[INITIAL_CAPACITY]; // Transaction.fingerprint of each row
+    private final BitSet income = new BitSet();
+    private final BitSet live = new BitSet();
+
+    private int slots = 0;
+    private int liveCount = 0;
+
+    // Rows [0, lazyRows) were loaded from a snapshot; a null description there means "not decoded yet"
+    private DescriptionSource lazyDescriptions;
+    private int lazyRows = 0;
+
+    /**
+     * Fills an empty store with {@code n} rows copied column by column from
+     * snapshot buffers. Descriptions are left in the source until read.
+     */
+    void load(int n, LongBuffer idHighColumn, LongBuffer idLowColumn, LongBuffer centsColumn,
+              IntBuffer epochDayColumn, IntBuffer yearMonthColumn, long[] incomeBits,
+              IntBuffer categoryColumn, IntBuffer paymentMethodColumn, LongBuffer fingerprintColumn,
+              List<String> categoryValues, List<String> paymentMethodValues, DescriptionSource descriptionSource) {
+        if (slots != 0) {
+            throw new IllegalStateException("Store is not empty");
+        }
+        ensureCapacity(n);
+        idHighColumn.get(idHighs, 0, n);
+        idLowColumn.get(idLows, 0, n);
+        centsColumn.get(cents, 0, n);
+        epochDayColumn.get(epochDays, 0, n);
+        yearMonthColumn.get(yearMonths, 0, n);
+        categoryColumn.get(categoryCodes, 0, n);
+        paymentMethodColumn.get(paymentMethodCodes, 0, n);
+        categoryValues.forEach(categories::encode);
+        paymentMethodValues.forEach(paymentMethods::encode);
+        income.or(BitSet.valueOf(incomeBits));
+        live.set(0, n);
+        slots = n;
+        liveCount = n;
+        lazyDescriptions = descriptionSource;
+        lazyRows = n;
+        fingerprintColumn.get(fingerprints, 0, n);
+    }
+
+    /**
+     * A copy of every row and both dictionaries, for writing a snapshot on
+     * another thread while this store keeps changing. Descriptions not yet
+     * decoded stay in the lazy source, which both stores then read.
+     */
+    TransactionStore copy() {
+        TransactionStore copy = new TransactionStore();
+        copy.idHighs = Arrays.copyOf(idHighs, slots);
+        copy.idLows = Arrays.copyOf(idLows, slots);
+        copy.cents = Arrays.copyOf(cents, slots);
+        copy.epochDays = Arrays.copyOf(epochDays, slots);
+        copy.yearMonths = Arrays.copyOf(yearMonths, slots);
+        copy.categoryCodes = Arrays.copyOf(categoryCodes, slots);
+        copy.paymentMethodCodes = Arrays.copyOf(paymentMethodCodes, slots);
+        copy.descriptions = Arrays.copyOf(descriptions, slots);
+        copy.fingerprints = Arrays.copyOf(fingerprints, slots);
+        for (int code = 0; code < categories.size(); code++) {
+            copy.categories.encode(categories.decode(code));
+        }
+        for (int code = 0; code < paymentMethods.size(); code++) {
+            copy.paymentMethods.encode(paymentMethods.decode(code));
+        }
+        copy.income.or(income);
+        copy.live.or(live);
+        copy.slots = slots;
+        copy.liveCount = liveCount;
+        copy.lazyDescriptions = lazyDescriptions;
+        copy.lazyRows = lazyRows;
+        return copy;
+    }
+
+    /**
+     * Appends the transaction and returns its slot.
+     */
+    int append(Transaction t) {
+        return append(t.getIdHigh(), t.getIdLow(), Money.toCents(t.getAmount()), (int) t.getDate().toEpochDay(),
+                t.isIncome(), t.getCategory(), t.getDescription(), t.getPaymentMethod());
+    }
+
+    int append(long idHigh, long idLow, long amountCents, int epochDay, boolean isIncome,
+               String category, String description, String paymentMethod) {
+        ensureCapacity(slots + 1);
+        int slot = slots++;
+        idHighs[slot] = idHigh;
+        idLows[slot] = idLow;
+        cents[slot] = amountCents;
+        epochDays[slot] = epochDay;
+        yearMonths[slot] = yearMonthOfEpochDay(epochDay);
+        categoryCodes[slot] = categories.encode(category);
+        paymentMethodCodes[slot] = paymentMethods.encode(paymentMethod);
+        descriptions[slot] = description;
+        fingerprints[slot] = Transaction.fingerprint(amountCents, category, description, isIncome);
+        income.set(slot, isIncome);
+        live.set(slot);
+        liveCount++;
+        return slot;
+    }
+
+    void update(int slot, long newCents, String category, String description, String paymentMethod) {
+        cents[slot] = newCents;
+        categoryCodes[slot] = categories.encode(category);
+        descriptions[slot] = description;
+        paymentMethodCodes[slot] = paymentMethods.encode(paymentMethod);
+        fingerprints[slot] = Transaction.fingerprint(newCents, category, description, income.get(slot));
+    }
+
+    void delete(int slot) {
+        live.clear(slot);
+        descriptions[slot] = null;
+        liveCount--;
+    }
+
+    /**
+     * Moves all live rows to the front, preserving their order, and gives
+     * back the columns' spare capacity once it is more than the rows in use.
+     * Slots handed out before the call are invalid afterwards.
+     */
+    void compact() {
+        decodeLazyDescriptions();
+        int to = 0;
+        for (int from = live.nextSetBit(0); from >= 0; from = live.nextSetBit(from + 1)) {
+            if (from != to) {
+                idHighs[to] = idHighs[from];
+                idLows[to] = idLows[from];
+                cents[to] = cents[from];
+                epochDays[to] = epochDays[from];
+                yearMonths[to] = yearMonths[from];
+                categoryCodes[to] = categoryCodes[from];
+                paymentMethodCodes[to] = paymentMethodCodes[from];
+                descriptions[to] = descriptions[from];
+                fingerprints[to] = fingerprints[from];
+                income.set(to, income.get(from));
+            }
+            to++;
+        }
+        Arrays.fill(descriptions, to, slots, null);
+        income.clear(to, slots);
+        live.clear();
+        live.set(0, to);
+        slots = to;
+        if (cents.length > 2 * Math.max(slots, INITIAL_CAPACITY)) {
+            resize(Math.max(slots + (slots >> 1), INITIAL_CAPACITY));
+        }
+    }
+
+    Transaction materialize(int slot) {
+        LocalDate date = LocalDate.ofEpochDay(epochDays[slot]);
+        double amount = Money.toAmount(cents[slot]);
+        String category = categories.decode(categoryCodes[slot]);
+        String paymentMethod = paymentMethods.decode(paymentMethodCodes[slot]);
+        if (income.get(slot)) {
+            return new Income(idHighs[slot], idLows[slot], amount, category, description(slot), paymentMethod, date);
+        }
+        return new Expense(idHighs[slot], idLows[slot], amount, category, description(slot), paymentMethod, date);
+    }
+
+    /** Number of slots in use, including deleted ones. */
+    int slotCount() {
+        return slots;
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Approximate heap held by the columns, spare capacity included. Counts
+     * 4-byte references (compressed oops) for descriptions and leaves out the
+     * description strings and dictionaries themselves.
+     */
+    long columnBytes() {
+        long perSlot = 4L * Long.BYTES + 4L * Integer.BYTES + 4L;
+        return cents.length * perSlot + (income.size() + live.size()) / 8;
+    }
+
+    /** Returns the next live slot at or after {@code from}, or -1. */
+    int nextLive(int from) {
+        int slot = live.nextSetBit(from);
+        return slot < slots ? slot : -1;
+    }
+
+    boolean isLive(int slot) {
+        return live.get(slot);
+    }
+
+    boolean isIncome(int slot) {
+        return income.get(slot);
+    }
+
+    long idHigh(int slot) {
+        return idHighs[slot];
+    }
+
+    long idLow(int slot) {
+        return idLows[slot];
+    }
+
+    long cents(int slot) {
+        return cents[slot];
+    }
+
+    int epochDay(int slot) {
+        return epochDays[slot];
+    }
+
+    int yearMonth(int slot) {
+        return yearMonths[slot];
+    }
+
+    int categoryCode(int slot) {
+        return categoryCodes[slot];
+    }
+
+    int paymentMethodCode(int slot) {
+        return paymentMethodCodes[slot];
+    }
+
+    String description(int slot) {
+        String description = descriptions[slot];
+        if (description == null && slot < lazyRows && live.get(slot)) {
+            description = lazyDescriptions.description(slot);
+            descriptions[slot] = description;
+        }
+        return description;
+    }
+
+    /**
+     * Like {@link #description(int)}, but a description still in the lazy
+     * source is decoded without being kept, for one-off passes over every row.
+     */
+    String readDescription(int slot) {
+        String description = descriptions[slot];
+        if (description == null && slot < lazyRows && live.get(slot)) {
+            description = lazyDescriptions.description(slot);
+        }
+        return description;
+    }
+
+    /**
+     * The row's duplicate key (see {@link Transaction#fingerprint}), kept
+     * with the row so indexing it never decodes the description.
+     */
+    long fingerprint(int slot) {
+        return fingerprints[slot];
+    }
+
+    StringDictionary categories() {
+        return categories;
+    }
+
+    StringDictionary paymentMethods() {
+        return paymentMethods;
+    }
+
+    // Compaction moves rows, so snapshot row numbers stop matching slots
+    private void decodeLazyDescriptions() {
+        for (int slot = live.nextSetBit(0); slot >= 0 && slot < lazyRows; slot = live.nextSetBit(slot + 1)) {
+            description(slot);
+        }
+        lazyDescriptions = null;
+        lazyRows = 0;
+    }
+
+    static int yearMonthIndex(int year, int month) {
+        return year * 12 + (month - 1);
+    }
+
+    /**
+     * Year-month index of an epoch day; same result as going through
+     * LocalDate.ofEpochDay, without creating the object.
+     */
+    static int yearMonthOfEpochDay(long epochDay) {
+        long date = CivilDate.fromEpochDay(epochDay);
+        return yearMonthIndex((int) CivilDate.year(date), CivilDate.month(date));
+    }
+
+    static int monthOf(int yearMonthIndex) {
+        return Math.floorMod(yearMonthIndex, 12) + 1;
+    }
+
+    static int yearOf(int yearMonthIndex) {
+        return Math.floorDiv(yearMonthIndex, 12);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= cents.length) {
+            return;
+        }
+        resize(Math.max(required, cents.length + (cents.length >> 1)));
+    }
+
+    private void resize(int capacity) {
+        idHighs = Arrays.copyOf(idHighs, capacity);
+        idLows = Arrays.copyOf(idLows, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        yearMonths = Arrays.copyOf(yearMonths, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        paymentMethodCodes = Arrays.copyOf(paymentMethodCodes, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        fingerprints = Arrays.copyOf(fingerprints, capacity);
+    }
+}
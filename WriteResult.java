@@ -0,0 +1,51 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of one add, edit or delete: whether it was applied, why not, and
+ * every message the console methods would have printed for it (warnings
+ * included), in order.
+ */
+public class WriteResult {
+
+    public enum Status {
+        APPLIED,
+        NOT_FOUND, // an edit or delete named no transaction
+        REJECTED   // a duplicate, a month's income or a budget rule stopped it
+    }
+
+    private final Status status;
+    private final String reason;
+    private final List<String> messages;
+
+    WriteResult(Status status, String reason, List<String> messages) {
+        this.status = status;
+        this.reason = reason;
+        this.messages = Collections.unmodifiableList(messages);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isApplied() {
+        return status == Status.APPLIED;
+    }
+
+    /**
+     * Why the write was not applied, or null if it was.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    // Prints the messages, as the console methods do, and returns isApplied()
+    boolean print() {
+        messages.forEach(System.out::println);
+        return isApplied();
+    }
+}
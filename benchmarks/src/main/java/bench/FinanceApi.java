@@ -0,0 +1,323 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * Typed access to the application. Its classes live in the default package,
+ * which a named package cannot import (and JMH insists on one), so every call
+ * goes through a method handle held in a static final field. The JIT treats
+ * those as constants and inlines straight through them.
+ */
+final class FinanceApi {
+
+    private static final MethodHandle NEW_SERVICE;
+    private static final MethodHandle OPEN_SERVICE;
+    private static final MethodHandle CLOSE_SERVICE;
+    private static final MethodHandle NEW_INCOME;
+    private static final MethodHandle NEW_EXPENSE;
+    private static final MethodHandle GET_ID;
+    private static final MethodHandle GET_AMOUNT;
+    private static final MethodHandle GET_CATEGORY;
+    private static final MethodHandle GET_DESCRIPTION;
+    private static final MethodHandle GET_DATE;
+    private static final MethodHandle IS_INCOME;
+    private static final MethodHandle ADD_TRANSACTION;
+    private static final MethodHandle TRY_ADD_EXPENSE;
+    private static final MethodHandle GET_TRANSACTIONS;
+    private static final MethodHandle GET_MONTHLY_INCOME;
+    private static final MethodHandle GET_MONTHLY_EXPENSE;
+    private static final MethodHandle GET_TOTAL_YEARLY_SAVINGS;
+    private static final MethodHandle GET_YEAR_MONTH_INCOME;
+    private static final MethodHandle GET_YEAR_MONTH_EXPENSE;
+    private static final MethodHandle EDIT_TRANSACTION;
+    private static final MethodHandle DELETE_TRANSACTION;
+    private static final MethodHandle SEARCH_EXPENSE_BY_CATEGORY;
+    private static final MethodHandle SEARCH_BY_PAYMENT_METHOD;
+    private static final MethodHandle DETECT_DUPLICATES;
+    private static final MethodHandle FIND_LARGEST_EXPENSE_PER_MONTH;
+    private static final MethodHandle AMOUNT_QUANTILE;
+    private static final MethodHandle DISTINCT_DESCRIPTIONS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> service = Class.forName("FinanceService");
+            Class<?> transaction = Class.forName("Transaction");
+            Class<?> expense = Class.forName("Expense");
+            NEW_SERVICE = lookup.findConstructor(service, MethodType.methodType(void.class));
+            OPEN_SERVICE = lookup.findStatic(service, "open", MethodType.methodType(service, Path.class));
+            CLOSE_SERVICE = lookup.findVirtual(service, "close", MethodType.methodType(void.class));
+            NEW_INCOME = storedConstructor(lookup, Class.forName("Income"));
+            NEW_EXPENSE = storedConstructor(lookup, expense);
+            GET_ID = lookup.findVirtual(transaction, "getId", MethodType.methodType(String.class));
+            GET_AMOUNT = lookup.findVirtual(transaction, "getAmount", MethodType.methodType(double.class));
+            GET_CATEGORY = lookup.findVirtual(transaction, "getCategory", MethodType.methodType(String.class));
+            GET_DESCRIPTION = lookup.findVirtual(transaction, "getDescription", MethodType.methodType(String.class));
+            GET_DATE = lookup.findVirtual(transaction, "getDate", MethodType.methodType(LocalDate.class));
+            IS_INCOME = lookup.findVirtual(transaction, "isIncome", MethodType.methodType(boolean.class));
+            ADD_TRANSACTION = lookup.findVirtual(service, "addTransaction", MethodType.methodType(boolean.class, transaction));
+            TRY_ADD_EXPENSE = lookup.findVirtual(service, "tryAddExpense", MethodType.methodType(boolean.class, expense));
+            GET_TRANSACTIONS = lookup.findVirtual(service, "getTransactions", MethodType.methodType(List.class));
+            GET_MONTHLY_INCOME = lookup.findVirtual(service, "getMonthlyIncome", MethodType.methodType(double.class, int.class));
+            GET_MONTHLY_EXPENSE = lookup.findVirtual(service, "getMonthlyExpense", MethodType.methodType(double.class, int.class));
+            GET_TOTAL_YEARLY_SAVINGS = lookup.findVirtual(service, "getTotalYearlySavings", MethodType.methodType(double.class));
+            GET_YEAR_MONTH_INCOME = lookup.findVirtual(service, "getMonthlyIncome", MethodType.methodType(double.class, YearMonth.class));
+            GET_YEAR_MONTH_EXPENSE = lookup.findVirtual(service, "getMonthlyExpense", MethodType.methodType(double.class, YearMonth.class));
+            EDIT_TRANSACTION = lookup.findVirtual(service, "editTransaction", MethodType.methodType(boolean.class,
+                    String.class, double.class, String.class, String.class, String.class));
+            DELETE_TRANSACTION = lookup.findVirtual(service, "deleteTransaction", MethodType.methodType(boolean.class, String.class));
+            SEARCH_EXPENSE_BY_CATEGORY = lookup.findVirtual(service, "searchExpenseByCategory", MethodType.methodType(void.class, String.class));
+            SEARCH_BY_PAYMENT_METHOD = lookup.findVirtual(service, "searchTransactionByPaymentMethod", MethodType.methodType(void.class, String.class));
+            DETECT_DUPLICATES = lookup.findVirtual(service, "detectDuplicateTransactions", MethodType.methodType(void.class));
+            FIND_LARGEST_EXPENSE_PER_MONTH = lookup.findVirtual(service, "findLargestExpensePerMonth", MethodType.methodType(void.class));
+            AMOUNT_QUANTILE = lookup.findVirtual(service, "amountQuantile", MethodType.methodType(OptionalDouble.class,
+                    String.class, YearMonth.class, boolean.class, double.class));
+            DISTINCT_DESCRIPTIONS = lookup.findVirtual(service, "distinctDescriptions", MethodType.methodType(long.class,
+                    String.class, YearMonth.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private FinanceApi() {
+    }
+
+    // The package-private constructor that takes a fixed ID, so generated ledgers are reproducible
+    private static MethodHandle storedConstructor(MethodHandles.Lookup lookup, Class<?> type) throws ReflectiveOperationException {
+        Constructor<?> constructor = type.getDeclaredConstructor(long.class, long.class, double.class,
+                String.class, String.class, String.class, LocalDate.class);
+        constructor.setAccessible(true);
+        return lookup.unreflectConstructor(constructor);
+    }
+
+    static Object newService() {
+        try {
+            return NEW_SERVICE.invoke();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Opens a durable ledger in the directory (see FinanceService.open).
+     */
+    static Object openService(Path directory) {
+        try {
+            return OPEN_SERVICE.invoke(directory);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void closeService(Object service) {
+        try {
+            CLOSE_SERVICE.invoke(service);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newTransaction(boolean income, long idHigh, long idLow, double amount, String category,
+                                 String description, String paymentMethod, LocalDate date) {
+        try {
+            return (income ? NEW_INCOME : NEW_EXPENSE).invoke(idHigh, idLow, amount, category, description, paymentMethod, date);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String getId(Object transaction) {
+        try {
+            return (String) GET_ID.invoke(transaction);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static double getAmount(Object transaction) {
+        try {
+            return (double) GET_AMOUNT.invoke(transaction);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String getCategory(Object transaction) {
+        try {
+            return (String) GET_CATEGORY.invoke(transaction);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String getDescription(Object transaction) {
+        try {
+            return (String) GET_DESCRIPTION.invoke(transaction);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static LocalDate getDate(Object transaction) {
+        try {
+            return (LocalDate) GET_DATE.invoke(transaction);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean isIncome(Object transaction) {
+        try {
+            return (boolean) IS_INCOME.invoke(transaction);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean addTransaction(Object service, Object transaction) {
+        try {
+            return (boolean) ADD_TRANSACTION.invoke(service, transaction);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean tryAddExpense(Object service, Object expense) {
+        try {
+            return (boolean) TRY_ADD_EXPENSE.invoke(service, expense);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> getTransactions(Object service) {
+        try {
+            return (List<?>) GET_TRANSACTIONS.invoke(service);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static double getMonthlyIncome(Object service, int monthNumber) {
+        try {
+            return (double) GET_MONTHLY_INCOME.invoke(service, monthNumber);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static double getMonthlyExpense(Object service, int monthNumber) {
+        try {
+            return (double) GET_MONTHLY_EXPENSE.invoke(service, monthNumber);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static double getTotalYearlySavings(Object service) {
+        try {
+            return (double) GET_TOTAL_YEARLY_SAVINGS.invoke(service);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static double getMonthlyIncome(Object service, YearMonth month) {
+        try {
+            return (double) GET_YEAR_MONTH_INCOME.invoke(service, month);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static double getMonthlyExpense(Object service, YearMonth month) {
+        try {
+            return (double) GET_YEAR_MONTH_EXPENSE.invoke(service, month);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean editTransaction(Object service, String id, double amount, String category, String description,
+                                   String paymentMethod) {
+        try {
+            return (boolean) EDIT_TRANSACTION.invoke(service, id, amount, category, description, paymentMethod);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean deleteTransaction(Object service, String id) {
+        try {
+            return (boolean) DELETE_TRANSACTION.invoke(service, id);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void searchExpenseByCategory(Object service, String category) {
+        try {
+            SEARCH_EXPENSE_BY_CATEGORY.invoke(service, category);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void searchTransactionByPaymentMethod(Object service, String paymentMethod) {
+        try {
+            SEARCH_BY_PAYMENT_METHOD.invoke(service, paymentMethod);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void detectDuplicateTransactions(Object service) {
+        try {
+            DETECT_DUPLICATES.invoke(service);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void findLargestExpensePerMonth(Object service) {
+        try {
+            FIND_LARGEST_EXPENSE_PER_MONTH.invoke(service);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static OptionalDouble amountQuantile(Object service, String category, YearMonth month, boolean income, double quantile) {
+        try {
+            return (OptionalDouble) AMOUNT_QUANTILE.invoke(service, category, month, income, quantile);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static long distinctDescriptions(Object service, String category, YearMonth month, boolean income) {
+        try {
+            return (long) DISTINCT_DESCRIPTIONS.invoke(service, category, month, income);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        throw new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,143 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One benchmark per FinanceService operation, on ledgers of {@link #rows}
+ * generated transactions. Each fork builds its ledger once; console output
+ * from the report methods is discarded so only the work is measured.
+ *
+ * addTransaction grows the ledger as it runs, and deleteTransaction re-adds
+ * what it deletes so the ledger keeps its size (its time includes that add).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class FinanceServiceBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 16;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int rows;
+
+    @Param("42")
+    long seed;
+
+    private Object service;
+    private LedgerGenerator generator;
+    private Object[] sample;    // existing transactions, for edits and deletes
+    private String[] sampleIds;
+    private int cursor;
+    private boolean flip;
+    private int month;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void buildLedger() {
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        service = FinanceApi.newService();
+        generator = new LedgerGenerator(seed);
+        int sampleSize = Math.min(SAMPLE_SIZE, rows);
+        sample = new Object[sampleSize];
+        sampleIds = new String[sampleSize];
+        int stride = rows / sampleSize;
+        for (int i = 0; i < rows; i++) {
+            Object transaction = generator.next();
+            FinanceApi.addTransaction(service, transaction);
+            if (i % stride == 0 && i / stride < sampleSize) {
+                sample[i / stride] = transaction;
+                sampleIds[i / stride] = FinanceApi.getId(transaction);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreStdout() {
+        System.setOut(stdout);
+    }
+
+    private int nextSample() {
+        cursor = cursor + 1 == sample.length ? 0 : cursor + 1;
+        return cursor;
+    }
+
+    private int nextMonth() {
+        month = month % 12 + 1;
+        return month;
+    }
+
+    @Benchmark
+    public boolean addTransaction() {
+        return FinanceApi.addTransaction(service, generator.next());
+    }
+
+    @Benchmark
+    public double getMonthlyIncome() {
+        return FinanceApi.getMonthlyIncome(service, nextMonth());
+    }
+
+    @Benchmark
+    public double getMonthlyExpense() {
+        return FinanceApi.getMonthlyExpense(service, nextMonth());
+    }
+
+    @Benchmark
+    public double getTotalYearlySavings() {
+        return FinanceApi.getTotalYearlySavings(service);
+    }
+
+    @Benchmark
+    public boolean editTransaction() {
+        int i = nextSample();
+        return FinanceApi.editTransaction(service, sampleIds[i], (flip = !flip) ? 12.5 : 25.0, "Dining",
+                "Edited in benchmark", "card");
+    }
+
+    @Benchmark
+    public boolean deleteTransaction() {
+        int i = nextSample();
+        boolean deleted = FinanceApi.deleteTransaction(service, sampleIds[i]);
+        FinanceApi.addTransaction(service, sample[i]);
+        return deleted;
+    }
+
+    @Benchmark
+    public void searchExpenseByCategory() {
+        FinanceApi.searchExpenseByCategory(service, "groceries"); // the most common category
+    }
+
+    @Benchmark
+    public void searchTransactionByPaymentMethod() {
+        FinanceApi.searchTransactionByPaymentMethod(service, "card");
+    }
+
+    @Benchmark
+    public void detectDuplicateTransactions() {
+        FinanceApi.detectDuplicateTransactions(service);
+    }
+
+    @Benchmark
+    public void findLargestExpensePerMonth() {
+        FinanceApi.findLargestExpensePerMonth(service);
+    }
+}
@@ -0,0 +1,129 @@
+package bench;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded source of realistic-looking transactions. The same seed always
+ * yields the same sequence, IDs included, so ledgers of any size can be
+ * rebuilt exactly between runs.
+ *
+ * About one row in five is an income. Expense categories follow a Zipf
+ * distribution (a few categories dominate, as in real spending), dates are
+ * spread over {@link #YEARS} years (evenly, or Zipf-skewed towards recent
+ * months), and descriptions repeat often enough for the duplicate report to
+ * find matches.
+ */
+final class LedgerGenerator {
+
+    static final String[] EXPENSE_CATEGORIES = {
+            "Groceries", "Rent", "Dining", "Transport", "Utilities", "Shopping", "Entertainment", "Health",
+            "Travel", "Insurance", "Education", "Gifts", "Subscriptions", "Pets", "Home", "Charity"
+    };
+    static final String[] INCOME_CATEGORIES = {"Salary", "Freelance", "Bonus", "Interest"};
+    static final String[] PAYMENT_METHODS = {"card", "cash", "online"};
+    static final int FIRST_YEAR = 2023;
+    static final int YEARS = 3;
+
+    private static final int DESCRIPTIONS_PER_CATEGORY = 500;
+    private static final double DEFAULT_CATEGORY_SKEW = 1.1;
+
+    private final SplittableRandom random;
+    private final double[] categoryWeights; // cumulative
+    private final double[] monthWeights;    // cumulative, most recent month first; null for evenly spread dates
+    private final long firstDay = LocalDate.of(FIRST_YEAR, 1, 1).toEpochDay();
+    private final int days = (int) (LocalDate.of(FIRST_YEAR + YEARS, 1, 1).toEpochDay() - firstDay);
+
+    LedgerGenerator(long seed) {
+        this(seed, DEFAULT_CATEGORY_SKEW, 0.0);
+    }
+
+    /**
+     * @param categorySkew Zipf exponent over expense categories; 0 makes them uniform
+     * @param monthSkew    Zipf exponent over months, most recent first; 0 spreads dates evenly
+     */
+    LedgerGenerator(long seed, double categorySkew, double monthSkew) {
+        this.random = new SplittableRandom(seed);
+        this.categoryWeights = zipfCumulative(EXPENSE_CATEGORIES.length, categorySkew);
+        this.monthWeights = monthSkew == 0.0 ? null : zipfCumulative(YEARS * 12, monthSkew);
+    }
+
+    /**
+     * Returns the next transaction (an Income or an Expense).
+     */
+    Object next() {
+        boolean income = random.nextInt(5) == 0;
+        return next(income, nextDate());
+    }
+
+    LocalDate nextDate() {
+        if (monthWeights == null) {
+            return LocalDate.ofEpochDay(firstDay + random.nextInt(days));
+        }
+        YearMonth month = nextMonth();
+        return month.atDay(1 + random.nextInt(month.lengthOfMonth()));
+    }
+
+    YearMonth nextMonth() {
+        if (monthWeights == null) {
+            return YearMonth.of(FIRST_YEAR + random.nextInt(YEARS), 1 + random.nextInt(12));
+        }
+        return YearMonth.of(FIRST_YEAR + YEARS - 1, 12).minusMonths(sample(monthWeights));
+    }
+
+    /**
+     * Returns the next transaction of the given type and date.
+     */
+    Object next(boolean income, LocalDate date) {
+        String category;
+        double amount;
+        if (income) {
+            category = INCOME_CATEGORIES[random.nextInt(INCOME_CATEGORIES.length)];
+            amount = (50_000 + random.nextInt(450_000)) / 100.0;
+        } else {
+            category = EXPENSE_CATEGORIES[expenseCategory()];
+            amount = Math.round(Math.exp(random.nextDouble() * Math.log(200_000))) / 100.0; // 0.01 to 2000, skewed low
+        }
+        String description = category + " #" + random.nextInt(DESCRIPTIONS_PER_CATEGORY);
+        String paymentMethod = PAYMENT_METHODS[random.nextInt(PAYMENT_METHODS.length)];
+        return FinanceApi.newTransaction(income, random.nextLong(), random.nextLong(), Math.max(amount, 0.01), category,
+                description, paymentMethod, date);
+    }
+
+    /**
+     * Adds {@code rows} generated transactions to the service.
+     */
+    void populate(Object service, int rows) {
+        for (int i = 0; i < rows; i++) {
+            FinanceApi.addTransaction(service, next());
+        }
+    }
+
+    int expenseCategory() {
+        return sample(categoryWeights);
+    }
+
+    int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    private int sample(double[] cumulative) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1);
+    }
+
+    static double[] zipfCumulative(int n, double skew) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+}
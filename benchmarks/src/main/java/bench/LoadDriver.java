@@ -0,0 +1,337 @@
+package bench;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a mixed workload against one FinanceService from several threads
+ * and reports latency percentiles per operation.
+ *
+ * With a target rate the driver runs open-loop: each thread owns a fixed
+ * schedule of intended start times and latency is measured from the intended
+ * start, not from when the call actually began. A stalled service therefore
+ * shows up as queueing delay in the percentiles instead of silently lowering
+ * the offered load (coordinated omission). With {@code rate=0} threads run
+ * flat out and latency is plain service time.
+ *
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar bench.LoadDriver [profile.properties] [key=value ...]
+ * </pre>
+ *
+ * Keys are described in {@link LoadProfile}. A summary table goes to stdout
+ * and the full results to the profile's output file as JSON.
+ */
+public final class LoadDriver {
+
+    enum Operation {
+        ADD("add"),
+        TRY_ADD_EXPENSE("tryAddExpense"),
+        EDIT("edit"),
+        DELETE("delete"),
+        MONTHLY_SUMMARY("monthlySummary"),
+        YEARLY_SAVINGS("yearlySavings"),
+        SEARCH_CATEGORY("searchCategory"),
+        SEARCH_PAYMENT_METHOD("searchPaymentMethod"),
+        LARGEST_EXPENSE("largestExpense"),
+        DUPLICATES("duplicates");
+
+        final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        static Operation byKey(String key) {
+            for (Operation operation : values()) {
+                if (operation.key.equals(key)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation in mix: " + key);
+        }
+    }
+
+    // Enough for a full report over tens of millions of rows
+    private static final long HIGHEST_TRACKABLE_NANOS = 3_600_000_000_000L;
+
+    private LoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = LoadProfile.parse(args);
+        PrintStream out = System.out;
+
+        boolean durable = !profile.directory.isEmpty();
+        Object service = durable ? FinanceApi.openService(Path.of(profile.directory)) : FinanceApi.newService();
+
+        // The reports print every matching row; keep that off the terminal
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Worker[] workers = new Worker[profile.threads];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Worker(profile, service, t);
+        }
+        LedgerGenerator initial = new LedgerGenerator(profile.seed, profile.categorySkew, profile.monthSkew);
+        for (int i = 0; i < profile.initialRows; i++) {
+            Object transaction = initial.next();
+            if (FinanceApi.addTransaction(service, transaction)) {
+                workers[i % workers.length].ids.add(FinanceApi.getId(transaction));
+            }
+        }
+        out.printf("Loaded %,d rows; running %d thread(s) at %s for %ds after %ds warmup%n", profile.initialRows,
+                profile.threads, profile.rate > 0 ? String.format("%,.0f ops/s", profile.rate) : "full speed",
+                profile.durationSeconds, profile.warmupSeconds);
+
+        long start = System.nanoTime() + 100_000_000L; // lets every thread reach the start line
+        long measureFrom = start + profile.warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + profile.durationSeconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(workers.length);
+        List<Thread> threads = new ArrayList<>();
+        for (Worker worker : workers) {
+            Thread thread = new Thread(() -> {
+                try {
+                    worker.run(start, measureFrom, end);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-" + worker.index);
+            threads.add(thread);
+            thread.start();
+        }
+        done.await();
+        long finishedAt = System.nanoTime();
+        System.setOut(out);
+
+        Map<Operation, Histogram> merged = new EnumMap<>(Operation.class);
+        long errors = 0;
+        long behind = 0;
+        for (Worker worker : workers) {
+            worker.histograms.forEach((operation, histogram) ->
+                    merged.computeIfAbsent(operation, o -> newHistogram()).add(histogram));
+            errors += worker.errors;
+            behind = Math.max(behind, worker.behindNanos);
+            if (worker.failure != null) {
+                out.println(threads.get(worker.index).getName() + " failed: " + worker.failure);
+            }
+        }
+        if (durable) {
+            FinanceApi.closeService(service);
+        }
+
+        double seconds = (finishedAt - measureFrom) / 1e9;
+        long total = merged.values().stream().mapToLong(Histogram::getTotalCount).sum();
+        printSummary(out, merged, total / seconds, errors, behind);
+        Path output = Path.of(profile.output);
+        Files.writeString(output, toJson(profile, merged, seconds, total, errors));
+        out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+    }
+
+    /**
+     * One client thread: its own generator, its own pool of IDs to edit and
+     * delete (so threads never fight over the same row), and one histogram
+     * per operation.
+     */
+    private static final class Worker {
+
+        final int index;
+        final List<String> ids = new ArrayList<>();
+        final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        long errors;
+        long behindNanos; // how far the schedule had slipped by the end
+        Throwable failure;
+
+        private final Object service;
+        private final LedgerGenerator generator;
+        private final Operation[] operations;
+        private final int[] cumulativeWeights;
+        private final long intervalNanos;
+        private final long staggerNanos;
+
+        Worker(LoadProfile profile, Object service, int index) {
+            this.index = index;
+            this.service = service;
+            this.generator = new LedgerGenerator(profile.seed + 1 + index, profile.categorySkew, profile.monthSkew);
+            List<Operation> chosen = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            int sum = 0;
+            for (Map.Entry<Operation, Integer> entry : profile.mix.entrySet()) {
+                if (entry.getValue() > 0) {
+                    sum += entry.getValue();
+                    chosen.add(entry.getKey());
+                    weights.add(sum);
+                }
+            }
+            this.operations = chosen.toArray(new Operation[0]);
+            this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+            this.intervalNanos = profile.rate > 0 ? (long) (1e9 * profile.threads / profile.rate) : 0;
+            this.staggerNanos = intervalNanos * index / profile.threads;
+            for (Operation operation : operations) {
+                histograms.put(operation, newHistogram());
+            }
+        }
+
+        void run(long start, long measureFrom, long end) {
+            // Stagger threads so their schedules interleave instead of firing together
+            long intended = start + staggerNanos;
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    if (intervalNanos > 0) {
+                        if (intended >= end) {
+                            behindNanos = Math.max(0, now - intended);
+                            return;
+                        }
+                        while (now < intended) {
+                            LockSupport.parkNanos(intended - now);
+                            now = System.nanoTime();
+                        }
+                    } else if (now >= end) {
+                        return;
+                    } else {
+                        intended = now;
+                    }
+                    Operation operation = nextOperation();
+                    try {
+                        execute(operation);
+                    } catch (RuntimeException e) {
+                        errors++;
+                    }
+                    long latency = System.nanoTime() - intended;
+                    if (intended >= measureFrom) {
+                        histograms.get(operation).recordValue(Math.min(latency, HIGHEST_TRACKABLE_NANOS));
+                    }
+                    intended += intervalNanos;
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        private Operation nextOperation() {
+            int pick = generator.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (pick < cumulativeWeights[i]) {
+                    return operations[i];
+                }
+            }
+            throw new AssertionError();
+        }
+
+        private void execute(Operation operation) {
+            switch (operation) {
+                case ADD -> add(generator.next());
+                case TRY_ADD_EXPENSE -> {
+                    Object expense = generator.next(false, generator.nextDate());
+                    if (FinanceApi.tryAddExpense(service, expense)) {
+                        ids.add(FinanceApi.getId(expense));
+                    }
+                }
+                case EDIT -> {
+                    if (ids.isEmpty()) {
+                        add(generator.next());
+                        return;
+                    }
+                    String id = ids.get(generator.nextInt(ids.size()));
+                    String category = LedgerGenerator.EXPENSE_CATEGORIES[generator.expenseCategory()];
+                    FinanceApi.editTransaction(service, id, 1 + generator.nextInt(50_000) / 100.0, category,
+                            category + " (edited)", LedgerGenerator.PAYMENT_METHODS[generator.nextInt(3)]);
+                }
+                case DELETE -> {
+                    if (ids.isEmpty()) {
+                        add(generator.next());
+                        return;
+                    }
+                    int i = generator.nextInt(ids.size());
+                    String id = ids.get(i);
+                    ids.set(i, ids.get(ids.size() - 1));
+                    ids.remove(ids.size() - 1);
+                    FinanceApi.deleteTransaction(service, id);
+                }
+                case MONTHLY_SUMMARY -> {
+                    YearMonth month = generator.nextMonth();
+                    FinanceApi.getMonthlyIncome(service, month);
+                    FinanceApi.getMonthlyExpense(service, month);
+                }
+                case YEARLY_SAVINGS -> FinanceApi.getTotalYearlySavings(service);
+                case SEARCH_CATEGORY -> FinanceApi.searchExpenseByCategory(service,
+                        LedgerGenerator.EXPENSE_CATEGORIES[generator.expenseCategory()]);
+                case SEARCH_PAYMENT_METHOD -> FinanceApi.searchTransactionByPaymentMethod(service,
+                        LedgerGenerator.PAYMENT_METHODS[generator.nextInt(LedgerGenerator.PAYMENT_METHODS.length)]);
+                case LARGEST_EXPENSE -> FinanceApi.findLargestExpensePerMonth(service);
+                case DUPLICATES -> FinanceApi.detectDuplicateTransactions(service);
+            }
+        }
+
+        private void add(Object transaction) {
+            if (FinanceApi.addTransaction(service, transaction)) {
+                ids.add(FinanceApi.getId(transaction));
+            }
+        }
+    }
+
+    // --- reporting ---
+
+    private static void printSummary(PrintStream out, Map<Operation, Histogram> histograms, double throughput,
+                                     long errors, long behindNanos) {
+        out.printf("%n%-20s %10s %10s %10s %10s %10s %10s%n", "operation", "count", "mean(us)", "p50(us)",
+                "p99(us)", "p99.9(us)", "max(us)");
+        histograms.forEach((operation, h) -> out.printf("%-20s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                operation.key, h.getTotalCount(), h.getMean() / 1e3, micros(h, 50), micros(h, 99), micros(h, 99.9),
+                h.getMaxValue() / 1e3));
+        out.printf("%nThroughput: %,.0f ops/s, errors: %d%n", throughput, errors);
+        if (behindNanos > 1_000_000_000L) {
+            out.printf("Warning: the service fell %.1fs behind the target rate%n", behindNanos / 1e9);
+        }
+    }
+
+    private static double micros(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e3;
+    }
+
+    private static String toJson(LoadProfile profile, Map<Operation, Histogram> histograms, double seconds,
+                                 long total, long errors) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"profile\": {");
+        json.append(String.format(Locale.ROOT, "\"threads\": %d, \"rate\": %s, \"warmupSeconds\": %d, "
+                        + "\"durationSeconds\": %d, \"initialRows\": %d, \"seed\": %d, \"categorySkew\": %s, "
+                        + "\"monthSkew\": %s, \"durable\": %b, \"mix\": {",
+                profile.threads, profile.rate, profile.warmupSeconds, profile.durationSeconds, profile.initialRows,
+                profile.seed, profile.categorySkew, profile.monthSkew, !profile.directory.isEmpty()));
+        String separator = "";
+        for (Map.Entry<Operation, Integer> entry : profile.mix.entrySet()) {
+            json.append(separator).append('"').append(entry.getKey().key).append("\": ").append(entry.getValue());
+            separator = ", ";
+        }
+        json.append("}},\n");
+        json.append(String.format(Locale.ROOT, "  \"measuredSeconds\": %.3f,%n  \"operations\": %d,%n"
+                + "  \"throughput\": %.1f,%n  \"errors\": %d,%n  \"latencyMicros\": {%n", seconds, total,
+                total / seconds, errors));
+        separator = "";
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            Histogram h = entry.getValue();
+            json.append(separator).append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"count\": %d, \"mean\": %.3f, \"p50\": %.3f, \"p99\": %.3f, \"p999\": %.3f, "
+                            + "\"max\": %.3f}", entry.getKey().key, h.getTotalCount(), h.getMean() / 1e3,
+                    micros(h, 50), micros(h, 99), micros(h, 99.9), h.getMaxValue() / 1e3));
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+}
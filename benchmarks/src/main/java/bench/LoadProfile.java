@@ -0,0 +1,104 @@
+package bench;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Workload for {@link LoadDriver}, read from a properties file and/or
+ * {@code key=value} arguments (arguments win). Every key is optional:
+ * <pre>
+ *   threads=4               client threads
+ *   rate=2000               target operations per second over all threads; 0 runs closed-loop, flat out
+ *   warmupSeconds=10        run but not recorded
+ *   durationSeconds=30      recorded
+ *   initialRows=100000      generated before the clock starts
+ *   seed=42
+ *   categorySkew=1.1        Zipf exponent over expense categories (0 = uniform)
+ *   monthSkew=1.0           Zipf exponent over months, most recent first (0 = uniform)
+ *   directory=              durable ledger directory; empty for in-memory
+ *   output=load-result.json
+ *   mix.add=40              relative weight of each operation (see LoadDriver.Operation)
+ * </pre>
+ */
+final class LoadProfile {
+
+    int threads = 4;
+    double rate = 2_000;
+    int warmupSeconds = 10;
+    int durationSeconds = 30;
+    int initialRows = 100_000;
+    long seed = 42;
+    double categorySkew = 1.1;
+    double monthSkew = 1.0;
+    String directory = "";
+    String output = "load-result.json";
+    final Map<LoadDriver.Operation, Integer> mix = new EnumMap<>(LoadDriver.Operation.class);
+
+    LoadProfile() {
+        mix.put(LoadDriver.Operation.ADD, 30);
+        mix.put(LoadDriver.Operation.TRY_ADD_EXPENSE, 10);
+        mix.put(LoadDriver.Operation.EDIT, 10);
+        mix.put(LoadDriver.Operation.DELETE, 5);
+        mix.put(LoadDriver.Operation.MONTHLY_SUMMARY, 30);
+        mix.put(LoadDriver.Operation.YEARLY_SAVINGS, 5);
+        mix.put(LoadDriver.Operation.SEARCH_CATEGORY, 4);
+        mix.put(LoadDriver.Operation.SEARCH_PAYMENT_METHOD, 2);
+        mix.put(LoadDriver.Operation.LARGEST_EXPENSE, 3);
+        mix.put(LoadDriver.Operation.DUPLICATES, 1);
+    }
+
+    static LoadProfile parse(String[] args) throws IOException {
+        Properties properties = new Properties();
+        for (String arg : args) {
+            if (!arg.contains("=")) {
+                try (Reader reader = Files.newBufferedReader(Path.of(arg))) {
+                    properties.load(reader);
+                }
+            }
+        }
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                properties.setProperty(arg.substring(0, equals).trim(), arg.substring(equals + 1).trim());
+            }
+        }
+
+        LoadProfile profile = new LoadProfile();
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            try {
+                switch (key) {
+                    case "threads" -> profile.threads = Integer.parseInt(value);
+                    case "rate" -> profile.rate = Double.parseDouble(value);
+                    case "warmupSeconds" -> profile.warmupSeconds = Integer.parseInt(value);
+                    case "durationSeconds" -> profile.durationSeconds = Integer.parseInt(value);
+                    case "initialRows" -> profile.initialRows = Integer.parseInt(value);
+                    case "seed" -> profile.seed = Long.parseLong(value);
+                    case "categorySkew" -> profile.categorySkew = Double.parseDouble(value);
+                    case "monthSkew" -> profile.monthSkew = Double.parseDouble(value);
+                    case "directory" -> profile.directory = value;
+                    case "output" -> profile.output = value;
+                    default -> {
+                        if (!key.startsWith("mix.")) {
+                            throw new IllegalArgumentException("Unknown profile key: " + key);
+                        }
+                        profile.mix.put(LoadDriver.Operation.byKey(key.substring(4)), Integer.parseInt(value));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad value for " + key + ": " + value, e);
+            }
+        }
+        if (profile.threads < 1 || profile.rate < 0 || profile.durationSeconds < 1 || profile.warmupSeconds < 0
+                || profile.initialRows < 0 || profile.mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("Profile needs threads >= 1, rate >= 0, durationSeconds >= 1, "
+                    + "warmupSeconds >= 0, initialRows >= 0 and a positive operation mix");
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,158 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks FinanceService's percentile and distinct-description sketches
+ * against exact answers computed from the same ledger.
+ *
+ * Builds a seeded ledger, edits and deletes some of it (so cells go stale
+ * and are refilled), then asks for p50/p90/p99 of the amounts and the distinct
+ * description count of every category, type and month, and of every
+ * category and type over all months. Prints the worst errors and how often
+ * each documented bound was exceeded, and exits with 1 if that happened
+ * more often than the bound allows.
+ *
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar bench.SketchAccuracy [rows] [seed]
+ * </pre>
+ */
+public final class SketchAccuracy {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final double RANK_BOUND = 0.017; // QuantileSketch, 99% of queries
+    private static final double DISTINCT_BOUND = 0.07; // DistinctSketch, 99.7% of queries
+
+    private SketchAccuracy() {
+    }
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // the service's own messages
+
+        Object service = FinanceApi.newService();
+        LedgerGenerator generator = new LedgerGenerator(seed);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Object transaction = generator.next();
+            if (FinanceApi.addTransaction(service, transaction)) {
+                ids.add(FinanceApi.getId(transaction));
+            }
+        }
+        // Query once, then change about 2% of the rows
+        for (String category : LedgerGenerator.EXPENSE_CATEGORIES) {
+            FinanceApi.amountQuantile(service, category, null, false, 0.5);
+        }
+        for (int i = 0; i < ids.size() / 100; i++) {
+            FinanceApi.deleteTransaction(service, ids.get(generator.nextInt(ids.size())));
+            String category = LedgerGenerator.EXPENSE_CATEGORIES[generator.expenseCategory()];
+            FinanceApi.editTransaction(service, ids.get(generator.nextInt(ids.size())), 1 + generator.nextInt(5_000),
+                    category, category + " edited #" + generator.nextInt(50), "card");
+        }
+
+        // Exact answers: amounts in cents and lower-cased descriptions per cell
+        Map<String, List<Long>> amounts = new HashMap<>();
+        Map<String, Set<String>> descriptions = new HashMap<>();
+        for (Object transaction : FinanceApi.getTransactions(service)) {
+            String category = FinanceApi.getCategory(transaction).trim().toLowerCase();
+            boolean income = FinanceApi.isIncome(transaction);
+            long cents = Math.round(FinanceApi.getAmount(transaction) * 100);
+            String description = FinanceApi.getDescription(transaction).toLowerCase();
+            for (String key : new String[] {
+                    cell(category, YearMonth.from(FinanceApi.getDate(transaction)), income), cell(category, null, income)}) {
+                amounts.computeIfAbsent(key, k -> new ArrayList<>()).add(cents);
+                descriptions.computeIfAbsent(key, k -> new HashSet<>()).add(description);
+            }
+        }
+
+        int quantileQueries = 0;
+        int quantileMisses = 0;
+        double worstRank = 0.0;
+        int distinctQueries = 0;
+        int distinctMisses = 0;
+        double worstDistinct = 0.0;
+        List<String> categories = new ArrayList<>(Arrays.asList(LedgerGenerator.EXPENSE_CATEGORIES));
+        categories.addAll(Arrays.asList(LedgerGenerator.INCOME_CATEGORIES));
+        for (String category : categories) {
+            boolean income = Arrays.asList(LedgerGenerator.INCOME_CATEGORIES).contains(category);
+            List<YearMonth> months = new ArrayList<>();
+            months.add(null);
+            for (int m = 0; m < LedgerGenerator.YEARS * 12; m++) {
+                months.add(YearMonth.of(LedgerGenerator.FIRST_YEAR, 1).plusMonths(m));
+            }
+            for (YearMonth month : months) {
+                String key = cell(category.toLowerCase(), month, income);
+                List<Long> exact = amounts.get(key);
+                if (exact == null) {
+                    continue;
+                }
+                long[] sorted = exact.stream().mapToLong(Long::longValue).sorted().toArray();
+                for (double quantile : QUANTILES) {
+                    long estimate = Math.round(FinanceApi.amountQuantile(service, category, month, income, quantile)
+                            .orElseThrow() * 100);
+                    double error = rankError(sorted, estimate, quantile);
+                    worstRank = Math.max(worstRank, error);
+                    quantileQueries++;
+                    if (error > RANK_BOUND) {
+                        quantileMisses++;
+                    }
+                }
+                long distinct = descriptions.get(key).size();
+                double error = Math.abs(FinanceApi.distinctDescriptions(service, category, month, income) - distinct)
+                        / (double) distinct;
+                worstDistinct = Math.max(worstDistinct, error);
+                distinctQueries++;
+                if (error > DISTINCT_BOUND) {
+                    distinctMisses++;
+                }
+            }
+        }
+
+        out.printf("%,d rows, %,d cells%n", ids.size(), distinctQueries);
+        out.printf("quantiles: worst rank error %.2f%%, %d of %d over %.1f%%%n", worstRank * 100, quantileMisses,
+                quantileQueries, RANK_BOUND * 100);
+        out.printf("distinct:  worst relative error %.2f%%, %d of %d over %.0f%%%n", worstDistinct * 100, distinctMisses,
+                distinctQueries, DISTINCT_BOUND * 100);
+        boolean ok = quantileMisses <= Math.ceil(quantileQueries * 0.01) && distinctMisses <= Math.ceil(distinctQueries * 0.003);
+        out.println(ok ? "Within the documented bounds." : "Documented bounds exceeded.");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static String cell(String category, YearMonth month, boolean income) {
+        return category + '|' + month + '|' + income;
+    }
+
+    // How far the requested rank falls outside the range of ranks the estimate holds in the exact data
+    private static double rankError(long[] sorted, long estimate, double quantile) {
+        int below = lowerBound(sorted, estimate);
+        int atOrBelow = lowerBound(sorted, estimate + 1);
+        double low = (double) below / sorted.length;
+        double high = (double) atOrBelow / sorted.length;
+        return quantile < low ? low - quantile : quantile > high ? quantile - high : 0.0;
+    }
+
+    private static int lowerBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
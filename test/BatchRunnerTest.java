@@ -0,0 +1,43 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+class BatchRunnerTest {
+
+    private static long failedCommands(FinanceService service, String script) throws IOException {
+        BatchRunner runner = new BatchRunner(service);
+        runner.run(new BufferedReader(new StringReader(script)));
+        return runner.failedCommands();
+    }
+
+    @Test
+    void badLinesAreCountedAndTheRunCarriesOn() throws IOException {
+        FinanceService service = new FinanceService();
+        String script = String.join("\n",
+                "# a comment, then a blank line",
+                "",
+                "add-income 2025-03 2500 Salary \"March pay\" card",
+                "add-expense 2025-03-14 forty Groceries \"Weekly shop\" cash", // amount does not parse
+                "add-expense 2025-03-14 42.50 Groceries",                      // too few fields
+                "transfer 2025-03-14 10 cash card",                            // no such command
+                "add-expense 2025-03-15 9000 Rent \"Too much\" card",          // refused: over the month's income
+                "delete 00000000-0000-0000-0000-000000000000",                 // refused: no such transaction
+                "add-expense 2025-03-14 42.50 Groceries \"Weekly shop\" cash",
+                "summary 2025-03");
+
+        assertEquals(5L, failedCommands(service, script));
+        assertEquals(2, service.getTransactions().size());
+        assertEquals(42.50, service.getTotalExpense(), 0.001);
+    }
+
+    @Test
+    void aCleanScriptHasNoFailures() throws IOException {
+        FinanceService service = new FinanceService();
+        assertEquals(0L, failedCommands(service, "add-income 2025-01-01 100 Salary Pay online\nlist\n"));
+        assertEquals(1, service.getTransactions().size());
+    }
+}
@@ -0,0 +1,151 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BudgetRulesTest {
+
+    @TempDir
+    Path dir;
+
+    private static final LocalDate MARCH = LocalDate.of(2024, 3, 5);
+
+    private static FinanceService withIncome(double income) {
+        FinanceService service = new FinanceService();
+        service.addTransaction(new Income(income, "Salary", "Pay", "online", MARCH));
+        return service;
+    }
+
+    private static double expenses(FinanceService service, TransactionQuery query) {
+        return service.totalAmount(query.expenses());
+    }
+
+    private static double categoryExpenses(FinanceService service, RollupQuery query) {
+        return service.rollup(query.expenses()).stream().mapToDouble(RollupRow::total).sum();
+    }
+
+    @Test
+    void categoryCapRejectsAddsPastTheLimitIgnoringCase() {
+        FinanceService service = withIncome(10_000);
+        service.addBudgetRule(BudgetRule.categoryCap(" Groceries", 100));
+        assertTrue(service.addTransaction(new Expense(60, "groceries", "Market", "card", MARCH)));
+        assertTrue(service.addTransaction(new Expense(40, "GROCERIES ", "Market", "cash", MARCH)));
+        assertFalse(service.addTransaction(new Expense(0.01, "Groceries", "Gum", "cash", MARCH)));
+        assertTrue(service.addTransaction(new Expense(500, "Rent", "Flat", "card", MARCH)));
+        assertTrue(service.addTransaction(new Expense(30, "Groceries", "Market", "card", MARCH.plusMonths(1))));
+        assertEquals(100.0, categoryExpenses(service, new RollupQuery().category("groceries").month(YearMonth.of(2024, 3))));
+        assertEquals(4, service.findTransactions(new TransactionQuery().expenses()).size());
+    }
+
+    @Test
+    void editsAndDeletesAreCheckedAgainstTheMonthAfterTheWrite() {
+        FinanceService service = withIncome(10_000);
+        Expense food = new Expense(80, "Food", "Dinner", "card", MARCH);
+        Expense rent = new Expense(300, "Rent", "Flat", "card", MARCH);
+        service.addTransaction(food);
+        service.addTransaction(rent);
+        service.addBudgetRule(BudgetRule.categoryCap("food", 100));
+        service.addBudgetRule(BudgetRule.savingsFloor(0.5));
+
+        assertFalse(service.editTransaction(food.getId(), 120, "Food", "Dinner", "card"));
+        assertFalse(service.editTransaction(rent.getId(), 30, "Food", "Flat", "card")); // 80 + 30 is past the Food cap
+        assertTrue(service.editTransaction(food.getId(), 95, "Food", "Dinner", "card"));
+        assertEquals(95.0, categoryExpenses(service, new RollupQuery().category("Food")));
+
+        // 4,700 more leaves the month saving 49%, under the floor
+        assertFalse(service.addTransaction(new Expense(4_700, "Travel", "Flight", "online", MARCH)));
+        assertTrue(service.addTransaction(new Expense(4_600, "Travel", "Flight", "online", MARCH)));
+        String salary = service.findTransactions(new TransactionQuery().incomes()).get(0).getId();
+        assertFalse(service.deleteTransaction(salary));
+        assertTrue(service.deleteTransaction(rent.getId()));
+    }
+
+    @Test
+    void shrinkingAMonthAlreadyPastACapIsAllowed() {
+        FinanceService service = withIncome(10_000);
+        Expense card = new Expense(900, "Rent", "Flat", "card", MARCH);
+        service.addTransaction(card);
+        service.addTransaction(new Expense(200, "Food", "Dinner", "card", MARCH));
+        service.addBudgetRule(BudgetRule.paymentMethodCap("CARD", 500)); // seeded with the 1,100 already spent
+
+        assertFalse(service.addTransaction(new Expense(1, "Food", "Coffee", "Card", MARCH)));
+        assertTrue(service.addTransaction(new Expense(1, "Food", "Coffee", "cash", MARCH)));
+        assertTrue(service.editTransaction(card.getId(), 700, "Rent", "Flat", "card"));
+        assertFalse(service.editTransaction(card.getId(), 701, "Rent", "Flat", "card"));
+        assertTrue(service.editTransaction(card.getId(), 800, "Rent", "Flat", "cash"));
+        assertEquals(200.0, expenses(service, new TransactionQuery().paymentMethod("card")));
+        assertFalse(service.addTransaction(new Expense(400, "Food", "Dinner", "card", MARCH)));
+        assertTrue(service.addTransaction(new Expense(300, "Food", "Dinner", "card", MARCH)));
+    }
+
+    @Test
+    void capsAddedAfterSealingSeeTheSealedMonths() {
+        FinanceService service = withIncome(10_000);
+        service.addTransaction(new Expense(450, "Food", "Dinner", "card", MARCH));
+        service.setColdAfter(Duration.ZERO);
+        service.sealIdleMonths();
+        service.setColdAfter(null);
+        assertEquals(1, service.sealedMonthCount());
+
+        service.addBudgetRule(BudgetRule.categoryCap("food", 500));
+        assertFalse(service.addTransaction(new Expense(60, "Food", "Lunch", "card", MARCH)));
+        assertTrue(service.addTransaction(new Expense(50, "Food", "Lunch", "card", MARCH)));
+        assertEquals(500.0, categoryExpenses(service, new RollupQuery().category("food")));
+    }
+
+    @Test
+    void flaggedRulesApplyTheWriteAndRemovedRulesStopApplying() {
+        FinanceService service = withIncome(10_000);
+        long flagged = service.addBudgetRule(BudgetRule.categoryCap("Food", 10).flagOnly());
+        long rejecting = service.addBudgetRule(BudgetRule.paymentMethodCap("cash", 10));
+        assertEquals(List.of(flagged, rejecting), List.copyOf(service.getBudgetRules().keySet()));
+        assertEquals(BudgetRule.Action.FLAG, service.getBudgetRules().get(flagged).action());
+
+        assertTrue(service.addTransaction(new Expense(50, "Food", "Dinner", "card", MARCH)));
+        assertFalse(service.addTransaction(new Expense(50, "Books", "Novel", "cash", MARCH)));
+        assertTrue(service.removeBudgetRule(rejecting));
+        assertFalse(service.removeBudgetRule(rejecting));
+        assertTrue(service.addTransaction(new Expense(50, "Books", "Novel", "cash", MARCH)));
+        assertEquals(100.0, expenses(service, new TransactionQuery()));
+    }
+
+    @Test
+    void importListsTheRowsABudgetRuleRejects() throws IOException {
+        FinanceService service = withIncome(10_000);
+        service.addBudgetRule(BudgetRule.categoryCap("Food", 100));
+        Path file = dir.resolve("import.csv");
+        Files.writeString(file, String.join("\n",
+                "ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD",
+                UUID.randomUUID() + ",2024-03-06,EXPENSE,Food,70,Lunch,card",
+                UUID.randomUUID() + ",2024-03-07,EXPENSE,food,40,Dinner,card",
+                UUID.randomUUID() + ",2024-03-08,EXPENSE,Food,30,Snack,cash",
+                UUID.randomUUID() + ",2024-03-09,EXPENSE,Rent,900,Flat,card") + "\n");
+
+        ImportResult result = service.importCsv(file);
+        assertEquals(3, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(3L, result.getErrors().get(0).lineNumber());
+        assertTrue(result.getErrors().get(0).reason().contains("cap of 100.00 a month on food expenses"),
+                result.getErrors().get(0).reason());
+        assertEquals(100.0, categoryExpenses(service, new RollupQuery().category("Food")));
+    }
+
+    @Test
+    void badRulesAreRefused() {
+        assertThrows(IllegalArgumentException.class, () -> BudgetRule.categoryCap(" ", 10));
+        assertThrows(IllegalArgumentException.class, () -> BudgetRule.paymentMethodCap("card", -1));
+        assertThrows(IllegalArgumentException.class, () -> BudgetRule.savingsFloor(1.5));
+    }
+}
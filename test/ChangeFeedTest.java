@@ -0,0 +1,208 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChangeFeedTest {
+
+    private static final String COMPLETE = "complete";
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 14);
+
+    @TempDir
+    Path dir;
+
+    // Queues every batch, error and completion it gets; requests only when told to
+    private static final class Recorder implements Flow.Subscriber<List<ChangeEvent>> {
+
+        final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(List<ChangeEvent> batch) {
+            signals.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            signals.add(error);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add(COMPLETE);
+        }
+
+        Object next() throws InterruptedException {
+            Object signal = signals.poll(10, TimeUnit.SECONDS);
+            assertTrue(signal != null, "no signal");
+            return signal;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Long> nextBatch() throws InterruptedException {
+            Object signal = next();
+            assertTrue(signal instanceof List, "expected a batch, got " + signal);
+            List<Long> sequences = new ArrayList<>();
+            for (ChangeEvent event : (List<ChangeEvent>) signal) {
+                sequences.add(event.sequence());
+            }
+            return sequences;
+        }
+
+        // Nothing more arrives for a moment
+        void assertQuiet() throws InterruptedException {
+            assertNull(signals.poll(200, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static void publish(ChangeFeed feed, int count) {
+        for (int i = 0; i < count; i++) {
+            feed.publish(ChangeEvent.Type.ADDED, null, new ChangeEvent.Row("id-" + feed.nextSequence(),
+                    LocalDate.of(2025, 3, 1), false, 1.0, "Food", "Lunch", "card"));
+        }
+    }
+
+    private static List<Long> sequences(long from, long to) {
+        List<Long> sequences = new ArrayList<>();
+        for (long sequence = from; sequence <= to; sequence++) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    @Test
+    void aSubscriberOverrunByTheRingMissesEventsAndCanResume() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(8);
+        Recorder slow = new Recorder();
+        feed.subscribe(slow);
+        publish(feed, 20); // 1..20, of which the ring keeps the last 8
+
+        slow.subscription.request(1);
+        Object error = slow.next();
+        assertTrue(error instanceof ChangeFeed.MissedEventsException, "expected missed events, got " + error);
+        ChangeFeed.MissedEventsException missed = (ChangeFeed.MissedEventsException) error;
+        assertEquals(1L, missed.getFirstMissed());
+        assertEquals(13L, missed.getOldestAvailable());
+
+        // Too far back fails at once; from the oldest kept event it works
+        Recorder tooEarly = new Recorder();
+        feed.subscribe(tooEarly, 5);
+        assertTrue(tooEarly.next() instanceof ChangeFeed.MissedEventsException);
+
+        Recorder resumed = new Recorder();
+        feed.subscribe(resumed, missed.getOldestAvailable());
+        resumed.subscription.request(Long.MAX_VALUE);
+        assertEquals(sequences(13, 20), resumed.nextBatch());
+        publish(feed, 1);
+        assertEquals(List.of(21L), resumed.nextBatch());
+        feed.close();
+    }
+
+    @Test
+    void eachSubscriberGetsOnlyTheBatchesItAskedFor() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(1024);
+        Recorder one = new Recorder();
+        Recorder all = new Recorder();
+        feed.subscribe(one);
+        feed.subscribe(all);
+        publish(feed, 300);
+        one.assertQuiet();
+        all.assertQuiet();
+
+        one.subscription.request(1);
+        assertEquals(sequences(1, ChangeFeed.MAX_BATCH), one.nextBatch()); // one request, one batch of at most MAX_BATCH
+        publish(feed, 5);
+        one.assertQuiet();
+
+        all.subscription.request(Long.MAX_VALUE);
+        List<Long> received = new ArrayList<>();
+        while (received.size() < 305) {
+            received.addAll(all.nextBatch());
+        }
+        assertEquals(sequences(1, 305), received);
+
+        one.subscription.request(1);
+        assertEquals(sequences(ChangeFeed.MAX_BATCH + 1, 305), one.nextBatch());
+        feed.close();
+    }
+
+    @Test
+    void closingCompletesSubscribersOnceTheyHaveEveryEvent() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(64);
+        Recorder eager = new Recorder();
+        Recorder idle = new Recorder();
+        feed.subscribe(eager);
+        feed.subscribe(idle);
+        eager.subscription.request(Long.MAX_VALUE);
+        publish(feed, 3);
+        assertEquals(sequences(1, 3), eager.nextBatch());
+        publish(feed, 2);
+        feed.close();
+        publish(feed, 1); // dropped: the feed is closed
+
+        List<Long> rest = new ArrayList<>();
+        while (rest.size() < 2) {
+            rest.addAll(eager.nextBatch()); // 4 and 5 may come apart
+        }
+        assertEquals(sequences(4, 5), rest);
+        assertEquals(COMPLETE, eager.next());
+
+        // Completion waits until the idle subscriber has drained what it missed
+        idle.assertQuiet();
+        idle.subscription.request(1);
+        assertEquals(sequences(1, 5), idle.nextBatch());
+        assertEquals(COMPLETE, idle.next());
+        assertEquals(6L, feed.nextSequence());
+    }
+
+    @Test
+    void aReopenedLedgerCarriesOnFromTheJournalsSequenceNumbers() throws IOException, InterruptedException {
+        List<Long> seen = new ArrayList<>();
+        try (FinanceService service = FinanceService.open(dir)) {
+            Recorder first = new Recorder();
+            service.changeFeed().subscribe(first);
+            first.subscription.request(Long.MAX_VALUE);
+            service.addTransaction(new Income(500, "Salary", "Pay", "online", DAY));
+            service.addTransaction(new Expense(20, "Food", "Lunch", "card", DAY));
+            service.snapshot(); // sequence numbers keep counting past a truncated journal
+            service.addTransaction(new Expense(30, "Food", "Dinner", "card", DAY));
+            while (seen.size() < 3) {
+                seen.addAll(first.nextBatch());
+            }
+        }
+        assertEquals(sequences(1, 3), seen);
+
+        try (FinanceService reopened = FinanceService.open(dir)) {
+            ChangeFeed feed = reopened.changeFeed();
+            assertEquals(4L, feed.nextSequence());
+
+            // An earlier number is not handed out again; it is reported as missed
+            Recorder stale = new Recorder();
+            feed.subscribe(stale, 2);
+            assertTrue(stale.next() instanceof ChangeFeed.MissedEventsException);
+
+            Recorder resumed = new Recorder();
+            feed.subscribe(resumed, 4);
+            resumed.subscription.request(Long.MAX_VALUE);
+            reopened.addTransaction(new Expense(40, "Rent", "Deposit", "online", DAY));
+            assertEquals(List.of(4L), resumed.nextBatch());
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ColdMonthTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String[] CATEGORIES = {"Food", "Groceries", "Rent", "food"};
+    private static final String[] METHODS = {"cash", "card", "online"};
+
+    // Four months of 2023, each with an income covering its expenses
+    private static FinanceService ledger() {
+        FinanceService service = new FinanceService();
+        for (int month = 1; month <= 4; month++) {
+            service.addTransaction(new Income(100_000, "Salary", "Pay", "online", LocalDate.of(2023, month, 1)));
+            for (int i = 0; i < 150; i++) {
+                service.addTransaction(new Expense(1 + (i * 7 + month) % 40, CATEGORIES[i % CATEGORIES.length],
+                        "Item " + i % 9, METHODS[i % METHODS.length], LocalDate.of(2023, month, 1 + i % 28)));
+            }
+        }
+        return service;
+    }
+
+    private static void sealAll(FinanceService service) {
+        service.setColdAfter(Duration.ZERO);
+        service.sealIdleMonths();
+        service.setColdAfter(null);
+        assertEquals(4, service.sealedMonthCount());
+    }
+
+    private static Map<String, String> contents(List<Transaction> transactions) {
+        Map<String, String> rows = new TreeMap<>();
+        for (Transaction t : transactions) {
+            rows.put(t.getId(), t.getDate() + " " + t.isIncome() + " " + t.getAmount() + " " + t.getCategory() + " "
+                    + t.getDescription() + " " + t.getPaymentMethod());
+        }
+        return rows;
+    }
+
+    private static Set<Set<String>> duplicateSets(FinanceService service) {
+        Set<Set<String>> sets = new HashSet<>();
+        for (List<Transaction> set : service.findDuplicateSets()) {
+            Set<String> ids = new TreeSet<>();
+            set.forEach(t -> ids.add(t.getId()));
+            sets.add(ids);
+        }
+        return sets;
+    }
+
+    private static List<Transaction> streamed(FinanceService service, String category) {
+        List<Transaction> rows = new ArrayList<>();
+        service.streamExpensesByCategory(category, rows::addAll);
+        return rows;
+    }
+
+    // What the printing reports write, with the lines sorted since sealed rows come after hot ones
+    private static List<String> printed(Runnable report) {
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            report.run();
+        } finally {
+            System.setOut(original);
+        }
+        List<String> lines = new ArrayList<>(List.of(captured.toString(StandardCharsets.UTF_8).split("\\R")));
+        lines.sort(null);
+        return lines;
+    }
+
+    @Test
+    void listingsReadSealedMonthsWithoutRehydratingThem() throws IOException {
+        FinanceService service = ledger();
+        TransactionQuery cardExpenses = new TransactionQuery().paymentMethod("card").expenses();
+        Map<String, String> all = contents(service.getTransactions());
+        Map<String, String> byQuery = contents(service.findTransactions(cardExpenses));
+        Map<String, String> byCategory = contents(streamed(service, "FOOD"));
+        Set<Set<String>> duplicates = duplicateSets(service);
+        List<String> largest = printed(service::findLargestExpensePerMonth);
+        List<String> byMethod = printed(() -> service.searchTransactionByPaymentMethod("cash"));
+        List<String> categoryReport = printed(() -> service.searchExpenseByCategory("gro"));
+        service.exportTransactions(dir.resolve("hot.csv"));
+        assertTrue(duplicates.size() > 10);
+
+        sealAll(service);
+        assertEquals(all, contents(service.getTransactions()));
+        assertEquals(byQuery, contents(service.findTransactions(cardExpenses)));
+        assertEquals(byCategory, contents(streamed(service, "FOOD")));
+        List<Transaction> queryStream = new ArrayList<>();
+        service.streamTransactions(cardExpenses, queryStream::addAll);
+        assertEquals(byQuery, contents(queryStream));
+        assertEquals(duplicates, duplicateSets(service));
+        assertEquals(largest, printed(service::findLargestExpensePerMonth));
+        assertEquals(byMethod, printed(() -> service.searchTransactionByPaymentMethod("cash")));
+        assertEquals(categoryReport, printed(() -> service.searchExpenseByCategory("gro")));
+        service.exportTransactions(dir.resolve("cold.csv"));
+        List<String> hot = new ArrayList<>(Files.readAllLines(dir.resolve("hot.csv")));
+        List<String> cold = new ArrayList<>(Files.readAllLines(dir.resolve("cold.csv")));
+        hot.sort(null);
+        cold.sort(null);
+        assertEquals(hot, cold);
+        assertEquals(4, service.sealedMonthCount());
+    }
+
+    @Test
+    void duplicatesSpanHotAndSealedRows() {
+        FinanceService service = ledger();
+        sealAll(service);
+        Transaction sealed = service.findTransactions(new TransactionQuery().incomes()).get(0);
+        Income copy = new Income(100_000, "salary", "PAY", "cash", LocalDate.of(2024, 6, 1));
+        service.addTransaction(copy);
+
+        Set<String> salaries = new TreeSet<>();
+        for (Transaction t : service.findTransactions(new TransactionQuery().incomes())) {
+            salaries.add(t.getId());
+        }
+        assertEquals(5, salaries.size());
+        assertTrue(salaries.contains(sealed.getId()));
+        assertTrue(duplicateSets(service).contains(salaries));
+        assertEquals(4, service.sealedMonthCount());
+    }
+
+    @Test
+    void editingARowRehydratesOnlyItsMonth() {
+        FinanceService service = ledger();
+        sealAll(service);
+        Transaction march = service.findTransactions(
+                new TransactionQuery().month(YearMonth.of(2023, 3)).expenses()).get(0);
+        assertTrue(service.editTransaction(march.getId(), 3.25, "Books", "Paperback", "card"));
+        assertEquals(3, service.sealedMonthCount());
+
+        Map<String, String> rows = contents(service.getTransactions());
+        assertEquals(604, rows.size());
+        assertEquals(march.getDate() + " false 3.25 Books Paperback card", rows.get(march.getId()));
+        assertTrue(service.deleteTransaction(march.getId()));
+        assertEquals(3, service.sealedMonthCount());
+        assertEquals(603, service.getTransactions().size());
+    }
+
+    @Test
+    void sealedRowsMatchPaymentMethodsStoredInAnyCase() throws IOException {
+        List<String> csv = new ArrayList<>();
+        csv.add("ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD");
+        for (int month = 1; month <= 4; month++) {
+            csv.add(UUID.randomUUID() + ",2023-0" + month + "-01,INCOME,Salary,5000.0,Pay,Card");
+            for (int i = 0; i < 20; i++) {
+                csv.add(UUID.randomUUID() + ",2023-0" + month + "-" + (10 + i % 18) + ",EXPENSE,Food,"
+                        + (5 + i) + ".0,Item " + i + "," + (i % 2 == 0 ? "Card" : "cash"));
+            }
+        }
+        Path file = dir.resolve("mixed-case.csv");
+        Files.write(file, csv);
+        FinanceService service = new FinanceService();
+        assertEquals(84L, service.importCsv(file).getImported());
+
+        TransactionQuery card = new TransactionQuery().paymentMethod("card");
+        Map<String, String> hot = contents(service.findTransactions(card));
+        List<String> report = printed(() -> service.searchTransactionByPaymentMethod("card"));
+        assertEquals(44, hot.size());
+
+        sealAll(service);
+        assertEquals(hot, contents(service.findTransactions(card)));
+        List<Transaction> streamedRows = new ArrayList<>();
+        service.streamTransactions(card, streamedRows::addAll);
+        assertEquals(hot, contents(streamedRows));
+        assertEquals(report, printed(() -> service.searchTransactionByPaymentMethod("card")));
+        assertEquals(4, service.sealedMonthCount());
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvImporterTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String ID = "6f1c2b9e-0d5a-4e37-9c1a-2b3c4d5e6f70";
+
+    private List<CsvImporter.ParsedChunk> parse(int chunkBytes, String... lines) throws IOException {
+        Path file = dir.resolve("import.csv");
+        Files.writeString(file, String.join("\n", lines) + "\n");
+        List<CsvImporter.ParsedChunk> chunks = new ArrayList<>();
+        new CsvImporter(file, chunkBytes, 2).parse(chunks::add);
+        return chunks;
+    }
+
+    private CsvImporter.ParsedChunk parseOne(String line) throws IOException {
+        return parse(CsvImporter.DEFAULT_CHUNK_BYTES, "ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD", line).get(0);
+    }
+
+    private String errorFor(String amount) throws IOException {
+        CsvImporter.ParsedChunk chunk = parseOne(ID + ",2024-03-05,EXPENSE,Food," + amount + ",Lunch,cash");
+        assertEquals(0, chunk.size, amount);
+        return chunk.errors.get(0).reason();
+    }
+
+    @Test
+    void parsesEveryField() throws IOException {
+        CsvImporter.ParsedChunk chunk = parseOne(ID + ",2024-02-29,INCOME,Salary,1234.5,March, with a comma,online");
+        assertEquals(1, chunk.size);
+        UUID id = UUID.fromString(ID);
+        assertEquals(id.getMostSignificantBits(), chunk.idHighs[0]);
+        assertEquals(id.getLeastSignificantBits(), chunk.idLows[0]);
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), chunk.epochDays[0]);
+        assertEquals(TransactionStore.yearMonthIndex(2024, 2), chunk.yearMonths[0]);
+        assertEquals(true, chunk.income[0]);
+        assertEquals("Salary", chunk.categories[0]);
+        assertEquals(123450L, chunk.cents[0]);
+        assertEquals("March, with a comma", chunk.descriptions[0]);
+        assertEquals("online", chunk.paymentMethods[0]);
+        assertEquals(2L, chunk.lineNumbers[0]);
+    }
+
+    @Test
+    void amountsMatchMoneyToCents() throws IOException {
+        for (String amount : new String[] {"7", "7.5", "7.05", "0.01", "1.005", "1.0E7", "9999999999999.99", "999999999999.99"}) {
+            CsvImporter.ParsedChunk chunk = parseOne(ID + ",2024-03-05,EXPENSE,Food," + amount + ",Lunch,cash");
+            if (Double.parseDouble(amount) > Money.MAX_AMOUNT) {
+                assertEquals(0, chunk.size, amount);
+            } else {
+                assertEquals(Money.toCents(Double.parseDouble(amount)), chunk.cents[0], amount);
+            }
+        }
+    }
+
+    @Test
+    void rejectsAmountsOutOfRange() throws IOException {
+        String range = "Amount must be a positive number up to 1000000000000.";
+        assertEquals(range, errorFor("999999999999999999")); // used to overflow to 77662796314522418.20
+        assertEquals(range, errorFor("99999999999999999999.5"));
+        assertEquals(range, errorFor("Infinity"));
+        assertEquals(range, errorFor("1e999"));
+        assertEquals(range, errorFor("NaN"));
+        assertEquals(range, errorFor("-5"));
+        assertEquals(range, errorFor("0"));
+        assertEquals("Invalid amount", errorFor("12x50"));
+    }
+
+    @Test
+    void rejectsInvalidDates() throws IOException {
+        for (String date : new String[] {"2023-02-29", "2024-13-01", "2024-04-31", "24-04-01"}) {
+            CsvImporter.ParsedChunk chunk = parseOne(ID + "," + date + ",EXPENSE,Food,5,Lunch,cash");
+            assertEquals(0, chunk.size, date);
+            assertEquals("Invalid date (expected YYYY-MM-DD)", chunk.errors.get(0).reason());
+        }
+    }
+
+    @Test
+    void linesAcrossChunkBoundariesAreParsedOnce() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("ID,DATE,TYPE,CATEGORY,AMOUNT,DESCRIPTION,PAYMENT_METHOD");
+        for (int i = 0; i < 500; i++) {
+            lines.add(UUID.randomUUID() + ",2024-01-" + String.format("%02d", i % 28 + 1) + ",EXPENSE,Food," + (i + 1)
+                    + ".25,Row " + i + ",card");
+        }
+        List<CsvImporter.ParsedChunk> chunks = parse(1000, lines.toArray(String[]::new));
+        int rows = 0;
+        for (CsvImporter.ParsedChunk chunk : chunks) {
+            assertEquals(List.of(), chunk.errors);
+            for (int i = 0; i < chunk.size; i++) {
+                assertEquals(rows + 2L, chunk.lineNumbers[i]);
+                assertEquals("Row " + rows, chunk.descriptions[i]);
+                assertEquals((rows + 1) * 100L + 25, chunk.cents[i]);
+                rows++;
+            }
+        }
+        assertEquals(500, rows);
+    }
+
+    @Test
+    void civilDateMatchesLocalDate() {
+        for (long day = LocalDate.of(-400, 1, 1).toEpochDay(); day < LocalDate.of(2500, 1, 1).toEpochDay(); day += 7) {
+            LocalDate expected = LocalDate.ofEpochDay(day);
+            long date = CivilDate.fromEpochDay(day);
+            assertEquals(expected.getYear(), CivilDate.year(date));
+            assertEquals(expected.getMonthValue(), CivilDate.month(date));
+            assertEquals(expected.getDayOfMonth(), CivilDate.day(date));
+            assertEquals(day, CivilDate.epochDay(expected.getYear(), expected.getMonthValue(), expected.getDayOfMonth()));
+            assertEquals(expected.lengthOfMonth(), CivilDate.lengthOfMonth(expected.getYear(), expected.getMonthValue()));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DuplicateIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 10);
+
+    // The duplicate sets as sorted sets of IDs
+    private static Set<Set<String>> sets(FinanceService service) {
+        Set<Set<String>> sets = new HashSet<>();
+        for (List<Transaction> set : service.findDuplicateSets()) {
+            Set<String> ids = new TreeSet<>();
+            set.forEach(t -> ids.add(t.getId()));
+            sets.add(ids);
+        }
+        return sets;
+    }
+
+    private static Expense expense(FinanceService service, double amount, String category, String description) {
+        Expense expense = new Expense(amount, category, description, "card", DAY);
+        service.addTransaction(expense);
+        return expense;
+    }
+
+    @Test
+    void editsAndDeletesMoveRowsBetweenSets() {
+        FinanceService service = new FinanceService();
+        service.addTransaction(new Income(5000, "Salary", "Pay", "online", DAY));
+        Expense a = expense(service, 12.5, "Food", "Lunch");
+        Expense b = expense(service, 12.5, "food", "LUNCH"); // case differs: still a duplicate
+        Expense c = expense(service, 30, "Food", "Dinner");
+        assertEquals(Set.of(Set.of(a.getId(), b.getId())), sets(service));
+
+        assertTrue(service.editTransaction(c.getId(), 12.5, "Food", "lunch", "cash"));
+        assertEquals(Set.of(new TreeSet<>(List.of(a.getId(), b.getId(), c.getId()))), sets(service));
+
+        assertTrue(service.editTransaction(a.getId(), 12.5, "Food", "Brunch", "card"));
+        assertEquals(Set.of(new TreeSet<>(List.of(b.getId(), c.getId()))), sets(service));
+
+        assertTrue(service.deleteTransaction(b.getId()));
+        assertEquals(Set.of(), sets(service));
+    }
+
+    @Test
+    void rejectPolicyFindsDuplicatesOfEditedRows() {
+        FinanceService service = new FinanceService();
+        service.addTransaction(new Income(5000, "Salary", "Pay", "online", DAY));
+        service.setDuplicatePolicy(FinanceService.DuplicatePolicy.REJECT);
+        Expense a = expense(service, 10, "Food", "Snack");
+        assertTrue(service.editTransaction(a.getId(), 11, "Food", "Snack", "card"));
+        assertTrue(service.addTransaction(new Expense(10, "Food", "Snack", "card", DAY)));
+        assertFalse(service.addTransaction(new Expense(11, "Food", "snack", "cash", DAY)));
+    }
+
+    @Test
+    void setsSurviveASnapshotReload() throws IOException {
+        Set<Set<String>> expected;
+        try (FinanceService service = FinanceService.open(dir)) {
+            service.addTransaction(new Income(5000, "Salary", "Pay", "online", DAY));
+            for (int i = 0; i < 50; i++) {
+                expense(service, 1 + i % 5, "Food", "Item " + i % 7);
+            }
+            expected = sets(service);
+            assertFalse(expected.isEmpty());
+        }
+        try (FinanceService reopened = FinanceService.open(dir)) { // rebuilt from the snapshot's fingerprints
+            assertEquals(expected, sets(reopened));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class FinanceHttpServerTest {
+
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+    private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+    private static final Pattern NEXT_CURSOR = Pattern.compile("\"nextCursor\":(?:null|\"([^\"]+)\")\\}$");
+
+    private static HttpResponse<String> send(FinanceHttpServer server, String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // The JSON the server writes for these transactions, in this order
+    private static String json(List<Transaction> transactions) {
+        StringBuilder json = new StringBuilder();
+        for (Transaction t : transactions) {
+            if (json.length() > 0) {
+                json.append(',');
+            }
+            Json.transaction(json, t);
+        }
+        return json.toString();
+    }
+
+    private static List<String> ids(String body) {
+        List<String> ids = new ArrayList<>();
+        for (Matcher m = ID.matcher(body); m.find(); ) {
+            ids.add(m.group(1));
+        }
+        return ids;
+    }
+
+    private static String expense(String date, double amount, String description) {
+        return "{\"type\": \"expense\", \"date\": \"" + date + "\", \"amount\": " + amount
+                + ", \"category\": \"Food\", \"description\": \"" + description + "\", \"paymentMethod\": \"card\"}";
+    }
+
+    @Test
+    void rejectedWritesComeBackWithTheirReason() throws Exception {
+        FinanceService service = new FinanceService();
+        service.setDuplicatePolicy(FinanceService.DuplicatePolicy.REJECT);
+        service.addTransaction(new Income(100, "Salary", "Pay", "online", LocalDate.of(2025, 3, 1)));
+        FinanceHttpServer server = FinanceHttpServer.start(service, 0);
+        try {
+            assertEquals(201, send(server, "POST", "/transactions", expense("2025-03-14", 40, "Lunch")).statusCode());
+
+            HttpResponse<String> overdrawn = send(server, "POST", "/transactions", expense("2025-03-15", 80, "Dinner"));
+            assertEquals(409, overdrawn.statusCode());
+            assertTrue(overdrawn.body().contains("Expense (120.00) exceeds total income (100.00) for MARCH 2025"),
+                    overdrawn.body());
+
+            HttpResponse<String> duplicate = send(server, "POST", "/transactions", expense("2025-03-20", 40, "Lunch"));
+            assertEquals(409, duplicate.statusCode());
+            assertTrue(duplicate.body().contains("duplicate of transaction"), duplicate.body());
+
+            HttpResponse<String> missing = send(server, "DELETE", "/transactions/00000000-0000-0000-0000-000000000000", null);
+            assertEquals(404, missing.statusCode());
+            assertEquals(2, service.getTransactions().size());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void anOversizedBodyIsRefused() throws Exception {
+        FinanceService service = new FinanceService();
+        FinanceHttpServer server = FinanceHttpServer.start(service, 0);
+        try {
+            String padding = "x".repeat(FinanceHttpServer.MAX_BODY_BYTES);
+            HttpResponse<String> response = send(server, "POST", "/transactions", expense("2025-03-14", 1, padding));
+            assertEquals(413, response.statusCode());
+            assertEquals(0, service.getTransactions().size());
+
+            HttpResponse<String> bad = send(server, "POST", "/transactions", "{\"type\": \"expense\"}");
+            assertEquals(400, bad.statusCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void listingsStreamInBatchesAndPageThroughWithACursor() throws Exception {
+        FinanceService service = new FinanceService();
+        int count = 2600; // more than two of the service's 1024-row batches
+        for (int i = 0; i < count; i++) {
+            LocalDate date = LocalDate.of(2025, 1 + i % 3, 1 + i % 28);
+            service.addTransaction(i % 4 == 0
+                    ? new Income(500 + i, "Salary", "Pay " + i, "online", date)
+                    : new Expense(1 + i % 50, i % 2 == 0 ? "Food" : "Rent", "Item " + i % 40, i % 3 == 0 ? "card" : "cash", date));
+        }
+        List<Transaction> all = service.getTransactions();
+        FinanceHttpServer server = FinanceHttpServer.start(service, 0);
+        try {
+            HttpResponse<String> listing = send(server, "GET", "/transactions", null);
+            assertEquals(200, listing.statusCode());
+            assertEquals("chunked", listing.headers().firstValue("Transfer-Encoding").orElse(""));
+            assertEquals("[" + json(all) + "]", listing.body());
+
+            // Pages of 500 in (date, ID) order, each row once
+            List<String> paged = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                String path = "/transactions?limit=500"
+                        + (cursor == null ? "" : "&cursor=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8));
+                HttpResponse<String> page = send(server, "GET", path, null);
+                assertEquals(200, page.statusCode());
+                paged.addAll(ids(page.body()));
+                Matcher next = NEXT_CURSOR.matcher(page.body());
+                assertTrue(next.find(), page.body());
+                cursor = next.group(1);
+                pages++;
+            } while (cursor != null);
+            assertEquals(6, pages);
+            List<String> expected = new ArrayList<>();
+            for (Iterator<Transaction> it = service.iterateTransactions(new TransactionQuery()); it.hasNext(); ) {
+                expected.add(it.next().getId());
+            }
+            assertEquals(expected, paged);
+            assertEquals(new HashSet<>(ids(json(all))), new HashSet<>(paged));
+            assertEquals(count, new HashSet<>(paged).size());
+
+            List<Transaction> onlineIncome = service.findTransactions(new TransactionQuery().incomes().paymentMethod("online")
+                    .month(YearMonth.of(2025, 2)));
+            assertEquals("[" + json(onlineIncome) + "]",
+                    send(server, "GET", "/transactions?type=income&paymentMethod=online&month=2025-02", null).body());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void reportsMatchTheService() throws Exception {
+        FinanceService service = new FinanceService();
+        LocalDate day = LocalDate.of(2025, 3, 14);
+        service.addTransaction(new Income(1000, "Salary", "Pay", "online", day));
+        service.addTransaction(new Expense(40, "Food", "Lunch", "card", day));
+        service.addTransaction(new Expense(40, "Food", "Lunch", "card", day.plusDays(1))); // a duplicate
+        service.addTransaction(new Expense(300, "Rent", "March", "online", day));
+        service.addTransaction(new Expense(25, "Fast food", "Burger", "cash", LocalDate.of(2025, 4, 2)));
+        FinanceHttpServer server = FinanceHttpServer.start(service, 0);
+        try {
+            String summary = send(server, "GET", "/summary", null).body();
+            assertTrue(summary.startsWith("{\"totalIncome\":1000.00,\"totalExpense\":405.00,\"netBalance\":595.00,"), summary);
+            assertEquals("{\"month\":\"2025-03\",\"income\":1000.00,\"expense\":380.00,\"netBalance\":620.00}",
+                    send(server, "GET", "/summary/2025-03", null).body());
+
+            List<Transaction> food = new ArrayList<>();
+            service.streamExpensesByCategory("food", food::addAll);
+            assertEquals(3, food.size());
+            assertEquals("{\"category\":\"food\",\"total\":105.00,\"transactions\":[" + json(food) + "]}",
+                    send(server, "GET", "/search/category?q=food", null).body());
+
+            List<Transaction> card = service.findTransactions(new TransactionQuery().paymentMethod("card"));
+            assertEquals("{\"paymentMethod\":\"card\",\"totalIncome\":0.00,\"totalExpense\":80.00,\"transactions\":["
+                    + json(card) + "]}", send(server, "GET", "/search/payment-method?method=card", null).body());
+
+            List<List<Transaction>> sets = service.findDuplicateSets();
+            assertEquals(1, sets.size());
+            assertEquals("[[" + json(sets.get(0)) + "]]", send(server, "GET", "/duplicates", null).body());
+
+            String largest = send(server, "GET", "/largest-expenses?year=2025", null).body();
+            assertEquals(List.of(service.topExpenses(YearMonth.of(2025, 3), 1).get(0).getId(),
+                    service.topExpenses(YearMonth.of(2025, 4), 1).get(0).getId()), ids(largest));
+            assertTrue(largest.contains("\"month\":\"2025-03\"") && largest.contains("\"amount\":300.00"), largest);
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class FinanceServiceConcurrencyTest {
+
+    private static final OutputStream DISCARD = OutputStream.nullOutputStream();
+
+    // Runs task with System.out going to out
+    private static void withStdout(OutputStream out, Runnable task) {
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(out, true));
+        try {
+            task.run();
+        } finally {
+            System.setOut(original);
+        }
+    }
+
+    private static double expenseIn(FinanceService service, int year, int month) {
+        double total = 0.0;
+        for (Transaction t : service.getTransactions()) {
+            if (!t.isIncome() && t.getDate().getYear() == year && t.getDate().getMonthValue() == month) {
+                total += t.getAmount();
+            }
+        }
+        return total;
+    }
+
+    @Test
+    void concurrentExpensesCannotOverdrawAMonth() throws Exception {
+        FinanceService service = new FinanceService();
+        service.addTransaction(new Income(1000, "Salary", "Pay", "online", LocalDate.of(2024, 3, 1)));
+        service.addTransaction(new Income(1000, "Salary", "Pay", "online", LocalDate.of(2024, 4, 1)));
+        AtomicInteger accepted = new AtomicInteger();
+        withStdout(DISCARD, () -> {
+            List<CompletableFuture<Void>> writers = new ArrayList<>();
+            for (int w = 0; w < 8; w++) {
+                int writer = w;
+                writers.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        if (service.tryAddExpense(new Expense(5, "Food", "Meal " + writer + "-" + i, "card",
+                                LocalDate.of(2024, 3, 1 + i % 28)))) {
+                            accepted.incrementAndGet();
+                        }
+                        // Writes to another month go on alongside
+                        service.addTransaction(new Expense(1, "Food", "Snack " + writer + "-" + i, "cash",
+                                LocalDate.of(2024, 4, 1 + i % 28)));
+                    }
+                }));
+            }
+            writers.forEach(CompletableFuture::join);
+        });
+
+        assertEquals(200, accepted.get());
+        assertEquals(1000.0, expenseIn(service, 2024, 3), 0.001);
+        assertEquals(400.0, expenseIn(service, 2024, 4), 0.001);
+        assertEquals(2000.0, service.getTotalIncome(), 0.001);
+    }
+
+    @Test
+    void aStalledReportDoesNotHoldUpWriters() throws Exception {
+        FinanceService service = new FinanceService();
+        for (int i = 0; i < 5000; i++) {
+            service.addTransaction(new Income(10 + i, "Salary", "Pay " + i, "online", LocalDate.of(2024, 1 + i % 12, 1)));
+        }
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream stalled = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(stalled, true));
+        try {
+            CompletableFuture<Void> report = CompletableFuture.runAsync(service::printAllTransactions);
+            assertTrue(writing.await(10, TimeUnit.SECONDS), "the report never started writing");
+
+            CompletableFuture<Boolean> add = CompletableFuture.supplyAsync(() -> service.addTransaction(
+                    new Expense(1, "Food", "Lunch", "card", LocalDate.of(2024, 1, 2))));
+            assertTrue(add.get(10, TimeUnit.SECONDS));
+            release.countDown();
+            report.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            System.setOut(original);
+        }
+        assertEquals(5001, service.getTransactions().size());
+    }
+}
@@ -0,0 +1,202 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FinanceServicePersistenceTest {
+
+    @TempDir
+    Path dir;
+
+    private static Map<String, String> contents(FinanceService service) {
+        Map<String, String> rows = new TreeMap<>();
+        for (Transaction t : service.getTransactions()) {
+            rows.put(t.getId(), t.getDate() + " " + t.isIncome() + " " + t.getAmount() + " " + t.getCategory() + " "
+                    + t.getDescription() + " " + t.getPaymentMethod());
+        }
+        return rows;
+    }
+
+    // The ledger's files as they are now, which is what a crash would leave
+    private Path copyOfFiles() throws IOException {
+        Path copy = Files.createDirectory(dir.resolve("copy"));
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        return copy;
+    }
+
+    private List<String> snapshotFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).filter(name -> name.startsWith("snapshot")).sorted().toList();
+        }
+    }
+
+    private static List<String> write(FinanceService service, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LocalDate date = LocalDate.of(2024, 1 + i % 12, 1 + i % 28);
+            Transaction t = i % 3 == 0
+                    ? new Income(1000 + i, "Salary", "Pay " + i, "online", date)
+                    : new Expense(1 + i % 50, "Food", "Meal " + i, "card", date);
+            service.addTransaction(t);
+            ids.add(t.getId());
+        }
+        for (int i = 0; i < ids.size(); i += 7) {
+            service.editTransaction(ids.get(i), 5 + i, "Edited", "Edit " + i, "cash");
+        }
+        for (int i = 3; i < ids.size(); i += 11) {
+            service.deleteTransaction(ids.get(i));
+        }
+        return ids;
+    }
+
+    @Test
+    void everyWriteSurvivesBackgroundSnapshotsAndReopen() throws IOException {
+        Map<String, String> expected;
+        try (FinanceService service = FinanceService.open(dir, 1, 25)) {
+            write(service, 600);
+            expected = contents(service);
+        }
+        try (FinanceService reopened = FinanceService.open(dir, 1, 25)) {
+            assertEquals(expected, contents(reopened));
+        }
+    }
+
+    private static Set<Set<String>> duplicateIds(FinanceService service) {
+        Set<Set<String>> sets = new HashSet<>();
+        for (List<Transaction> set : service.findDuplicateSets()) {
+            Set<String> ids = new HashSet<>();
+            set.forEach(t -> ids.add(t.getId()));
+            sets.add(ids);
+        }
+        return sets;
+    }
+
+    private static List<Double> amounts(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::getAmount).toList();
+    }
+
+    @Test
+    void indexesBuiltAfterReopenAgreeWithAFreshLedger() throws IOException {
+        List<String> ids;
+        FinanceService fresh = new FinanceService();
+        try (FinanceService service = FinanceService.open(dir)) {
+            ids = write(service, 600);
+            service.getTransactions().forEach(fresh::addTransaction);
+        }
+        try (FinanceService reopened = FinanceService.open(dir)) {
+            // Writes come first, while no index has been built yet
+            Expense late = new Expense(5, "Food", "Meal 4", "card", LocalDate.of(2024, 3, 2)); // a duplicate of row 4
+            for (FinanceService service : List.of(reopened, fresh)) {
+                service.addTransaction(late);
+                service.editTransaction(ids.get(1), 999, "Food", "Feast", "cash");
+                service.deleteTransaction(ids.get(2));
+            }
+
+            assertEquals(contents(fresh), contents(reopened));
+            assertEquals(fresh.findById(ids.get(1)).toString(), reopened.findById(ids.get(1)).toString());
+            assertNull(reopened.findById(ids.get(2)));
+            assertEquals(fresh.getExpenseTotalByCategory("foo"), reopened.getExpenseTotalByCategory("foo"));
+            assertEquals(fresh.totalAmount(new TransactionQuery().expenses().paymentMethod("cash")),
+                    reopened.totalAmount(new TransactionQuery().expenses().paymentMethod("cash")));
+            assertEquals(amounts(fresh.topExpenses(YearMonth.of(2024, 3), 5)),
+                    amounts(reopened.topExpenses(YearMonth.of(2024, 3), 5)));
+            assertEquals(fresh.findTransactions(new TransactionQuery().incomes()).size(),
+                    reopened.findTransactions(new TransactionQuery().incomes()).size());
+            assertEquals(duplicateIds(fresh), duplicateIds(reopened));
+            assertEquals(1, duplicateIds(reopened).size());
+        }
+    }
+
+    @Test
+    void snapshotEmptiesTheJournalAndReopensFromTheSnapshotAlone() throws IOException {
+        Map<String, String> expected;
+        try (FinanceService service = FinanceService.open(dir, 1, 1_000_000)) {
+            write(service, 200);
+            service.sync();
+            assertTrue(Files.size(dir.resolve("journal.log")) > 0);
+            service.snapshot();
+            assertEquals(0L, Files.size(dir.resolve("journal.log")));
+            expected = contents(service);
+
+            // A copy of the files as they are now is what a crash would leave
+            Path copy = copyOfFiles();
+            try (FinanceService recovered = FinanceService.open(copy)) {
+                assertEquals(expected, contents(recovered));
+            }
+        }
+    }
+
+    @Test
+    void eachSnapshotIsANewFileAndOlderOnesAreDeleted() throws IOException {
+        Map<String, String> expected;
+        try (FinanceService service = FinanceService.open(dir, 1, 1_000_000)) {
+            write(service, 50);
+            service.snapshot();
+            write(service, 50);
+            service.snapshot();
+            assertEquals(List.of("snapshot-2.bin"), snapshotFiles());
+        }
+        assertEquals(List.of("snapshot-3.bin"), snapshotFiles()); // written on close
+        try (FinanceService reopened = FinanceService.open(dir, 1, 1_000_000)) {
+            // The loaded file stays mapped for its descriptions while the next one is written
+            write(reopened, 50);
+            reopened.snapshot();
+            assertEquals(List.of("snapshot-4.bin"), snapshotFiles());
+            expected = contents(reopened);
+        }
+        try (FinanceService reopened = FinanceService.open(dir)) {
+            assertEquals(expected, contents(reopened));
+        }
+    }
+
+    @Test
+    void writesDuringASnapshotAreKept() throws Exception {
+        try (FinanceService service = FinanceService.open(dir, 1, 1_000_000)) {
+            write(service, 300);
+            CompletableFuture<List<String>> writer = CompletableFuture.supplyAsync(() -> write(service, 300));
+            for (int i = 0; i < 5; i++) {
+                service.snapshot();
+            }
+            writer.get();
+            Map<String, String> expected = contents(service);
+
+            // Without a final snapshot, the later writes must come back from the journal
+            service.sync();
+            Path copy = copyOfFiles();
+            try (FinanceService reopened = FinanceService.open(copy)) {
+                assertEquals(expected, contents(reopened));
+            }
+        }
+    }
+
+    @Test
+    void aLedgerCanBeOpenedOnlyOnceAtATime() throws IOException {
+        try (FinanceService service = FinanceService.open(dir)) {
+            assertThrows(IOException.class, () -> FinanceService.open(dir));
+        }
+        try (FinanceService reopened = FinanceService.open(dir)) {
+            assertEquals(0, reopened.getTransactions().size());
+        }
+    }
+}
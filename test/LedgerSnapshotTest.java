@@ -0,0 +1,153 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LedgerSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String[] DESCRIPTIONS = {"Lunch", "", "Café crème", "Rent, March", "日本語のメモ", "Lunch"};
+
+    private static TransactionStore sampleStore(MonthlyTotals totals) {
+        TransactionStore store = new TransactionStore();
+        for (int i = 0; i < 40; i++) {
+            int epochDay = (int) LocalDate.of(2024, 1 + i % 3, 1 + i % 28).toEpochDay();
+            boolean income = i % 5 == 0;
+            long cents = 100L * i + 7;
+            store.append(i, ~i, cents, epochDay, income, i % 2 == 0 ? "Food" : "Rent",
+                    DESCRIPTIONS[i % DESCRIPTIONS.length], i % 3 == 0 ? "cash" : "card");
+            totals.apply(TransactionStore.yearMonthOfEpochDay(epochDay), income, cents);
+        }
+        return store;
+    }
+
+    private static void assertSameRows(TransactionStore expected, int[] expectedSlots, TransactionStore actual) {
+        assertEquals(expectedSlots.length, actual.liveCount());
+        for (int row = 0; row < expectedSlots.length; row++) {
+            int slot = expectedSlots[row];
+            assertEquals(expected.idHigh(slot), actual.idHigh(row));
+            assertEquals(expected.idLow(slot), actual.idLow(row));
+            assertEquals(expected.cents(slot), actual.cents(row));
+            assertEquals(expected.epochDay(slot), actual.epochDay(row));
+            assertEquals(expected.yearMonth(slot), actual.yearMonth(row));
+            assertEquals(expected.isIncome(slot), actual.isIncome(row));
+            assertEquals(expected.categories().decode(expected.categoryCode(slot)),
+                    actual.categories().decode(actual.categoryCode(row)));
+            assertEquals(expected.paymentMethods().decode(expected.paymentMethodCode(slot)),
+                    actual.paymentMethods().decode(actual.paymentMethodCode(row)));
+            assertEquals(expected.description(slot), actual.description(row));
+            assertEquals(expected.fingerprint(slot), actual.fingerprint(row));
+        }
+    }
+
+    @Test
+    void roundTripsEveryColumnAndTheTotals() throws IOException {
+        MonthlyTotals totals = new MonthlyTotals();
+        TransactionStore store = sampleStore(totals);
+        store.delete(3);
+        store.delete(17);
+        int[] live = new int[store.liveCount()];
+        for (int slot = store.nextLive(0), i = 0; slot >= 0; slot = store.nextLive(slot + 1)) {
+            live[i++] = slot;
+        }
+        Path file = dir.resolve("ledger.snapshot");
+        LedgerSnapshot.write(file, store, List.of(), totals.byYearMonth(), 42L);
+
+        TransactionStore loaded = new TransactionStore();
+        MonthlyTotals loadedTotals = new MonthlyTotals();
+        assertEquals(42L, LedgerSnapshot.load(file, loaded, loadedTotals));
+        assertSameRows(store, live, loaded);
+        Map<Integer, long[]> expected = totals.byYearMonth();
+        assertEquals(expected.keySet(), loadedTotals.byYearMonth().keySet());
+        expected.forEach((yearMonth, sums) -> assertArrayEquals(sums, loadedTotals.byYearMonth().get(yearMonth)));
+    }
+
+    @Test
+    void snapshotOfALoadedStoreIsIdentical() throws IOException {
+        MonthlyTotals totals = new MonthlyTotals();
+        TransactionStore store = sampleStore(totals);
+        Path first = dir.resolve("first.snapshot");
+        LedgerSnapshot.write(first, store, List.of(), totals.byYearMonth(), 7L);
+
+        TransactionStore loaded = new TransactionStore();
+        MonthlyTotals loadedTotals = new MonthlyTotals();
+        LedgerSnapshot.load(first, loaded, loadedTotals);
+        Path second = dir.resolve("second.snapshot");
+        LedgerSnapshot.write(second, loaded, List.of(), loadedTotals.byYearMonth(), 7L); // descriptions come from the mapped heap
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+        assertEquals(List.of("first.snapshot", "second.snapshot"),
+                Files.list(dir).map(p -> p.getFileName().toString()).sorted().toList()); // no temporary files left
+    }
+
+    @Test
+    void sealedMonthsLoadBackAsOrdinaryRows() throws IOException {
+        MonthlyTotals totals = new MonthlyTotals();
+        TransactionStore store = sampleStore(totals);
+        int january = TransactionStore.yearMonthIndex(2024, 1);
+        int[] sealedSlots = new int[0];
+        int[] liveSlots = new int[0];
+        for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+            if (store.yearMonth(slot) == january) {
+                sealedSlots = append(sealedSlots, slot);
+            } else {
+                liveSlots = append(liveSlots, slot);
+            }
+        }
+        SealedMonth sealed = SealedMonth.seal(store, january, sealedSlots);
+        for (int slot : sealedSlots) {
+            store.delete(slot);
+        }
+        Path file = dir.resolve("ledger.snapshot");
+        LedgerSnapshot.write(file, store, List.of(sealed), totals.byYearMonth(), 1L);
+
+        TransactionStore loaded = new TransactionStore();
+        LedgerSnapshot.load(file, loaded, new MonthlyTotals());
+        int[] expectedOrder = liveSlots.clone();
+        for (int slot : sealedSlots) {
+            expectedOrder = append(expectedOrder, slot);
+        }
+        TransactionStore original = sampleStore(new MonthlyTotals());
+        assertSameRows(original, expectedOrder, loaded);
+    }
+
+    @Test
+    void descriptionsMayStraddleHeapSegments() {
+        String[] values = {"abc", "", "Café", "a longer description", "x"};
+        ByteBuffer offsets = ByteBuffer.allocate(8 * (values.length + 1)).order(ByteOrder.LITTLE_ENDIAN);
+        StringBuilder heap = new StringBuilder();
+        offsets.putLong(0L);
+        for (String value : values) {
+            heap.append(value);
+            offsets.putLong(heap.toString().getBytes(StandardCharsets.UTF_8).length);
+        }
+        byte[] bytes = heap.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer[] segments = new ByteBuffer[(bytes.length + 3) / 4];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.wrap(bytes, 4 * i, Math.min(4, bytes.length - 4 * i)).slice();
+        }
+        LedgerSnapshot.MappedDescriptions descriptions = new LedgerSnapshot.MappedDescriptions(offsets, segments, 2);
+        for (int row = 0; row < values.length; row++) {
+            assertEquals(values[row], descriptions.description(row));
+        }
+    }
+
+    private static int[] append(int[] values, int value) {
+        int[] copy = Arrays.copyOf(values, values.length + 1);
+        copy[values.length] = value;
+        return copy;
+    }
+}
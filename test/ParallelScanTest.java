@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelScanTest {
+
+    private static final String[] CATEGORIES = {"Food", "Rent", "Travel", "food"};
+    private static final String[] METHODS = {"cash", "card", "online"};
+
+    @TempDir
+    Path dir;
+
+    // Every slot not divisible by 3 below 3 * MIN_THRESHOLD_ROWS: twice the minimum, with gaps
+    private static RowBitmap rows() {
+        RowBitmap rows = new RowBitmap();
+        for (int slot = 0; slot < 3 * ParallelScan.MIN_THRESHOLD_ROWS; slot++) {
+            if (slot % 3 != 0) {
+                rows.add(slot);
+            }
+        }
+        return rows;
+    }
+
+    private static List<Integer> slots(List<List<Integer>> parts) {
+        List<Integer> all = new ArrayList<>();
+        parts.forEach(all::addAll);
+        return all;
+    }
+
+    private static List<Integer> slotsOf(RowBitmap part) {
+        List<Integer> slots = new ArrayList<>();
+        part.forEach(slots::add);
+        return slots;
+    }
+
+    @Test
+    void parallelPartsComeBackInSlotOrder() {
+        RowBitmap rows = rows();
+        try (ParallelScan sequential = new ParallelScan(1, 0); ParallelScan parallel = new ParallelScan(4, 0)) {
+            assertFalse(sequential.isParallel(rows));
+            assertTrue(parallel.isParallel(rows));
+
+            List<List<Integer>> oneParts = sequential.map(rows, ParallelScanTest::slotsOf);
+            List<List<Integer>> manyParts = parallel.map(rows, ParallelScanTest::slotsOf);
+            assertEquals(1, oneParts.size());
+            assertTrue(manyParts.size() > 1);
+            assertEquals(slots(oneParts), slots(manyParts));
+
+            List<List<Integer>> ordered = new ArrayList<>();
+            parallel.forEachOrdered(rows, ParallelScanTest::slotsOf, ordered::add);
+            assertEquals(slots(oneParts), slots(ordered));
+        }
+    }
+
+    @Test
+    void parallelAndSequentialReportsAreIdentical() throws IOException {
+        // One month, so its per-month scans are over the threshold too
+        FinanceService service = new FinanceService();
+        int count = (int) (ParallelScan.MIN_THRESHOLD_ROWS * 3 / 2);
+        for (int i = 0; i < count; i++) {
+            LocalDate date = LocalDate.of(2024, 3, 1 + i % 31);
+            service.addTransaction(i % 5 == 0
+                    ? new Income(100 + i % 997, "Salary", "Pay " + i % 13, METHODS[i % 3], date)
+                    : new Expense(1 + i % 389, CATEGORIES[i % 4], "Item " + i % 31, METHODS[i % 3], date));
+        }
+        LocalDate from = LocalDate.of(2024, 3, 5);
+        LocalDate to = LocalDate.of(2024, 3, 20);
+
+        service.setParallelScan(1, 0);
+        Path sequentialCsv = dir.resolve("sequential.csv");
+        service.exportTransactions(sequentialCsv);
+        double sequentialExpense = service.getExpenseBetween(from, to);
+        double sequentialIncome = service.getIncomeBetween(from, to);
+        List<Transaction> sequentialTop = service.topExpenses(YearMonth.of(2024, 3), 10);
+
+        service.setParallelScan(4, 0);
+        Path parallelCsv = dir.resolve("parallel.csv");
+        service.exportTransactions(parallelCsv);
+
+        assertArrayEquals(Files.readAllBytes(sequentialCsv), Files.readAllBytes(parallelCsv));
+        assertEquals(count + 1, Files.readAllLines(parallelCsv).size());
+        assertEquals(sequentialExpense, service.getExpenseBetween(from, to));
+        assertEquals(sequentialIncome, service.getIncomeBetween(from, to));
+        assertEquals(sequentialTop, service.topExpenses(YearMonth.of(2024, 3), 10));
+    }
+}
@@ -0,0 +1,133 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+class RollupCubeTest {
+
+    private static final String[] CATEGORIES = {"Food", "food ", "Rent", "Travel"};
+    private static final String[] METHODS = {"card", "Cash", "cash", "online"};
+
+    // Two years of rows, then edits and deletes that move rows between cells
+    // and take out extremes, then the first year sealed
+    private static FinanceService ledger() {
+        FinanceService service = new FinanceService();
+        Random random = new Random(3);
+        List<Transaction> rows = new ArrayList<>();
+        for (int year = 2023; year <= 2024; year++) {
+            for (int month = 1; month <= 12; month++) {
+                service.addTransaction(new Income(50_000, "Salary", "Pay", "online", LocalDate.of(year, month, 1)));
+                for (int i = 0; i < 60; i++) {
+                    Transaction t = random.nextInt(6) == 0
+                            ? new Income(1 + random.nextInt(100_000) / 100.0, "Bonus", "Extra " + i, METHODS[i % 4],
+                                    LocalDate.of(year, month, 1 + i % 28))
+                            : new Expense(1 + random.nextInt(50_000) / 100.0, CATEGORIES[random.nextInt(4)], "Item " + i,
+                                    METHODS[random.nextInt(4)], LocalDate.of(year, month, 1 + i % 28));
+                    service.addTransaction(t);
+                    rows.add(t);
+                }
+            }
+        }
+        for (int i = 0; i < 300; i++) {
+            Transaction t = rows.get(random.nextInt(rows.size()));
+            if (i % 4 == 0) {
+                service.deleteTransaction(t.getId());
+            } else {
+                service.editTransaction(t.getId(), 1 + random.nextInt(50_000) / 100.0, CATEGORIES[random.nextInt(4)],
+                        "Edited", METHODS[random.nextInt(4)]);
+            }
+        }
+        return service;
+    }
+
+    private static void sealTheFirstYear(FinanceService service) {
+        service.setColdAfter(Duration.ZERO);
+        service.sealIdleMonths();
+        service.setColdAfter(null);
+        service.editTransaction(service.findTransactions(new TransactionQuery().month(YearMonth.of(2024, 1))).get(0).getId(),
+                7, "Rent", "Rehydrated", "card"); // brings January 2024 back
+    }
+
+    // The rollup computed from the rows themselves, as text keyed by group
+    private static Map<String, String> exact(List<Transaction> rows, Predicate<Transaction> filter,
+                                             Function<Transaction, String> group) {
+        Map<String, long[]> sums = new TreeMap<>(); // {total, count, min, max}
+        for (Transaction t : rows) {
+            if (!filter.test(t)) {
+                continue;
+            }
+            long cents = Money.toCents(t.getAmount());
+            long[] s = sums.computeIfAbsent(group.apply(t), k -> new long[] {0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE});
+            s[0] += cents;
+            s[1]++;
+            s[2] = Math.min(s[2], cents);
+            s[3] = Math.max(s[3], cents);
+        }
+        Map<String, String> result = new TreeMap<>();
+        sums.forEach((key, s) -> result.put(key, Money.toAmount(s[0]) + " " + s[1] + " " + Money.toAmount(s[2]) + " "
+                + Money.toAmount(s[3])));
+        return result;
+    }
+
+    private static Map<String, String> rolled(List<RollupRow> rows) {
+        Map<String, String> result = new TreeMap<>();
+        for (RollupRow row : rows) {
+            result.put(row.month() + "|" + row.category() + "|" + row.paymentMethod() + "|" + row.income(),
+                    row.total() + " " + row.count() + " " + row.min() + " " + row.max());
+        }
+        return result;
+    }
+
+    private static void assertMatchesRows(FinanceService service) {
+        List<Transaction> rows = service.getTransactions();
+        assertEquals(exact(rows, t -> true, t -> "null|null|null|null"), rolled(service.rollup(new RollupQuery())));
+        assertEquals(exact(rows, t -> !t.isIncome(),
+                        t -> YearMonth.from(t.getDate()) + "|" + t.getCategory().trim().toLowerCase() + "|null|null"),
+                rolled(service.rollup(new RollupQuery().expenses()
+                        .groupBy(RollupQuery.Dimension.MONTH, RollupQuery.Dimension.CATEGORY))));
+        assertEquals(exact(rows, t -> t.getPaymentMethod().equalsIgnoreCase("cash") && t.getDate().getYear() == 2023,
+                        t -> "null|null|cash|" + t.isIncome()),
+                rolled(service.rollup(new RollupQuery().paymentMethod("CASH")
+                        .between(YearMonth.of(2023, 1), YearMonth.of(2023, 12))
+                        .groupBy(RollupQuery.Dimension.PAYMENT_METHOD, RollupQuery.Dimension.TYPE))));
+        assertEquals(exact(rows, t -> t.getCategory().trim().equalsIgnoreCase("food")
+                                && (YearMonth.from(t.getDate()).equals(YearMonth.of(2023, 6))
+                                || YearMonth.from(t.getDate()).equals(YearMonth.of(2024, 6))),
+                        t -> YearMonth.from(t.getDate()) + "|null|null|null"),
+                rolled(service.rollup(new RollupQuery().category("Food").month(YearMonth.of(2023, 6))
+                        .month(YearMonth.of(2024, 6)).groupBy(RollupQuery.Dimension.MONTH))));
+
+        long cardExpenses = 0L;
+        for (Transaction t : rows) {
+            if (!t.isIncome() && t.getPaymentMethod().equals("card")) {
+                cardExpenses += Money.toCents(t.getAmount());
+            }
+        }
+        assertEquals(Money.toAmount(cardExpenses),
+                service.totalAmount(new TransactionQuery().expenses().paymentMethod("card")));
+    }
+
+    @Test
+    void rollupsMatchTheRowsAfterEditsAndDeletes() {
+        assertMatchesRows(ledger());
+    }
+
+    @Test
+    void rollupsMatchTheRowsWithSealedMonths() {
+        FinanceService service = ledger();
+        sealTheFirstYear(service);
+        assertEquals(23, service.sealedMonthCount());
+        assertMatchesRows(service);
+        assertEquals(23, service.sealedMonthCount()); // read from the cells, nothing rehydrated
+    }
+}
@@ -0,0 +1,60 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class SealedMonthTest {
+
+    private static final int MARCH = TransactionStore.yearMonthIndex(2024, 3);
+
+    private static SealedMonth sealMarch(TransactionStore store, int rows) {
+        Random random = new Random(42);
+        int[] slots = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            UUID id = UUID.randomUUID();
+            int epochDay = (int) LocalDate.of(2024, 3, 1 + random.nextInt(31)).toEpochDay();
+            slots[i] = store.append(id.getMostSignificantBits(), id.getLeastSignificantBits(), 1 + random.nextInt(100_000),
+                    epochDay, random.nextInt(4) == 0, "Category " + random.nextInt(5), "Note " + random.nextInt(50),
+                    random.nextBoolean() ? "cash" : "card");
+        }
+        return SealedMonth.seal(store, MARCH, slots);
+    }
+
+    @Test
+    void findLocatesEveryRowById() {
+        TransactionStore store = new TransactionStore();
+        SealedMonth month = sealMarch(store, 1000);
+        for (int row = 0; row < month.rows(); row++) {
+            assertEquals(row, month.find(store.idHigh(row), store.idLow(row)));
+        }
+        assertEquals(-1, month.find(store.idHigh(0), store.idLow(0) + 1));
+        assertEquals(-1, month.find(0L, 0L));
+        assertEquals(-1, SealedMonth.seal(store, MARCH, new int[0]).find(store.idHigh(0), store.idLow(0)));
+    }
+
+    @Test
+    void readerReturnsTheRowsAsStored() {
+        TransactionStore store = new TransactionStore();
+        SealedMonth month = sealMarch(store, 300);
+        for (int start : new int[] {0, 63, 64, 200}) {
+            SealedMonth.Reader reader = month.reader(start);
+            for (int row = start; row < month.rows(); row++) {
+                reader.next();
+                assertEquals(store.idLow(row), reader.idLow());
+                assertEquals(store.cents(row), reader.cents());
+                assertEquals(store.epochDay(row), reader.epochDay());
+                assertEquals(store.isIncome(row), reader.isIncome());
+                assertEquals(store.categoryCode(row), reader.categoryCode());
+                assertEquals(store.paymentMethodCode(row), reader.paymentMethodCode());
+                assertEquals(store.description(row), reader.description());
+            }
+        }
+        long[] fingerprints = month.fingerprintsByRow();
+        for (int row = 0; row < month.rows(); row++) {
+            assertEquals(store.fingerprint(row), fingerprints[row]);
+        }
+    }
+}
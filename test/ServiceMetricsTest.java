@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ServiceMetricsTest {
+
+    // The printed columns of each operation's line, by operation label
+    private static Map<String, String[]> printed(ServiceMetrics metrics) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        metrics.print(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        Map<String, String[]> lines = new HashMap<>();
+        for (String line : bytes.toString(StandardCharsets.UTF_8).split("\\R")) {
+            String[] columns = line.trim().split("\\s+");
+            lines.put(columns[0], columns);
+        }
+        return lines;
+    }
+
+    @Test
+    void callsOverTheThresholdCountAsSlow() {
+        ServiceMetrics metrics = new ServiceMetrics();
+        metrics.setSlowThreshold(Duration.ofSeconds(1));
+        metrics.record(ServiceMetrics.Operation.ADD_TRANSACTION, metrics.start() - Duration.ofSeconds(3).toNanos());
+        metrics.record(ServiceMetrics.Operation.ADD_TRANSACTION, metrics.start() - Duration.ofMillis(1500).toNanos());
+        metrics.record(ServiceMetrics.Operation.ADD_TRANSACTION, metrics.start());
+        metrics.record(ServiceMetrics.Operation.FIND_TRANSACTIONS, metrics.start(), 40L, 7L);
+
+        Map<String, String[]> lines = printed(metrics);
+        String[] add = lines.get("addTransaction");
+        assertEquals("3", add[1]); // calls
+        assertTrue(Double.parseDouble(add[3]) >= 3000.0, "max ms " + add[3]);
+        assertEquals("2", add[4]); // slow
+        assertEquals("-", add[5]);
+
+        String[] find = lines.get("findTransactions");
+        assertEquals("1", find[1]);
+        assertEquals("0", find[4]);
+        assertEquals("40", find[5]);
+        assertEquals("7", find[6]);
+        assertEquals(null, lines.get("deleteTransaction"));
+    }
+
+    @Test
+    void theServiceCountsItsSlowOperations() {
+        FinanceService service = new FinanceService();
+        service.setSlowOperationThreshold(Duration.ZERO); // every call is slow
+        service.addTransaction(new Income(100, "Salary", "Pay", "online", LocalDate.of(2024, 1, 1)));
+        service.addTransaction(new Expense(10, "Food", "Lunch", "card", LocalDate.of(2024, 1, 2)));
+
+        PrintStream original = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            service.printMetrics();
+        } finally {
+            System.setOut(original);
+        }
+        String add = bytes.toString(StandardCharsets.UTF_8).lines()
+                .filter(line -> line.startsWith("addTransaction "))
+                .findFirst()
+                .orElseThrow();
+        String[] columns = add.trim().split("\\s+");
+        assertEquals("2", columns[1]);
+        assertEquals("2", columns[4]);
+    }
+}
@@ -0,0 +1,163 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class SketchIndexTest {
+
+    private static final double RANK_BOUND = 0.017; // QuantileSketch
+    private static final double DISTINCT_BOUND = 0.07; // DistinctSketch
+    private static final double[] QUANTILES = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+
+    // Share of sorted values at or below value
+    private static double rank(long[] sorted, long value) {
+        int i = Arrays.binarySearch(sorted, value);
+        while (i >= 0 && i + 1 < sorted.length && sorted[i + 1] == value) {
+            i++;
+        }
+        return (i >= 0 ? i + 1 : -i - 1) / (double) sorted.length;
+    }
+
+    private static void assertRanksWithinBound(QuantileSketch sketch, long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double rank = rank(sorted, sketch.quantile(q));
+            assertTrue(Math.abs(rank - q) <= RANK_BOUND, "q=" + q + " rank=" + rank);
+        }
+    }
+
+    @Test
+    void quantileRanksStayWithinTheBound() {
+        Random random = new Random(7);
+        long[] values = new long[200_000];
+        QuantileSketch whole = new QuantileSketch();
+        QuantileSketch merged = new QuantileSketch();
+        QuantileSketch part = new QuantileSketch();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextGaussian() * 2 + 8); // long-tailed, like amounts
+            whole.add(values[i]);
+            part.add(values[i]);
+            if (i % 10_000 == 9_999) {
+                merged.merge(part);
+                part = new QuantileSketch();
+            }
+        }
+        assertEquals(values.length, whole.count());
+        assertRanksWithinBound(whole, values);
+        assertRanksWithinBound(merged, values);
+    }
+
+    @Test
+    void quantilesAreExactForSmallStreams() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (long v = QuantileSketch.K; v >= 1; v--) {
+            sketch.add(v);
+        }
+        assertEquals(1, sketch.quantile(0.0));
+        assertEquals(100, sketch.quantile(0.5));
+        assertEquals(QuantileSketch.K, sketch.quantile(1.0));
+    }
+
+    @Test
+    void distinctCountsStayWithinTheBound() {
+        for (int distinct : new int[] {1_000, 20_000, 300_000}) {
+            DistinctSketch sketch = new DistinctSketch();
+            DistinctSketch merged = new DistinctSketch();
+            DistinctSketch part = new DistinctSketch();
+            for (int i = 0; i < 2 * distinct; i++) {
+                long hash = DistinctSketch.hash("Description " + i % distinct);
+                sketch.add(hash);
+                part.add(hash);
+                if (i % 5_000 == 4_999) {
+                    merged.merge(part);
+                    part = new DistinctSketch();
+                }
+            }
+            merged.merge(part);
+            assertTrue(Math.abs(sketch.estimate() - distinct) <= DISTINCT_BOUND * distinct, distinct + ": " + sketch.estimate());
+            assertEquals(sketch.estimate(), merged.estimate());
+        }
+    }
+
+    @Test
+    void sparseDistinctCountsForgetRemovedValues() {
+        DistinctSketch sketch = new DistinctSketch();
+        sketch.add(DistinctSketch.hash("Lunch"));
+        sketch.add(DistinctSketch.hash("LUNCH"));
+        sketch.add(DistinctSketch.hash("Dinner"));
+        assertEquals(2, sketch.estimate());
+        assertTrue(sketch.remove(DistinctSketch.hash("lunch")));
+        assertEquals(2, sketch.estimate()); // still added once more
+        assertTrue(sketch.remove(DistinctSketch.hash("Lunch")));
+        assertEquals(1, sketch.estimate());
+        for (int i = 0; i < DistinctSketch.SPARSE_LIMIT; i++) {
+            sketch.add(DistinctSketch.hash("Item " + i));
+        }
+        assertTrue(!sketch.remove(DistinctSketch.hash("Dinner"))); // dense now
+    }
+
+    @Test
+    void serviceAnswersTrackEditsWithinTheBounds() {
+        FinanceService service = new FinanceService();
+        Random random = new Random(11);
+        List<Transaction> expenses = new ArrayList<>();
+        for (int month = 1; month <= 6; month++) {
+            service.addTransaction(new Income(10_000_000, "Salary", "Pay", "online", LocalDate.of(2024, month, 1)));
+            for (int i = 0; i < 4_000; i++) {
+                Expense expense = new Expense(1 + random.nextInt(50_000) / 100.0, i % 2 == 0 ? "Food" : " food ",
+                        "Shop " + random.nextInt(month == 1 ? 100 : 5_000), "card", LocalDate.of(2024, month, 1 + i % 28));
+                service.addTransaction(expense);
+                expenses.add(expense);
+            }
+        }
+        assertEquals(100, service.distinctDescriptions("FOOD", YearMonth.of(2024, 1), false)); // exact while sparse
+        for (int i = 0; i < 600; i++) {
+            Transaction t = expenses.get(random.nextInt(expenses.size()));
+            if (i % 3 == 0) {
+                service.deleteTransaction(t.getId());
+            } else {
+                service.editTransaction(t.getId(), 1 + random.nextInt(50_000) / 100.0, "Food", "Edited " + i % 40, "card");
+            }
+        }
+
+        Map<Integer, List<Long>> amounts = new HashMap<>(); // month (0 for all) -> cents
+        Map<Integer, Set<String>> descriptions = new HashMap<>();
+        for (Transaction t : service.getTransactions()) {
+            if (t.isIncome()) {
+                continue;
+            }
+            for (int key : new int[] {0, t.getDate().getMonthValue()}) {
+                amounts.computeIfAbsent(key, k -> new ArrayList<>()).add(Money.toCents(t.getAmount()));
+                descriptions.computeIfAbsent(key, k -> new HashSet<>()).add(t.getDescription().toLowerCase());
+            }
+        }
+        for (int key = 0; key <= 6; key++) {
+            YearMonth month = key == 0 ? null : YearMonth.of(2024, key);
+            long[] sorted = amounts.get(key).stream().mapToLong(Long::longValue).sorted().toArray();
+            for (double q : QUANTILES) {
+                long cents = Money.toCents(service.amountQuantile("Food", month, false, q).getAsDouble());
+                double rank = rank(sorted, cents);
+                assertTrue(Math.abs(rank - q) <= RANK_BOUND, month + " q=" + q + " rank=" + rank);
+            }
+            long exact = descriptions.get(key).size();
+            long estimate = service.distinctDescriptions("food", month, false);
+            if (exact <= DistinctSketch.SPARSE_LIMIT) {
+                assertEquals(exact, estimate, String.valueOf(month));
+            } else {
+                assertTrue(Math.abs(estimate - exact) <= DISTINCT_BOUND * exact, month + ": " + estimate + " vs " + exact);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    // Records what replay hands over, one line per record
+    private static final class Recorder implements TransactionJournal.Replayer {
+
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void add(long idHigh, long idLow, long cents, int epochDay, boolean income,
+                        String category, String description, String paymentMethod) {
+            records.add("add " + idLow + " " + cents + " " + epochDay + " " + income + " " + category + " " + description
+                    + " " + paymentMethod);
+        }
+
+        @Override
+        public void edit(long idHigh, long idLow, long cents, String category, String description, String paymentMethod) {
+            records.add("edit " + idLow + " " + cents + " " + category + " " + description + " " + paymentMethod);
+        }
+
+        @Override
+        public void delete(long idHigh, long idLow) {
+            records.add("delete " + idLow);
+        }
+    }
+
+    private Path file() {
+        return dir.resolve("journal.log");
+    }
+
+    private static void appendAdds(TransactionJournal journal, int from, int to) {
+        for (int i = from; i < to; i++) {
+            journal.appendAdd(0L, i, 100L * i, 19_000 + i, i % 2 == 0, "Food", "Row " + i, "cash");
+        }
+    }
+
+    private List<String> replay(long afterSeq, long expectedLastSeq) throws IOException {
+        Recorder recorder = new Recorder();
+        assertEquals(expectedLastSeq, TransactionJournal.replay(file(), afterSeq, recorder));
+        return recorder.records;
+    }
+
+    @Test
+    void replaysEveryOperationAfterTheGivenSequence() throws IOException {
+        try (TransactionJournal journal = new TransactionJournal(file(), 0L, 1)) {
+            appendAdds(journal, 1, 3);
+            journal.appendEdit(0L, 1, 250L, "Rent", "Changed, with a comma", "card");
+            journal.appendDelete(0L, 2);
+        }
+        assertEquals(List.of("add 1 100 19001 false Food Row 1 cash", "add 2 200 19002 true Food Row 2 cash",
+                "edit 1 250 Rent Changed, with a comma card", "delete 2"), replay(0L, 4L));
+        assertEquals(List.of("delete 2"), replay(3L, 4L));
+    }
+
+    @Test
+    void tornTailIsDiscardedAndCutFromTheFile() throws IOException {
+        try (TransactionJournal journal = new TransactionJournal(file(), 0L, 1)) {
+            appendAdds(journal, 1, 4);
+        }
+        long intact = Files.size(file());
+        try (TransactionJournal journal = new TransactionJournal(file(), 3L, 1)) {
+            appendAdds(journal, 4, 5);
+        }
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file()) - 3); // crash in the middle of the fourth record
+        }
+
+        assertEquals(3, replay(0L, 3L).size());
+        assertEquals(intact, Files.size(file()));
+
+        try (TransactionJournal journal = new TransactionJournal(file(), 3L, 1)) {
+            appendAdds(journal, 4, 5); // lands right after the last intact record
+        }
+        assertEquals("add 4 400 19004 true Food Row 4 cash", replay(3L, 4L).get(0));
+    }
+
+    @Test
+    void corruptRecordEndsTheReplay() throws IOException {
+        try (TransactionJournal journal = new TransactionJournal(file(), 0L, 1)) {
+            appendAdds(journal, 1, 4);
+        }
+        long recordBytes = Files.size(file()) / 3;
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'X'}), recordBytes + 20); // inside the second record's body
+        }
+        assertEquals(List.of("add 1 100 19001 false Food Row 1 cash"), replay(0L, 1L));
+        assertEquals(recordBytes, Files.size(file()));
+    }
+
+    @Test
+    void truncateThroughKeepsRecordsAfterTheMark() throws IOException {
+        try (TransactionJournal journal = new TransactionJournal(file(), 10L, 1)) {
+            appendAdds(journal, 1, 3);
+            TransactionJournal.Mark mark = journal.mark();
+            assertEquals(12L, mark.sequence());
+            appendAdds(journal, 3, 5);
+            journal.truncateThrough(mark);
+            appendAdds(journal, 5, 6); // appends still go to the replaced file
+        }
+        assertEquals(List.of("add 3 300 19003 false Food Row 3 cash", "add 4 400 19004 true Food Row 4 cash",
+                "add 5 500 19005 false Food Row 5 cash"), replay(12L, 15L));
+        assertEquals(List.of("journal.log"), Files.list(dir).map(p -> p.getFileName().toString()).toList());
+    }
+
+    @Test
+    void truncateThroughTheLastRecordEmptiesTheFile() throws IOException {
+        try (TransactionJournal journal = new TransactionJournal(file(), 0L, 1)) {
+            appendAdds(journal, 1, 3);
+            journal.truncateThrough(journal.mark());
+            assertEquals(0L, Files.size(file()));
+            appendAdds(journal, 3, 4);
+            TransactionJournal.Mark mark = journal.mark();
+            journal.truncateThrough(mark);
+            assertEquals(3L, mark.sequence());
+        }
+        assertEquals(List.of(), replay(0L, 0L));
+    }
+}
@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TransactionPageTest {
+
+    private static final Comparator<Transaction> BY_DATE_AND_ID =
+            Comparator.comparing(Transaction::getDate).thenComparing(Transaction::getId);
+
+    // Six months of 2023; the first three are sealed, the rest stay live
+    private static FinanceService ledger() {
+        FinanceService service = new FinanceService();
+        for (int month = 1; month <= 3; month++) {
+            addMonth(service, month);
+        }
+        service.setColdAfter(Duration.ZERO);
+        service.sealIdleMonths();
+        service.setColdAfter(null);
+        for (int month = 4; month <= 6; month++) {
+            addMonth(service, month);
+        }
+        assertEquals(3, service.sealedMonthCount());
+        return service;
+    }
+
+    private static void addMonth(FinanceService service, int month) {
+        service.addTransaction(new Income(100_000, "Salary", "Pay", "online", LocalDate.of(2023, month, 28)));
+        for (int i = 0; i < 90; i++) {
+            service.addTransaction(new Expense(1 + i % 30, i % 3 == 0 ? "Groceries" : "Rent", "Item " + i,
+                    i % 2 == 0 ? "card" : "cash", LocalDate.of(2023, month, 1 + i % 5)));
+        }
+    }
+
+    private static List<String> ids(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::getId).toList();
+    }
+
+    private static List<Transaction> allPages(FinanceService service, TransactionQuery query, int pageSize) {
+        List<Transaction> rows = new ArrayList<>();
+        String cursor = null;
+        do {
+            TransactionPage page = service.findTransactions(query, cursor, pageSize);
+            assertTrue(page.transactions().size() <= pageSize);
+            assertEquals(page.hasMore(), page.transactions().size() == pageSize && page.nextCursor() != null);
+            rows.addAll(page.transactions());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return rows;
+    }
+
+    @Test
+    void pagesCoverEveryRowInDateAndIdOrderAcrossLiveAndSealedMonths() {
+        FinanceService service = ledger();
+        for (TransactionQuery query : new TransactionQuery[] {new TransactionQuery(),
+                new TransactionQuery().paymentMethod("card").expenses(),
+                new TransactionQuery().month(YearMonth.of(2023, 2)).month(YearMonth.of(2023, 5))}) {
+            List<Transaction> expected = new ArrayList<>(service.findTransactions(query));
+            expected.sort(BY_DATE_AND_ID);
+            for (int pageSize : new int[] {1, 7, 90, 91, 1000}) {
+                assertEquals(ids(expected), ids(allPages(service, query, pageSize)), "page size " + pageSize);
+            }
+        }
+        assertEquals(3, service.sealedMonthCount()); // read in place, never rehydrated
+    }
+
+    @Test
+    void categoryPagesMatchTheCategorySearch() {
+        FinanceService service = ledger();
+        List<Transaction> expected = new ArrayList<>();
+        service.streamExpensesByCategory("GROC", expected::addAll);
+        expected.sort(BY_DATE_AND_ID);
+        List<Transaction> paged = new ArrayList<>();
+        for (Iterator<Transaction> it = service.iterateExpensesByCategory("GROC"); it.hasNext(); ) {
+            paged.add(it.next());
+        }
+        assertEquals(180, expected.size());
+        assertEquals(ids(expected), ids(paged));
+        assertEquals(3, service.sealedMonthCount());
+    }
+
+    @Test
+    void rowsAddedBehindTheCursorAreNotSeenAndAheadOfItAre() {
+        FinanceService service = ledger();
+        TransactionPage first = service.findTransactions(new TransactionQuery(), null, 100);
+        Transaction last = first.transactions().get(99);
+        service.addTransaction(new Expense(5, "Rent", "Behind", "cash", LocalDate.of(2023, 1, 2)));
+        service.addTransaction(new Expense(5, "Rent", "Ahead", "cash", LocalDate.of(2023, 6, 20)));
+
+        List<Transaction> rest = new ArrayList<>();
+        String cursor = first.nextCursor();
+        while (cursor != null) {
+            TransactionPage page = service.findTransactions(new TransactionQuery(), cursor, 50);
+            rest.addAll(page.transactions());
+            cursor = page.nextCursor();
+        }
+        assertTrue(rest.stream().noneMatch(t -> t.getDescription().equals("Behind")));
+        assertTrue(rest.stream().anyMatch(t -> t.getDescription().equals("Ahead")));
+        assertTrue(rest.stream().allMatch(t -> BY_DATE_AND_ID.compare(t, last) > 0));
+        assertEquals(6 * 91 + 2 - 100 - 1, rest.size());
+    }
+
+    @Test
+    void lastPageHasNoCursorAndBadArgumentsAreRejected() {
+        FinanceService service = new FinanceService();
+        TransactionPage empty = service.findTransactions(new TransactionQuery(), null, 10);
+        assertEquals(List.of(), empty.transactions());
+        assertNull(empty.nextCursor());
+        assertFalse(empty.hasMore());
+        assertThrows(IllegalArgumentException.class, () -> service.findTransactions(new TransactionQuery(), null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.findTransactions(new TransactionQuery(), "not-a-cursor", 10));
+    }
+}